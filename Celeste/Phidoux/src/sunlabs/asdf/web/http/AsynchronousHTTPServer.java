@@ -0,0 +1,850 @@
+/*
+ * Copyright 2007-2010 Oracle. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Oracle Corporation, 500 Oracle Parkway, Redwood Shores, CA 94065
+ * or visit www.oracle.com if you need additional information or
+ * have any questions.
+ */
+package sunlabs.asdf.web.http;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * An embeddable, event-driven HTTP service.
+ * <p>
+ * Unlike {@link HTTPServer}, which dedicates a {@link Thread} to each connection for the lifetime of that connection,
+ * instances of this class multiplex all connections over a small, fixed number of {@link Selector} threads.
+ * A connection occupies a worker thread only while a request is being executed.
+ * Idle (keep-alive) connections and connections that are still sending a request head consume no thread at all.
+ * </p>
+ * <p>
+ * The selector threads perform all network I/O.
+ * Incoming data is accumulated per connection until a complete request head (terminated by an empty line) has arrived,
+ * at which point the connection is handed to a bounded pool of worker threads
+ * which parse the request and invoke the {@link HTTP.URINameSpace} and {@link HTTP.Request.Method.Handler} for the request
+ * exactly as {@link HTTPServer} does.
+ * If the worker pool and its queue are full, the request is refused with a {@link HTTP.Response.Status#SERVICE_UNAVAILABLE} response.
+ * </p>
+ * <p>
+ * Response output is queued on the connection and written by the selector thread with gathering writes.
+ * A worker producing output faster than the client consumes it is blocked once the connection's output high-water mark is reached.
+ * Responses with a body of unknown length are sent to HTTP/1.1 clients using the chunked transfer-coding,
+ * so the connection can be kept open after a streamed response.
+ * </p>
+ * <p>
+ * Name-spaces are shared by all connections and must therefore be safe for concurrent use.
+ * </p>
+ */
+public class AsynchronousHTTPServer implements HTTP.Server, AsynchronousHTTPServerMBean {
+    private final static byte[] SERVICE_UNAVAILABLE =
+        ("HTTP/1.1 503 Service Unavailable\r\n" +
+         "Content-Length: 0\r\n" +
+         "Connection: close\r\n" +
+         "\r\n").getBytes();
+
+    private ServerSocketChannel server;
+    private SelectorThread[] selectors;
+    private ThreadPoolExecutor workers;
+    private Map<URI,HTTP.URINameSpace> handlers;
+
+    private long idleTimeoutMillis;
+    private int maxBufferedBytes;
+
+    private Logger logger;
+    private volatile boolean trace;
+
+    private AtomicInteger nextSelector;
+    private AtomicLong connectionCount;
+    private AtomicLong connectionsAccepted;
+    private AtomicLong requestCount;
+    private AtomicLong rejectedCount;
+
+    /**
+     * Create an asynchronous HTTP service accepting connections on the given {@link ServerSocketChannel}.
+     * <p>
+     * Before using the resulting instance for receiving HTTP requests, you must add
+     * name-space handlers via the {@link #addNameSpace(URI, HTTP.URINameSpace)}
+     * method and start the service by invoking the {@link #run()} method (typically in a new {@link Thread}).
+     * </p>
+     *
+     * @param server the {@code ServerSocketChannel} to accept connections from.
+     * @param nSelectors the number of selector threads performing network I/O.
+     * @param nWorkers the maximum number of requests executed concurrently.
+     * @param maxQueuedRequests the maximum number of requests waiting for a worker thread.
+     * @param idleTimeoutMillis the time, in milliseconds, that an idle connection is kept open.
+     * @param maxBufferedBytes the per-connection input and output high-water mark.
+     * @throws IOException
+     */
+    public AsynchronousHTTPServer(ServerSocketChannel server, int nSelectors, int nWorkers, int maxQueuedRequests, long idleTimeoutMillis, int maxBufferedBytes) throws IOException {
+        this.server = server;
+        this.server.configureBlocking(true);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.trace = false;
+        this.handlers = new ConcurrentHashMap<URI,HTTP.URINameSpace>();
+
+        this.nextSelector = new AtomicInteger(0);
+        this.connectionCount = new AtomicLong(0);
+        this.connectionsAccepted = new AtomicLong(0);
+        this.requestCount = new AtomicLong(0);
+        this.rejectedCount = new AtomicLong(0);
+
+        this.selectors = new SelectorThread[nSelectors];
+        for (int i = 0; i < this.selectors.length; i++) {
+            this.selectors[i] = new SelectorThread(String.format("HttpSelector-%d", i));
+        }
+
+        this.workers = new ThreadPoolExecutor(nWorkers, nWorkers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueuedRequests),
+                new ThreadFactory() {
+                    private AtomicInteger count = new AtomicInteger(0);
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, String.format("HttpWorker-%d", this.count.getAndIncrement()));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+
+        try {
+            this.addNameSpace(new URI("*"), new ServerNameSpace(this, null));
+        } catch (URISyntaxException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Create an asynchronous HTTP service with one selector thread per available processor,
+     * 64 worker threads, a queue of 1024 requests, a 100 second idle timeout and a 64 KB per-connection buffer limit.
+     *
+     * @param server the {@code ServerSocketChannel} to accept connections from.
+     * @throws IOException
+     */
+    public AsynchronousHTTPServer(ServerSocketChannel server) throws IOException {
+        this(server, Runtime.getRuntime().availableProcessors(), 64, 1024, 100000, 64 * 1024);
+    }
+
+    public void addNameSpace(URI root, HTTP.URINameSpace handler) {
+        this.handlers.put(root, handler);
+    }
+
+    /**
+     * Get the {@link HTTP.URINameSpace} handler for the given URI.
+     *
+     * @param uri
+     * @return the {@code HTTP.NameSpace} handler for the given URI.
+     */
+    public HTTP.URINameSpace getURINameSpace(URI uri) {
+        String longestPath = "";
+        URI longestKey = null;
+
+        String uriPath = uri.getPath();
+        for (URI key : this.handlers.keySet()) {
+            if (uriPath.startsWith(key.getPath())) {
+                if (key.getPath().length() > longestPath.length()) {
+                    longestPath = key.getPath();
+                    longestKey = key;
+                }
+            }
+        }
+        if (longestKey == null)
+            return null;
+        return this.handlers.get(longestKey);
+    }
+
+    public void setLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    public void setTrace(boolean value) {
+        this.trace = value;
+    }
+
+    public boolean getTrace() {
+        return this.trace;
+    }
+
+    private void log(String prefix, Object message) {
+        if (this.logger != null) {
+            this.logger.info(new StringBuilder(prefix).append(Thread.currentThread().getName()).append("\n").append(message.toString()).toString());
+        }
+    }
+
+    public Collection<HTTP.Request.Method> getAccessAllowed() {
+        return HTTPServer.defaultAccessAllowed();
+    }
+
+    /**
+     * Dispatch the given {@link HTTP.Request} to the {@link HTTP.URINameSpace} responsible for its URI
+     * and return the resulting {@link HTTP.Response}.
+     * See {@link HTTPServer#dispatch(HTTP.Request)}.
+     */
+    public HTTP.Response dispatch(HTTP.Request request) throws HTTP.BadRequestException {
+        HTTP.Response response = null;
+
+        HTTP.URINameSpace resourceHandler = this.getURINameSpace(request.getURI());
+        if (resourceHandler == null) {
+            response = new HttpResponse(HTTP.Response.Status.NOT_FOUND, new HttpContent.Text.Plain("%s not found%n", request.getURI()));
+        } else {
+            HTTP.Identity identity = new HTTPServer.Identity((HTTP.Message.Header.Authorization) request.getMessage().getHeader(HTTP.Message.Header.AUTHORIZATION));
+            response = resourceHandler.dispatch(request, identity);
+        }
+
+        if (response == null) {
+            response = new HttpResponse(HTTP.Response.Status.INTERNAL_SERVER_ERROR, new HttpContent.Text.Plain("Internal Server Error\nNull response from dispatch.\nReport this as a bug.\n"));
+        }
+
+        if (response.getMessage().getHeader(HTTP.Message.Header.SERVER) == null) {
+            response.getMessage().addHeader(new HttpHeader.Server(this.getClass().getCanonicalName()));
+        }
+
+        return response;
+    }
+
+    /**
+     * Accept connections until the {@link ServerSocketChannel} is closed,
+     * distributing each new connection to the selector threads in round-robin order.
+     */
+    public void run() {
+        for (SelectorThread selector : this.selectors) {
+            selector.start();
+        }
+
+        try {
+            while (this.server.isOpen()) {
+                SocketChannel channel = this.server.accept();
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    SelectorThread selector = this.selectors[(this.nextSelector.getAndIncrement() & Integer.MAX_VALUE) % this.selectors.length];
+                    selector.register(new Connection(channel, selector));
+                    this.connectionsAccepted.incrementAndGet();
+                } catch (IOException e) {
+                    try { channel.close(); } catch (IOException ignore) { /**/ }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // The server socket was closed, terminate normally.
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.info(String.format("%s: accept failed.", e.toString()));
+            }
+        } finally {
+            for (SelectorThread selector : this.selectors) {
+                selector.shutdown();
+            }
+            this.workers.shutdown();
+        }
+    }
+
+    /**
+     * Close the server socket, all client connections, and terminate.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.server.close();
+    }
+
+    public long getJMXConnectionCount() {
+        return this.connectionCount.get();
+    }
+
+    public long getJMXConnectionsAccepted() {
+        return this.connectionsAccepted.get();
+    }
+
+    public long getJMXRequestCount() {
+        return this.requestCount.get();
+    }
+
+    public long getJMXRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    public int getJMXActiveWorkers() {
+        return this.workers.getActiveCount();
+    }
+
+    public int getJMXQueuedRequests() {
+        return this.workers.getQueue().size();
+    }
+
+    /**
+     * A thread performing all of the network I/O for a set of {@link Connection}s.
+     * <p>
+     * Changes to a {@link SelectionKey} must be made by this thread,
+     * so other threads submit them via {@link #execute(Runnable)}.
+     * </p>
+     */
+    private class SelectorThread extends Thread {
+        private Selector selector;
+        private ConcurrentLinkedQueue<Runnable> pending;
+        private volatile boolean running;
+
+        SelectorThread(String name) throws IOException {
+            super(name);
+            this.setDaemon(true);
+            this.selector = Selector.open();
+            this.pending = new ConcurrentLinkedQueue<Runnable>();
+            this.running = true;
+        }
+
+        public void execute(Runnable task) {
+            this.pending.add(task);
+            this.selector.wakeup();
+        }
+
+        public void register(final Connection connection) {
+            this.execute(new Runnable() {
+                public void run() {
+                    try {
+                        connection.key = connection.channel.register(SelectorThread.this.selector, SelectionKey.OP_READ, connection);
+                        AsynchronousHTTPServer.this.connectionCount.incrementAndGet();
+                    } catch (ClosedChannelException e) {
+                        connection.close();
+                    }
+                }
+            });
+        }
+
+        public void shutdown() {
+            this.running = false;
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastSweep = System.currentTimeMillis();
+
+            while (this.running) {
+                try {
+                    this.selector.select(1000);
+
+                    Runnable task;
+                    while ((task = this.pending.poll()) != null) {
+                        task.run();
+                    }
+
+                    for (SelectionKey key : this.selector.selectedKeys()) {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            connection.networkRead();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.networkWrite();
+                        }
+                    }
+                    this.selector.selectedKeys().clear();
+
+                    // Close connections that have been idle too long.
+                    long now = System.currentTimeMillis();
+                    if (now - lastSweep > 1000) {
+                        lastSweep = now;
+                        for (SelectionKey key : this.selector.keys()) {
+                            Connection connection = (Connection) key.attachment();
+                            if (connection != null && connection.isExpired(now)) {
+                                connection.close();
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            for (SelectionKey key : this.selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            try { this.selector.close(); } catch (IOException e) { /**/ }
+        }
+    }
+
+    /**
+     * The state of a single client connection.
+     * <p>
+     * The selector thread appends incoming data to the connection's input queue,
+     * and the worker thread executing a request consumes it via {@link ConnectionInputStream}.
+     * The worker produces output via {@link ConnectionOutputStream} which the selector thread writes to the network.
+     * </p>
+     */
+    private class Connection implements Runnable {
+        private final byte[] HEADEND = { '\r', '\n', '\r', '\n' };
+
+        private SocketChannel channel;
+        private SelectorThread selector;
+        private SelectionKey key;
+
+        // Guarded by this Connection.
+        private LinkedList<ByteBuffer> inputQ;
+        private int inputBytes;
+        private boolean endOfInput;
+        private boolean busy;
+        private int headMatch;
+        private boolean readSuspended;
+
+        // Guarded by the outputQ.
+        private LinkedList<ByteBuffer> outputQ;
+        private int outputBytes;
+        private boolean closeWhenDrained;
+
+        private final AtomicBoolean closed;
+        private volatile long lastActivity;
+
+        private ConnectionInputStream input;
+        private DataOutputStream output;
+
+        Connection(SocketChannel channel, SelectorThread selector) {
+            this.channel = channel;
+            this.selector = selector;
+            this.inputQ = new LinkedList<ByteBuffer>();
+            this.inputBytes = 0;
+            this.endOfInput = false;
+            this.busy = false;
+            this.headMatch = 0;
+            this.readSuspended = false;
+            this.outputQ = new LinkedList<ByteBuffer>();
+            this.outputBytes = 0;
+            this.closeWhenDrained = false;
+            this.closed = new AtomicBoolean(false);
+            this.lastActivity = System.currentTimeMillis();
+            this.input = new ConnectionInputStream();
+            this.output = new DataOutputStream(new BufferedOutputStream(new ConnectionOutputStream(), 8192));
+        }
+
+        /**
+         * Return {@code true} if this connection has no request in progress,
+         * no pending output, and has been idle for longer than the idle timeout.
+         */
+        boolean isExpired(long now) {
+            synchronized (this) {
+                if (this.busy)
+                    return false;
+            }
+            synchronized (this.outputQ) {
+                if (this.outputBytes > 0)
+                    return false;
+            }
+            return (now - this.lastActivity) > AsynchronousHTTPServer.this.idleTimeoutMillis;
+        }
+
+        /**
+         * Invoked by the selector thread when the channel is readable.
+         */
+        void networkRead() {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            int nread;
+            try {
+                nread = this.channel.read(buffer);
+            } catch (IOException e) {
+                nread = -1;
+            }
+            this.lastActivity = System.currentTimeMillis();
+
+            boolean dispatch = false;
+            synchronized (this) {
+                if (nread < 0) {
+                    this.endOfInput = true;
+                    this.notifyAll();
+                    dispatch = this.busy;
+                }
+            }
+            if (nread < 0) {
+                // A worker executing a request will notice the end of input, otherwise close now.
+                if (!dispatch) {
+                    this.close();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                buffer.flip();
+
+                // Look for the end of a request head only if no request is in progress.
+                if (!this.busy && this.scanForHeadEnd(buffer)) {
+                    this.busy = true;
+                    dispatch = true;
+                }
+
+                this.inputQ.add(buffer);
+                this.inputBytes += buffer.remaining();
+                this.notifyAll();
+
+                if (this.inputBytes > AsynchronousHTTPServer.this.maxBufferedBytes) {
+                    this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+                    this.readSuspended = true;
+                }
+            }
+
+            if (dispatch) {
+                try {
+                    AsynchronousHTTPServer.this.workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    AsynchronousHTTPServer.this.rejectedCount.incrementAndGet();
+                    this.enqueueOutput(ByteBuffer.wrap(AsynchronousHTTPServer.SERVICE_UNAVAILABLE));
+                    synchronized (this.outputQ) {
+                        this.closeWhenDrained = true;
+                    }
+                }
+            }
+        }
+
+        private boolean scanForHeadEnd(ByteBuffer buffer) {
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                byte b = buffer.get(i);
+                if (b == HEADEND[this.headMatch]) {
+                    this.headMatch++;
+                    if (this.headMatch == HEADEND.length) {
+                        this.headMatch = 0;
+                        return true;
+                    }
+                } else {
+                    this.headMatch = (b == HEADEND[0]) ? 1 : 0;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Invoked by the selector thread when the channel is writable.
+         */
+        void networkWrite() {
+            boolean closeNow = false;
+            synchronized (this.outputQ) {
+                try {
+                    while (!this.outputQ.isEmpty()) {
+                        ByteBuffer[] buffers = this.outputQ.toArray(new ByteBuffer[this.outputQ.size()]);
+                        long nwritten = this.channel.write(buffers);
+                        this.outputBytes -= nwritten;
+                        while (!this.outputQ.isEmpty() && !this.outputQ.peek().hasRemaining()) {
+                            this.outputQ.poll();
+                        }
+                        if (nwritten == 0)
+                            break;
+                    }
+                    this.lastActivity = System.currentTimeMillis();
+                    if (this.outputQ.isEmpty()) {
+                        if (this.key.isValid()) {
+                            this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+                        }
+                        closeNow = this.closeWhenDrained;
+                    }
+                } catch (IOException e) {
+                    closeNow = true;
+                }
+                this.outputQ.notifyAll();
+            }
+            if (closeNow) {
+                this.close();
+            }
+        }
+
+        /**
+         * Queue the given {@link ByteBuffer} for output and arrange for the selector thread to write it.
+         */
+        private void enqueueOutput(ByteBuffer buffer) {
+            synchronized (this.outputQ) {
+                this.outputQ.add(buffer);
+                this.outputBytes += buffer.remaining();
+            }
+            this.selector.execute(new Runnable() {
+                public void run() {
+                    if (Connection.this.key != null && Connection.this.key.isValid()) {
+                        Connection.this.key.interestOps(Connection.this.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Arrange for this connection to be closed once all queued output has been written.
+         */
+        private void closeAfterOutput() {
+            boolean closeNow;
+            synchronized (this.outputQ) {
+                this.closeWhenDrained = true;
+                closeNow = this.outputQ.isEmpty();
+            }
+            if (closeNow) {
+                this.close();
+            }
+        }
+
+        void close() {
+            // The selector and a worker may both close a connection, but only one of them may count it.
+            if (!this.closed.compareAndSet(false, true))
+                return;
+            if (this.key != null) {
+                this.key.cancel();
+                AsynchronousHTTPServer.this.connectionCount.decrementAndGet();
+            }
+            try { this.channel.close(); } catch (IOException e) { /**/ }
+            synchronized (this) {
+                this.endOfInput = true;
+                this.notifyAll();
+            }
+            synchronized (this.outputQ) {
+                this.outputQ.notifyAll();
+            }
+        }
+
+        /**
+         * Called by the worker thread after completing a request.
+         * If more input is already buffered (a pipelined request), return {@code true} to continue processing.
+         * Otherwise mark this connection as idle and return {@code false},
+         * releasing the worker thread until the selector thread sees the next complete request head.
+         */
+        private boolean continueOrRelease() {
+            synchronized (this) {
+                if (this.inputBytes > 0) {
+                    return true;
+                }
+                this.busy = false;
+                this.headMatch = 0;
+                if (!this.endOfInput) {
+                    return false;
+                }
+            }
+            this.closeAfterOutput();
+            return false;
+        }
+
+        private void writeResponse(HTTP.Request request, HTTP.Response response, boolean close) throws IOException {
+            if (close) {
+                response.getMessage().addHeader(HttpHeader.Connection.CLOSE);
+            }
+
+            HTTP.Message.Body body = response.getMessage().getBody();
+            if (request.getMethod().equals(HTTP.Request.Method.HEAD)) {
+                response.writeHeadTo(this.output);
+            } else if (body != null && body.contentLength() == -1 && !close && AsynchronousHTTPServer.isChunkable(request)) {
+                // Stream a body of unknown length using the chunked transfer-coding and keep the connection open.
+                response.getMessage().addHeader(HttpHeader.TransferEncoding.CHUNKED);
+                response.writeHeadTo(this.output);
+                HttpUtil.ChunkedOutputStream chunked = new HttpUtil.ChunkedOutputStream(this.output);
+                DataOutputStream chunkedOutput = new DataOutputStream(chunked);
+                body.writeTo(chunkedOutput);
+                chunkedOutput.flush();
+                chunked.finish();
+            } else {
+                response.writeTo(this.output);
+            }
+            this.output.flush();
+
+            if (AsynchronousHTTPServer.this.getTrace()) {
+                AsynchronousHTTPServer.this.log("Response: ", response);
+            }
+        }
+
+        /**
+         * Executed by a worker thread: parse and dispatch requests from this connection until no complete request remains buffered.
+         */
+        public void run() {
+            try {
+                for (;;) {
+                    try {
+                        HTTP.Request request = HttpRequest.getInstance(this.input, this.output);
+                        AsynchronousHTTPServer.this.requestCount.incrementAndGet();
+                        if (AsynchronousHTTPServer.this.getTrace()) {
+                            AsynchronousHTTPServer.this.log("Request: ", request);
+                        }
+
+                        HTTP.Response response = AsynchronousHTTPServer.this.dispatch(request);
+
+                        HttpHeader.Connection connection = (HttpHeader.Connection) request.getMessage().getHeader(HTTP.Message.Header.CONNECTION);
+                        boolean close = connection != null && connection.contains("close");
+
+                        this.writeResponse(request, response, close);
+
+                        connection = (HttpHeader.Connection) response.getMessage().getHeader(HTTP.Message.Header.CONNECTION);
+                        if (close || (connection != null && connection.contains("close"))) {
+                            this.closeAfterOutput();
+                            return;
+                        }
+                    } catch (HTTP.BadRequestException e) {
+                        HTTP.Response response = e.getResponse();
+                        response.writeTo(this.output);
+                        this.output.flush();
+                        if (AsynchronousHTTPServer.this.getTrace()) {
+                            AsynchronousHTTPServer.this.log("Response: ", response);
+                        }
+                    }
+
+                    if (!this.continueOrRelease()) {
+                        return;
+                    }
+                }
+            } catch (EOFException e) {
+                if (AsynchronousHTTPServer.this.logger != null) {
+                    AsynchronousHTTPServer.this.logger.info(String.format("harmless %s: client closed the connection.", e.toString()));
+                }
+                this.closeAfterOutput();
+            } catch (IOException e) {
+                if (AsynchronousHTTPServer.this.logger != null) {
+                    AsynchronousHTTPServer.this.logger.info(String.format("harmless %s: closed.", e.toString()));
+                }
+                this.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+                this.close();
+            }
+        }
+
+        /**
+         * The request input for a worker thread, consuming the data accumulated by the selector thread.
+         * Reads block (up to the idle timeout) when no data is available.
+         */
+        private class ConnectionInputStream extends InputStream {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = this.read(b, 0, 1);
+                return (n <= 0) ? -1 : (b[0] & 0xff);
+            }
+
+            @Override
+            public int read(byte[] b, int offset, int length) throws IOException {
+                if (length == 0)
+                    return 0;
+                Connection c = Connection.this;
+                synchronized (c) {
+                    long deadline = System.currentTimeMillis() + AsynchronousHTTPServer.this.idleTimeoutMillis;
+                    while (c.inputBytes == 0) {
+                        if (c.endOfInput)
+                            return -1;
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                            throw new SocketTimeoutException("Read timed out");
+                        try {
+                            c.wait(remaining);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e.toString());
+                        }
+                    }
+
+                    int count = 0;
+                    while (count < length && !c.inputQ.isEmpty()) {
+                        ByteBuffer head = c.inputQ.peek();
+                        int n = Math.min(head.remaining(), length - count);
+                        head.get(b, offset + count, n);
+                        count += n;
+                        if (!head.hasRemaining()) {
+                            c.inputQ.poll();
+                        }
+                    }
+                    c.inputBytes -= count;
+
+                    // Resume reading from the network once the buffered input has drained sufficiently.
+                    if (c.readSuspended && c.inputBytes < AsynchronousHTTPServer.this.maxBufferedBytes / 2) {
+                        c.readSuspended = false;
+                        c.selector.execute(new Runnable() {
+                            public void run() {
+                                if (Connection.this.key.isValid()) {
+                                    Connection.this.key.interestOps(Connection.this.key.interestOps() | SelectionKey.OP_READ);
+                                }
+                            }
+                        });
+                    }
+                    return count;
+                }
+            }
+
+            @Override
+            public int available() {
+                synchronized (Connection.this) {
+                    return Connection.this.inputBytes;
+                }
+            }
+        }
+
+        /**
+         * The response output of a worker thread.
+         * Data is queued for the selector thread to write, and the writer blocks while the queue exceeds the high-water mark.
+         */
+        private class ConnectionOutputStream extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                this.write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int offset, int length) throws IOException {
+                Connection c = Connection.this;
+                synchronized (c.outputQ) {
+                    while (c.outputBytes > AsynchronousHTTPServer.this.maxBufferedBytes) {
+                        if (c.closed.get())
+                            break;
+                        try {
+                            c.outputQ.wait(AsynchronousHTTPServer.this.idleTimeoutMillis);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e.toString());
+                        }
+                    }
+                    if (c.closed.get())
+                        throw new EOFException("Connection closed");
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                buffer.put(b, offset, length);
+                buffer.flip();
+                c.enqueueOutput(buffer);
+            }
+        }
+    }
+
+    /**
+     * Return {@code true} if the client that sent the given request understands the chunked transfer-coding.
+     */
+    private static boolean isChunkable(HTTP.Request request) {
+        if (request instanceof HttpRequest) {
+            return !"HTTP/1.0".equalsIgnoreCase(((HttpRequest) request).getVersion());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2007-2010 Oracle. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Oracle Corporation, 500 Oracle Parkway, Redwood Shores, CA 94065
+ * or visit www.oracle.com if you need additional information or
+ * have any questions.
+ */
+package sunlabs.asdf.web.http;
+
+public interface AsynchronousHTTPServerMBean {
+    /**
+     * Get the number of currently open client connections.
+     */
+    public long getJMXConnectionCount();
+
+    /**
+     * Get the total number of client connections accepted.
+     */
+    public long getJMXConnectionsAccepted();
+
+    /**
+     * Get the total number of requests dispatched.
+     */
+    public long getJMXRequestCount();
+
+    /**
+     * Get the number of requests refused because the worker pool and its queue were full.
+     */
+    public long getJMXRejectedCount();
+
+    /**
+     * Get the number of worker threads currently executing requests.
+     */
+    public int getJMXActiveWorkers();
+
+    /**
+     * Get the number of requests waiting for a worker thread.
+     */
+    public int getJMXQueuedRequests();
+}
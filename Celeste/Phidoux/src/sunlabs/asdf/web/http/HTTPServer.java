@@ -239,7 +239,7 @@ public class HTTPServer extends Thread implements HTTP.Server, Runnable, HTTPSer
         }
     }
 
-    public class Identity implements HTTP.Identity {
+    public static class Identity implements HTTP.Identity {
         private Map<String,String> properties;
         
         public Identity() {
@@ -424,6 +424,10 @@ public class HTTPServer extends Thread implements HTTP.Server, Runnable, HTTPSer
 
     // XXX This is only an HTTP server and here we are claiming to respond to WebDAV methods.
     public Collection<HTTP.Request.Method> getAccessAllowed() {
+        return HTTPServer.defaultAccessAllowed();
+    }
+
+    static Collection<HTTP.Request.Method> defaultAccessAllowed() {
         Collection<HTTP.Request.Method> result = new HashSet<HTTP.Request.Method>();
         result.add(HTTP.Request.Method.GET);
         result.add(HTTP.Request.Method.PUT);
@@ -1791,6 +1791,11 @@ public abstract class HttpHeader implements HTTP.Message.Header {
     public static class TransferEncoding extends HttpHeader {
         private final static long serialVersionUID = 1L;
         
+        /**
+         * Convenience constant consisting of a {@code Transfer-Encoding: chunked} header.
+         */
+        public final static TransferEncoding CHUNKED = new TransferEncoding("chunked");
+
         private boolean chunked;
 
         public TransferEncoding() {
@@ -1802,6 +1807,13 @@ public abstract class HttpHeader implements HTTP.Message.Header {
             this.fieldValue = fieldValue;
         }
 
+        /**
+         * Return {@code true} if this header specifies the chunked transfer-coding.
+         */
+        public boolean isChunked() {
+            return this.fieldValue != null && this.fieldValue.trim().equalsIgnoreCase("chunked");
+        }
+
         @Override
         public void parse() {
             this.chunked = this.fieldValue.compareToIgnoreCase("chunked") == 0 ? true : false;
@@ -394,8 +394,15 @@ public final class HttpMessage implements HTTP.Message {
 
         return new HttpContent.Multipart.FormData();
     }
-    
-    
+
+    /**
+     * Return {@code true} if this message carries a {@code Transfer-Encoding: chunked} header.
+     */
+    public boolean isChunked() {
+        HTTP.Message.Header header = this.getHeader(HTTP.Message.Header.TRANSFERENCODING);
+        return (header instanceof HttpHeader.TransferEncoding) && ((HttpHeader.TransferEncoding) header).isChunked();
+    }
+
     /**
      * <blockquote>
      * Any HTTP/1.1 message containing an entity-body SHOULD include
@@ -483,8 +490,8 @@ public final class HttpMessage implements HTTP.Message {
             if (contentLength != -1) {
                 // Override any Content-Length header already set in the message.
                 this.addHeader(new HttpHeader.ContentLength(contentLength));
-            } else {
-                // Because the content length is not known (equal to -1), force the connection to close.
+            } else if (!this.isChunked()) {
+                // Because the content length is not known (equal to -1), and the body is not chunked, force the connection to close.
                 // XXX this can cause unnecessary connection closes on requests that have no body and no content-length header.
                 this.addHeader(new HttpHeader.Connection("close"));
             }
@@ -153,6 +153,13 @@ public class HttpRequest implements HTTP.Request {
     public URI getURI() {
         return this.requestURI;
     }
+
+    /**
+     * Get the HTTP-Version of this request (for example, {@code HTTP/1.1}).
+     */
+    public String getVersion() {
+        return new String(this.httpVersion);
+    }
     
     public Map<String,String> getURLEncoded() throws UnsupportedEncodingException {
         Map<String,String> map = new HashMap<String,String>();
@@ -220,6 +220,98 @@ public final class HttpUtil {
         }
     }
 
+    /**
+     * An {@link OutputStream} that encodes the data written to it using the HTTP/1.1 chunked transfer-coding.
+     * <p>
+     * Small writes are accumulated in an internal buffer and emitted as a single chunk
+     * when the buffer fills, or when this stream is flushed.
+     * Invoking {@link #finish()} (or {@link #close()}) writes the terminating zero-length chunk,
+     * but does NOT close the underlying {@code OutputStream}.
+     * </p>
+     * See <cite><a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec3.html#sec3.6.1">RFC 2616 &sect;3.6.1 Chunked Transfer Coding</a></cite>
+     */
+    public static class ChunkedOutputStream extends OutputStream {
+        private final static byte[] LASTCHUNK = "0\r\n\r\n".getBytes();
+
+        private OutputStream out;
+        private byte[] buffer;
+        private int count;
+        private boolean finished;
+
+        public ChunkedOutputStream(OutputStream out, int chunkSize) {
+            this.out = out;
+            this.buffer = new byte[chunkSize];
+            this.count = 0;
+            this.finished = false;
+        }
+
+        public ChunkedOutputStream(OutputStream out) {
+            this(out, 8192);
+        }
+
+        private void writeChunk(byte[] b, int offset, int length) throws IOException {
+            if (length > 0) {
+                this.out.write(Integer.toHexString(length).getBytes());
+                this.out.write(HttpUtil.CRNL);
+                this.out.write(b, offset, length);
+                this.out.write(HttpUtil.CRNL);
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            this.writeChunk(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.finished)
+                throw new IOException("Chunked stream already finished");
+            if (this.count >= this.buffer.length) {
+                this.flushBuffer();
+            }
+            this.buffer[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException {
+            if (this.finished)
+                throw new IOException("Chunked stream already finished");
+            if (length >= this.buffer.length - this.count) {
+                // Large writes bypass the buffer and are sent as their own chunk.
+                this.flushBuffer();
+                this.writeChunk(b, offset, length);
+            } else {
+                System.arraycopy(b, offset, this.buffer, this.count, length);
+                this.count += length;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.flushBuffer();
+            this.out.flush();
+        }
+
+        /**
+         * Write any buffered data and the terminating zero-length chunk.
+         * The underlying {@link OutputStream} remains open.
+         */
+        public void finish() throws IOException {
+            if (!this.finished) {
+                this.flushBuffer();
+                this.out.write(ChunkedOutputStream.LASTCHUNK);
+                this.out.flush();
+                this.finished = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.finish();
+        }
+    }
+
     /**
      * Transfer bytes from the given {@link InputStream} {@code in} to the
      * {@link OutputStream} {@code output} looking for the byte {@code sequence}
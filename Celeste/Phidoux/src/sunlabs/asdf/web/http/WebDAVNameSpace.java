@@ -24,6 +24,7 @@
 package sunlabs.asdf.web.http;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,6 +35,17 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -71,7 +83,19 @@ public class WebDAVNameSpace extends NameSpace {
     protected WebDAV.Backend backend;
 
     public static Document parseXMLBody(HTTP.Request request) throws HTTP.BadRequestException, HTTP.InternalServerErrorException {
-        return parseXMLBody(request.getMessage().getBody().toInputStream());
+        HTTP.Message.Body body = request.getMessage().getBody();
+        long contentLength = body.contentLength();
+        if (contentLength < 0) {
+            return parseXMLBody(body.toInputStream());
+        }
+        // Read exactly the body, so the XML parser does not consume (or wait for) data beyond the end of this request.
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(contentLength, HttpContent.BUFFERSIZE));
+            HttpUtil.transferTo(body.toInputStream(), bytes, HttpContent.BUFFERSIZE, contentLength);
+            return parseXMLBody(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new HTTP.InternalServerErrorException(e.toString(), e);
+        }
     }
 
     public static Document parseXMLBody(byte[] bytes) throws HTTP.BadRequestException, HTTP.InternalServerErrorException {
@@ -1357,88 +1381,39 @@ public class WebDAVNameSpace extends NameSpace {
             for (int i = 0; i < propfindNodes.getLength(); i++) {
                 Node n = propfindNodes.item(i);
                 if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    WebDAVNameSpace.RecursiveOperation propfindOperation;
                     if (n.getLocalName().compareTo("prop") == 0) {
-                        WebDAVNameSpace.RecursiveOperation propfindOperation = new PropfindPropOperation(new WebDAV.DAVProp(n.getChildNodes()));
-
-                        DAVMultistatus result = WebDAVNameSpace.treeWalk2(resource, depth, propfindOperation);
-
-                        DAV.MultiStatus multiStatus = result.toXML(new DAV());
-                        multiStatus.bindNameSpace();
-                        System.out.printf("multistatus %s%n", multiStatus.toString());
-                        XML.Document document = new XML.Document(multiStatus);
-                        try {
-                            return new HttpResponse(HTTP.Response.Status.MULTI_STATUS, new HttpContent.Text.XML(document));
-                        } catch (TransformerConfigurationException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerFactoryConfigurationError e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } finally {
-
-                        }
+                        propfindOperation = new PropfindPropOperation(new WebDAV.DAVProp(n.getChildNodes()));
                     } else if (n.getLocalName().compareTo("allprop") == 0) {
-                        WebDAVNameSpace.RecursiveOperation propfindAllPropOperation = new PropfindAllpropOperation(new WebDAV.DAVAllprop(n.getChildNodes()));
-
-                        DAVMultistatus result = WebDAVNameSpace.treeWalk2(resource, depth, propfindAllPropOperation);
-
-                        DAV.MultiStatus multiStatus = result.toXML(new DAV());
-                        multiStatus.bindNameSpace();
-                        XML.Document document = new XML.Document(multiStatus);
-                        try {
-                            return new HttpResponse(HTTP.Response.Status.MULTI_STATUS, new HttpContent.Text.XML(document));
-                        } catch (TransformerConfigurationException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerFactoryConfigurationError e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } finally {
-
-                        }                          
+                        propfindOperation = new PropfindAllpropOperation(new WebDAV.DAVAllprop(n.getChildNodes()));
                     } else if (n.getLocalName().compareTo("propname") == 0) {
-                        WebDAVNameSpace.RecursiveOperation propfindOperation = new PropfindPropnameOperation(new WebDAV.DAVAllprop(n.getChildNodes()));
-                        
-                        DAVMultistatus result = WebDAVNameSpace.treeWalk2(resource, depth, propfindOperation);
-
-                        DAV.MultiStatus multiStatus = result.toXML(new DAV());
-                        multiStatus.bindNameSpace();
-                        XML.Document document = new XML.Document(multiStatus);
-                        try {
-                            return new HttpResponse(HTTP.Response.Status.MULTI_STATUS, new HttpContent.Text.XML(document));
-                        } catch (TransformerConfigurationException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerFactoryConfigurationError e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } finally {
-
-                        }                   
+                        propfindOperation = new PropfindPropnameOperation(new WebDAV.DAVAllprop(n.getChildNodes()));
                     } else if (n.getLocalName().compareTo("include") == 0) {
-                        WebDAVNameSpace.RecursiveOperation propfindOperation = new PropfindIncludeOperation(new WebDAV.DAVInclude(n.getChildNodes()));
-                        
+                        propfindOperation = new PropfindIncludeOperation(new WebDAV.DAVInclude(n.getChildNodes()));
+                    } else {
+                        throw new HTTP.BadRequestException(String.format("Unknown propfind element '%s'", n.getLocalName()));
+                    }
 
-                        DAVMultistatus result = WebDAVNameSpace.treeWalk2(resource, depth, propfindOperation);
+                    // A PROPFIND of a single resource is small and sent with a Content-Length.
+                    // Deeper PROPFINDs are streamed, fetching the properties of members concurrently.
+                    if (depth != HTTP.Message.Header.Depth.Level.ONLY && resource.isCollection()) {
+                        return new HttpResponse(HTTP.Response.Status.MULTI_STATUS, new WebDAVNameSpace.MultistatusStream(resource, depth, propfindOperation));
+                    }
 
-                        DAV.MultiStatus multiStatus = result.toXML(new DAV());
-                        multiStatus.bindNameSpace();
-                        XML.Document document = new XML.Document(multiStatus);
-                        try {
-                            return new HttpResponse(HTTP.Response.Status.MULTI_STATUS, new HttpContent.Text.XML(document));
-                        } catch (TransformerConfigurationException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerFactoryConfigurationError e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } catch (TransformerException e) {
-                            throw new HTTP.InternalServerErrorException(request.getURI(), e);
-                        } finally {
+                    DAVMultistatus result = WebDAVNameSpace.treeWalk2(resource, depth, propfindOperation);
 
-                        }
-                    } else {
-                        throw new HTTP.BadRequestException(String.format("Unknown propfind element '%s'", n.getLocalName()));
+                    DAV.MultiStatus multiStatus = result.toXML(new DAV());
+                    multiStatus.bindNameSpace();
+                    XML.Document document = new XML.Document(multiStatus);
+                    try {
+                        return new HttpResponse(HTTP.Response.Status.MULTI_STATUS, new HttpContent.Text.XML(document));
+                    } catch (TransformerConfigurationException e) {
+                        throw new HTTP.InternalServerErrorException(request.getURI(), e);
+                    } catch (TransformerFactoryConfigurationError e) {
+                        throw new HTTP.InternalServerErrorException(request.getURI(), e);
+                    } catch (TransformerException e) {
+                        throw new HTTP.InternalServerErrorException(request.getURI(), e);
                     }
-                    
                 }
             }
             throw new HTTP.BadRequestException();
@@ -1958,4 +1933,200 @@ public class WebDAVNameSpace extends NameSpace {
         }
         return response;
     }
+
+    /**
+     * The maximum number of resources of a single {@link MultistatusStream} whose properties are fetched concurrently.
+     */
+    public static int treeWalkParallelism = 16;
+
+    private static ExecutorService treeWalkExecutor;
+
+    /**
+     * Get the node-wide executor used by {@link MultistatusStream} to fetch resource properties concurrently.
+     */
+    private static synchronized ExecutorService getTreeWalkExecutor() {
+        if (WebDAVNameSpace.treeWalkExecutor == null) {
+            int nThreads = Math.max(WebDAVNameSpace.treeWalkParallelism, 4 * Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private AtomicInteger count = new AtomicInteger(0);
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, String.format("WebDAV-treeWalk-%d", this.count.getAndIncrement()));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            WebDAVNameSpace.treeWalkExecutor = executor;
+        }
+        return WebDAVNameSpace.treeWalkExecutor;
+    }
+
+    /**
+     * The result of applying a {@link RecursiveOperation} to a single resource in {@link MultistatusStream}:
+     * the {@link WebDAV.DAVResponse} to emit, and the members of the resource still to be visited.
+     */
+    private static class TreeWalkStep {
+        private WebDAV.DAVResponse response;
+        private Collection<WebDAV.Resource> members;
+        private HTTP.Message.Header.Depth.Level memberDepth;
+
+        TreeWalkStep(WebDAV.DAVResponse response) {
+            this.response = response;
+            this.members = null;
+            this.memberDepth = null;
+        }
+    }
+
+    /**
+     * Apply the given {@link RecursiveOperation} to a single resource, without recursion.
+     * <p>
+     * This produces the same {@link WebDAV.DAVResponse} for the resource as {@link #treeWalk2(WebDAV.Resource, HTTP.Message.Header.Depth.Level, RecursiveOperation)},
+     * except that the <em>post</em> operation is not deferred until the members of a collection have been visited.
+     * It is therefore only suitable for operations, such as PROPFIND, whose results do not depend upon the order in which resources are visited.
+     * </p>
+     */
+    private static TreeWalkStep treeWalkStep(WebDAV.Resource resource, HTTP.Message.Header.Depth.Level depthLevel, WebDAVNameSpace.RecursiveOperation operation) {
+        try {
+            DAVResponse preResult = operation.preOperation(resource, depthLevel, operation);
+            if (preResult != null && !preResult.getStatus().isSuccessful()) {
+                return new TreeWalkStep(preResult);
+            }
+
+            Collection<WebDAV.Resource> members = null;
+            HTTP.Message.Header.Depth.Level memberDepth = null;
+            if (resource.isCollection()) {
+                if (depthLevel == HTTP.Message.Header.Depth.Level.INFINITY) {
+                    members = resource.getCollection();
+                    memberDepth = depthLevel;
+                } else if (depthLevel == HTTP.Message.Header.Depth.Level.ALL) {
+                    members = resource.getCollection();
+                    memberDepth = HTTP.Message.Header.Depth.Level.ONLY;
+                }
+            }
+
+            TreeWalkStep step = new TreeWalkStep(operation.postOperation(resource, depthLevel, operation, preResult));
+            step.members = members;
+            step.memberDepth = memberDepth;
+            return step;
+        } catch (HTTP.Exception e) {
+            return new TreeWalkStep(new WebDAV.DAVResponse(e.getURI(), new WebDAV.DAVStatus(e.getStatus()), e.getMessage()));
+        }
+    }
+
+    /**
+     * An HTTP message body containing a {@code multistatus} element that is produced while it is being written.
+     * <p>
+     * Rather than composing the entire {@link WebDAV.DAVMultistatus} in memory before sending it (see {@link WebDAVNameSpace#treeWalk2}),
+     * the resources of the tree are visited concurrently on a shared executor,
+     * with at most {@link WebDAVNameSpace#treeWalkParallelism} resources of this tree in progress at once,
+     * and each {@code response} element is written to the output as soon as it is complete.
+     * The order of the {@code response} elements is therefore not the order of a depth-first walk.
+     * </p>
+     * <p>
+     * The length of this content is not known in advance, so HTTP/1.1 servers send it using the chunked transfer-coding.
+     * </p>
+     */
+    public static class MultistatusStream extends HttpContent {
+        private final static long serialVersionUID = 1L;
+
+        private transient WebDAV.Resource resource;
+        private HTTP.Message.Header.Depth.Level depthLevel;
+        private transient WebDAVNameSpace.RecursiveOperation operation;
+
+        public MultistatusStream(WebDAV.Resource resource, HTTP.Message.Header.Depth.Level depthLevel, WebDAVNameSpace.RecursiveOperation operation) {
+            super(new HttpHeader.ContentType(InternetMediaType.Text.XML));
+            this.resource = resource;
+            this.depthLevel = depthLevel;
+            this.operation = operation;
+        }
+
+        public long contentLength() {
+            return -1;
+        }
+
+        private Future<TreeWalkStep> submit(CompletionService<TreeWalkStep> completion, final WebDAV.Resource r, final HTTP.Message.Header.Depth.Level level) {
+            final WebDAVNameSpace.RecursiveOperation op = this.operation;
+            return completion.submit(new Callable<TreeWalkStep>() {
+                public TreeWalkStep call() {
+                    return WebDAVNameSpace.treeWalkStep(r, level, op);
+                }
+            });
+        }
+
+        public long writeTo(DataOutputStream out) throws IOException {
+            long startSize = out.size();
+
+            DAV dav = new DAV();
+            String prefix = dav.getNameSpace().getPrefix();
+            String elementName = (prefix == null) ? "multistatus" : (prefix + ":multistatus");
+            out.write(XML.Prolog);
+            out.writeBytes(String.format("<%s %s>%n", elementName, dav.getNameSpace().toString()));
+            out.flush();
+
+            CompletionService<TreeWalkStep> completion = new ExecutorCompletionService<TreeWalkStep>(WebDAVNameSpace.getTreeWalkExecutor());
+            LinkedList<Future<TreeWalkStep>> inProgress = new LinkedList<Future<TreeWalkStep>>();
+            // Resources waiting to be visited, paired with the depth at which to visit them.
+            LinkedList<Object[]> waiting = new LinkedList<Object[]>();
+            waiting.add(new Object[] { this.resource, this.depthLevel });
+
+            try {
+                while (!waiting.isEmpty() || !inProgress.isEmpty()) {
+                    while (!waiting.isEmpty() && inProgress.size() < WebDAVNameSpace.treeWalkParallelism) {
+                        Object[] next = waiting.removeFirst();
+                        inProgress.add(this.submit(completion, (WebDAV.Resource) next[0], (HTTP.Message.Header.Depth.Level) next[1]));
+                    }
+
+                    Future<TreeWalkStep> done = completion.take();
+                    inProgress.remove(done);
+                    TreeWalkStep step;
+                    try {
+                        step = done.get();
+                    } catch (ExecutionException e) {
+                        throw new IOException(e.getCause().toString());
+                    }
+
+                    if (step.members != null) {
+                        for (WebDAV.Resource member : step.members) {
+                            waiting.add(new Object[] { member, step.memberDepth });
+                        }
+                    }
+                    if (step.response != null) {
+                        step.response.toXML(dav).streamTo(out);
+                        out.writeBytes("\n");
+                    }
+                    // Send what has been produced so far, unless more results are already waiting to be written.
+                    if (inProgress.isEmpty() || !inProgress.getFirst().isDone()) {
+                        out.flush();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e.toString());
+            } finally {
+                for (Future<TreeWalkStep> f : inProgress) {
+                    f.cancel(true);
+                }
+            }
+
+            out.writeBytes(String.format("</%s>%n", elementName));
+            out.flush();
+            return out.size() - startSize;
+        }
+
+        @Override
+        public InputStream toInputStream() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                this.writeTo(new DataOutputStream(bytes));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return new ByteArrayInputStream(bytes.toByteArray());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(streamed multistatus of %s depth %s)", this.resource.getURI(), this.depthLevel);
+        }
+    }
 }
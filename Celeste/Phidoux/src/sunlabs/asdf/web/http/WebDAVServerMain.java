@@ -50,6 +50,8 @@ public class WebDAVServerMain {
     public static void main(String args[]) {
         int httpPort = 8081;
         int clientTimeOutMillis = 100000;
+        boolean asynchronous = false;
+        int nWorkers = 64;
         
         Stack<String> options = new Stack<String>();
         for (int i = args.length - 1; i >= 0; i--) {
@@ -64,8 +66,12 @@ public class WebDAVServerMain {
                 httpPort = Integer.parseInt(options.pop());
             } else if  (option.equals("--client-timeout")) {
                 clientTimeOutMillis = Integer.parseInt(options.pop());
+            } else if (option.equals("--asynchronous")) {
+                asynchronous = true;
+            } else if (option.equals("--workers")) {
+                nWorkers = Integer.parseInt(options.pop());
             } else if (option.equals("--help")) {
-                System.out.printf("Arguments: [--port <port>] [--client-timeout <millis>]%n");
+                System.out.printf("Arguments: [--port <port>] [--client-timeout <millis>] [--asynchronous [--workers <count>]]%n");
                 System.exit(1);
             }
         }
@@ -89,7 +95,17 @@ public class WebDAVServerMain {
             } else {
                 backend = new FileSystemBackend("docroot/");                
             }
-            
+
+            if (asynchronous) {
+                AsynchronousHTTPServer server = new AsynchronousHTTPServer(serverSocketChannel,
+                        Runtime.getRuntime().availableProcessors(), nWorkers, 1024, clientTimeOutMillis, 64 * 1024);
+                server.setTrace(true);
+                server.addNameSpace(new URI("/"), new WebDAVNameSpace(server, backend));
+                server.setLogger(Logger.getLogger(WebDAVServerMain.class.getName()));
+                server.run();
+                return;
+            }
+
             while (true) {
                 SocketChannel socketChannel = serverSocketChannel.accept();
                 Socket socket = socketChannel.socket();
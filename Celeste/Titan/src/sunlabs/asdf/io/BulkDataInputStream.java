@@ -0,0 +1,113 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link ObjectInputStream} reading a stream produced by a {@link BulkDataOutputStream}.
+ * <p>
+ * The serialized objects are read from the given {@link InputStream}
+ * and the bulk data is read, in the order it was written, either from a {@link FileChannel} beginning at a given file position,
+ * or from a {@link ByteBuffer} holding the bulk data.
+ * Reading from a {@code FileChannel} lets the bulk data go directly from the file into the caller's buffer.
+ * </p>
+ * <p>
+ * A {@code FileChannel} reads into a buffer that is not direct by way of a temporary direct buffer as large as the read,
+ * which the channel implementation may keep for reuse.
+ * So reads into such buffers are made in pieces of no more than {@value #MAXIMUM_READ} bytes, bounding the direct memory used.
+ * </p>
+ */
+public class BulkDataInputStream extends ObjectInputStream {
+    /** The largest single read from the {@code FileChannel} into a buffer that is not direct. */
+    public final static int MAXIMUM_READ = 64 * 1024;
+
+    private FileChannel channel;
+    private long channelPosition;
+    private ByteBuffer buffer;
+
+    /**
+     * Create a {@code BulkDataInputStream} reading the serialized objects from {@code in} and the bulk data
+     * from {@code channel} beginning at the file position {@code position}.
+     * <p>
+     * The position of {@code channel} is not changed, and the channel is not closed when this stream is closed.
+     * </p>
+     */
+    public BulkDataInputStream(InputStream in, FileChannel channel, long position) throws IOException {
+        super(in);
+        this.channel = channel;
+        this.channelPosition = position;
+        this.buffer = null;
+    }
+
+    /**
+     * Create a {@code BulkDataInputStream} reading the serialized objects from {@code in} and the bulk data
+     * from the bytes between the position and the limit of {@code bulk}.
+     */
+    public BulkDataInputStream(InputStream in, ByteBuffer bulk) throws IOException {
+        super(in);
+        this.channel = null;
+        this.channelPosition = 0;
+        this.buffer = bulk.duplicate();
+    }
+
+    /**
+     * Fill the bytes between the position and the limit of {@code dst} with the next bytes of bulk data.
+     * On return the position of {@code dst} is equal to its limit.
+     *
+     * @throws EOFException if there is not enough bulk data to fill {@code dst}.
+     */
+    public void readBulk(ByteBuffer dst) throws IOException {
+        if (this.channel != null) {
+            while (dst.hasRemaining()) {
+                ByteBuffer b = dst;
+                if (!dst.isDirect() && dst.remaining() > BulkDataInputStream.MAXIMUM_READ) {
+                    b = dst.duplicate();
+                    b.limit(b.position() + BulkDataInputStream.MAXIMUM_READ);
+                }
+                int nread = this.channel.read(b, this.channelPosition);
+                if (nread < 0) {
+                    throw new EOFException();
+                }
+                if (b != dst) {
+                    dst.position(b.position());
+                }
+                this.channelPosition += nread;
+            }
+        } else {
+            if (this.buffer.remaining() < dst.remaining()) {
+                throw new EOFException();
+            }
+            ByteBuffer b = this.buffer.duplicate();
+            b.limit(b.position() + dst.remaining());
+            dst.put(b);
+            this.buffer.position(b.position());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.io;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link ObjectOutputStream} that keeps bulk data out of the serialized stream.
+ * <p>
+ * A class whose serialized form carries a large run of bytes may, in its {@code writeObject} method,
+ * test whether the stream is an instance of this class and, if so, hand the bytes to {@link #writeBulk(ByteBuffer)}
+ * instead of writing them to the stream.
+ * The bytes are not copied.
+ * Instead the buffer is retained and the producer of this stream writes the accumulated buffers, in order, after the serialized stream,
+ * typically with a single gathering write (see {@link #getBulk()}).
+ * </p>
+ * <p>
+ * The corresponding {@code readObject} method must test for a {@link BulkDataInputStream}
+ * and obtain the bytes from {@link BulkDataInputStream#readBulk(ByteBuffer)}, in the same order they were written.
+ * </p>
+ */
+public class BulkDataOutputStream extends ObjectOutputStream {
+    private List<ByteBuffer> bulk;
+    private long bulkLength;
+
+    public BulkDataOutputStream(OutputStream out) throws IOException {
+        super(out);
+        this.bulk = new ArrayList<ByteBuffer>();
+        this.bulkLength = 0;
+    }
+
+    /**
+     * Append the bytes between the position and the limit of {@code data} to the bulk data of this stream.
+     * <p>
+     * The position of {@code data} is not changed, and the content of {@code data} must not be modified until the bulk data has been written.
+     * </p>
+     */
+    public void writeBulk(ByteBuffer data) {
+        ByteBuffer b = data.duplicate();
+        this.bulk.add(b);
+        this.bulkLength += b.remaining();
+    }
+
+    /**
+     * Get the bulk data written to this stream, in the order written.
+     */
+    public List<ByteBuffer> getBulk() {
+        return this.bulk;
+    }
+
+    /**
+     * Get the total number of bytes of bulk data written to this stream.
+     */
+    public long getBulkLength() {
+        return this.bulkLength;
+    }
+}
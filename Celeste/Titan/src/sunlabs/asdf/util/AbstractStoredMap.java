@@ -26,28 +26,39 @@ package sunlabs.asdf.util;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Stack;
 
+import sunlabs.asdf.io.BulkDataInputStream;
+import sunlabs.asdf.io.BulkDataOutputStream;
+
 /*
  * This is like a Map Key->File
  */
 abstract public class AbstractStoredMap<K,V extends Serializable> implements Iterable<K> {
     public final static long CAPACITY_UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * The first four bytes of a file holding a serialized object followed by its bulk data.
+     * This cannot be confused with the first bytes of a plain serialized object stream ({@code 0xACED}).
+     */
+    public final static int BULK_FORMAT_MAGIC = 0x424c4b31;
     
     public static class OutOfSpace extends Exception {
         private static final long serialVersionUID = 1L;
@@ -209,6 +220,56 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 		unlockFile(file.getParentFile());
 	}
 	
+	/**
+	 * Serialize the given {@code object} into the sequence of {@link ByteBuffer}s comprising the content of the file that stores it.
+	 * <p>
+	 * The file content consists of the {@link #BULK_FORMAT_MAGIC} and the length of the serialized object, each as an int,
+	 * followed by the serialized object written by a {@link BulkDataOutputStream}, followed by the bulk data collected by that stream.
+	 * The bulk data is not copied, the returned buffers share their content with the serialized object.
+	 * </p>
+	 */
+	private static ByteBuffer[] serialize(Serializable object) throws IOException {
+	    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+	    BulkDataOutputStream oos = new BulkDataOutputStream(bout);
+	    oos.writeObject(object);
+	    oos.close();
+	    byte[] serializedObject = bout.toByteArray();
+
+	    List<ByteBuffer> bulk = oos.getBulk();
+	    ByteBuffer[] result = new ByteBuffer[2 + bulk.size()];
+	    result[0] = ByteBuffer.allocate(8);
+	    result[0].putInt(AbstractStoredMap.BULK_FORMAT_MAGIC).putInt(serializedObject.length).flip();
+	    result[1] = ByteBuffer.wrap(serializedObject);
+	    int i = 2;
+	    for (ByteBuffer b : bulk) {
+	        result[i++] = b;
+	    }
+	    return result;
+	}
+
+	private static long remaining(ByteBuffer[] buffers) {
+	    long result = 0;
+	    for (ByteBuffer b : buffers) {
+	        result += b.remaining();
+	    }
+	    return result;
+	}
+
+	/**
+	 * Write the given buffers to {@code file} with gathering writes, replacing any previous content of the file.
+	 */
+	private static void writeFile(File file, ByteBuffer[] buffers) throws IOException {
+	    FileOutputStream out = new FileOutputStream(file);
+	    try {
+	        FileChannel channel = out.getChannel();
+	        for (long remaining = AbstractStoredMap.remaining(buffers); remaining > 0; /**/) {
+	            remaining -= channel.write(buffers);
+	        }
+	    } finally {
+	        out.close();
+	    }
+	}
+
 	/**
 	 * Put the given {@code object} in the store with the given @{link key}.
 	 * <p>
@@ -224,11 +285,12 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 	public void putCache(K key, V object) throws IOException, IllegalStateException, OutOfSpace {
 	    File file = this.keyToFile(this.root, key);
 
-	    ByteArrayOutputStream bout = new ByteArrayOutputStream();
-	    ObjectOutputStream oos = new ObjectOutputStream(bout);
-	    oos.writeObject(object);
-	    oos.close();
-	    byte[] serializedObject = bout.toByteArray();
+	    ByteBuffer[] content = AbstractStoredMap.serialize(object);
+	    byte[] serializedObject = new byte[(int) AbstractStoredMap.remaining(content)];
+	    ByteBuffer image = ByteBuffer.wrap(serializedObject);
+	    for (ByteBuffer b : content) {
+	        image.put(b.duplicate());
+	    }
 
 	    this.lockFile(file);
 	    try {
@@ -250,15 +312,11 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 
 	        file.getParentFile().mkdirs();
 
-	        OutputStream out = null;
 	        try {
-	            out = new FileOutputStream(file);
-	            out.write(serializedObject);
+	            AbstractStoredMap.writeFile(file, content);
 	        } catch (IOException failedWrite) {
 	            this.remove(key);
 	            throw failedWrite;
-	        } finally {
-	            if (out != null) try { out.close(); } catch (IOException ignore) { ignore.printStackTrace(); }
 	        }
 	    } finally {
 	        this.unlockFile(file);
@@ -268,21 +326,18 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 	public void put(K key, V object) throws IOException, IllegalStateException, OutOfSpace {
 	    File file = this.keyToFile(this.root, key);
 
+	    ByteBuffer[] content = AbstractStoredMap.serialize(object);
+
 	    this.lockFile(file);
 	    try {
 	        file.getParentFile().mkdirs();
 	        long originalObjectLength = file.length();
 
-	        ObjectOutputStream oos = null;
 	        try {
-	            oos = new ObjectOutputStream(new FileOutputStream(file));
-	            oos.writeObject(object);
-	            oos.close();
+	            AbstractStoredMap.writeFile(file, content);
 	        } catch (IOException failedWrite) {
 	            this.removeFile(file);
 	            throw failedWrite;
-	        } finally {
-	            if (oos != null) try { oos.close(); } catch (IOException ignore) { ignore.printStackTrace(); }
 	        }
 
 	        // Check to see if we have room for this object.
@@ -299,25 +354,53 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 	        this.unlockFile(file);
 	    }
 	}
-	
+
 	private <C extends Serializable> C deserialize(final Class<? extends C> klasse, final byte[] bytes) {
 		ObjectInputStream ois = null;
 		try {
-			ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		    ByteBuffer image = ByteBuffer.wrap(bytes);
+		    if (bytes.length >= 8 && image.getInt(0) == AbstractStoredMap.BULK_FORMAT_MAGIC) {
+		        int length = image.getInt(4);
+		        image.position(8 + length);
+		        ois = new BulkDataInputStream(new ByteArrayInputStream(bytes, 8, length), image);
+		    } else {
+		        ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		    }
 			return klasse.cast(ois.readObject());
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} catch (ClassNotFoundException e) {
 			throw new RuntimeException(e);
 		} finally {
-		    try { ois.close(); } catch (IOException e) { e.printStackTrace(); }
+		    try { if (ois != null) ois.close(); } catch (IOException e) { e.printStackTrace(); }
 		}
 	}
-	
+
+	/**
+	 * Read from {@code channel}, beginning at the file position {@code position}, until {@code dst} is full or the end of the file is reached.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+	    while (dst.hasRemaining()) {
+	        int nread = channel.read(dst, position);
+	        if (nread < 0)
+	            break;
+	        position += nread;
+	    }
+	}
+
+	/**
+	 * Get the value associated with {@code key}.
+	 * <p>
+	 * The serialized object is read from the file and any bulk data stored with it (see {@link BulkDataOutputStream})
+	 * is read directly from the file's {@link FileChannel}.
+	 * Files written before bulk data was stored out-of-line contain only a serialized object and are read as such.
+	 * </p>
+	 */
 	@SuppressWarnings("unchecked")
 	public V get(K key) throws IOException, ClassCastException, ClassNotFoundException, FileNotFoundException {
 	    File file = keyToFile(this.root, key);
 
+	    FileInputStream in = null;
 	    ObjectInputStream ois = null; 
 
 	    try { this.lockFile(file); } catch (IllegalStateException e) { }
@@ -334,7 +417,20 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 	            }
 	        }
 	        try {
-	            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), this.ioBufferSize));
+	            in = new FileInputStream(file);
+	            FileChannel channel = in.getChannel();
+	            ByteBuffer prefix = ByteBuffer.allocate(8);
+	            AbstractStoredMap.readFully(channel, prefix, 0);
+	            if (!prefix.hasRemaining() && prefix.getInt(0) == AbstractStoredMap.BULK_FORMAT_MAGIC) {
+	                ByteBuffer serializedObject = ByteBuffer.allocate(prefix.getInt(4));
+	                AbstractStoredMap.readFully(channel, serializedObject, 8);
+	                if (serializedObject.hasRemaining()) {
+	                    throw new EOFException(file.toString());
+	                }
+	                ois = new BulkDataInputStream(new ByteArrayInputStream(serializedObject.array()), channel, 8 + serializedObject.capacity());
+	            } else {
+	                ois = new ObjectInputStream(new BufferedInputStream(in, this.ioBufferSize));
+	            }
 	            return (V) ois.readObject();
 	        } catch (IOException io) {
 	            if (this.getCache != null) {
@@ -344,6 +440,7 @@ abstract public class AbstractStoredMap<K,V extends Serializable> implements Ite
 	            throw io;
 	        } finally {
 	            try { if (ois != null) ois.close(); } catch (Exception ignore) { ignore.printStackTrace(); }
+	            try { if (in != null) in.close(); } catch (Exception ignore) { ignore.printStackTrace(); }
 	        }
 	    } finally {
 	        try { this.unlockFile(file); } catch (IllegalStateException e) { e.printStackTrace(); }
@@ -25,24 +25,42 @@ package sunlabs.asdf.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * A table of per-object locks.
+ * <p>
+ * Each locked object is represented by a {@link Locker} in a concurrent map.
+ * Threads contending for a lock wait on that object's {@code Locker} alone,
+ * so locking and unlocking different objects never contend on a common monitor,
+ * and an unlock wakes only the threads waiting for that object.
+ * </p>
+ * <p>
+ * Locks are reentrant: a {@link Thread} that already holds the lock on an object may lock it again,
+ * and must unlock it as many times as it locked it.
+ * </p>
+ * <p>
+ * Recording where each lock was acquired is expensive, so it is done only when the system property
+ * {@code sunlabs.asdf.util.ObjectLock.debug} is {@code true}, or when {@link #setDebug(boolean)} is used.
+ * </p>
  * @param <T> The type of the object to lock.
  */
-public class ObjectLock<T> extends Hashtable<T,ObjectLock.Locker> {
-    private static final long serialVersionUID = 1L;
-    
+public class ObjectLock<T> {
+    /**
+     * The default value for {@link #setDebug(boolean)} for new instances.
+     */
+    public static boolean debugDefault = Boolean.getBoolean("sunlabs.asdf.util.ObjectLock.debug");
+
     /*
      * The intention here is to allow only one reference to an object
      * stored on disk to be "active" at any given time.
      * When the instance is no longer used, it must be unlocked.
-     * The finalize() method will unlock an object when it is no longer
-     * referenced (if the finalize() method is actually called).
-     * A subsequent attempt to create an instance of StaticData refering
-     * to the same name will wait on the busy-list if that name is already
-     * in the busy-list.
+     * A subsequent attempt to lock the same name will wait on that name's
+     * Locker until the holder unlocks it.
      * 
      * I'm not sure, at the moment, what the difference is between this and
      * a java.concurrent.Semaphore.
@@ -53,23 +71,48 @@ public class ObjectLock<T> extends Hashtable<T,ObjectLock.Locker> {
     public static class Locker {
         protected Throwable throwable;
         protected Thread owner;
-        
+        // The number of times the owner has locked the object.  Modified only by the owner.
+        private int holdCount;
+        // Set (under this Locker's monitor) once the lock is released and this Locker removed from the map.
+        private boolean released;
+
         public Locker(Throwable throwable, Thread owner) {
             this.throwable = throwable;
             this.owner = owner;
+            this.holdCount = 1;
+            this.released = false;
         }
-        
+
         public String toString() {
+            if (this.throwable == null) {
+                return String.format("Thread %d (%s) holds %d lock(s); acquisition stack not recorded.%n",
+                        this.owner.getId(), this.owner.getName(), this.holdCount);
+            }
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             this.throwable.printStackTrace(new PrintStream(out));
             return new String(out.toByteArray());
         }
     }
-    
+
+    private final ConcurrentMap<T,Locker> lockers;
+    private volatile boolean debug;
+
     public ObjectLock() {
-        super(110, 0.75F);
+        this.lockers = new ConcurrentHashMap<T,Locker>(128, 0.75F, 16);
+        this.debug = ObjectLock.debugDefault;
     }
-    
+
+    /**
+     * Enable or disable recording the stack of each {@link Thread} acquiring a lock.
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    private Locker newLocker() {
+        return new Locker(this.debug ? new Throwable() : null, Thread.currentThread());
+    }
+
     /**
      * Assert that the current {@link Thread} has a lock on the given object.
      * 
@@ -77,23 +120,20 @@ public class ObjectLock<T> extends Hashtable<T,ObjectLock.Locker> {
      * @throws IllegalStateException if the object is not locked or, if it is locked, but not by the current Thread.
      */
     public Locker assertLock(final T key) throws IllegalStateException {
-        synchronized (this) {
-            Locker locker = this.get(key);
-            if (locker == null || locker.owner.getId() != Thread.currentThread().getId()) {
-                throw new IllegalStateException(String.format("The current Thread has not locked object %s", key));
-            }
-            return locker;
+        Locker locker = this.lockers.get(key);
+        if (locker == null || locker.owner != Thread.currentThread()) {
+            throw new IllegalStateException(String.format("The current Thread has not locked object %s", key));
         }
+        return locker;
     }
-    
+
     /**
      * Lock an object.
      * <p>
      * This must be eventually followed by a {@link #unlock(Object)} on the same object.
      * </p>
-     * @throws IllegalStateException if the current Thread attempts to lock and item that it has already locked.
      */
-    public T lock(final T key) throws IllegalStateException {
+    public T lock(final T key) {
         this.lock(key, false);
         return key;
     }
@@ -103,41 +143,41 @@ public class ObjectLock<T> extends Hashtable<T,ObjectLock.Locker> {
      * <p>
      * This must be eventually followed by a {@link #unlock(Object)} on the same object.
      * </p>
-     * @throws IllegalStateException if the current Thread attempts to lock and item that it has already locked.
      */
-    public void lock(final T key, boolean trace) throws IllegalStateException {
-        Locker locker;
+    public void lock(final T key, boolean trace) {
         int waitTimeMs = 5000;
         boolean reportable = false;
-        
-        long startTime = System.currentTimeMillis();
-        
+        long startTime = 0;
         long elapsedTime = 0;
-        
-        synchronized (this) {
-            long currentThreadId = Thread.currentThread().getId();
-            while ((locker = this.get(key)) != null) {
-                // Throw an IllegalStateException if there is already a lock on this object held by this Thread.
-                // XXX Make this reentrant.
-                if (locker.owner.getId() == currentThreadId) {
-                    ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                    PrintStream p = new PrintStream(bout);
-                    
-                    p.printf("%1$tFZ%1$tT %2$d Attempted to recursively lock %3$s%n", startTime, currentThreadId, key);
-                    new Throwable().printStackTrace(p);
-                    p.printf("%d originally aquired lock%n%s", currentThreadId, locker.toString());
-                    p.close();
-                    System.err.print(bout.toString());
-                    throw new IllegalStateException("Attempted to recursively lock " + key);
+        Thread currentThread = Thread.currentThread();
+
+        while (true) {
+            Locker locker = this.lockers.get(key);
+            if (locker == null) {
+                if (this.lockers.putIfAbsent(key, this.newLocker()) == null) {
+                    break;
                 }
-                // If this is the second time we've waited, complain.
-                if (elapsedTime > waitTimeMs) {
+                continue;
+            }
+            if (locker.owner == currentThread) {
+                locker.holdCount++;
+                return;
+            }
+
+            synchronized (locker) {
+                if (locker.released)
+                    continue;
+
+                if (startTime == 0) {
+                    startTime = System.currentTimeMillis();
+                } else if (elapsedTime > waitTimeMs) {
+                    // If this is the second time we've waited, complain.
                     ByteArrayOutputStream bout = new ByteArrayOutputStream();
                     PrintStream p = new PrintStream(bout);
 
                     p.printf("%1$tF@%1$tT %2$s Contention?        Thread %3$d waiting for %4$dms. %5$d holds lock '%6$s'%n",
-                    		System.currentTimeMillis(), Thread.currentThread().getName(), currentThreadId, elapsedTime, locker.owner.getId(), key);
-                    p.printf("Thread %d blocked:", currentThreadId);
+                            System.currentTimeMillis(), currentThread.getName(), currentThread.getId(), elapsedTime, locker.owner.getId(), key);
+                    p.printf("Thread %d blocked:", currentThread.getId());
                     new Throwable().printStackTrace(p);
                     p.printf("Thread %d originally acquired lock:%n%s",  locker.owner.getId(), locker.toString());
                     p.printf("Thread %d is now:%n",  locker.owner.getId());
@@ -146,55 +186,46 @@ public class ObjectLock<T> extends Hashtable<T,ObjectLock.Locker> {
                     System.err.print(bout.toString());
                     reportable = true;
                 }
-                
-                while (true) {
-                    try {
-                        this.wait(waitTimeMs);
-                        break;
-                    } catch (InterruptedException e) {
-                        /**/
-                    }
+
+                try {
+                    locker.wait(waitTimeMs);
+                } catch (InterruptedException e) {
+                    /**/
                 }
                 elapsedTime = System.currentTimeMillis() - startTime;
             }
+        }
 
-            if (reportable) {
-            	System.err.printf("%1$tFZ%1$tT Contention broken. Thread %2$d waited for  %3$dms for lock '%4$s'%n",
-            			System.currentTimeMillis(), currentThreadId, elapsedTime, key);
-            }
-
-            this.put(key, new Locker(new Throwable(), Thread.currentThread()));
+        if (reportable) {
+            System.err.printf("%1$tFZ%1$tT Contention broken. Thread %2$d waited for  %3$dms for lock '%4$s'%n",
+                    System.currentTimeMillis(), currentThread.getId(), elapsedTime, key);
         }
     }
-    
+
     /**
      * Try to obtain the lock on the given object.
+     * <p>
+     * If the current Thread already holds the lock, it is locked again (and must be unlocked again).
+     * </p>
      *
      * @param key
      * @return true if the lock was successfully acquired, false if not.
      */
-    public boolean trylock(final T key) {        
-        long currentThreadId = Thread.currentThread().getId();
-        synchronized (this) {
-            Locker locker = this.get(key);
-            
-            if (locker == null) {
-                this.put(key, new Locker(new Throwable(), Thread.currentThread()));
-                return true;
-            }
-            if (locker.owner.getId() == currentThreadId) {
-                return true;
-            }
+    public boolean trylock(final T key) {
+        Locker locker = this.lockers.get(key);
+        if (locker == null) {
+            return this.lockers.putIfAbsent(key, this.newLocker()) == null;
+        }
+        if (locker.owner == Thread.currentThread()) {
+            locker.holdCount++;
+            return true;
         }
         return false;
     }
-    
+
     /**
      * Unlock a previously locked object identified by {@code key}.
-     * <p>
-     * Return true if the current Thread had the lock.
-     * Return false if this object was not locked or if this Thread did not hold the lock. 
-     * </p>
+     *
      * @param key
      * @throws IllegalStateException if the object identified by {@code key} is not locked by the current Thread.
      */
@@ -204,81 +235,108 @@ public class ObjectLock<T> extends Hashtable<T,ObjectLock.Locker> {
 
     /**
      * Unlock the object identified by {@code key}.
-
+     * <p>
+     * The lock is released when the current Thread has unlocked it as many times as it locked it.
+     * </p>
      * @param key
      * @param trace
      * @return {@code true} if successfully unlocked.
      * @throws IllegalStateException if the object identified by {@code key} is not locked by the current Thread.
      */
     public boolean unlock(final T key, boolean trace) throws IllegalStateException {
-    	synchronized (this) {
-    		this.assertLock(key);
+        Locker locker = this.assertLock(key);
+
+        if (--locker.holdCount > 0)
+            return true;
 
-    		if (this.remove(key) == null) {
-    			System.out.printf("Unlocking an non-existent lock: '%s'%n", key);
-    		}
-    		this.notify();
-    	}
-    	return true;
+        synchronized (locker) {
+            locker.released = true;
+            this.lockers.remove(key, locker);
+            locker.notifyAll();
+        }
+        return true;
     }
-    
+
     public String toString() {
         StringBuilder s = new StringBuilder("Locks:\n");
-        for (T key : this.keySet()) {
-            s.append("  '").append(key).append("' ").append(this.get(key).toString()).append("\n");
+        for (Map.Entry<T,Locker> entry : this.lockers.entrySet()) {
+            s.append("  '").append(entry.getKey()).append("' ").append(entry.getValue().toString()).append("\n");
         }
         return s.toString();
     }
-    
+
     public void printStackTrace(PrintStream p, Thread thread) {
-    	Map<Thread,StackTraceElement[]> map = Thread.getAllStackTraces();
-    	if (thread.isAlive()) {
-    		StackTraceElement[] trace = map.get(thread);
-    		if (trace != null) {
-    			for (StackTraceElement e : trace) {
-    				p.print("        at ");
-    				p.println(e.toString());
-    			}
-    		} else {
-    			p.printf("Thread %s has no stack backtrace%n", thread.getId());
-    		}
-    	} else {
-    		p.printf("Thread %s is not alive%n", thread.getId());        		
-    	}
-    }
-    
-    public static class Task extends Thread {
-    	private ObjectLock<String> locks;
-    	
-    	public Task(ObjectLock<String> locks) {
-    		super();
-    		this.locks = locks;
-    	}
-    	
-    	public void run() {
-    		System.out.printf("%s run%n", this.getName());
-    		long startTime = System.currentTimeMillis();
-    		
-    		this.locks.lock("lock");
-    		System.out.printf("%s got lock after %sms.%n", this.getName(), System.currentTimeMillis() - startTime);
-    		this.locks.unlock("lock");
-    	}
+        if (thread.isAlive()) {
+            StackTraceElement[] trace = thread.getStackTrace();
+            if (trace != null && trace.length > 0) {
+                for (StackTraceElement e : trace) {
+                    p.print("        at ");
+                    p.println(e.toString());
+                }
+            } else {
+                p.printf("Thread %s has no stack backtrace%n", thread.getId());
+            }
+        } else {
+            p.printf("Thread %s is not alive%n", thread.getId());
+        }
     }
-    
+
+    /**
+     * Contention benchmark.
+     * <p>
+     * Usage: {@code ObjectLock [threads [keys [seconds]]]}
+     * </p>
+     * <p>
+     * Each of {@code threads} threads repeatedly locks and unlocks a key chosen from {@code keys} distinct keys,
+     * and the aggregate lock/unlock rate is reported.
+     * A single key measures the cost of contention on one object,
+     * many keys measure the cost of unrelated locks interfering with each other.
+     * </p>
+     */
     public static void main(String[] args) throws Exception {
-    	ObjectLock<String> locks = new ObjectLock<String>();
+        final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        final int nKeys = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        final long durationMs = (args.length > 2 ? Long.parseLong(args[2]) : 5) * 1000;
+
+        final ObjectLock<Integer> locks = new ObjectLock<Integer>();
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long count = 0;
+                    int k = seed;
+                    while ((count & 0x3ff) != 0 || System.currentTimeMillis() < deadline[0]) {
+                        k = (k * 1103515245 + 12345) & Integer.MAX_VALUE;
+                        Integer key = Integer.valueOf(k % nKeys);
+                        locks.lock(key);
+                        locks.unlock(key);
+                        count++;
+                    }
+                    operations.addAndGet(count);
+                }
+            };
+            threads[t].start();
+        }
+
+        deadline[0] = System.currentTimeMillis() + durationMs;
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsedNs = System.nanoTime() - startTime;
 
-    	System.out.printf("Main Thread %d%n", Thread.currentThread().getId());
-    	
-		locks.lock("lock");
-    	for (int i = 0; i < 100; i++) {
-    		Task t = new Task(locks);
-    		t.start();
-    	}
-    	
-    	Thread.sleep(2000);
-		locks.unlock("lock");
-    	
-    	System.out.printf("Main exit%n");
+        System.out.printf("%d threads, %d keys, debug=%b: %d lock/unlock pairs in %dms, %.0f/s%n",
+                nThreads, nKeys, locks.debug, operations.get(), elapsedNs / 1000000, operations.get() / (elapsedNs / 1e9));
     }
 }
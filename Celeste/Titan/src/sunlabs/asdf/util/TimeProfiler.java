@@ -71,6 +71,13 @@ public class TimeProfiler {
         }
     }
 
+    /**
+     * Return {@code true} if profiling is enabled, by setting the system property {@code enableProfiling} to {@code true}.
+     */
+    public static boolean isEnabled() {
+        return TimeProfiler.enabled;
+    }
+
     public TimeProfiler() {
         this(TimeProfiler.enabled ?
              new Throwable().getStackTrace()[1].toString() : "disabled");
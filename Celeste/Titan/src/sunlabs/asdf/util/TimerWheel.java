@@ -0,0 +1,226 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timer wheel.
+ * <p>
+ * Items are scheduled to expire at an absolute time, expressed in whole ticks of whatever unit the caller uses
+ * (for example, seconds since the epoch).
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots each.
+ * Level 0 holds the items expiring within the next {@value #SLOTS} ticks, one slot per tick,
+ * and each higher level covers {@value #SLOTS} times the span of the level below it.
+ * As time advances, the slots of a higher level are cascaded down into the lower levels
+ * so that an item is examined only a small, fixed number of times before it expires.
+ * Items beyond the span of the whole wheel are held in an overflow list that is reconsidered each time the top level wraps.
+ * </p>
+ * <p>
+ * Consequently {@link #advance(long)} costs time proportional to the number of ticks elapsed plus the number of items expired,
+ * rather than to the number of items scheduled.
+ * </p>
+ * <p>
+ * Items cannot be cancelled.
+ * A caller that reschedules an item simply schedules it again and ignores the stale expiration when it is returned by {@link #advance(long)}.
+ * </p>
+ *
+ * @param <E> the type of the scheduled items.
+ */
+public class TimerWheel<E> {
+    public final static int SLOT_BITS = 6;
+    public final static int SLOTS = 1 << SLOT_BITS;
+    public final static int LEVELS = 4;
+    private final static int SLOT_MASK = SLOTS - 1;
+    private final static long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private static class Timer<E> {
+        final E item;
+        final long expireTime;
+
+        Timer(E item, long expireTime) {
+            this.item = item;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private final List<Timer<E>>[][] wheel;
+    private List<Timer<E>> overflow;
+    private List<Timer<E>> due;
+
+    /** The time of the most recently processed tick. */
+    private long currentTime;
+    private long size;
+
+    /**
+     * Create a new timer wheel whose current time is {@code now}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long now) {
+        this.wheel = new List[LEVELS][SLOTS];
+        this.overflow = new ArrayList<Timer<E>>();
+        this.due = new ArrayList<Timer<E>>();
+        this.currentTime = now;
+        this.size = 0;
+    }
+
+    /**
+     * Schedule {@code item} to be returned by the first call to {@link #advance(long)} that advances the wheel to, or past, {@code expireTime}.
+     */
+    public synchronized void schedule(E item, long expireTime) {
+        Timer<E> timer = new Timer<E>(item, expireTime);
+        if (expireTime <= this.currentTime) {
+            this.due.add(timer);
+        } else {
+            this.insert(timer);
+        }
+        this.size++;
+    }
+
+    /**
+     * Put the given timer into the slot that will be processed when its expiration time is reached.
+     * The expiration time must not be earlier than the current time.
+     */
+    private void insert(Timer<E> timer) {
+        long delta = timer.expireTime - this.currentTime;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (SLOT_BITS * (level + 1)))) {
+                int slot = (int) ((timer.expireTime >>> (SLOT_BITS * level)) & SLOT_MASK);
+                List<Timer<E>> list = this.wheel[level][slot];
+                if (list == null) {
+                    list = new ArrayList<Timer<E>>();
+                    this.wheel[level][slot] = list;
+                }
+                list.add(timer);
+                return;
+            }
+        }
+        this.overflow.add(timer);
+    }
+
+    /**
+     * Advance the wheel to the time {@code now} and return the items whose expiration time is less than or equal to {@code now}.
+     */
+    public synchronized List<E> advance(long now) {
+        List<Timer<E>> expired = this.due;
+        this.due = new ArrayList<Timer<E>>();
+
+        if (now - this.currentTime >= SPAN) {
+            // The wheel has fallen so far behind that stepping through every tick is pointless.
+            // Gather everything and start over at the new time.
+            List<Timer<E>> all = this.drain();
+            this.currentTime = now;
+            for (Timer<E> timer : all) {
+                if (timer.expireTime <= now) {
+                    expired.add(timer);
+                } else {
+                    this.insert(timer);
+                }
+            }
+        } else {
+            while (this.currentTime < now) {
+                this.currentTime++;
+                this.cascade();
+                int slot = (int) (this.currentTime & SLOT_MASK);
+                List<Timer<E>> list = this.wheel[0][slot];
+                if (list != null) {
+                    this.wheel[0][slot] = null;
+                    expired.addAll(list);
+                }
+            }
+        }
+
+        this.size -= expired.size();
+        List<E> result = new ArrayList<E>(expired.size());
+        for (Timer<E> timer : expired) {
+            result.add(timer.item);
+        }
+        return result;
+    }
+
+    /**
+     * Move the timers in the higher level slots that have come due into the lower levels.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((this.currentTime & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            int slot = (int) ((this.currentTime >>> (SLOT_BITS * level)) & SLOT_MASK);
+            List<Timer<E>> list = this.wheel[level][slot];
+            if (list != null) {
+                this.wheel[level][slot] = null;
+                for (Timer<E> timer : list) {
+                    this.insert(timer);
+                }
+            }
+        }
+        if ((this.currentTime & (SPAN - 1)) == 0 && !this.overflow.isEmpty()) {
+            List<Timer<E>> list = this.overflow;
+            this.overflow = new ArrayList<Timer<E>>();
+            for (Timer<E> timer : list) {
+                this.insert(timer);
+            }
+        }
+    }
+
+    private List<Timer<E>> drain() {
+        List<Timer<E>> result = new ArrayList<Timer<E>>();
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (this.wheel[level][slot] != null) {
+                    result.addAll(this.wheel[level][slot]);
+                    this.wheel[level][slot] = null;
+                }
+            }
+        }
+        result.addAll(this.overflow);
+        this.overflow = new ArrayList<Timer<E>>();
+        return result;
+    }
+
+    /**
+     * Remove all of the scheduled items.
+     */
+    public synchronized void clear() {
+        this.drain();
+        this.due = new ArrayList<Timer<E>>();
+        this.size = 0;
+    }
+
+    /**
+     * Get the number of items scheduled, including stale items that have been rescheduled.
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+    /**
+     * Get the time of the most recent call to {@link #advance(long)}.
+     */
+    public synchronized long getCurrentTime() {
+        return this.currentTime;
+    }
+}
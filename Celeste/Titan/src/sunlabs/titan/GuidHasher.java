@@ -0,0 +1,182 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import sunlabs.titan.api.TitanGuid;
+
+/**
+ * Compute a {@link TitanGuid} from a sequence of values without creating an intermediate {@code TitanGuid} for each value.
+ * <p>
+ * The result is identical to that of the corresponding chain of {@code add} invocations,
+ * so that a {@code GuidHasher} may replace such a chain without changing the identifiers it computes:
+ * </p>
+ * <pre>
+ * new GuidHasher().update(a).update(b).update(c).getGuid()
+ * new TitanGuidImpl(a).add(b).add(c)
+ * new GuidHasher(g).update(b).getGuid()
+ * g.add(b)
+ * </pre>
+ * <p>
+ * Each update hashes the digest so far followed by the new value.
+ * The {@link MessageDigest} is a per-thread instance, reused, rather than obtained from {@link MessageDigest#getInstance(String)} each time.
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class GuidHasher {
+    private final static ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(TitanGuidImpl.hashFunction);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    /**
+     * Get this thread's {@link MessageDigest} for {@link TitanGuidImpl#hashFunction}, reset.
+     * The caller must finish with it before anything else on the same thread may use it.
+     */
+    static MessageDigest getDigest() {
+        MessageDigest digest = GuidHasher.digests.get();
+        digest.reset();
+        return digest;
+    }
+
+    private final byte[] state;
+    private final byte[] scratch;
+    private boolean started;
+
+    /**
+     * Create a {@code GuidHasher} whose first update is hashed alone, as {@link TitanGuidImpl#TitanGuidImpl(byte[])} does.
+     */
+    public GuidHasher() {
+        this.state = new byte[TitanGuidImpl.n_digits / 2];
+        this.scratch = new byte[TitanGuidImpl.n_digits / 2];
+        this.started = false;
+    }
+
+    /**
+     * Create a {@code GuidHasher} whose updates are combined with {@code guid}, as {@link TitanGuid#add(byte[])} does.
+     */
+    public GuidHasher(TitanGuid guid) {
+        this();
+        if (guid instanceof TitanGuidImpl) {
+            ((TitanGuidImpl) guid).getBytes(this.state);
+        } else {
+            System.arraycopy(guid.getBytes(), 0, this.state, 0, this.state.length);
+        }
+        this.started = true;
+    }
+
+    private void finish(MessageDigest digest) {
+        try {
+            digest.digest(this.state, 0, this.state.length);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+        this.started = true;
+    }
+
+    public GuidHasher update(byte[] data, int offset, int length) {
+        MessageDigest digest = GuidHasher.getDigest();
+        if (this.started) {
+            digest.update(this.state);
+        }
+        digest.update(data, offset, length);
+        this.finish(digest);
+        return this;
+    }
+
+    public GuidHasher update(byte[] data) {
+        return (data == null) ? this : this.update(data, 0, data.length);
+    }
+
+    /**
+     * Update with the remaining bytes of {@code data}, leaving its position unchanged.
+     */
+    public GuidHasher update(ByteBuffer data) {
+        if (data == null) {
+            return this;
+        }
+        MessageDigest digest = GuidHasher.getDigest();
+        if (this.started) {
+            digest.update(this.state);
+        }
+        int position = data.position();
+        digest.update(data);
+        data.position(position);
+        this.finish(digest);
+        return this;
+    }
+
+    /**
+     * Update with the eight bytes, most significant first, of {@code value}, as {@link TitanGuid#add(long)} does.
+     */
+    public GuidHasher update(long value) {
+        for (int i = 0; i < 8; i++) {
+            this.scratch[i] = (byte) (value >>> (56 - 8 * i));
+        }
+        return this.update(this.scratch, 0, 8);
+    }
+
+    /**
+     * Update with the bytes of {@code string}, as {@link TitanGuid#add(String)} does.
+     */
+    public GuidHasher update(String string) {
+        return (string == null) ? this : this.update(string.getBytes());
+    }
+
+    /**
+     * Update with the bytes of {@code guid}, as {@link TitanGuid#add(TitanGuid)} does.
+     */
+    public GuidHasher update(TitanGuid guid) {
+        if (guid == null) {
+            return this;
+        }
+        if (guid instanceof TitanGuidImpl) {
+            ((TitanGuidImpl) guid).getBytes(this.scratch);
+            return this.update(this.scratch, 0, this.scratch.length);
+        }
+        return this.update(guid.getBytes());
+    }
+
+    /**
+     * Get the {@link TitanGuid} of the values so far.
+     *
+     * @throws IllegalStateException if there have been no values.
+     */
+    public TitanGuid getGuid() {
+        if (!this.started) {
+            throw new IllegalStateException("no values");
+        }
+        return new TitanGuidImpl(this.state.clone(), "");
+    }
+}
@@ -24,16 +24,14 @@
 package sunlabs.titan;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SecureRandom;
-import java.util.Arrays;
 import java.util.Comparator;
 
-import sunlabs.asdf.util.TimeProfiler;
 import sunlabs.titan.api.TitanGuid;
 
 /**
@@ -71,6 +69,10 @@ public class TitanGuidImpl implements TitanGuid {
     static {
         try {
             TitanGuidImpl.n_digits = (short) (MessageDigest.getInstance(TitanGuidImpl.hashFunction).digest().length * 2);
+            if (TitanGuidImpl.n_digits != 64) {
+                // The representation below holds exactly 256 bits.
+                throw new IllegalStateException(TitanGuidImpl.hashFunction + " does not produce 256 bit values");
+            }
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
@@ -93,8 +95,18 @@ public class TitanGuidImpl implements TitanGuid {
      */
     public final static TitanGuid ZERO = new TitanGuidImpl(new byte[TitanGuidImpl.n_digits / 2], "");
 
+    private final static SecureRandom random = new SecureRandom();
 
-    protected byte[] asBytes;
+    //
+    // The identifier is held as four words, most significant first, so that
+    // comparison and prefix computations take a word, rather than a byte or
+    // digit, at a time.  The serialized form is still the array of bytes.
+    //
+    private final static int WORDS = 4;
+    private transient long w0;
+    private transient long w1;
+    private transient long w2;
+    private transient long w3;
 
     /**
      * Return true if the given String is suitable for a TitanGuid.
@@ -140,7 +152,7 @@ public class TitanGuidImpl implements TitanGuid {
         if (bytes.length != TitanGuidImpl.n_digits / 2) {
             throw new IllegalArgumentException("byte array must be " + (TitanGuidImpl.n_digits / 2) + " elements in length");
         }
-        this.asBytes = bytes;
+        this.setBytes(bytes);
     }
 
     /**
@@ -150,8 +162,9 @@ public class TitanGuidImpl implements TitanGuid {
      * </p>
      */
     public TitanGuidImpl() {
-        this.asBytes = new byte[TitanGuidImpl.n_digits / 2];
-        new SecureRandom().nextBytes(this.asBytes);
+        byte[] bytes = new byte[TitanGuidImpl.n_digits / 2];
+        TitanGuidImpl.random.nextBytes(bytes);
+        this.setBytes(bytes);
     }
 
     /**
@@ -159,8 +172,15 @@ public class TitanGuidImpl implements TitanGuid {
      * @param objectId the object-id to duplicate
      */
     public TitanGuidImpl(TitanGuid objectId) {
-        this.asBytes = new byte[TitanGuidImpl.n_digits / 2];
-        System.arraycopy(objectId.getBytes(), 0, this.asBytes, 0, this.asBytes.length);
+        if (objectId instanceof TitanGuidImpl) {
+            TitanGuidImpl o = (TitanGuidImpl) objectId;
+            this.w0 = o.w0;
+            this.w1 = o.w1;
+            this.w2 = o.w2;
+            this.w3 = o.w3;
+        } else {
+            this.setBytes(objectId.getBytes());
+        }
     }
 
     /**
@@ -170,18 +190,7 @@ public class TitanGuidImpl implements TitanGuid {
      * </p>
      */
     public TitanGuidImpl(String hexValue, int ignore) throws NumberFormatException {
-        if (hexValue.length() == TitanGuidImpl.n_digits) {
-            this.asBytes = new byte[TitanGuidImpl.n_digits / 2];
-            for (int j = 0; j < this.asBytes.length; j++) {
-                int i = j * 2;
-                byte hi = (byte) ((TitanGuidImpl.hexArray.indexOf(hexValue.charAt(i)) << 4) & 0xF0);
-                byte lo = (byte) (TitanGuidImpl.hexArray.indexOf(hexValue.charAt(i + 1)) & 0x0F);
-                this.asBytes[j] = (byte) (hi | lo);
-            }
-            return;
-        }
-
-        throw new NumberFormatException("Improperly formatted object-id: '" + hexValue + "'");
+        this(hexValue);
     }
 
     private static byte[] table =
@@ -193,7 +202,7 @@ public class TitanGuidImpl implements TitanGuid {
       -1, -1, -1, -1, -1, -1, -1, -1,  -1, -1, -1, -1, -1, -1, -1, -1, /*  80-95 */
       -1, 10, 11, 12, 13, 14, 15, -1,  -1, -1, -1, -1, -1, -1, -1, -1, /*  96-111 */
       -1, -1, -1, -1, -1, -1, -1, -1,  -1, -1, -1, -1, -1, -1, -1, -1, /* 112-127 */ };
-    
+
     /**
      * Construct a new TitanGuidImpl instance from a String representation of the identifier in hex.
      * <p>
@@ -201,20 +210,21 @@ public class TitanGuidImpl implements TitanGuid {
      * </p>
      */
     public TitanGuidImpl(String hexValue) throws NumberFormatException {
-    	if (hexValue.length() == TitanGuidImpl.n_digits) {
-    		this.asBytes = new byte[TitanGuidImpl.n_digits / 2];
-    		byte[] bytes = hexValue.getBytes();
-
-    		for (int j = 0; j < this.asBytes.length; j++) {
-    			int i = j * 2;
-    			byte hi = (byte) ((TitanGuidImpl.table[bytes[i]] << 4) & 0xF0);
-    			byte lo = (byte) (TitanGuidImpl.table[bytes[i + 1]] & 0x0F);
-    			this.asBytes[j] = (byte) (hi | lo);
-    		}
-    		return;
-    	}
-
-    	throw new NumberFormatException("Improperly formatted object-id: '" + hexValue + "'");
+        if (hexValue.length() != TitanGuidImpl.n_digits) {
+            throw new NumberFormatException("Improperly formatted object-id: '" + hexValue + "'");
+        }
+        long[] words = new long[TitanGuidImpl.WORDS];
+        for (int i = 0; i < TitanGuidImpl.n_digits; i++) {
+            char c = hexValue.charAt(i);
+            if (c >= TitanGuidImpl.table.length) {
+                throw new NumberFormatException("Improperly formatted object-id: '" + hexValue + "'");
+            }
+            words[i >>> 4] = (words[i >>> 4] << 4) | (TitanGuidImpl.table[c] & 0xF);
+        }
+        this.w0 = words[0];
+        this.w1 = words[1];
+        this.w2 = words[2];
+        this.w3 = words[3];
     }
 
     /**
@@ -223,7 +233,9 @@ public class TitanGuidImpl implements TitanGuid {
      * The byte array contains data to hash to produce the identifier.
      */
     public TitanGuidImpl(byte[] data) {
-        this(ByteBuffer.wrap(data));
+        MessageDigest digest = GuidHasher.getDigest();
+        digest.update(data);
+        this.setBytes(digest.digest());
     }
 
     /**
@@ -233,13 +245,9 @@ public class TitanGuidImpl implements TitanGuid {
      * </p>
      */
     public TitanGuidImpl(ByteBuffer buffer) {
-        try {
-            MessageDigest hash = MessageDigest.getInstance(TitanGuidImpl.hashFunction);
-             hash.update(buffer.duplicate());
-            this.asBytes = hash.digest();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        MessageDigest digest = GuidHasher.getDigest();
+        digest.update(buffer.duplicate());
+        this.setBytes(digest.digest());
     }
 
     /**
@@ -249,17 +257,48 @@ public class TitanGuidImpl implements TitanGuid {
         this(key.getEncoded());
     }
 
+    private static long getWord(byte[] bytes, int offset) {
+        long word = 0;
+        for (int i = 0; i < 8; i++) {
+            word = (word << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return word;
+    }
+
+    private static void putWord(byte[] bytes, int offset, long word) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (word >>> (56 - 8 * i));
+        }
+    }
+
+    private void setBytes(byte[] bytes) {
+        this.w0 = TitanGuidImpl.getWord(bytes, 0);
+        this.w1 = TitanGuidImpl.getWord(bytes, 8);
+        this.w2 = TitanGuidImpl.getWord(bytes, 16);
+        this.w3 = TitanGuidImpl.getWord(bytes, 24);
+    }
+
+    private long word(int i) {
+        switch (i) {
+        case 0: return this.w0;
+        case 1: return this.w1;
+        case 2: return this.w2;
+        default: return this.w3;
+        }
+    }
+
     /**
      * Create a new {@code TitanGuid} by combining more data to this {@code TitanGuid}.
      *
      * @param data The data to combine.
      */
     public TitanGuid add(byte[] data) {
-        return (data == null) ? this : this.add(ByteBuffer.wrap(data));
+        return (data == null) ? this : new GuidHasher(this).update(data).getGuid();
     }
-    
+
     /**
      * Create a new {@code TitanGuid} by combining more data to this {@code TitanGuid}.
+     * The remaining bytes of {@code data} are consumed.
      *
      * @param data The data to combine.
      */
@@ -267,14 +306,9 @@ public class TitanGuidImpl implements TitanGuid {
         if (data == null)
             return this;
 
-        try {
-            MessageDigest hash = MessageDigest.getInstance(TitanGuidImpl.hashFunction);
-            hash.update(this.asBytes);
-            hash.update(data);
-            return new TitanGuidImpl(hash.digest(), null);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        TitanGuid result = new GuidHasher(this).update(data).getGuid();
+        data.position(data.limit());
+        return result;
     }
 
     /**
@@ -282,9 +316,9 @@ public class TitanGuidImpl implements TitanGuid {
      * If the given {@code TitanGuid} is null, this instance is returned (a new instance is not created).
      */
     public TitanGuid add(TitanGuid other) {
-        return (other == null) ? this : this.add(other.getBytes());
+        return (other == null) ? this : new GuidHasher(this).update(other).getGuid();
     }
-    
+
     /**
      * Construct a new {@code TitanGuid} by combining the bytes from the given String with this instance.
      * If the given String is null, this instance is returned (a new instance is not created).
@@ -294,73 +328,56 @@ public class TitanGuidImpl implements TitanGuid {
     }
 
     public TitanGuid add(long v) {
-        byte[] buffer = new byte[8];
-        
-        buffer[0] = (byte)(v >>> 56);
-        buffer[1] = (byte)(v >>> 48);
-        buffer[2] = (byte)(v >>> 40);
-        buffer[3] = (byte)(v >>> 32);
-        buffer[4] = (byte)(v >>> 24);
-        buffer[5] = (byte)(v >>> 16);
-        buffer[6] = (byte)(v >>>  8);
-        buffer[7] = (byte)(v >>>  0);
-        return this.add(buffer);
+        return new GuidHasher(this).update(v).getGuid();
     }
 
     /**
      * Get the bytes that comprise this object identifier as an array.
+     * The array is a copy, and may be modified by the caller.
      */
     public byte[] getBytes() {
-        return this.asBytes;
+        byte[] bytes = new byte[TitanGuidImpl.n_digits / 2];
+        this.getBytes(bytes);
+        return bytes;
     }
 
     /**
-     * A String representation of the identifier.
+     * Copy the bytes that comprise this object identifier into {@code bytes}.
      */
-//    @Override
-    public String toString2() {
-        StringBuilder s = new StringBuilder();
-		for (int i = 0; i < this.asBytes.length; i++) {
-		    s.append(hexArray.charAt((this.asBytes[i] >> 4) & 0xF));
-		    s.append(hexArray.charAt((this.asBytes[i]     ) & 0xF));
-		}
-		return s.toString();
+    void getBytes(byte[] bytes) {
+        TitanGuidImpl.putWord(bytes, 0, this.w0);
+        TitanGuidImpl.putWord(bytes, 8, this.w1);
+        TitanGuidImpl.putWord(bytes, 16, this.w2);
+        TitanGuidImpl.putWord(bytes, 24, this.w3);
     }
-    
-    private static String[] table2 = {
-    		"00", "01", "02", "03", "04", "05", "06", "07", "08", "09", "0A", "0B", "0C", "0D", "0E", "0F", 
-    		"10", "11", "12", "13", "14", "15", "16", "17", "18", "19", "1A", "1B", "1C", "1D", "1E", "1F", 
-    		"20", "21", "22", "23", "24", "25", "26", "27", "28", "29", "2A", "2B", "2C", "2D", "2E", "2F", 
-    		"30", "31", "32", "33", "34", "35", "36", "37", "38", "39", "3A", "3B", "3C", "3D", "3E", "3F", 
-    		"40", "41", "42", "43", "44", "45", "46", "47", "48", "49", "4A", "4B", "4C", "4D", "4E", "4F", 
-    		"50", "51", "52", "53", "54", "55", "56", "57", "58", "59", "5A", "5B", "5C", "5D", "5E", "5F", 
-    		"60", "61", "62", "63", "64", "65", "66", "67", "68", "69", "6A", "6B", "6C", "6D", "6E", "6F", 
-    		"70", "71", "72", "73", "74", "75", "76", "77", "78", "79", "7A", "7B", "7C", "7D", "7E", "7F", 
-    		"80", "81", "82", "83", "84", "85", "86", "87", "88", "89", "8A", "8B", "8C", "8D", "8E", "8F", 
-    		"90", "91", "92", "93", "94", "95", "96", "97", "98", "99", "9A", "9B", "9C", "9D", "9E", "9F", 
-    		"A0", "A1", "A2", "A3", "A4", "A5", "A6", "A7", "A8", "A9", "AA", "AB", "AC", "AD", "AE", "AF", 
-    		"B0", "B1", "B2", "B3", "B4", "B5", "B6", "B7", "B8", "B9", "BA", "BB", "BC", "BD", "BE", "BF", 
-    		"C0", "C1", "C2", "C3", "C4", "C5", "C6", "C7", "C8", "C9", "CA", "CB", "CC", "CD", "CE", "CF", 
-    		"D0", "D1", "D2", "D3", "D4", "D5", "D6", "D7", "D8", "D9", "DA", "DB", "DC", "DD", "DE", "DF", 
-    		"E0", "E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E9", "EA", "EB", "EC", "ED", "EE", "EF", 
-    		"F0", "F1", "F2", "F3", "F4", "F5", "F6", "F7", "F8", "F9", "FA", "FB", "FC", "FD", "FE", "FF", 
-    };
+
+    private final static char[] hexDigits = TitanGuidImpl.hexArray.toCharArray();
+
+    /**
+     * A String representation of the identifier.
+     */
     @Override
     public String toString() {
-        StringBuilder s = new StringBuilder();
-		for (int i = 0; i < this.asBytes.length; i++) {
-			s.append(TitanGuidImpl.table2[this.asBytes[i] & 0xFF]);
-		}
-		return s.toString();
+        char[] s = new char[TitanGuidImpl.n_digits];
+        for (int i = 0; i < TitanGuidImpl.WORDS; i++) {
+            long word = this.word(i);
+            for (int d = 0; d < 16; d++) {
+                s[i * 16 + d] = TitanGuidImpl.hexDigits[(int) (word >>> (60 - 4 * d)) & 0xF];
+            }
+        }
+        return new String(s);
+    }
+
+    private static TitanGuidImpl asImpl(TitanGuid other) {
+        return (other instanceof TitanGuidImpl) ? (TitanGuidImpl) other : new TitanGuidImpl(other);
     }
 
     public int sharedPrefix(TitanGuid other) {
-        byte[] otherBytes = other.getBytes();
-        for (int i = 0; i < TitanGuidImpl.n_digits / 2; i++) {
-            if (this.asBytes[i] != otherBytes[i]) {
-                if ((this.asBytes[i] >> 4) == (otherBytes[i] >> 4))
-                    return i * 2 + 1;
-                return i * 2;
+        TitanGuidImpl o = TitanGuidImpl.asImpl(other);
+        for (int i = 0; i < TitanGuidImpl.WORDS; i++) {
+            long difference = this.word(i) ^ o.word(i);
+            if (difference != 0) {
+                return i * 16 + Long.numberOfLeadingZeros(difference) / 4;
             }
         }
 
@@ -369,11 +386,14 @@ public class TitanGuidImpl implements TitanGuid {
 
     /**
      * Returns a hash code for this instance.
+     * <p>
+     * Identifiers are the output of a cryptographic hash function, so the leading word is as good a hash code as any and costs nothing to compute.
+     * </p>
      * @see java.lang.Object#hashCode()
      */
     @Override
     public int hashCode() {
-        return Arrays.hashCode(this.asBytes);
+        return (int) (this.w0 ^ (this.w0 >>> 32));
     }
 
     /**
@@ -389,30 +409,19 @@ public class TitanGuidImpl implements TitanGuid {
 
         if (other instanceof TitanGuidImpl) {
             TitanGuidImpl o = (TitanGuidImpl) other;
-            if (this.asBytes.length != o.asBytes.length) {
-                return false;
-            }
-
-            for (int i = 0; i < this.asBytes.length; i++) {
-                if (this.asBytes[i] != o.asBytes[i]) {
-                    return false;
-                }
-            }
-            return true;
+            return this.w0 == o.w0 && this.w1 == o.w1 && this.w2 == o.w2 && this.w3 == o.w3;
         }
         return false;
     }
 
     public int compareTo(final TitanGuid other) {
-        final byte[] otherBytes = other.getBytes();
-
-        for (int i = 0; i < this.asBytes.length; i++) {
-            int b1 = this.asBytes[i] & 0xFF;
-            int b2 = otherBytes[i] & 0xFF;
-            if (b1 != b2) {
-                int diff = b1 - b2;
-                int result = diff < 0 ? -1 : (diff == 0) ? 0 : 1;
-                return result;
+        TitanGuidImpl o = TitanGuidImpl.asImpl(other);
+        for (int i = 0; i < TitanGuidImpl.WORDS; i++) {
+            // Compare as unsigned values.
+            long a = this.word(i) ^ Long.MIN_VALUE;
+            long b = o.word(i) ^ Long.MIN_VALUE;
+            if (a != b) {
+                return (a < b) ? -1 : 1;
             }
         }
 
@@ -428,39 +437,36 @@ public class TitanGuidImpl implements TitanGuid {
      * @param other
      */
     public int distance(final TitanGuid other) {
-//        final byte[] otherBytes = other.getBytes();
-
-//        System.out.printf("comparer %s %s ", this.toString(), other.toString());
-
-        for (int i = 0; i < TitanGuidImpl.n_digits; i++) {
-            int b1 = this.digit(i);
-            int b2 = other.digit(i);
-            if (b1 != b2) {
-                int diff = b2 - b1;
-                if (diff < 0)
-                    diff += 16;
-//                System.out.printf("%d_%d%n", (TitanGuidImpl.n_digits-i), diff);
-                return (TitanGuidImpl.n_digits-i) * 100 + diff;
-            }
+        TitanGuidImpl o = TitanGuidImpl.asImpl(other);
+        int i = this.sharedPrefix(o);
+        if (i == TitanGuidImpl.n_digits) {
+            return 0;
         }
-
-//        System.out.printf("%d_%d%n", 0,0);
-        return 0;
+        int diff = (o.digit(i) - this.digit(i)) & 0xF;
+        return (TitanGuidImpl.n_digits - i) * 100 + diff;
     }
 
     public TitanGuid getGuid() {
-        return new TitanGuidImpl(this.getBytes());
+        return new TitanGuidImpl(this);
     }
 
     private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-        out.writeInt(this.asBytes.length);
-        out.write(this.asBytes);
+        out.writeInt(TitanGuidImpl.n_digits / 2);
+        out.writeLong(this.w0);
+        out.writeLong(this.w1);
+        out.writeLong(this.w2);
+        out.writeLong(this.w3);
     }
 
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         int length = in.readInt();
-        this.asBytes = new byte[length];
-        in.read(this.asBytes);
+        if (length != TitanGuidImpl.n_digits / 2) {
+            throw new InvalidObjectException("object-id length " + length);
+        }
+        this.w0 = in.readLong();
+        this.w1 = in.readLong();
+        this.w2 = in.readLong();
+        this.w3 = in.readLong();
     }
 
     /**
@@ -469,56 +475,10 @@ public class TitanGuidImpl implements TitanGuid {
      * @return The integer value of the digit at position <code>n</code>.
      */
     public int digit(int n) {
-        try {
-            int i = n / 2;
-            if ((n % 2) == 0) { // even
-                return ((this.asBytes[i] >> 4) & 0xF);
-            } else { // odd
-                return (this.asBytes[i] & 0xF);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.printf("N=%d, string=%s, bytes=%d\n", n, this.toString(), this.asBytes.length);
-            throw new RuntimeException(e);
+        if (n < 0 || n >= TitanGuidImpl.n_digits) {
+            throw new IndexOutOfBoundsException(String.format("N=%d, string=%s", n, this.toString()));
         }
-    }
-    
-    public static void main(String[] args) {
-		System.setProperty("enableProfiling", "true");
-		
-    	TitanGuidImpl id;
-    	
-    	TimeProfiler profiler = new TimeProfiler();
-    	for (int i = 0; i < 10000; i++) {
-    		id = new TitanGuidImpl();
-    		if (!id.equals(new TitanGuidImpl(id.toString()))) {
-    			System.err.printf("error with %s%n", id);
-    		}
-    	}
-    	profiler.stamp("fini");
-    	System.out.printf("%s%n", profiler);
-
-    	profiler = new TimeProfiler();
-    	for (int i = 0; i < 10000; i++) {
-    		id = new TitanGuidImpl();
-    		if (!id.equals(new TitanGuidImpl(id.toString(), (int) 1))) {
-    			System.err.printf("error with %s%n", id);
-    		}
-    	}
-    	profiler.stamp("fini");
-    	System.out.printf("%s%n", profiler);
-    	
-
-    	profiler = new TimeProfiler();
-    	for (int i = 0; i < 10000; i++) {
-    		id = new TitanGuidImpl();
-    		if (!id.equals(new TitanGuidImpl(id.toString2(), (int) 1))) {
-    			System.err.printf("error with %s%n", id);
-    		}
-    	}
-    	profiler.stamp("fini");
-    	System.out.printf("%s%n", profiler);
-    	
+        return (int) (this.word(n >>> 4) >>> (60 - 4 * (n & 0xF))) & 0xF;
     }
 
     public short getHopCount() {
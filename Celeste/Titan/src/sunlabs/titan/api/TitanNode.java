@@ -48,6 +48,7 @@ import sunlabs.titan.node.object.TitanObjectHandler;
 import sunlabs.titan.node.services.AbstractTitanService;
 import sunlabs.titan.node.services.api.MessageService;
 import sunlabs.titan.node.util.DOLRLogger;
+import sunlabs.titan.node.util.LoadMonitor;
 
 public interface TitanNode {
     /**
@@ -199,6 +200,11 @@ public interface TitanNode {
 
     public NeighbourMap getNeighbourMap();
 
+    /**
+     * Get the {@link LoadMonitor} measuring the load on this node.
+     */
+    public LoadMonitor getLoadMonitor();
+
     public TitanMessage replyTo(TitanMessage message, Serializable payload);
 
     public TitanGuid getNetworkObjectId();
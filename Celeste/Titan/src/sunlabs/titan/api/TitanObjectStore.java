@@ -147,6 +147,30 @@ public interface TitanObjectStore extends XHTMLInspectable, Iterable<TitanGuid>
     public <C extends TitanObject> C get(final Class<? extends C> klasse, final TitanGuid objectId) throws ClassCastException,
         TitanObjectStoreImpl.NotFoundException;
 
+    /**
+     * Given a {@link TitanGuid} get the corresponding {@link TitanObject} from the local object store
+     * for reading only.
+     * <p>
+     * This is {@link #get(Class, TitanGuid)} except that the result may be taken from,
+     * or admitted to, the object store's cache of deserialized objects
+     * and is then the same instance that is returned to other callers.
+     * The caller must not modify the result, nor hand it to anything that may modify it.
+     * </p>
+     * @param objectId the {@link TitanGuid} of the stored object to retrieve.
+     * @throws ClassCastException if the stored object is not the specified class.
+     * @throws TitanObjectStoreImpl.NotFoundException if the stored object is not found
+     */
+    public <C extends TitanObject> C getReadOnly(final Class<? extends C> klasse, final TitanGuid objectId) throws ClassCastException,
+        TitanObjectStoreImpl.NotFoundException;
+
+    /**
+     * Admit objects that are instances of {@code klasse}, and whose stored size is no more than {@code maximumSize} bytes,
+     * to the cache used by {@link #getReadOnly(Class, TitanGuid)}.
+     * A {@code maximumSize} of zero stops admitting them.
+     * An object with the metadata property {@link #METADATA_UNCACHABLE} set to {@code true} is never admitted.
+     */
+    public void setCacheAdmission(Class<? extends TitanObject> klasse, long maximumSize);
+
     /**
      * Given a {@link TitanGuid} get the corresponding {@link TitanObject} from the local object store.
      * <p>
@@ -247,5 +271,10 @@ public interface TitanObjectStore extends XHTMLInspectable, Iterable<TitanGuid>
      */
     public Publish.PublishUnpublishResponse unlock(TitanObject object) throws ClassNotFoundException, TitanObjectStoreImpl.Exception, BeehiveObjectPool.Exception;
 
+    /**
+     * Get the number of bytes that are available for this object store to consume.
+     */
+    public long getSpoolAvailable();
+
     public XMLObjectStore toXML();
 }
@@ -460,6 +460,30 @@ public final class NeighbourMap {
         return this.newGetRoute(objectId, 0) == null;
         //return this.getRoute(objectId) == null;
     }
+
+    /**
+     * <p>
+     * Return {@code true} if this node is the root of the given {@code objectId}, but would route it to the node {@code nodeId}
+     * were that node added to this {@code NeighbourMap}.
+     * That is, the node {@code nodeId} takes over as the root of {@code objectId} when it joins.
+     * </p>
+     * <p>
+     * The node {@code nodeId} would occupy the entry for its digit at the level of the prefix it shares with this node.
+     * Routing an object-id that this node is the root of arrives at that level by way of this node's own entries,
+     * and there searches forward from the object-id's digit to the first non-vacuous entry, which is this node's own.
+     * The object-id moves to the node {@code nodeId} if its digit is reached first.
+     * </p>
+     */
+    public boolean isRootAndWouldRouteTo(TitanGuid objectId, TitanNodeId nodeId) {
+        int level = this.node.getNodeId().sharedPrefix(nodeId);
+        if (level >= (TitanGuidImpl.n_digits - 1) || !this.isRoot(objectId)) {
+            return false;
+        }
+        int d = objectId.digit(level);
+        int candidate = (nodeId.digit(level) - d + TitanGuidImpl.radix) % TitanGuidImpl.radix;
+        int self = (this.node.getNodeId().digit(level) - d + TitanGuidImpl.radix) % TitanGuidImpl.radix;
+        return candidate < self;
+    }
     
     /**
      * Produce an XML representation of this {@code NeighbourMap}.
@@ -23,21 +23,39 @@
  */
 package sunlabs.titan.node;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import sunlabs.asdf.util.AbstractStoredMap;
 import sunlabs.asdf.util.ObjectLock;
 import sunlabs.asdf.util.Time;
+import sunlabs.asdf.util.TimerWheel;
 import sunlabs.asdf.web.XML.XHTML;
 import sunlabs.asdf.web.XML.XML;
 import sunlabs.asdf.web.http.HTTP;
@@ -76,18 +94,57 @@ import sunlabs.titan.node.util.DOLRLogger;
  * The node containing the map <em>O&rarr;N</em> receives the reply and repackages it as the response
  * to the originally received RouteToObjectMessage.
  * </p>
+ * <p>
+ * Each node keeps its back-pointers in memory, indexed by object-id, with the publisher records of each object held in a small array.
+ * The {@link NodeAddress} of each publishing node is shared by all of the records it publishes.
+ * Lookups do not lock, and modifications lock only the object-id being modified.
+ * Record expiration times are kept in a {@link TimerWheel} so that {@link #expire(DOLRLogger)} examines only the records that have expired.
+ * Modifications are written behind to a journal that, together with a periodic snapshot of the whole index,
+ * restores the back-pointers when the node restarts.
+ * </p>
  *
  * @author Glenn Scott - Oracle Sun Labs
  */
-public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.PublishRecord>> {
-    private final static long serialVersionUID = 1L;
-
+public class Publishers implements Iterable<TitanGuid> {
     public final static String METADATA_PUBLISHERTTL = "Publishers.PublisherTimeToLive";
 
+    /** The minimum number of journal entries written before the journal is replaced with a new snapshot. */
+    private final static int JOURNAL_COMPACT_MINIMUM = Integer.getInteger("sunlabs.titan.node.Publishers.journalCompactMinimum", 65536).intValue();
+
+    /** The maximum number of journal entries waiting to be written. */
+    private final static int JOURNAL_QUEUE_CAPACITY = Integer.getInteger("sunlabs.titan.node.Publishers.journalQueueCapacity", 65536).intValue();
+
+    private final static int JOURNAL_MAGIC = 0x50554231;
+    private final static int JOURNAL_STRING_MAXIMUM = 1024*1024;
+    private final static byte OP_ADDRESS = 'A';
+    private final static byte OP_PUT = 'P';
+    private final static byte OP_REMOVE = 'R';
+    private final static byte OP_REMOVE_PUBLISHER = 'D';
+
+    private final static PublishRecord[] NO_RECORDS = new PublishRecord[0];
+
     private ObjectLock<TitanGuid> locks;
 
     private TitanNodeImpl node;
 
+    private final TitanNodeId nodeId;
+
+    private final DOLRLogger log;
+
+    /** The publisher records of each object. Each array is replaced, never modified. */
+    private final ConcurrentMap<TitanGuid,PublishRecord[]> index;
+
+    /** The shared {@link NodeAddress} of each publishing node. */
+    private final ConcurrentMap<TitanNodeId,NodeAddress> addresses;
+
+    private final TimerWheel<PublishRecord> expirations;
+
+    private final AtomicLong recordCount;
+
+    private final AtomicLong expiredCount;
+
+    private final Journal journal;
+
     /**
      * A Publisher object is a record of a single binding of a {@link TitanObject} with a node advertising the object's
      * availability and the metadata that that node maintains for the published object. Nodes advertise the
@@ -136,6 +193,21 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
             assert this.expireTimeSeconds > 0;
         }
 
+        private PublishRecord() {
+        }
+
+        /**
+         * Construct a PublishRecord instance that expires at the given absolute time, in seconds.
+         */
+        private static PublishRecord expiringAt(TitanGuid objectId, NodeAddress publisher, TitanObject.Metadata metaData, long expireTimeSeconds) {
+            PublishRecord result = new PublishRecord();
+            result.objectId = objectId;
+            result.publisher = publisher;
+            result.metaData = metaData;
+            result.expireTimeSeconds = expireTimeSeconds;
+            return result;
+        }
+
         @Override
         public boolean equals(Object other) {
             // Two Publisher instances are equal if they have equal {@link TitanGuid} and node-id {@link TitanNodeId} values.
@@ -313,69 +385,84 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
         }
     }
 
+    /**
+     * Create the back-pointer index for the given {@link TitanNodeImpl}, recovering its contents from the
+     * snapshot and journal files in {@code spoolDirectory}.
+     * <p>
+     * Back-pointers left in the per-object files of earlier versions are imported and those files are removed.
+     * </p>
+     */
     public Publishers(TitanNodeImpl node, String spoolDirectory) throws IOException, IllegalStateException, AbstractStoredMap.OutOfSpace {
-        super(new File(spoolDirectory + File.separatorChar + "object-publishers"), Long.MAX_VALUE);
+        this(node, node.getNodeId(), node.getLogger(), spoolDirectory);
+    }
+
+    /**
+     * Create the back-pointer index of the node {@code nodeId}, logging to {@code log}.
+     * The {@code node} is used only to render the index in XHTML and may be {@code null}.
+     */
+    Publishers(TitanNodeImpl node, TitanNodeId nodeId, DOLRLogger log, String spoolDirectory) throws IOException {
         this.node = node;
+        this.nodeId = nodeId;
+        this.log = log;
 
         this.locks = new ObjectLock<TitanGuid>();
+        this.index = new ConcurrentHashMap<TitanGuid,PublishRecord[]>();
+        this.addresses = new ConcurrentHashMap<TitanNodeId,NodeAddress>();
+        this.expirations = new TimerWheel<PublishRecord>(Time.currentTimeInSeconds());
+        this.recordCount = new AtomicLong(0);
+        this.expiredCount = new AtomicLong(0);
+
+        this.journal = new Journal(new File(spoolDirectory + File.separatorChar + "object-publishers.journal"),
+                new File(spoolDirectory + File.separatorChar + "object-publishers.snapshot"));
+        this.journal.recover();
+        this.importLegacyStore(new File(spoolDirectory + File.separatorChar + "object-publishers"));
+        this.journal.start();
     }
 
     /**
-     * For each object-id in the publisher back-pointer list,
-     * examine the list of publishers,
-     * decrementing the time-to-live for each by the frequency in seconds of this repeating process.
-     * If the time-to-live is zero or negative, remove that publisher from the list of publishers.
+     * Remove the expired {@link Publishers.PublishRecord} instances.
+     * <p>
+     * Expiration times are kept in a {@link TimerWheel}, so only the records that have expired since the last invocation are examined.
+     * A record that has been replaced by a more recent publication of the same object by the same node is not removed when the
+     * replaced record expires.
+     * </p>
      * @param log
      * @return the number of records that were removed.
      */
     public long expire(DOLRLogger log) {
+        long now = Time.currentTimeInSeconds();
         long count = 0;
-        for (TitanGuid objectId : this) {
-            Set<Publishers.PublishRecord> publishers = this.getPublishersAndLock(objectId);
+        for (PublishRecord record : this.expirations.advance(now)) {
+            TitanGuid objectId = record.getObjectId();
+            this.locks.lock(objectId);
             try {
-                if (log.isLoggable(Level.FINEST)) {
-                    log.finest("begin %s %d publishers", objectId, publishers.size());
-                }
-                boolean modified = false;
-                HashSet<Publishers.PublishRecord> newPublishers = new HashSet<Publishers.PublishRecord>(publishers);
-                for (Publishers.PublishRecord record : publishers) {
-                    long secondsUntilExpired = record.getExpireTimeSeconds() - Time.currentTimeInSeconds();
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.finest("%s %s expireTime=%d dt=%+d", objectId, record.getNodeAddress().getObjectId(), record.getExpireTimeSeconds(), secondsUntilExpired);
-                    }
-                    if (secondsUntilExpired <= 0) {
-                        newPublishers.remove(record);
-                        modified = true;
-                    }
-                }
-                if (modified) {
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.finest("end %s %d publishers", objectId, newPublishers.size());
-                    }
-                    try {
-                        this.put(objectId, newPublishers);
-                    } catch (IllegalStateException e) {
-                        e.printStackTrace();
-                    } catch (IOException e) {
-                        log.severe("IOException when storing.");
-                        this.remove(objectId);
-                    } catch (AbstractStoredMap.OutOfSpace e) {
-                        log.severe("Out of storage space");
-                        this.remove(objectId);
+                PublishRecord[] records = this.index.get(objectId);
+                if (records != null) {
+                    for (int i = 0; i < records.length; i++) {
+                        // Only the identical record is removed, a republished record replaces it with a later expiration time.
+                        if (records[i] == record && record.getExpireTimeSeconds() <= now) {
+                            if (log.isLoggable(Level.FINEST)) {
+                                log.finest("%s %s expireTime=%d", objectId, record.getNodeId(), record.getExpireTimeSeconds());
+                            }
+                            this.store(objectId, Publishers.without(records, i));
+                            count++;
+                            break;
+                        }
                     }
                 }
             } finally {
-                this.unlock(objectId);
+                this.locks.unlock(objectId);
             }
         }
+        this.expiredCount.addAndGet(count);
 
         return count;
     }
-    
+
     /**
      * <p>
      * Get the {@link HashSet} of {@link Publishers.PublishRecord} instances for the given {@link TitanGuid}.
-     * <em>There result is NOT locked.</em>
+     * The result is a copy that the caller may modify.
      * </p>
      * <p>
      * If there are no Publishers of the given {@code TitanGuid}, return an empty {@code Set}.
@@ -387,54 +474,15 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
      * instances for the given {@code TitanGuid}.
      */
     public HashSet<Publishers.PublishRecord> getPublishers(TitanGuid objectId) {
-        HashSet<Publishers.PublishRecord> set = this.getPublishersAndLock(objectId);
-        try {
-            return set;
-        } finally {
-            this.unlock(objectId);
+        PublishRecord[] records = this.index.get(objectId);
+        if (records == null) {
+            return new HashSet<Publishers.PublishRecord>();
         }
-    }
-
-    /**
-     * <p>
-     * Get the {@link HashSet} of {@link Publishers.PublishRecord} instances of the given {@link TitanGuid}.
-     * <em>There result is locked and MUST be unlocked when the caller has finished manipulating.</em>
-     * </p>
-     * <p>
-     * If there are no Publishers of the given {@code TitanGuid}, return an empty {@code Set}.
-     * </p>
-     * @param objectId the {@code TitanGuid} of the published object.
-     *
-     * @return  a {@code HashSet} consisting of all the {@code Publishers.Publisher} instances for the given {@code TitanGuid}.
-     *
-     * @throws IllegalStateException if an attempt to lock a {@code TitanGuid}} more than once.
-     */
-    private HashSet<Publishers.PublishRecord> getPublishersAndLock(TitanGuid objectId) throws IllegalStateException {
-        this.locks.lock(objectId);
-        try {
-            try {
-                return super.get(objectId);
-            } catch (FileNotFoundException e) {
-                return new HashSet<Publishers.PublishRecord>();                
-            } catch (IOException e) {
-                this.remove(objectId);
-                return new HashSet<Publishers.PublishRecord>();                
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        } catch (ClassCastException e) {
-            this.locks.unlock(objectId);
-            throw e;
+        HashSet<Publishers.PublishRecord> result = new HashSet<Publishers.PublishRecord>(Math.max(4, records.length * 2));
+        for (PublishRecord record : records) {
+            result.add(record);
         }
-    }
-
-    /**
-     * Unlock the given {@link TitanGuid}.
-     * The {@code objectId} must already be locked by the current {@link Thread}.
-     * @throws IllegalStateException if the {@code objectId} is not locked.
-     */
-    private boolean unlock(TitanGuid objectId) {
-        return this.locks.unlock(objectId);
+        return result;
     }
 
     /**
@@ -442,29 +490,24 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
      * Replace the current Publisher information for the given {@code objectId} with the given {@code set}.
      * </p>
      * <p>
-     * The publisher information <em>must</em> be locked by the caller of this method.
-     * </p>
-     * <p>
      * If the given {@code set} is empty, the Publisher information for {@code objectId} is removed (rather than storing the empty set).
      * </p>
      *
      * @param objectId the {@link TitanGuid} of the object.
      * @param set the {@link Set} containing all of the publishers of {@code objectId}.
-     * @throws AbstractStoredMap.OutOfSpace 
-     * @throws IOException 
-     * @throws IllegalStateException if the {@code objectId} is not locked.
+     * @throws AbstractStoredMap.OutOfSpace
+     * @throws IOException
+     * @throws IllegalStateException
      */
     public void put(TitanGuid objectId, HashSet<Publishers.PublishRecord> set) throws IllegalStateException, IOException, AbstractStoredMap.OutOfSpace {
-        synchronized (this.locks) {
-            this.locks.assertLock(objectId);
-            
-            if (set.size() != 0) {
-                super.put(objectId, set);
-//                this.publishers.put(objectId, set);
-            } else {
-                super.remove(objectId);
-//                this.publishers.remove(objectId);
+        this.locks.lock(objectId);
+        try {
+            this.removeAndLog(objectId);
+            for (PublishRecord record : set) {
+                this.add(objectId, record, true);
             }
+        } finally {
+            this.locks.unlock(objectId);
         }
     }
 
@@ -473,25 +516,20 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
      * <p>
      * This method will block if the current Set of publisher records is locked.
      * </p>
-     * <p>
-     * Unlock the lock on this publisher object-id.
-     * </p>
-     * @throws AbstractStoredMap.OutOfSpace 
-     * @throws IOException 
-     * @throws IllegalStateException 
+     * @throws AbstractStoredMap.OutOfSpace
+     * @throws IOException
+     * @throws IllegalStateException
      */
     public void update(Publishers.PublishRecord publisher) throws IllegalStateException, IOException, AbstractStoredMap.OutOfSpace {
-        HashSet<Publishers.PublishRecord> oldSet = (HashSet<Publishers.PublishRecord>) this.getPublishersAndLock(publisher.getObjectId());
+        TitanGuid objectId = publisher.getObjectId();
+        this.locks.lock(objectId);
         try {
-        	oldSet.remove(publisher);
-            if (oldSet.add(publisher)) {
-                this.put(publisher.getObjectId(), oldSet);
-            }
+            this.add(objectId, publisher, true);
         } finally {
-            this.unlock(publisher.getObjectId());
+            this.locks.unlock(objectId);
         }
     }
-    
+
     public void update(TitanGuid objectId, Publishers.PublishRecord record) throws IllegalStateException, IOException, AbstractStoredMap.OutOfSpace {
     	// XXX Should ensure that objectId is the same as record.getObjectId()
     	this.update(record);
@@ -506,18 +544,56 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
      * </p>
      * @param objectId
      * @param publisherSet
-     * @throws AbstractStoredMap.OutOfSpace 
-     * @throws IOException 
-     * @throws IllegalStateException 
+     * @throws AbstractStoredMap.OutOfSpace
+     * @throws IOException
+     * @throws IllegalStateException
      */
     public void update(TitanGuid objectId, Set<Publishers.PublishRecord> publisherSet) throws IllegalStateException, IOException, AbstractStoredMap.OutOfSpace {
-        HashSet<Publishers.PublishRecord> set = (HashSet<Publishers.PublishRecord>) this.getPublishersAndLock(objectId);
+        this.locks.lock(objectId);
         try {
-            if (set.addAll(publisherSet)) {
-                this.put(objectId, set);
+            for (PublishRecord record : publisherSet) {
+                this.add(objectId, record, false);
             }
         } finally {
-            this.unlock(objectId);
+            this.locks.unlock(objectId);
+        }
+    }
+
+    /**
+     * Add all of the Publishers in each of the {@link Set}s in the given {@code publishRecords}
+     * to the Publishers already maintained for the corresponding object-id,
+     * as {@link #update(TitanGuid, Set)} does for a single object-id.
+     *
+     * @return the number of publisher records in {@code publishRecords}.
+     */
+    public long update(Map<TitanGuid,? extends Set<Publishers.PublishRecord>> publishRecords) {
+        long count = 0;
+        for (Map.Entry<TitanGuid,? extends Set<Publishers.PublishRecord>> entry : publishRecords.entrySet()) {
+            TitanGuid objectId = entry.getKey();
+            this.locks.lock(objectId);
+            try {
+                for (PublishRecord record : entry.getValue()) {
+                    this.add(objectId, record, false);
+                    count++;
+                }
+            } finally {
+                this.locks.unlock(objectId);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove all of the publisher records of the given {@code objectId}.
+     *
+     * @return {@code true} if there were publisher records to remove.
+     */
+    public boolean remove(TitanGuid objectId) {
+        this.locks.lock(objectId);
+        try {
+            return this.removeAndLog(objectId);
+        } finally {
+            this.locks.unlock(objectId);
         }
     }
 
@@ -528,25 +604,579 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
      * </p>
      * @param objectId
      * @param publisherId
-     * @throws AbstractStoredMap.OutOfSpace 
-     * @throws IOException 
-     * @throws IllegalStateException 
+     * @throws AbstractStoredMap.OutOfSpace
+     * @throws IOException
+     * @throws IllegalStateException
      */
     public void remove(TitanGuid objectId, TitanNodeId publisherId) throws IllegalStateException, IOException, AbstractStoredMap.OutOfSpace {
-        HashSet<Publishers.PublishRecord> newSet = new HashSet<Publishers.PublishRecord>();
-        Set<Publishers.PublishRecord> set = this.getPublishersAndLock(objectId);
+        this.locks.lock(objectId);
         try {
-            for (PublishRecord p : set) {
-                if (!publisherId.equals(p.getNodeId())) {
-                    newSet.add(p);
+            PublishRecord[] records = this.index.get(objectId);
+            if (records != null) {
+                int i = Publishers.indexOf(records, publisherId);
+                if (i >= 0) {
+                    this.store(objectId, Publishers.without(records, i));
+                    this.journal.log(new JournalEntry(Publishers.OP_REMOVE_PUBLISHER, objectId, publisherId, null));
                 }
             }
-            this.put(objectId, newSet);
         } finally {
-            this.unlock(objectId);
+            this.locks.unlock(objectId);
         }
     }
 
+    /**
+     * Get the number of objects that have publisher records.
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Get the total number of publisher records.
+     */
+    public long getRecordCount() {
+        return this.recordCount.get();
+    }
+
+    /**
+     * Get the total number of publisher records removed by {@link #expire(DOLRLogger)}.
+     */
+    public long getExpiredCount() {
+        return this.expiredCount.get();
+    }
+
+    /**
+     * Write any pending journal entries and stop the journal writer.
+     */
+    public void close() {
+        this.journal.close();
+    }
+
+    /**
+     * Iterate over the {@link TitanGuid} of each object that has publisher records.
+     */
+    public Iterator<TitanGuid> iterator() {
+        final Iterator<TitanGuid> keys = this.index.keySet().iterator();
+        return new Iterator<TitanGuid>() {
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            public TitanGuid next() {
+                return keys.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Add {@code record} to the publishers of {@code objectId}, replacing any record from the same publishing node if {@code replace} is {@code true}.
+     * The caller must hold the lock on {@code objectId}.
+     */
+    private void add(TitanGuid objectId, PublishRecord record, boolean replace) {
+        PublishRecord[] records = this.index.get(objectId);
+        int i = -1;
+        if (records == null) {
+            records = Publishers.NO_RECORDS;
+        } else {
+            i = Publishers.indexOf(records, record.getNodeId());
+            if (i >= 0 && !replace) {
+                return;
+            }
+            // Share the object-id already in the index rather than keep a copy in every record.
+            objectId = records[0].getObjectId();
+        }
+
+        record = this.compact(objectId, record);
+        PublishRecord[] newRecords;
+        if (i >= 0) {
+            newRecords = records.clone();
+            newRecords[i] = record;
+        } else {
+            newRecords = new PublishRecord[records.length + 1];
+            System.arraycopy(records, 0, newRecords, 0, records.length);
+            newRecords[records.length] = record;
+        }
+        this.store(objectId, newRecords);
+        this.expirations.schedule(record, record.getExpireTimeSeconds());
+        this.journal.log(new JournalEntry(Publishers.OP_PUT, objectId, null, record));
+    }
+
+    /**
+     * Remove all of the records of {@code objectId} and journal the removal.
+     * The caller must hold the lock on {@code objectId}.
+     */
+    private boolean removeAndLog(TitanGuid objectId) {
+        PublishRecord[] records = this.index.remove(objectId);
+        if (records == null) {
+            return false;
+        }
+        this.recordCount.addAndGet(-records.length);
+        this.journal.log(new JournalEntry(Publishers.OP_REMOVE, objectId, null, null));
+        return true;
+    }
+
+    /**
+     * Replace the records of {@code objectId} with {@code records}, removing the object-id entirely if {@code records} is empty.
+     * The caller must hold the lock on {@code objectId}.
+     */
+    private void store(TitanGuid objectId, PublishRecord[] records) {
+        PublishRecord[] old = (records.length == 0) ? this.index.remove(objectId) : this.index.put(objectId, records);
+        this.recordCount.addAndGet(records.length - (old == null ? 0 : old.length));
+    }
+
+    /**
+     * Produce the record to keep in the index for the given {@code record}.
+     * The {@link NodeAddress} of each publishing node is shared by all of the records it publishes,
+     * and the object-id is shared with the index key.
+     */
+    private PublishRecord compact(TitanGuid objectId, PublishRecord record) {
+        NodeAddress address = this.intern(record.publisher);
+        if (address == record.publisher && objectId == record.objectId) {
+            return record;
+        }
+        return PublishRecord.expiringAt(objectId, address, record.metaData, record.expireTimeSeconds);
+    }
+
+    private NodeAddress intern(NodeAddress address) {
+        NodeAddress existing = this.addresses.get(address.getObjectId());
+        if (existing != null) {
+            if (existing == address
+                    || (existing.getMessageURL().toExternalForm().equals(address.getMessageURL().toExternalForm())
+                            && existing.getInspectorInterface().toExternalForm().equals(address.getInspectorInterface().toExternalForm()))) {
+                return existing;
+            }
+        }
+        this.addresses.put(address.getObjectId(), address);
+        return address;
+    }
+
+    private static int indexOf(PublishRecord[] records, TitanNodeId nodeId) {
+        for (int i = 0; i < records.length; i++) {
+            if (records[i].getNodeId().equals(nodeId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static PublishRecord[] without(PublishRecord[] records, int i) {
+        PublishRecord[] result = new PublishRecord[records.length - 1];
+        System.arraycopy(records, 0, result, 0, i);
+        System.arraycopy(records, i + 1, result, i, records.length - i - 1);
+        return result;
+    }
+
+    /**
+     * Import, and then remove, the back-pointers stored one file per object by earlier versions of this class.
+     */
+    private void importLegacyStore(File directory) {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        try {
+            LegacyStore store = new LegacyStore(directory);
+            List<TitanGuid> objectIds = new ArrayList<TitanGuid>();
+            for (TitanGuid objectId : store) {
+                objectIds.add(objectId);
+            }
+            long now = Time.currentTimeInSeconds();
+            for (TitanGuid objectId : objectIds) {
+                try {
+                    this.locks.lock(objectId);
+                    try {
+                        for (PublishRecord record : store.get(objectId)) {
+                            if (record.getExpireTimeSeconds() > now) {
+                                this.add(objectId, record, true);
+                            }
+                        }
+                    } finally {
+                        this.locks.unlock(objectId);
+                    }
+                } catch (IOException e) {
+                    /**/
+                } catch (ClassNotFoundException e) {
+                    /**/
+                } catch (ClassCastException e) {
+                    /**/
+                }
+                store.remove(objectId);
+            }
+            if (this.log.isLoggable(Level.INFO)) {
+                this.log.info("Imported %d objects from %s", objectIds.size(), directory);
+            }
+        } catch (IOException e) {
+            this.log.severe("Cannot import %s: %s", directory, e);
+        }
+    }
+
+    /**
+     * The one file per object-id store used by earlier versions of this class.
+     */
+    private static class LegacyStore extends AbstractStoredMap<TitanGuid, HashSet<Publishers.PublishRecord>> {
+        public LegacyStore(File root) throws IOException {
+            super(root, Long.MAX_VALUE);
+        }
+
+        @Override
+        public File keyToFile(File root, TitanGuid key) {
+            String s = key.toString();
+            StringBuilder result = new StringBuilder();
+            result.append(s.substring(0, 5)).append(File.separatorChar).append(s);
+            return new File(root, result.toString());
+        }
+
+        @Override
+        public TitanGuid fileToKey(File file) {
+            return new TitanGuidImpl(file.getName());
+        }
+    }
+
+    private static class JournalEntry {
+        final byte op;
+        final TitanGuid objectId;
+        final TitanNodeId nodeId;
+        final PublishRecord record;
+
+        JournalEntry(byte op, TitanGuid objectId, TitanNodeId nodeId, PublishRecord record) {
+            this.op = op;
+            this.objectId = objectId;
+            this.nodeId = nodeId;
+            this.record = record;
+        }
+    }
+
+    /**
+     * The write-behind journal of changes to the index.
+     * <p>
+     * Changes are queued by the threads modifying the index and written by a single writer {@link Thread}.
+     * The journal is replayed on top of the most recent snapshot of the index when the node restarts.
+     * When the journal grows larger than the index, the writer replaces the snapshot with a new one and starts a new journal.
+     * The snapshot and the journal both begin with a generation number, and a journal is only replayed over the snapshot of the same generation.
+     * </p>
+     * <p>
+     * Records are written in a compact binary form.
+     * Each publishing node's {@link NodeAddress} is written once per file and subsequently referred to by number,
+     * and the object metadata is written as a count of properties followed by the name and value of each.
+     * Expirations are not journaled, expired records are simply discarded when the journal is replayed.
+     * </p>
+     * <p>
+     * If the queue of pending changes fills, the pending changes are discarded and a new snapshot is written instead.
+     * A pending {@link #close()} is not lost with them, because {@code close()} also sets a flag the writer checks after the snapshot.
+     * </p>
+     */
+    private class Journal implements Runnable {
+        private final File journalFile;
+        private final File snapshotFile;
+        private final BlockingQueue<JournalEntry> queue;
+        private final JournalEntry closeEntry;
+        private volatile boolean overflowed;
+        private volatile boolean closed;
+        private Thread thread;
+
+        private DataOutputStream out;
+        private Map<NodeAddress,Integer> dictionary;
+        private long generation;
+        private long entries;
+
+        Journal(File journalFile, File snapshotFile) {
+            this.journalFile = journalFile;
+            this.snapshotFile = snapshotFile;
+            this.queue = new ArrayBlockingQueue<JournalEntry>(Publishers.JOURNAL_QUEUE_CAPACITY);
+            this.closeEntry = new JournalEntry((byte) 0, null, null, null);
+            this.overflowed = false;
+            this.closed = false;
+            this.generation = 0;
+        }
+
+        /**
+         * Rebuild the index from the snapshot and journal files.
+         */
+        void recover() {
+            long now = Time.currentTimeInSeconds();
+            long snapshotGeneration = this.replay(this.snapshotFile, -1, now);
+            if (snapshotGeneration >= 0) {
+                this.generation = snapshotGeneration;
+                this.replay(this.journalFile, snapshotGeneration, now);
+            }
+        }
+
+        /**
+         * Write a snapshot of the recovered index and start journaling changes to it.
+         */
+        void start() throws IOException {
+            this.snapshot();
+            this.thread = new Thread(this, "Publishers journal " + Publishers.this.nodeId);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        void log(JournalEntry entry) {
+            if (this.thread != null && !this.queue.offer(entry)) {
+                this.overflowed = true;
+            }
+        }
+
+        void close() {
+            if (this.thread == null) {
+                return;
+            }
+            this.closed = true;
+            try {
+                this.queue.put(this.closeEntry);
+                this.thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void run() {
+            List<JournalEntry> batch = new ArrayList<JournalEntry>();
+            boolean closing = false;
+            while (!closing) {
+                try {
+                    batch.clear();
+                    batch.add(this.queue.take());
+                    this.queue.drainTo(batch);
+                    if (this.overflowed) {
+                        // Entries have been lost, but every change is already in the index, so a snapshot of the index replaces them all.
+                        // The close entry may be among the discarded entries, so a pending close is taken from the closed flag instead.
+                        this.overflowed = false;
+                        this.queue.clear();
+                        this.snapshot();
+                        closing = this.closed;
+                        continue;
+                    }
+                    for (JournalEntry entry : batch) {
+                        if (entry == this.closeEntry) {
+                            closing = true;
+                        } else {
+                            this.write(this.out, entry);
+                            this.entries++;
+                        }
+                    }
+                    this.out.flush();
+                    if (this.entries > Math.max(Publishers.JOURNAL_COMPACT_MINIMUM, Publishers.this.recordCount.get())) {
+                        this.snapshot();
+                    }
+                } catch (InterruptedException e) {
+                    closing = true;
+                } catch (IOException e) {
+                    Publishers.this.log.severe("Publishers journal %s: %s", this.journalFile, e);
+                    this.overflowed = true;
+                }
+            }
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                /**/
+            }
+        }
+
+        /**
+         * Write a new snapshot of the index and start a new, empty, journal.
+         */
+        private void snapshot() throws IOException {
+            if (this.out != null) {
+                this.out.close();
+            }
+            this.generation++;
+            File tmp = new File(this.snapshotFile.getPath() + ".tmp");
+            DataOutputStream snapshot = this.open(tmp);
+            long now = Time.currentTimeInSeconds();
+            try {
+                for (PublishRecord[] records : Publishers.this.index.values()) {
+                    for (PublishRecord record : records) {
+                        if (record.getExpireTimeSeconds() > now) {
+                            this.write(snapshot, new JournalEntry(Publishers.OP_PUT, record.getObjectId(), null, record));
+                        }
+                    }
+                }
+            } finally {
+                snapshot.close();
+            }
+            if (!tmp.renameTo(this.snapshotFile)) {
+                this.snapshotFile.delete();
+                if (!tmp.renameTo(this.snapshotFile)) {
+                    throw new IOException("Cannot rename " + tmp + " to " + this.snapshotFile);
+                }
+            }
+            this.out = this.open(this.journalFile);
+            this.entries = 0;
+        }
+
+        private DataOutputStream open(File file) throws IOException {
+            DataOutputStream result = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64*1024));
+            result.writeInt(Publishers.JOURNAL_MAGIC);
+            result.writeLong(this.generation);
+            this.dictionary = new IdentityHashMap<NodeAddress,Integer>();
+            return result;
+        }
+
+        private void write(DataOutputStream out, JournalEntry entry) throws IOException {
+            if (entry.op == Publishers.OP_PUT) {
+                NodeAddress address = entry.record.getNodeAddress();
+                Integer n = this.dictionary.get(address);
+                if (n == null) {
+                    n = Integer.valueOf(this.dictionary.size());
+                    this.dictionary.put(address, n);
+                    out.writeByte(Publishers.OP_ADDRESS);
+                    out.writeInt(n.intValue());
+                    Publishers.writeString(out, address.format());
+                }
+                out.writeByte(Publishers.OP_PUT);
+                Publishers.writeGuid(out, entry.objectId);
+                out.writeInt(n.intValue());
+                out.writeLong(entry.record.getExpireTimeSeconds());
+                TitanObject.Metadata metaData = entry.record.getMetadata();
+                Set<Object> names = metaData.keySet();
+                out.writeInt(names.size());
+                for (Object name : names) {
+                    Publishers.writeString(out, name.toString());
+                    Publishers.writeString(out, metaData.getProperty(name.toString()));
+                }
+            } else if (entry.op == Publishers.OP_REMOVE) {
+                out.writeByte(Publishers.OP_REMOVE);
+                Publishers.writeGuid(out, entry.objectId);
+            } else if (entry.op == Publishers.OP_REMOVE_PUBLISHER) {
+                out.writeByte(Publishers.OP_REMOVE_PUBLISHER);
+                Publishers.writeGuid(out, entry.objectId);
+                Publishers.writeGuid(out, entry.nodeId);
+            }
+        }
+
+        /**
+         * Apply the entries in {@code file} to the index, stopping at the first incomplete or unreadable entry.
+         *
+         * @param generation the generation the file must have, or -1 for any generation.
+         * @return the generation of the file, or -1 if the file does not exist or is not the given generation.
+         */
+        private long replay(File file, long generation, long now) {
+            if (!file.exists()) {
+                return -1;
+            }
+            DataInputStream in = null;
+            long count = 0;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64*1024));
+                if (in.readInt() != Publishers.JOURNAL_MAGIC) {
+                    return -1;
+                }
+                long fileGeneration = in.readLong();
+                if (generation >= 0 && fileGeneration != generation) {
+                    return -1;
+                }
+                Map<Integer,NodeAddress> addresses = new HashMap<Integer,NodeAddress>();
+                try {
+                    while (true) {
+                        byte op = in.readByte();
+                        if (op == Publishers.OP_ADDRESS) {
+                            int n = in.readInt();
+                            String address = Publishers.readString(in);
+                            try {
+                                addresses.put(n, new NodeAddress(address));
+                            } catch (MalformedURLException e) {
+                                /**/
+                            } catch (NumberFormatException e) {
+                                /**/
+                            }
+                        } else if (op == Publishers.OP_PUT) {
+                            TitanGuid objectId = new TitanGuidImpl(Publishers.readGuid(in));
+                            NodeAddress address = addresses.get(in.readInt());
+                            long expireTimeSeconds = in.readLong();
+                            TitanObject.Metadata metaData = new AbstractTitanObject.Metadata();
+                            for (int i = in.readInt(); i > 0; i--) {
+                                metaData.setProperty(Publishers.readString(in), Publishers.readString(in));
+                            }
+                            if (address != null) {
+                                if (expireTimeSeconds > now) {
+                                    Publishers.this.add(objectId, PublishRecord.expiringAt(objectId, address, metaData, expireTimeSeconds), true);
+                                } else {
+                                    // The expired record replaced any earlier record from the same publisher.
+                                    this.removePublisher(objectId, address.getObjectId());
+                                }
+                            }
+                        } else if (op == Publishers.OP_REMOVE) {
+                            Publishers.this.removeAndLog(new TitanGuidImpl(Publishers.readGuid(in)));
+                        } else if (op == Publishers.OP_REMOVE_PUBLISHER) {
+                            TitanGuid objectId = new TitanGuidImpl(Publishers.readGuid(in));
+                            this.removePublisher(objectId, new TitanNodeIdImpl(Publishers.readGuid(in)));
+                        } else {
+                            break;
+                        }
+                        count++;
+                    }
+                } catch (EOFException e) {
+                    /**/
+                }
+                if (Publishers.this.log.isLoggable(Level.INFO)) {
+                    Publishers.this.log.info("Replayed %d entries from %s", count, file);
+                }
+                return fileGeneration;
+            } catch (IOException e) {
+                Publishers.this.log.severe("Cannot replay %s after %d entries: %s", file, count, e);
+                return -1;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        /**/
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remove the record of the publisher {@code nodeId} from the replayed publishers of {@code objectId}.
+         */
+        private void removePublisher(TitanGuid objectId, TitanNodeId nodeId) {
+            PublishRecord[] records = Publishers.this.index.get(objectId);
+            int i;
+            if (records != null && (i = Publishers.indexOf(records, nodeId)) >= 0) {
+                Publishers.this.store(objectId, Publishers.without(records, i));
+            }
+        }
+    }
+
+    private static void writeGuid(DataOutputStream out, TitanGuid guid) throws IOException {
+        byte[] bytes = guid.getBytes();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read an object-id written by {@link #writeGuid(DataOutputStream, TitanGuid)} and return it in the hexadecimal form accepted by the {@link TitanGuidImpl} constructors.
+     */
+    private static String readGuid(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString().toUpperCase();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > Publishers.JOURNAL_STRING_MAXIMUM) {
+            throw new IOException("Corrupt journal string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
     public XHTML.EFlow toXHTML(URI uri, Map<String,HTTP.Message> props) {
         SortedSet<TitanGuid> objectIds = new TreeSet<TitanGuid>();
         for (TitanGuid objectId : this) {
@@ -557,7 +1187,7 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
 
         XHTML.Table.Head thead = new XHTML.Table.Head();
         thead.add(new XHTML.Table.Row(new XHTML.Table.Heading("Titan Guid")).add(PublishRecord.toXHTMLTableHeading()));
-        
+
         XHTML.Table.Body tbody = new XHTML.Table.Body();
         for (TitanGuid objectId : objectIds) {
             Set<Publishers.PublishRecord> publisherSet = this.getPublishers(objectId);
@@ -573,7 +1203,7 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
                 if (publisher.isDeleted()) {
                     publisherLink.addClass("deleted");
                 }
-                
+
                 XHTML.Table.Row row =  new XHTML.Table.Row(objectCell).add(publisher.toXHTMLTableData());
                 if (!objectCell.equals(emptyCell)) {
                     row.addClass("barrier");
@@ -584,19 +1214,14 @@ public class Publishers extends AbstractStoredMap<TitanGuid, HashSet<Publishers.
         }
         XHTML.Table publishers = new XHTML.Table(new XHTML.Table.Caption("Published Object Records"), thead, tbody).setId("objectPublishers").setClass("Publishers");
 
-        return publishers;
-    }
-
-    @Override
-    public File keyToFile(File root, TitanGuid key) {
-        String s = key.toString();
-        StringBuilder result = new StringBuilder();
-        result.append(s.substring(0, 5)).append(File.separatorChar).append(s);
-        return new File(root, result.toString());
-    }   
+        XHTML.Table.Body statistics = new XHTML.Table.Body(
+                new XHTML.Table.Row(new XHTML.Table.Heading("Objects"), new XHTML.Table.Data("%d", this.size())),
+                new XHTML.Table.Row(new XHTML.Table.Heading("Records"), new XHTML.Table.Data("%d", this.getRecordCount())),
+                new XHTML.Table.Row(new XHTML.Table.Heading("Scheduled expirations"), new XHTML.Table.Data("%d", this.expirations.size())),
+                new XHTML.Table.Row(new XHTML.Table.Heading("Expired records"), new XHTML.Table.Data("%d", this.getExpiredCount())),
+                new XHTML.Table.Row(new XHTML.Table.Heading("Pending journal entries"), new XHTML.Table.Data("%d", this.journal.queue.size()))
+        );
 
-    @Override
-    public TitanGuid fileToKey(File file) {
-        return new TitanGuidImpl(file.getName());       
+        return new XHTML.Div(new XHTML.Table(new XHTML.Table.Caption("Publisher Index"), statistics).setClass("Publishers"), publishers);
     }
 }
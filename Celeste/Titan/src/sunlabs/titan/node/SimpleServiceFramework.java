@@ -163,7 +163,12 @@ public class SimpleServiceFramework implements TitanServiceFramework {
         TitanService a = this.get(subjectClass);
 
         if (a != null) {
-            return a.invokeMethod(subjectMethod, request);
+            long startTime = System.nanoTime();
+            try {
+                return a.invokeMethod(subjectMethod, request);
+            } finally {
+                this.node.getLoadMonitor().addDispatch(System.nanoTime() - startTime);
+            }
         }
 
         this.node.getLogger().severe("Unimplemented TitanService class: message type=%s class=%s method=%s (found=%s)", request.getType(), subjectClass, subjectMethod, a);
@@ -24,6 +24,7 @@ package sunlabs.titan.node;
 
 import java.io.IOException;
 
+import java.net.InetSocketAddress;
 import java.net.Socket;
 
 import javax.net.SocketFactory;
@@ -43,12 +44,27 @@ public class SocketCache extends LRUCache<SocketCache.Key, Socket> {
     /**
      * An immutable tuple class that uses a NodeAddress
      * to form a {@code SocketCache} lookup key.
+     * <p>
+     * The key also carries the time allowed to connect a socket created for it,
+     * which takes no part in matching keys.
+     * </p>
      */
     public static class Key {
         public final NodeAddress address;
+        public final int connectTimeoutMillis;
 
         public Key(NodeAddress address) {
+            this(address, 0);
+        }
+
+        /**
+         * @param address               the address of the node
+         * @param connectTimeoutMillis  the time allowed to connect a newly created socket, or 0 to wait indefinitely
+         *                              (see {@link Socket#connect(java.net.SocketAddress, int)})
+         */
+        public Key(NodeAddress address, int connectTimeoutMillis) {
             this.address = address;
+            this.connectTimeoutMillis = connectTimeoutMillis;
         }
 
         @Override
@@ -88,7 +104,13 @@ public class SocketCache extends LRUCache<SocketCache.Key, Socket> {
         }
 
         public Socket newInstance(Key key) throws IOException {
-            Socket s = socketFactory.createSocket(key.address.getMessageURL().getHost(), key.address.getMessageURL().getPort());
+            Socket s = socketFactory.createSocket();
+            try {
+                s.connect(new InetSocketAddress(key.address.getMessageURL().getHost(), key.address.getMessageURL().getPort()), key.connectTimeoutMillis);
+            } catch (IOException e) {
+                s.close();
+                throw e;
+            }
             s.setSoTimeout(this.socketTimeOutInMs);
             s.setKeepAlive(true);
             s.setTcpNoDelay(true);
@@ -142,6 +164,18 @@ public class SocketCache extends LRUCache<SocketCache.Key, Socket> {
         return this.getAndRemove(key);
     }
 
+    /**
+     * As {@link #getAndRemove(NodeAddress)}, but a socket created because the cache
+     * has none for {@code address} must connect within {@code connectTimeoutMillis} milliseconds.
+     *
+     * @param connectTimeoutMillis  the time allowed to connect, or 0 to wait indefinitely
+     */
+    public Socket getAndRemove(NodeAddress address, long connectTimeoutMillis)
+    throws Exception {
+        Key key = new Key(address, (int) Math.min(Integer.MAX_VALUE, Math.max(0, connectTimeoutMillis)));
+        return this.getAndRemove(key);
+    }
+
     /**
      * A convenience version of {@link LRUCache#addAndEvictOld(Object, Object)
      * addAndEvictOld()} that packages its arguments to form a suitable lookup
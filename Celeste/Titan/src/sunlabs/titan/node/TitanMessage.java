@@ -218,6 +218,9 @@ public class TitanMessage implements Serializable, XHTMLInspectable {
     private transient Serializable dataObject = null;
     private transient byte[] payload = null;
 
+    /** The number of bytes in the wire format of this message when it was last read or written, or zero. */
+    private transient int wireLength = 0;
+
     /**
      * 
      * @param type
@@ -289,6 +292,7 @@ public class TitanMessage implements Serializable, XHTMLInspectable {
         this.subjectId = (TitanGuidImpl) ois.readObject();        
 
         this.payload = payload;        
+        this.wireLength = 8 + header.length + payload.length;
     }
 
 
@@ -334,6 +338,15 @@ public class TitanMessage implements Serializable, XHTMLInspectable {
         out.writeInt(this.payload.length);
         out.write(header);
         out.write(this.payload);
+        this.wireLength = 8 + header.length + this.payload.length;
+    }
+
+    /**
+     * Get the number of bytes in the wire format of this message when it was last read (see {@link #newInstance(InputStream)})
+     * or written (see {@link #writeObject(DataOutputStream)}), or zero if it has been neither read nor written.
+     */
+    public int getWireLength() {
+        return this.wireLength;
     }
 
     //
@@ -86,10 +86,12 @@ import sunlabs.titan.node.services.api.MessageService;
 import sunlabs.titan.node.services.api.Publish;
 import sunlabs.titan.node.services.census.CensusService;
 import sunlabs.titan.node.services.objectstore.PublishDaemon;
+import sunlabs.titan.node.services.objectstore.RepairDaemon;
 import sunlabs.titan.node.services.xml.TitanXML;
 import sunlabs.titan.node.services.xml.TitanXML.XMLNode;
 import sunlabs.titan.node.util.DOLRLogger;
 import sunlabs.titan.node.util.DOLRLoggerMBean;
+import sunlabs.titan.node.util.LoadMonitor;
 import sunlabs.titan.util.DOLRStatus;
 import sunlabs.titan.util.OrderedProperties;
 import sunlabs.titan.util.WeakMBeanRegistrar;
@@ -193,6 +195,14 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
     public final static Attributes.Prototype ObjectStoreCapacity = new Attributes.Prototype(TitanNodeImpl.class, "ObjectStoreMaximum", "unlimited",
             "The maximum allowed size for the local object-store.");
     
+    /** The maximum total size, in bytes, of the objects held in the local object-store's cache of deserialized objects. */
+    public final static Attributes.Prototype ObjectStoreCacheCapacity = new Attributes.Prototype(TitanNodeImpl.class, "ObjectStoreCacheCapacity", 16*1024*1024,
+            "The maximum total size, in bytes, of the objects held in the local object-store's cache of deserialized objects.  Zero disables the cache.");
+
+    /** The size, in bytes, of the largest object that an object handler admits to the local object-store's cache. */
+    public final static Attributes.Prototype ObjectStoreCacheMaximumObjectSize = new Attributes.Prototype(TitanNodeImpl.class, "ObjectStoreCacheMaximumObjectSize", 64*1024,
+            "The size, in bytes, of the largest object that an object handler admits to the local object-store's cache.");
+
     /** The local start time of this TitanNode.  This Attribute is generated and is not configurable. */
     public final static Attributes.Prototype StartTime = new Attributes.Prototype(TitanNodeImpl.class, "StartTime", 0,
             "The local start time of this TitanNode.  This Attribute is generated and is not configurable.");
@@ -234,6 +244,9 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
     /** This Node's object store */
     private final TitanObjectStore store;
 
+    /** The measurements of this Node's load */
+    private final LoadMonitor loadMonitor;
+
     private ScheduledThreadPoolExecutor tasks;
 //    private ScheduledThreadPoolExecutor clientTasks;
 
@@ -258,6 +271,8 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
         this.configuration.add(TitanNodeImpl.GatewayRetryDelaySeconds);
         this.configuration.add(TitanNodeImpl.NodeAddress);
         this.configuration.add(TitanNodeImpl.ObjectStoreCapacity);
+        this.configuration.add(TitanNodeImpl.ObjectStoreCacheCapacity);
+        this.configuration.add(TitanNodeImpl.ObjectStoreCacheMaximumObjectSize);
         this.configuration.add(TitanNodeImpl.Version);
         this.configuration.add(TitanNodeImpl.MessageService);
         // Add some of the configuration parameters of the required services here because we need them below.
@@ -338,6 +353,7 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
             TitanNodeImpl.registrar.registerMBean(JMX.objectName(this.jmxObjectName, "log"), this.log, DOLRLoggerMBean.class);
 
             this.map = new NeighbourMap(this);
+            this.loadMonitor = new LoadMonitor();
             // XXX Should the object store be part of PublishDaemon? Or vice-versa?
             this.store = new TitanObjectStoreImpl(this, this.configuration.asString(TitanNodeImpl.ObjectStoreCapacity));
             this.objectPublishers = new Publishers(this, this.spoolDirectory);
@@ -370,6 +386,7 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
             this.getService(HTTPMessageService.class);
             this.getService(RoutingDaemon.class);
             this.getService(PublishDaemon.class);
+            this.getService(RepairDaemon.class);
             this.getService(ReflectionService.class);
             this.getService(CensusService.class);
         } catch (JMException e) {
@@ -462,6 +479,10 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
         return this.map;
     }
 
+    public LoadMonitor getLoadMonitor() {
+        return this.loadMonitor;
+    }
+
     /**
      * Get the object-id of the network that this Node is connected to.
      */
@@ -858,12 +879,9 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
                 new byte[0]);
         proxyMessage.setRawPayload(request.getRawPayLoad());
 
-        // To avoid a possible ConcurrentModificationException due to a publisher reporting that the object is not found and as a
-        // consequence of that unpublish message we remove it from the set of publishers while concurrently using that set here
-        // to iterate through the publishers, simply create a duplicate of the publisher Set.
-        
-        Set<Publishers.PublishRecord> publishers = new HashSet<Publishers.PublishRecord>();
-        publishers.addAll(this.objectPublishers.getPublishers(request.subjectId));
+        // The publisher Set is a copy, so a publisher reporting that the object is not found, and as a consequence
+        // being removed from the publishers by its unpublish message, does not disturb the iteration here.
+        Set<Publishers.PublishRecord> publishers = this.objectPublishers.getPublishers(request.subjectId);
 
         TitanMessage response;
         for (Publishers.PublishRecord publisher : publishers) {
@@ -1373,6 +1391,8 @@ public class TitanNodeImpl implements TitanNode, NodeMBean {
                 }
             }
         }
+
+        this.objectPublishers.close();
     }
 
     /**
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import sunlabs.asdf.util.AbstractStoredMap;
@@ -52,6 +53,7 @@ import sunlabs.titan.node.services.objectstore.PublishDaemon;
 import sunlabs.titan.node.services.xml.TitanXML;
 import sunlabs.titan.node.services.xml.TitanXML.XMLObject;
 import sunlabs.titan.node.services.xml.TitanXML.XMLObjectStore;
+import sunlabs.titan.node.util.ObjectCache;
 
 /**
  * <p>
@@ -111,6 +113,14 @@ import sunlabs.titan.node.services.xml.TitanXML.XMLObjectStore;
  * <p>
  * The object store also maintains the list of objects for which  this Node is the root.
  * </p>
+ * <p>
+ * Deserialized objects obtained through {@link #getReadOnly(Class, TitanGuid)} are kept in a cache bounded by
+ * the total size of their spool files (see {@link TitanNodeImpl#ObjectStoreCacheCapacity}).
+ * Only objects of the classes registered with {@link #setCacheAdmission(Class, long)} are admitted.
+ * An object is removed from the cache whenever it is stored or removed, which includes the storing of an object
+ * whose delete-token has been exposed.
+ * An object is admitted only while its lock is held, so a writer cannot replace it between reading it from the spool and caching it.
+ * </p>
  */
 public final class TitanObjectStoreImpl implements TitanObjectStore {
 
@@ -350,6 +360,27 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
     
     private final FileObjectStore3 fileStore;
 
+    private final ObjectCache<TitanGuid,TitanObject> cache;
+
+    /** For each {@link Class} admitted to the cache, the largest object that is admitted. */
+    private final Map<Class<?>,Long> cacheAdmission;
+
+    /**
+     * Code run by a {@link TitanObjectStoreImpl} after it stores each object.
+     * For testing only, for example to simulate a slow node.
+     *
+     * @see TitanObjectStoreImpl#setPutHook(PutHook)
+     */
+    public interface PutHook {
+        /**
+         * Called after the object {@code objectId} has been stored, before the put is complete.
+         * The time this takes is counted as part of the put.
+         */
+        public void afterPut(TitanGuid objectId);
+    }
+
+    private volatile PutHook putHook;
+
     /**
      * Create a local Beehive object store.  The object store
      * consists of both objects stored locally as well as the
@@ -360,6 +391,8 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
         this.fileStore = new FileObjectStore3(new File(node.getSpoolDirectory() + File.separator + "object-store" + File.separator + "object"), objectStoreCapacity);
 
         this.locks = new ObjectLock<TitanGuid>();
+        this.cache = new ObjectCache<TitanGuid,TitanObject>(node.getConfiguration().asLong(TitanNodeImpl.ObjectStoreCacheCapacity));
+        this.cacheAdmission = new ConcurrentHashMap<Class<?>,Long>();
     }
 
     public boolean containsObject(final TitanGuid objectId) {
@@ -428,6 +461,56 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
         throw new TitanObjectStoreImpl.NotFoundException("Object %s (%s) not found.", objectId, klasse.getName());
     }
     
+    public <C extends TitanObject> C getReadOnly(final Class<? extends C> klasse, final TitanGuid objectId)
+    throws ClassCastException, TitanObjectStoreImpl.NotFoundException {
+        TitanObject cached = this.cache.get(objectId);
+        if (cached != null) {
+            return klasse.cast(cached);
+        }
+
+        // If the lock is held by someone else, the object may be about to change, so read it without caching it.
+        if (!this.trylock(objectId)) {
+            return this.get(klasse, objectId);
+        }
+        try {
+            C object = this.get(klasse, objectId);
+            if (this.isAdmissible(object)) {
+                this.cache.put(objectId, object, this.fileStore.sizeOf(objectId));
+            }
+            return object;
+        } finally {
+            this.unlock(objectId);
+        }
+    }
+
+    /**
+     * Set the {@link PutHook} to run after each object is stored, or {@code null} for none.
+     * For testing only.
+     */
+    public void setPutHook(PutHook hook) {
+        this.putHook = hook;
+    }
+
+    private boolean isAdmissible(TitanObject object) {
+        if (this.cache.getCapacity() == 0 || Boolean.parseBoolean(object.getProperty(TitanObjectStore.METADATA_UNCACHABLE, "false"))) {
+            return false;
+        }
+        for (Map.Entry<Class<?>,Long> entry : this.cacheAdmission.entrySet()) {
+            if (entry.getKey().isInstance(object)) {
+                return this.fileStore.sizeOf(object.getObjectId()) <= entry.getValue();
+            }
+        }
+        return false;
+    }
+
+    public void setCacheAdmission(Class<? extends TitanObject> klasse, long maximumSize) {
+        if (maximumSize > 0) {
+            this.cacheAdmission.put(klasse, maximumSize);
+        } else {
+            this.cacheAdmission.remove(klasse);
+        }
+    }
+
     public <C extends TitanObject> C getAndLock(final Class<? extends C> klasse, final TitanGuid objectId)
     throws ClassCastException, TitanObjectStoreImpl.NotFoundException {
         synchronized (this.locks) {
@@ -531,9 +614,16 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
      * @throws IOException
      */
     private TitanObject put(TitanObject object) throws TitanObjectStoreImpl.InvalidObjectException, TitanObjectStoreImpl.NoSpaceException {
+        long startTime = System.nanoTime();
         try {
+            this.cache.remove(object.getObjectId());
             object.setProperty(TitanObjectStoreImpl.METADATA_CREATEDTIME, Time.currentTimeInSeconds());
             this.fileStore.put(object.getObjectId(), object);
+
+            PutHook hook = this.putHook;
+            if (hook != null) {
+                hook.afterPut(object.getObjectId());
+            }
             return object;
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
@@ -541,6 +631,8 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
             throw e;
         } catch (AbstractStoredMap.OutOfSpace e) {
             throw new TitanObjectStoreImpl.NoSpaceException("No space for object %s", object.getObjectId());
+        } finally {
+            this.node.getLoadMonitor().addPut(System.nanoTime() - startTime);
         }
     }
 
@@ -571,6 +663,10 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
         }
     }
 
+    public long getSpoolAvailable() {
+        return this.fileStore.getSpoolAvailable();
+    }
+
     public boolean remove(TitanObject object) {
         return this.remove(object.getObjectId());
     }
@@ -581,6 +677,7 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
         if (this.node.getLogger().isLoggable(Level.FINE)) {
             this.node.getLogger().fine("%s", objectId);
         }
+        this.cache.remove(objectId);
         return this.fileStore.remove(objectId);
     }
 
@@ -883,6 +980,26 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
         return result;
     }
 
+    private XHTML.Table cacheToXHTML() {
+        long hits = this.cache.getHits();
+        long lookups = hits + this.cache.getMisses();
+
+        XHTML.Table.Body tbody = new XHTML.Table.Body(
+                new XHTML.Table.Row(new XHTML.Table.Data("Objects"), new XHTML.Table.Data("%d", this.cache.getCount())),
+                new XHTML.Table.Row(new XHTML.Table.Data("Size"),
+                        new XHTML.Table.Data("%s of %s", Units.longToCapacityString(this.cache.getSize()), Units.longToCapacityString(this.cache.getCapacity()))),
+                new XHTML.Table.Row(new XHTML.Table.Data("Hits"),
+                        new XHTML.Table.Data("%d (%.1f%%)", hits, lookups == 0 ? 0.0 : hits * 100.0 / lookups)),
+                new XHTML.Table.Row(new XHTML.Table.Data("Misses"), new XHTML.Table.Data("%d", this.cache.getMisses())),
+                new XHTML.Table.Row(new XHTML.Table.Data("Evictions"), new XHTML.Table.Data("%d", this.cache.getEvictions())),
+                new XHTML.Table.Row(new XHTML.Table.Data("Invalidations"), new XHTML.Table.Data("%d", this.cache.getInvalidations())));
+
+        XHTML.Table.Caption caption = new XHTML.Table.Caption("Object Cache");
+        XHTML.Table table = new XHTML.Table(caption, tbody);
+        table.setClass("objectStoreCache");
+        return table;
+    }
+
     public XHTML.EFlow toXHTML(URI uri, Map<String,HTTP.Message> props) {
         Set<TitanGuid> objects = this.sortedKeySet();
 
@@ -969,6 +1086,6 @@ public final class TitanObjectStoreImpl implements TitanObjectStore {
         XHTML.Table table = new XHTML.Table(caption, thead, tbody);
         table.setClass("objectStore");
         table.setId("objectStore");
-        return new XHTML.Div(table).setClass("section");
+        return new XHTML.Div(table, this.cacheToXHTML()).setClass("section");
     }
 }
@@ -31,9 +31,13 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -43,9 +47,13 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -139,6 +147,18 @@ public class MutableObject {
          */
         public MutableObject.GetOperation.Response getObjectHistory(TitanMessage message, MutableObject.GetOperation.Request request) throws ClassNotFoundException, ClassCastException,
             TitanMessage.RemoteException, TitanObjectStoreImpl.NotFoundException;
+
+        /**
+         * Get this node's object histories for each of the replicas named in the given request.
+         * <p>
+         * Replicas that are not held by this node are omitted from the response.
+         * </p>
+         *
+         * @param message
+         * @param request
+         */
+        public MutableObject.GetOperation.BatchResponse getObjectHistories(TitanMessage message, MutableObject.GetOperation.BatchRequest request) throws ClassNotFoundException, ClassCastException,
+            TitanMessage.RemoteException;
     }
 
     /**
@@ -1467,17 +1487,15 @@ public class MutableObject {
         private MutableObject.Handler<?> handler;
         protected TitanGuid replicaId;
         private MutableObject.SetOperation.Request request;
-        private CountDownLatch countDown;
 
-        public SetObjectHistoryTask(CountDownLatch countDown, MutableObject.Handler<?> handler, TitanGuid replicaId, MutableObject.SetOperation.Request request) {
-            this.countDown = countDown;
+        public SetObjectHistoryTask(MutableObject.Handler<?> handler, TitanGuid replicaId, MutableObject.SetOperation.Request request) {
             this.handler = handler;
             this.replicaId = replicaId;
             this.request = request;
         }
 
         /**
-         * @see MutableObject.Handler#setObjectHistory(TitanMessage)
+         * @see MutableObject.Handler#setObjectHistory(TitanMessage, MutableObject.SetOperation.Request)
          */
         public MutableObject.ObjectHistory call() throws ObjectHistory.ValidationException, MutableObject.ProtocolException {
             try {
@@ -1497,9 +1515,6 @@ public class MutableObject {
                 throw new ObjectHistory.ValidationException(e);
             } catch (TitanMessage.RemoteException e) {
                 throw new ObjectHistory.ValidationException(e);
-            } finally {
-                if (this.countDown != null)
-                    this.countDown.countDown();
             }
         }
         
@@ -1508,8 +1523,93 @@ public class MutableObject {
         }
     }
 
+    /**
+     * A round of concurrent requests, one to each of a set of {@link ObjectHistory} replicas,
+     * that ends as soon as enough of the replicas have responded.
+     * <p>
+     * The tasks are run by the {@link TitanNode} of the {@link MutableObject.Handler}.
+     * As each task completes, the waiting thread passes it to {@link #completed(Callable, Future)},
+     * which returns {@code true} when the round has what it needs.
+     * The round ends then, or when every task has completed.
+     * Tasks that are still outstanding at the end of the round are cancelled.
+     * Those not yet started are never run, and those already running are left to finish and their responses are discarded.
+     * </p>
+     * <p>
+     * While waiting, the replicas that have not responded are logged every 10 seconds.
+     * </p>
+     */
+    private static abstract class QuorumRound<T extends Callable<R>,R> {
+        protected final MutableObject.Handler<?> handler;
+        private final String operation;
+        private final CompletionService<R> completions;
+        private final Map<Future<R>,T> tasks;
+
+        QuorumRound(final MutableObject.Handler<?> handler, String operation) {
+            this.handler = handler;
+            this.operation = operation;
+            this.completions = new ExecutorCompletionService<R>(new Executor() {
+                public void execute(Runnable command) {
+                    handler.getNode().execute(command);
+                }
+            });
+            this.tasks = new HashMap<Future<R>,T>();
+        }
+
+        void submit(T task) {
+            this.tasks.put(this.completions.submit(task), task);
+        }
+
+        /**
+         * Consume the given completed {@code task}, returning {@code true} if the round is finished.
+         */
+        abstract boolean completed(T task, Future<R> result);
+
+        void await() throws MutableObject.ProtocolException {
+            boolean complained = false;
+            try {
+                for (int outstanding = this.tasks.size(); outstanding > 0; /**/) {
+                    Future<R> result = this.completions.poll(10000, TimeUnit.MILLISECONDS);
+                    if (result == null) {
+                        for (Map.Entry<Future<R>,T> entry : this.tasks.entrySet()) {
+                            if (!entry.getKey().isDone()) {
+                                this.handler.getLogger().warning("(id=%d) waiting for %s of %s.",  Thread.currentThread().getId(), this.operation, entry.getValue());
+                            }
+                        }
+                        complained = true;
+                        continue;
+                    }
+                    outstanding--;
+                    if (this.completed(this.tasks.get(result), result)) {
+                        if (this.handler.getLogger().isLoggable(Level.FINE)) {
+                            this.handler.getLogger().fine("%s quorum after %d of %d requests", this.operation, this.tasks.size() - outstanding, this.tasks.size());
+                        }
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new MutableObject.ProtocolException(e);
+            } finally {
+                for (Future<R> result : this.tasks.keySet()) {
+                    if (!result.isDone()) {
+                        result.cancel(false);
+                    }
+                }
+            }
+
+            if (complained) {
+                this.handler.getLogger().warning("(id=%d) waiting done", Thread.currentThread().getId());
+            }
+        }
+    }
+
     /**
      * Set the current value of the object history set to the given value.
+     * <p>
+     * The new value is sent to every replica in {@code objectHistorySet},
+     * but this returns as soon as a quorum of them have responded (see {@link ObjectHistorySet#quorumSize()}),
+     * or as soon as so many have failed that a quorum is no longer possible.
+     * In the latter case the resultant {@code ObjectHistorySet} is {@link ObjectHistorySet.State#INCONCLUSIVE INCONCLUSIVE}.
+     * </p>
      *
      * @param handler the invoking {@link MutableObject.Handler} for this operation
      * @param objectHistorySet the current {@link ObjectHistorySet}
@@ -1530,65 +1630,43 @@ public class MutableObject {
             handler.getLogger().fine("updating %d replicas", objectHistorySet.histories.keySet().size());
         }
 
-        MutableObject.ObjectHistorySet result = new MutableObject.ObjectHistorySet(objectHistorySet.getMutableObjectIdObjectId(), params);
+        final MutableObject.ObjectHistorySet result = new MutableObject.ObjectHistorySet(objectHistorySet.getMutableObjectIdObjectId(), params);
         
         MutableObject.SetOperation.Request request = new MutableObject.SetOperation.Request(objectHistorySet, newValue);
 
-        Map<FutureTask<MutableObject.ObjectHistory>, MutableObject.SetObjectHistoryTask> taskTracker =
-            new HashMap<FutureTask<MutableObject.ObjectHistory>, MutableObject.SetObjectHistoryTask>();
+        final int replicas = objectHistorySet.histories.keySet().size();
+        QuorumRound<SetObjectHistoryTask,MutableObject.ObjectHistory> round = new QuorumRound<SetObjectHistoryTask,MutableObject.ObjectHistory>(handler, "set") {
+            private int failed = 0;
 
-        // Set the CountDownLatch to the total number of replicas to update.
-        // As each replica is updated, the Thread performing the update will decrement the latch.
-        CountDownLatch countDown = new CountDownLatch(objectHistorySet.histories.keySet().size());
-        for (TitanGuid replicaId : objectHistorySet.histories.keySet()) {
-            MutableObject.SetObjectHistoryTask setter = new MutableObject.SetObjectHistoryTask(countDown, handler, replicaId, request);
-            FutureTask<MutableObject.ObjectHistory> task = new FutureTask<MutableObject.ObjectHistory>(setter);
-            taskTracker.put(task, setter);
-            handler.getNode().execute(task);
-        }
-        
-        boolean complainedAboutWaiting = false;
-        for (;;) {
-            try {
-                if (countDown.await(10000, TimeUnit.MILLISECONDS))
-                    break;
-                for (FutureTask<MutableObject.ObjectHistory> task : taskTracker.keySet()) {
-                    if (!task.isDone()) {
-                        SetObjectHistoryTask t = taskTracker.get(task);
-                        handler.getLogger().warning("(id=%d) waiting for set of %s.",  Thread.currentThread().getId(), t.replicaId);
-                    }                        
+            @Override
+            boolean completed(SetObjectHistoryTask task, Future<MutableObject.ObjectHistory> future) {
+                try {
+                    MutableObject.ObjectHistory history = future.get();
+                    result.put(history);
+                    if (this.handler.getLogger().isLoggable(Level.FINEST)) {
+                        this.handler.getLogger().finest("replica %s: %s", history.getReplicaId(), result.getState());
+                    }
+                } catch (ExecutionException e) {
+                    if (this.handler.getLogger().isLoggable(Level.FINE)) {
+                        this.handler.getLogger().fine("%s: %s", task, e.getCause());
+                    }
+                    this.failed++;
+                } catch (InterruptedException e) {
+                    this.failed++;
                 }
-
-                complainedAboutWaiting = true;
-            } catch (InterruptedException e) {
-                throw new MutableObject.ProtocolException(e);
+                // Done when there is a quorum, or when the remaining replicas can no longer make one and the protocol must be restarted.
+                return result.size() >= result.quorumSize() || replicas - this.failed < result.quorumSize();
             }
-        }
+        };
 
-        if (complainedAboutWaiting) {
-            handler.getLogger().warning("(id=%d) waiting done", Thread.currentThread().getId());
+        for (TitanGuid replicaId : objectHistorySet.histories.keySet()) {
+            round.submit(new MutableObject.SetObjectHistoryTask(handler, replicaId, request));
         }
 
-        if (handler.getLogger().isLoggable(Level.FINE)) {
-            handler.getLogger().fine("collating");
-        }
+        round.await();
 
-        for (FutureTask<MutableObject.ObjectHistory> task : taskTracker.keySet()) {
-            try {
-                MutableObject.ObjectHistory history = task.get();
-                result.put(history);
-                if (handler.getLogger().isLoggable(Level.FINEST)) {
-                    handler.getLogger().finest("replica %s: %s", history.getReplicaId(), result.getState());
-                }
-            } catch (ExecutionException e) {
-                e.printStackTrace();
-                // restart the protocol
-                return result;
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-                // restart the protocol
-                return result;
-            }                
+        if (handler.getLogger().isLoggable(Level.FINE)) {
+            handler.getLogger().fine("collated %d replicas: %s", result.size(), result.getState());
         }
 
         return result;
@@ -1680,36 +1758,192 @@ public class MutableObject {
                 return this.history;
             }
         }
+
+        public static class BatchRequest implements Serializable {
+            private final static long serialVersionUID = 1L;
+
+            private List<TitanGuid> replicaIds;
+
+            public BatchRequest(Collection<TitanGuid> replicaIds) {
+                this.replicaIds = new ArrayList<TitanGuid>(replicaIds);
+            }
+
+            public List<TitanGuid> getReplicaIds() {
+                return this.replicaIds;
+            }
+        }
+
+        public static class BatchResponse implements Serializable {
+            private final static long serialVersionUID = 1L;
+
+            private Map<TitanGuid,MutableObject.ObjectHistory> histories;
+
+            public BatchResponse(Map<TitanGuid,MutableObject.ObjectHistory> histories) {
+                if (histories == null) {
+                    throw new NullPointerException("parameter may not be null");
+                }
+                this.histories = histories;
+            }
+
+            /**
+             * Get the histories in this response, indexed by replica-id.
+             */
+            public Map<TitanGuid,MutableObject.ObjectHistory> getObjectHistories() {
+                return this.histories;
+            }
+        }
+    }
+
+    /**
+     * A bounded record of the nodes that have recently answered for {@link ObjectHistory} replicas.
+     * <p>
+     * Replicas are stored wherever the object pool placed them, so the node holding a replica
+     * is only known by remembering which node last responded for it.
+     * Entries are hints.
+     * When a node no longer has a replica, it omits the replica from its response and the entry is removed.
+     * </p>
+     */
+    public static class ReplicaLocations {
+        private final Map<TitanGuid,TitanNodeId> locations;
+
+        /**
+         * Construct a new record of at most {@code capacity} replica locations, discarding the least recently used.
+         */
+        public ReplicaLocations(final int capacity) {
+            this.locations = new LinkedHashMap<TitanGuid,TitanNodeId>(16, 0.75f, true) {
+                private final static long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TitanGuid,TitanNodeId> eldest) {
+                    return this.size() > capacity;
+                }
+            };
+        }
+
+        public synchronized TitanNodeId get(TitanGuid replicaId) {
+            return this.locations.get(replicaId);
+        }
+
+        public synchronized void put(TitanGuid replicaId, TitanNodeId nodeId) {
+            this.locations.put(replicaId, nodeId);
+        }
+
+        public synchronized void remove(TitanGuid replicaId) {
+            this.locations.remove(replicaId);
+        }
+
+        public synchronized int size() {
+            return this.locations.size();
+        }
+    }
+
+    /**
+     * Retrieve a set of MutableObject {@link ObjectHistory} replicas.
+     * <p>
+     * If the node holding the replicas is known, they are all requested in one message sent directly to that node.
+     * Otherwise the task retrieves a single replica by routing the request to the replica's object-id,
+     * and the node that responds is recorded in the {@link ReplicaLocations}.
+     * </p>
+     * <p>
+     * Only histories of the requested replicas are returned and anything else in a response is discarded.
+     * Requested replicas that the node did not return are removed from the {@code ReplicaLocations}.
+     * </p>
+     */
+    protected static class GetObjectHistoriesTask implements Callable<Collection<MutableObject.ObjectHistory>> {
+        private MutableObject.Handler<?> handler;
+        private TitanNodeId nodeId;
+        private Set<TitanGuid> replicaIds;
+        private ReplicaLocations locations;
+
+        /**
+         * Retrieve the specified replicas {@code replicaIds} from the node {@code nodeId}.
+         */
+        public GetObjectHistoriesTask(MutableObject.Handler<?> handler, TitanNodeId nodeId, Set<TitanGuid> replicaIds, ReplicaLocations locations) {
+            this.handler = handler;
+            this.nodeId = nodeId;
+            this.replicaIds = replicaIds;
+            this.locations = locations;
+        }
+
+        /**
+         * Retrieve the specified replica {@code replicaId} from whichever node holds it.
+         */
+        public GetObjectHistoriesTask(MutableObject.Handler<?> handler, TitanGuid replicaId, ReplicaLocations locations) {
+            this(handler, null, Collections.singleton(replicaId), locations);
+        }
+
+        public Collection<MutableObject.ObjectHistory> call() throws ObjectHistory.ValidationException {
+            try {
+                if (this.nodeId == null) {
+                    TitanGuid replicaId = this.replicaIds.iterator().next();
+                    TitanMessage reply = this.handler.getNode().sendToObject(replicaId, this.handler.getName(), "getObjectHistory", new MutableObject.GetOperation.Request(replicaId));
+                    if (reply != null && reply.getStatus().isSuccessful()) {
+                        MutableObject.ObjectHistory history = reply.getPayload(MutableObject.GetOperation.Response.class, this.handler.getNode()).getObjectHistory();
+                        if (replicaId.equals(history.getReplicaId())) {
+                            this.locations.put(replicaId, reply.getSource().getObjectId());
+                            return Collections.singletonList(history);
+                        }
+                    }
+                    return Collections.emptyList();
+                }
+
+                List<MutableObject.ObjectHistory> result = new LinkedList<MutableObject.ObjectHistory>();
+                Map<TitanGuid,MutableObject.ObjectHistory> histories = Collections.emptyMap();
+                try {
+                    TitanMessage reply = this.handler.getNode().sendToNodeExactly(this.nodeId, this.handler.getName(), "getObjectHistories",
+                            new MutableObject.GetOperation.BatchRequest(this.replicaIds));
+                    if (reply != null && reply.getStatus().isSuccessful()) {
+                        histories = reply.getPayload(MutableObject.GetOperation.BatchResponse.class, this.handler.getNode()).getObjectHistories();
+                    }
+                } finally {
+                    for (TitanGuid replicaId : this.replicaIds) {
+                        MutableObject.ObjectHistory history = histories.get(replicaId);
+                        if (history != null && replicaId.equals(history.getReplicaId())) {
+                            result.add(history);
+                        } else {
+                            this.locations.remove(replicaId);
+                        }
+                    }
+                }
+                return result;
+            } catch (TitanNode.NoSuchNodeException e) {
+                throw new ObjectHistory.ValidationException(e);
+            } catch (ClassNotFoundException e) {
+                throw new ObjectHistory.ValidationException(e);
+            } catch (RemoteException e) {
+                throw new ObjectHistory.ValidationException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (this.nodeId == null) {
+                return String.format("GetObjectHistoriesTask: replica=%s", this.replicaIds.iterator().next());
+            }
+            return String.format("GetObjectHistoriesTask: node=%s replicas=%d", this.nodeId, this.replicaIds.size());
+        }
     }
 
     /**
-     * Retrieve a specified MutableObject ObjectHistory {@code replicaId} and add it to a cumulative {@link ObjectHistorySet}.
+     * Retrieve a specified MutableObject ObjectHistory {@code replicaId}.
      * <p>
      * This class implements the {@link Callable} interface returning
-     * a {@link MutableObject.ObjectHistory} replica.
+     * a {@link MutableObject.ObjectHistory} replica, or {@code null} if the replica could not be retrieved.
      * </p>
      */
     protected static class GetObjectHistoryTask implements Callable<MutableObject.ObjectHistory> {
         private MutableObject.Handler<?> handler;
         private TitanGuid replicaId;
-        private CountDownLatch countDown;
-        private MutableObject.ObjectHistorySet objectHistorySet;
 
         /**
-         * Retrieve the specified MutableObject replica {@code replicaId},
-         * insert that replica into the given {@link ObjectHistorySet} {@code result} (the ObjectHistorySet implementation must be thread-safe)
-         * and if the subsequent state of the ObjectHistorySet is COMPLETE, or the replica
-         * is the last replica of the universe of replicas, the {@link CountDownLatch#countDown()} method is invoked on {@code countDown}.
+         * Retrieve the specified MutableObject replica {@code replicaId}.
          *
-         * @param countDown the {@link CountDownLatch} to be count-down upon a COMPLETE ObjectHistorySet, or the last replica is added to the ObjectHistorySet.
          * @param handler the {@link TitanObjectHandler} instance for the MutableObject.
          * @param replicaId {@link TitanGuid} of the replica to retrieve.
          */
-        public GetObjectHistoryTask(CountDownLatch countDown, MutableObject.Handler<?> handler, TitanGuid replicaId, MutableObject.ObjectHistorySet result) {
-            this.countDown = countDown;
+        public GetObjectHistoryTask(MutableObject.Handler<?> handler, TitanGuid replicaId) {
             this.handler = handler;
             this.replicaId = replicaId;
-            this.objectHistorySet = result;
         }
 
         public MutableObject.ObjectHistory call() throws ObjectHistory.ValidationException {
@@ -1720,32 +1954,7 @@ public class MutableObject {
                     if (reply.getStatus().isSuccessful()) {
                         try {
                             MutableObject.GetOperation.Response response = reply.getPayload(MutableObject.GetOperation.Response.class, this.handler.getNode());
-                            MutableObject.ObjectHistory history = response.getObjectHistory();
-
-                            if (history != null) {
-                                // If the state of the ObjectHistorySet we're working on is not yet COMPLETE,
-                                // add the retrieved ObjectHistory to it.  Otherwise, if it is COMPLETE
-                                // and there are still running tasks retrieving other instances of
-                                // ObjectHistory, try to preempt them because they are now unnecessary.
-                                // XXX It's reasonable to stop fetching replicas when the state of the ObjectHistorySet is COMPLETE or repairable.
-                                if (objectHistorySet.getState() != ObjectHistorySet.State.COMPLETE) {
-                                    if  (objectHistorySet.put(history)) {
-                                        if (handler.getLogger().isLoggable(Level.FINEST)) {
-                                            handler.getLogger().finest("replica %s: %s", history.getReplicaId(), objectHistorySet.getState());
-                                        }
-                                    }
-                                }
-
-                                if (objectHistorySet.getState() == ObjectHistorySet.State.COMPLETE && this.countDown.getCount() != 0) {
-                                    // Since there are enough replicas to have a COMPLETE state,
-                                    // this forces a preemptive end to fetching the rest of the replicas.
-                                    for (int i = 0; i < objectHistorySet.getUniverseSize(); i++) {
-                                        this.countDown.countDown();
-                                    }
-                                }
-                            }
-
-                            return history;
+                            return response.getObjectHistory();
                         } catch (RemoteException e) {
                             throw new ObjectHistory.ValidationException(e);
                         }
@@ -1754,9 +1963,6 @@ public class MutableObject {
                 return null;
             } catch (ClassNotFoundException e) {
                 throw new ObjectHistory.ValidationException(e);
-            } finally {
-                if (this.countDown != null)
-                    this.countDown.countDown();
             }
         }
 
@@ -2042,6 +2248,7 @@ public class MutableObject {
      * <p>
      * Collect the set of {@link ObjectHistory} replicas for the {@link MutableObject}
      * {@code objectId} from the object pool.
+     * All of the replicas are requested, but this returns as soon as a quorum of them have responded (see {@link ObjectHistorySet#quorumSize()}).
      * </p>
      *
      * @param handler The ObjectType implementation that implements {@link MutableObject.Handler}.
@@ -2059,49 +2266,39 @@ public class MutableObject {
             handler.getLogger().fine(objectId.toString());
         }
 
-        MutableObject.ObjectHistorySet result = new MutableObject.ObjectHistorySet(objectId, params);
-
-        // Set countDown to the quorum's universe size.
-        // Each GetObjectHistory instance decrements countDown whether or not it was successful.
-        // If a GetObjectHistory instance causes the ObjectHistorySet to become complete,
-        // it issues all of the count-downs in order to release the await() invocation.
-        CountDownLatch countDown = new CountDownLatch(result.getUniverseSize());
-
-        Map<FutureTask<MutableObject.ObjectHistory>, MutableObject.GetObjectHistoryTask> taskTracker =
-            new HashMap<FutureTask<MutableObject.ObjectHistory>, MutableObject.GetObjectHistoryTask>();
+        final MutableObject.ObjectHistorySet result = new MutableObject.ObjectHistorySet(objectId, params);
 
-        for (int r = 0; r < result.getUniverseSize() && result.getState() != ObjectHistorySet.State.COMPLETE; r++) {
-            TitanGuid replicaId = objectId.add(r);
-            MutableObject.GetObjectHistoryTask getter = new MutableObject.GetObjectHistoryTask(countDown, handler, replicaId, result);
-            FutureTask<MutableObject.ObjectHistory> task = new FutureTask<MutableObject.ObjectHistory>(getter);
-            taskTracker.put(task, getter);
-            handler.getNode().execute(task);
-        }
-
-        boolean complained = false;        
-        for (;;) {
-            try {
-                if (countDown.await(10000, TimeUnit.MILLISECONDS))
-                    break;
-                for (FutureTask<MutableObject.ObjectHistory> task : taskTracker.keySet()) {
-                    if (!task.isDone()) {
-                        GetObjectHistoryTask t = taskTracker.get(task);
-                        handler.getLogger().warning("(id=%d) waiting for retrieve of %s.",  Thread.currentThread().getId(), t.replicaId);
-                    }                        
+        // Each response is added to the ObjectHistorySet by this thread as it arrives.
+        // As soon as the set holds a quorum of replicas it can be classified, and the remaining responses are not needed.
+        QuorumRound<GetObjectHistoryTask,MutableObject.ObjectHistory> round = new QuorumRound<GetObjectHistoryTask,MutableObject.ObjectHistory>(handler, "retrieve") {
+            @Override
+            boolean completed(GetObjectHistoryTask task, Future<MutableObject.ObjectHistory> future) {
+                try {
+                    MutableObject.ObjectHistory history = future.get();
+                    if (history != null) {
+                        result.put(history);
+                        if (this.handler.getLogger().isLoggable(Level.FINEST)) {
+                            this.handler.getLogger().finest("replica %s: %s", history.getReplicaId(), result.getState());
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    if (this.handler.getLogger().isLoggable(Level.FINE)) {
+                        this.handler.getLogger().fine("%s: %s", task, e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    // Treat this replica as unavailable.
                 }
-
-                complained = true;
-            } catch (InterruptedException e) {
-                throw new MutableObject.ProtocolException(e);
+                return result.getState() == ObjectHistorySet.State.COMPLETE || result.size() >= result.quorumSize();
             }
-        }
+        };
 
-        if (handler.getLogger().isLoggable(Level.WARNING)) {
-            if (complained) {
-                handler.getLogger().warning("(id=%d) waiting done.", Thread.currentThread().getId());
-            }
+        for (int r = 0; r < result.getUniverseSize(); r++) {
+            TitanGuid replicaId = objectId.add(r);
+            round.submit(new MutableObject.GetObjectHistoryTask(handler, replicaId));
         }
 
+        round.await();
+
         return result;
     }
 
@@ -2320,6 +2517,138 @@ public class MutableObject {
         throw new MutableObject.NotFoundException("%s not found.", objectId);
     }
 
+    /**
+     * The maximum number of replicas requested in one message by {@link #getValues(MutableObject.Handler, Collection, MutableObject.Parameters, ReplicaLocations)}.
+     */
+    public final static int GET_BATCH_SIZE = 256;
+
+    /**
+     * Get the values of many MutableObjects at once.
+     * <p>
+     * This is equivalent to calling {@link #getValue(MutableObject.Handler, MutableObject.ObjectId, MutableObject.Parameters)}
+     * for each of the given {@code objectIds}, but the replicas whose location is recorded in {@code locations}
+     * are requested in batches, one message per node for up to {@link #GET_BATCH_SIZE} replicas,
+     * instead of one message per replica.
+     * Replicas of unknown location are requested individually and their locations are recorded for the next time.
+     * </p>
+     * <p>
+     * All of the requests are made concurrently, and the round ends as soon as every object has a quorum of replicas.
+     * Each object whose {@link ObjectHistorySet} is then {@link ObjectHistorySet.State#COMPLETE COMPLETE} gets the latest value.
+     * The others, whether in need of repair or short of a quorum, are resolved one at a time by {@code getValue}.
+     * </p>
+     *
+     * @param handler The ObjectType implementation that implements {@link MutableObject.Handler}.
+     * @param objectIds The {@link MutableObject.ObjectId}s of the objects to get.
+     * @param params The parameters specifying at least the number of faulty and byzantine replicas to tolerate.
+     * @param locations The known locations of replicas, which is updated with the locations learned here.
+     *
+     * @return A map of each object-id to its value, which is {@code null} if the object has no value.
+     *         Objects whose value could not be determined are absent from the map.
+     *
+     * @throws MutableObject.ProtocolException
+     */
+    public static Map<MutableObject.ObjectId,MutableObject.Value> getValues(MutableObject.Handler<?> handler, Collection<MutableObject.ObjectId> objectIds,
+            MutableObject.Parameters params, ReplicaLocations locations)
+    throws MutableObject.ProtocolException {
+
+        if (handler.getLogger().isLoggable(Level.FINE)) {
+            handler.getLogger().fine("%d objects", objectIds.size());
+        }
+
+        final Map<MutableObject.ObjectId,MutableObject.ObjectHistorySet> objects = new LinkedHashMap<MutableObject.ObjectId,MutableObject.ObjectHistorySet>();
+        final Map<TitanGuid,MutableObject.ObjectHistorySet> replicas = new HashMap<TitanGuid,MutableObject.ObjectHistorySet>();
+        for (MutableObject.ObjectId objectId : objectIds) {
+            MutableObject.ObjectHistorySet objectHistorySet = new MutableObject.ObjectHistorySet(objectId, params);
+            objects.put(objectId, objectHistorySet);
+            for (int r = 0; r < objectHistorySet.getUniverseSize(); r++) {
+                replicas.put(objectId.add(r), objectHistorySet);
+            }
+        }
+
+        // The histories from every response are added to the ObjectHistorySet of their object by this thread.
+        // A response may only contain replicas that were requested in it, and each replica must belong to the object it is filed under.
+        final Set<MutableObject.ObjectId> pending = new HashSet<MutableObject.ObjectId>(objects.keySet());
+        QuorumRound<GetObjectHistoriesTask,Collection<MutableObject.ObjectHistory>> round =
+            new QuorumRound<GetObjectHistoriesTask,Collection<MutableObject.ObjectHistory>>(handler, "batch retrieve") {
+            @Override
+            boolean completed(GetObjectHistoriesTask task, Future<Collection<MutableObject.ObjectHistory>> future) {
+                try {
+                    for (MutableObject.ObjectHistory history : future.get()) {
+                        MutableObject.ObjectHistorySet objectHistorySet = replicas.get(history.getReplicaId());
+                        if (objectHistorySet == null || !objectHistorySet.getMutableObjectIdObjectId().equals(history.objectId)) {
+                            this.handler.getLogger().warning("%s: discarding unexpected replica %s", task, history.getReplicaId());
+                            continue;
+                        }
+                        objectHistorySet.put(history);
+                        if (objectHistorySet.getState() == ObjectHistorySet.State.COMPLETE || objectHistorySet.size() >= objectHistorySet.quorumSize()) {
+                            pending.remove(objectHistorySet.getMutableObjectIdObjectId());
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    if (this.handler.getLogger().isLoggable(Level.FINE)) {
+                        this.handler.getLogger().fine("%s: %s", task, e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    // Treat these replicas as unavailable.
+                }
+                return pending.isEmpty();
+            }
+        };
+
+        Map<TitanNodeId,Set<TitanGuid>> batches = new HashMap<TitanNodeId,Set<TitanGuid>>();
+        for (TitanGuid replicaId : replicas.keySet()) {
+            TitanNodeId nodeId = locations.get(replicaId);
+            if (nodeId == null) {
+                round.submit(new MutableObject.GetObjectHistoriesTask(handler, replicaId, locations));
+            } else {
+                Set<TitanGuid> batch = batches.get(nodeId);
+                if (batch == null) {
+                    batch = new HashSet<TitanGuid>();
+                    batches.put(nodeId, batch);
+                }
+                batch.add(replicaId);
+                if (batch.size() >= MutableObject.GET_BATCH_SIZE) {
+                    round.submit(new MutableObject.GetObjectHistoriesTask(handler, nodeId, batch, locations));
+                    batches.remove(nodeId);
+                }
+            }
+        }
+        for (Map.Entry<TitanNodeId,Set<TitanGuid>> entry : batches.entrySet()) {
+            round.submit(new MutableObject.GetObjectHistoriesTask(handler, entry.getKey(), entry.getValue(), locations));
+        }
+
+        round.await();
+
+        Map<MutableObject.ObjectId,MutableObject.Value> result = new LinkedHashMap<MutableObject.ObjectId,MutableObject.Value>();
+        int resolved = 0;
+        for (Map.Entry<MutableObject.ObjectId,MutableObject.ObjectHistorySet> entry : objects.entrySet()) {
+            MutableObject.ObjectHistorySet objectHistorySet = entry.getValue();
+            if (objectHistorySet.getState() == ObjectHistorySet.State.COMPLETE) {
+                TimeStamp latestTimeStamp = objectHistorySet.getLatestCandidate();
+                result.put(entry.getKey(), latestTimeStamp == null ? null : latestTimeStamp.getValue());
+                resolved++;
+            } else {
+                try {
+                    result.put(entry.getKey(), MutableObject.getValue(handler, entry.getKey(), params));
+                } catch (MutableObject.InsufficientResourcesException e) {
+                    if (handler.getLogger().isLoggable(Level.FINE)) {
+                        handler.getLogger().fine("%s: %s", entry.getKey(), e);
+                    }
+                } catch (MutableObject.NotFoundException e) {
+                    if (handler.getLogger().isLoggable(Level.FINE)) {
+                        handler.getLogger().fine("%s: %s", entry.getKey(), e);
+                    }
+                }
+            }
+        }
+
+        if (handler.getLogger().isLoggable(Level.FINE)) {
+            handler.getLogger().fine("%d of %d objects complete in one round", resolved, objects.size());
+        }
+
+        return result;
+    }
+
     /**
      * Set the value of a MutableObject.
      * 
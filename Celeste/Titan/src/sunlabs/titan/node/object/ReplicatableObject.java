@@ -25,19 +25,20 @@ package sunlabs.titan.node.object;
 
 import java.io.Serializable;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 
+import sunlabs.asdf.util.Time;
 import sunlabs.titan.api.TitanGuid;
-import sunlabs.titan.api.TitanNode;
 import sunlabs.titan.api.TitanNodeId;
 import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.api.TitanObjectStore;
 import sunlabs.titan.node.BeehiveObjectPool;
 import sunlabs.titan.node.TitanObjectStoreImpl;
-import sunlabs.titan.node.Publishers;
 import sunlabs.titan.node.TitanMessage;
-import sunlabs.titan.node.TitanMessage.RemoteException;
 import sunlabs.titan.node.services.api.Publish;
+import sunlabs.titan.node.services.objectstore.RepairDaemon;
 
 /**
  * A ReplicatableObject is an object in the object pool that is replicated and the pool
@@ -74,6 +75,22 @@ public class ReplicatableObject {
 	    public ReplicatableObject.Replicate.Response replicateObject(TitanMessage message) throws ClassNotFoundException, ClassCastException,
 	    TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception;
 	    
+	    /**
+	     * Replicate each of the objects specified in the given {@link ReplicatableObject.Replicate.BatchRequest}.
+	     * <p>
+	     * This method is invoked by the root of each object's identifier, through its {@link RepairDaemon},
+	     * to restore the number of copies of under-replicated objects that this node publishes.
+	     * Typically implementations simply return the result of
+	     * {@link ReplicatableObject#replicateObjectsHelper(ReplicatableObject.Handler, ReplicatableObject.Replicate.BatchRequest)}.
+	     * </p>
+	     * @param message the received {@link TitanMessage}.
+	     * @param request the {@link ReplicatableObject.Replicate.BatchRequest} in the message payload.
+	     * @return a {@link ReplicatableObject.Replicate.BatchResponse} containing the identifiers of the objects that were replicated.
+	     * @throws ClassNotFoundException
+	     * @throws ClassCastException
+	     */
+	    public ReplicatableObject.Replicate.BatchResponse replicateObjects(TitanMessage message, ReplicatableObject.Replicate.BatchRequest request) throws ClassNotFoundException, ClassCastException;
+
 	    /**
 	     * Specifies the specific behaviours of instances of {@link TitanObject} that implement {@link ReplicatableObject.Handler.Object}.
 	     */
@@ -91,14 +108,24 @@ public class ReplicatableObject {
                 
             private TitanGuid objectId;
             private Set<TitanNodeId> excludedNodes;
+            private int copies;
             
             /**
              * Construct a request to replicate the object identified by {@code objectId} which is currently
              * being published by the nodes specified in the {@link Set} {@code publishers}.
              */
 	        public Request(TitanGuid objectId, Set<TitanNodeId> excludedNodes) {
+	            this(objectId, excludedNodes, 1);
+	        }
+
+	        /**
+	         * Construct a request to make {@code copies} additional copies of the object identified by {@code objectId},
+	         * avoiding the nodes specified in the {@link Set} {@code excludedNodes}.
+	         */
+	        public Request(TitanGuid objectId, Set<TitanNodeId> excludedNodes, int copies) {
 	            this.objectId = objectId;
 	            this.excludedNodes = excludedNodes;
+	            this.copies = copies;
 	        }
 	        
 	        /**
@@ -118,6 +145,14 @@ public class ReplicatableObject {
 	        public TitanGuid getObjectId() {
 	            return this.objectId;
 	        }
+
+	        /**
+	         * Get the number of additional copies of the object to make.
+	         */
+	        public int getCopies() {
+	            // Requests from nodes that predate the copies field deserialise with a value of zero.
+	            return Math.max(1, this.copies);
+	        }
 	    }
 	    
 	    public static class Response implements Serializable {
@@ -127,6 +162,40 @@ public class ReplicatableObject {
 	            
 	        }
 	    }
+
+	    /**
+	     * A request to replicate a batch of objects all published by the receiving node.
+	     */
+	    public static class BatchRequest implements Serializable {
+	        private static final long serialVersionUID = 1;
+
+	        private List<ReplicatableObject.Replicate.Request> requests;
+
+	        public BatchRequest(List<ReplicatableObject.Replicate.Request> requests) {
+	            this.requests = requests;
+	        }
+
+	        public List<ReplicatableObject.Replicate.Request> getRequests() {
+	            return this.requests;
+	        }
+	    }
+
+	    public static class BatchResponse implements Serializable {
+	        private static final long serialVersionUID = 1;
+
+	        private Set<TitanGuid> replicated;
+
+	        public BatchResponse(Set<TitanGuid> replicated) {
+	            this.replicated = replicated;
+	        }
+
+	        /**
+	         * Get the {@link Set} of the {@link TitanGuid}s of the objects that were successfully replicated.
+	         */
+	        public Set<TitanGuid> getReplicated() {
+	            return this.replicated;
+	        }
+	    }
 	}
 
 	/**
@@ -135,59 +204,70 @@ public class ReplicatableObject {
 	 * <p>
 	 * Must only be called by the root of the object id.
 	 * </p>
+	 * <p>
+	 * Each unpublished object is handed to this node's {@link RepairDaemon} which decides, in order of need,
+	 * which objects are under-replicated and schedules the transfers to restore them.
+	 * </p>
 	 */
 	public static void unpublishObjectRootHelper(ReplicatableObject.Handler<? extends ReplicatableObject.Handler.Object> handler, Publish.PublishUnpublishRequest request) {
-	    try {
-	        for (TitanGuid objectId : request.getObjects().keySet()) {
-	            Set<Publishers.PublishRecord> publishers = handler.getNode().getObjectPublishers().getPublishers(objectId);
-	            Publishers.PublishRecord bestPublisher = null;
+	    RepairDaemon repairDaemon = handler.getNode().getService(RepairDaemon.class);
+	    TitanNodeId unpublisher = request.getPublisherAddress().getObjectId();
+
+	    for (TitanGuid objectId : request.getObjects().keySet()) {
+	        if (handler.getLogger().isLoggable(Level.FINE)) {
+	            handler.getLogger().fine("objectId=%s unpublished by %s", objectId, unpublisher);
+	        }
+	        repairDaemon.repair(objectId, unpublisher);
+	    }
+	}
 
+	/**
+	 * A helper function for classes implementing the {@link ReplicatableObject.Handler} interface to
+	 * satisfy a {@link ReplicatableObject.Replicate.BatchRequest}.
+	 * <p>
+	 * Each object in the batch is taken from the local object store and stored again in the object pool
+	 * the number of times specified in the corresponding {@link ReplicatableObject.Replicate.Request},
+	 * avoiding the nodes that already have a copy.
+	 * Objects that are not in the local object store, are deleted, or cannot be stored are omitted from the response.
+	 * </p>
+	 */
+	public static ReplicatableObject.Replicate.BatchResponse replicateObjectsHelper(ReplicatableObject.Handler<? extends ReplicatableObject.Handler.Object> handler,
+	        ReplicatableObject.Replicate.BatchRequest request) throws ClassNotFoundException, ClassCastException {
+	    Set<TitanGuid> replicated = new HashSet<TitanGuid>();
+
+	    for (ReplicatableObject.Replicate.Request r : request.getRequests()) {
+	        try {
+	            StorableObject.Handler.Object object = handler.getNode().getObjectStore().get(StorableObject.Handler.Object.class, r.getObjectId());
+	            if (DeleteableObject.deleteTokenIsValid(object.getMetadata())) {
+	                continue;
+	            }
 	            if (handler.getLogger().isLoggable(Level.FINE)) {
-	                handler.getLogger().fine("objectId=%s", objectId);
+	                handler.getLogger().fine("replicate %s x%d excluding %s", r.getObjectId(), r.getCopies(), r.getExcludedNodes());
 	            }
+	            object.setProperty(TitanObjectStore.METADATA_SECONDSTOLIVE, object.getRemainingSecondsToLive(Time.currentTimeInSeconds()));
 
-	            // Compose the set of node that already have a copy of the object.
-	            // Include the node that is unpublishing the object, as we cannot ask it to replicate it.
-	            Set<TitanNodeId> publisherSet = new HashSet<TitanNodeId>();
-
-	            publisherSet.add(request.getPublisherAddress().getObjectId());
-
-	            for (Publishers.PublishRecord publisher : publishers) {
-	                publisherSet.add(publisher.getNodeId());
-	                if (handler.getLogger().isLoggable(Level.FINE)) {
-	                    handler.getLogger().fine("  publisher=%s", publisher.getNodeId());
-	                }
-	                if (!publisher.getNodeId().equals(request.getPublisherAddress().getObjectId())) {
-	                    if (bestPublisher == null || bestPublisher.getObjectTTL() < publisher.getObjectTTL()) {
-	                        bestPublisher = publisher;
-	                    }
-	                }
+	            StorableObject.storeObject(handler, object, r.getCopies(), r.getExcludedNodes(), null);
+	            replicated.add(r.getObjectId());
+	        } catch (TitanObjectStoreImpl.NotFoundException e) {
+	            if (handler.getLogger().isLoggable(Level.FINE)) {
+	                handler.getLogger().fine("%s not found", r.getObjectId());
 	            }
-
-	            if (bestPublisher != null) {
-	                try {
-	                    if (handler.getLogger().isLoggable(Level.FINE)) {
-	                        handler.getLogger().fine("best publisher=%s object ttl=%d", bestPublisher.getNodeId(), bestPublisher.getObjectTTL());
-	                    }
-	                    handler.getNode().sendToNodeExactly(bestPublisher.getNodeId(), objectId, bestPublisher.getObjectClass(), "replicateObject", new Replicate.Request(objectId, publisherSet));
-	                    break;
-	                } catch (TitanNode.NoSuchNodeException e) {
-	                    e.printStackTrace();
-	                    // keep trying.
-	                }
-	            } else {
-	                if (handler.getLogger().isLoggable(Level.FINE)) {
-	                    handler.getLogger().fine("No publishers of object %s remaining", objectId);
-	                }
+	        } catch (TitanObjectStoreImpl.NoSpaceException e) {
+	            if (handler.getLogger().isLoggable(Level.WARNING)) {
+	                handler.getLogger().warning("%s: %s", r.getObjectId(), e);
+	            }
+	        } catch (TitanObjectStoreImpl.UnacceptableObjectException e) {
+	            if (handler.getLogger().isLoggable(Level.WARNING)) {
+	                handler.getLogger().warning("%s: %s", r.getObjectId(), e);
+	            }
+	        } catch (BeehiveObjectPool.Exception e) {
+	            if (handler.getLogger().isLoggable(Level.WARNING)) {
+	                handler.getLogger().warning("%s: %s", r.getObjectId(), e);
 	            }
 	        }
-	    } catch (ClassCastException e) {
-	        e.printStackTrace();
-	    } catch (ClassNotFoundException e) {
-	        e.printStackTrace();
-	    } catch (RemoteException e) {
-	        e.printStackTrace();
-	    }               
+	    }
+
+	    return new ReplicatableObject.Replicate.BatchResponse(replicated);
 	}
 
 //	public static class MakeReplicas {
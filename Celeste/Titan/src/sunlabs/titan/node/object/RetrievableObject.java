@@ -27,6 +27,7 @@ import java.io.IOException;
 
 import sunlabs.titan.api.TitanGuid;
 import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.api.TitanObjectStore;
 import sunlabs.titan.node.TitanObjectStoreImpl;
 import sunlabs.titan.node.TitanMessage;
 import sunlabs.titan.node.TitanMessage.RemoteException;
@@ -78,6 +79,25 @@ public class RetrievableObject {
         public TitanObject retrieveLocalObject(TitanMessage message, TitanGuid objectId) throws IOException, TitanObjectStoreImpl.NotFoundException;
     }
 
+    /**
+     * A helper function for classes implementing {@link RetrievableObject.Handler#retrieveLocalObject(TitanMessage, TitanGuid)}
+     * to take the object named in {@code message} from the local object store.
+     * <p>
+     * A request from another node is answered by {@link TitanObjectStore#getReadOnly(Class, TitanGuid)},
+     * because the reply is serialized for transmission and the requester never sees the cached instance.
+     * A request from this node is answered with a private copy,
+     * because the reply is delivered in-process and the requester is free to modify it.
+     * </p>
+     */
+    public static TitanObject retrieveLocalObjectHelper(RetrievableObject.Handler<? extends RetrievableObject.Handler.Object> handler, TitanMessage message)
+    throws TitanObjectStoreImpl.NotFoundException {
+        TitanObjectStore objectStore = handler.getNode().getObjectStore();
+        if (message.getSource().getObjectId().equals(handler.getNode().getNodeId())) {
+            return objectStore.get(TitanObject.class, message.subjectId);
+        }
+        return objectStore.getReadOnly(TitanObject.class, message.subjectId);
+    }
+
     /**
      * Retrieve the specified {@link TitanObject} from the Titan object pool.
      * The result is the object if successfully found, cast to the given {@link Class} {@code klasse}
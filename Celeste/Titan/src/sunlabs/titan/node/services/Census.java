@@ -108,6 +108,21 @@ public interface Census extends TitanService {
 
     public static final String RandomNumber = "Census.Random";
 
+    /** The smoothed mean number of messages being dispatched at once by the node's services. */
+    public final static String DispatchQueueDepth = "Census.DispatchQueueDepth";
+
+    /** The smoothed mean duration, in milliseconds, of a put into the node's object store. */
+    public final static String ObjectStorePutLatencyMillis = "Census.ObjectStorePutLatencyMillis";
+
+    /** The smoothed number of bytes of messages received by the node per second. */
+    public final static String BytesInPerSecond = "Census.BytesInPerSecond";
+
+    /** The smoothed number of bytes of messages transmitted by the node per second. */
+    public final static String BytesOutPerSecond = "Census.BytesOutPerSecond";
+
+    /** The number of bytes available to the node's object store. */
+    public final static String SpoolFreeBytes = "Census.SpoolFreeBytes";
+
     /**
      * Put all of the entries in the given {@link Map} {@code census} into the census data kept by this node.
      *
@@ -118,6 +133,7 @@ public interface Census extends TitanService {
     /**
      * Select {@code count} number of nodes by {@link TitanNodeId} from the Census,
      * excluding those nodes specified by {@code TitanNodeId} in the Set {@code exclude}.
+     * If more nodes match than {@code count}, the less loaded nodes are preferred (see {@link sunlabs.titan.node.services.census.CensusService#SelectPolicy}).
      *
      * @param count the number of nodes to select.  If zero, all matching nodes are selected.
      * @param excludedNodes a {@link Set} of nodes to specifically exclude from the selection.
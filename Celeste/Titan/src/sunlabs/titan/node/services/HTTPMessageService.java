@@ -240,11 +240,14 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
                 try {
                     TitanMessage message = TitanMessage.newInstance(request.getMessage().getBody().toInputStream());
 
+                    HTTPMessageService.this.node.getLoadMonitor().addBytesIn(message.getWireLength());
+
                     TitanMessage response = HTTPMessageService.this.node.receive(message);
                     ByteArrayOutputStream bos = new ByteArrayOutputStream();
                     response.writeObject(new DataOutputStream(bos));
                     bos.close();
                     byte[] bytes = bos.toByteArray();
+                    HTTPMessageService.this.node.getLoadMonitor().addBytesOut(bytes.length);
                     return new HttpResponse(HTTP.Response.Status.OK, new HttpContent.RawByteBuffer(new HttpHeader.ContentType(InternetMediaType.Application.OctetStream), bytes));
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -598,9 +601,9 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
 
         // Setup the transmit method. (See transmit(NodeAddress, TitanMessage).
         if (HTTPMessageService.this.node.getConfiguration().asString(HTTPMessageService.Protocol).equals("https")) {
-            this.transmitMethod = this.getClass().getMethod("transmitHTTPS", NodeAddress.class, TitanMessage.class);
+            this.transmitMethod = this.getClass().getMethod("transmitHTTPS", NodeAddress.class, TitanMessage.class, long.class);
         } else {
-            this.transmitMethod = this.getClass().getMethod("transmitHTTP", NodeAddress.class, TitanMessage.class);
+            this.transmitMethod = this.getClass().getMethod("transmitHTTP", NodeAddress.class, TitanMessage.class, long.class);
         }
 
         if (this.log.isLoggable(Level.CONFIG)) {
@@ -1274,6 +1277,10 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
     }
     
     public TitanMessage transmitHTTP(NodeAddress addr, TitanMessage message) {
+        return this.transmitHTTP(addr, message, 0);
+    }
+
+    public TitanMessage transmitHTTP(NodeAddress addr, TitanMessage message, long timeoutMillis) {
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             message.writeObject(new DataOutputStream(bos));
@@ -1286,6 +1293,8 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
                     message.getSubjectClassMethod());
             
             HttpURLConnection connection = (HttpURLConnection) new URL(s).openConnection();
+            connection.setConnectTimeout((int) timeoutMillis);
+            connection.setReadTimeout((int) timeoutMillis);
             connection.setRequestMethod("POST");
             connection.setRequestProperty(HttpHeader.CONTENTTYPE, InternetMediaType.Application.OctetStream.toString());
             connection.setRequestProperty(HttpHeader.CONTENTLENGTH, Integer.toString(bytes.length));
@@ -1297,11 +1306,13 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
             OutputStream out = connection.getOutputStream();
             out.write(bytes);
             out.close();
+            this.node.getLoadMonitor().addBytesOut(bytes.length);
 
             //Get Response    
             InputStream is = connection.getInputStream();
             try {
                 TitanMessage response = TitanMessage.newInstance(is);
+                this.node.getLoadMonitor().addBytesIn(response.getWireLength());
                 return response;
             } catch (ClassNotFoundException e) {
                 throw new RuntimeException(e);
@@ -1316,6 +1327,10 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
     }
     
     public TitanMessage transmitHTTPS(NodeAddress addr, TitanMessage message) {
+        return this.transmitHTTPS(addr, message, 0);
+    }
+
+    public TitanMessage transmitHTTPS(NodeAddress addr, TitanMessage message, long timeoutMillis) {
         HostnameVerifier hv = new HostnameVerifier() {
             public boolean verify(String urlHostName, SSLSession session) {
 //                System.out.println("HostnameVerifier: verify(" + urlHostName + ", " + session.getPeerHost() + ")");
@@ -1335,6 +1350,8 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
                     addr.getInspectorInterface().getHost(), addr.getInspectorInterface().getPort(),
                     message.getSubjectClass(), message.getSubjectClassMethod());
             HttpsURLConnection connection = TitanHttpsURLConnection(this.node.getNodeKey(), s);
+            connection.setConnectTimeout((int) timeoutMillis);
+            connection.setReadTimeout((int) timeoutMillis);
 
             connection.setRequestMethod("POST");
             connection.setRequestProperty(HttpHeader.CONTENTTYPE, InternetMediaType.Application.OctetStream.toString());
@@ -1348,11 +1365,13 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
             OutputStream out = connection.getOutputStream();
             out.write(bytes);
             out.close();
+            this.node.getLoadMonitor().addBytesOut(bytes.length);
 
             //Get Response    
             InputStream is = connection.getInputStream();
             try {
                 TitanMessage response = TitanMessage.newInstance(is);
+                this.node.getLoadMonitor().addBytesIn(response.getWireLength());
                 return response;
             } finally {
                 is.close(); // XXX cache this socket....
@@ -1383,8 +1402,12 @@ public final class HTTPMessageService extends AbstractTitanService implements Me
     }
 
     public TitanMessage transmit(NodeAddress addr, TitanMessage message) {
+        return this.transmit(addr, message, 0);
+    }
+
+    public TitanMessage transmit(NodeAddress addr, TitanMessage message, long timeoutMillis) {
         try {
-            return (TitanMessage) this.transmitMethod.invoke(this, addr, message);
+            return (TitanMessage) this.transmitMethod.invoke(this, addr, message, Long.valueOf(timeoutMillis));
         } catch (InvocationTargetException e) {
             throw new RuntimeException(e);
         } catch (IllegalArgumentException e) {
@@ -96,6 +96,10 @@ public class IntegerObjectType extends AbstractObjectHandler implements MutableO
         return null;
     }
 
+    public MutableObject.GetOperation.BatchResponse getObjectHistories(TitanMessage message, MutableObject.GetOperation.BatchRequest request) {
+        return null;
+    }
+
     public Publish.PublishUnpublishResponse publishObject(TitanMessage message, Publish.PublishUnpublishRequest request) {
         return new PublishDaemon.PublishObject.PublishUnpublishResponseImpl(this.node.getNodeAddress());
     }
@@ -31,13 +31,20 @@ import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 import javax.management.JMException;
@@ -64,6 +71,7 @@ import sunlabs.titan.node.TitanMessage;
 import sunlabs.titan.node.TitanMessage.RemoteException;
 import sunlabs.titan.node.services.census.CensusService;
 import sunlabs.titan.node.services.census.SelectComparator;
+import sunlabs.titan.node.util.ProbeScheduler;
 import sunlabs.titan.util.OrderedProperties;
 
 /**
@@ -80,6 +88,7 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         public String getLastRunDuration();
         public String getLastRunTime();
         public String getTimeToNextRun();
+        public String getLastRound();
         public void setIntroductionRate(long seconds);
         public void wakeup();
     }
@@ -94,6 +103,7 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         private long lastRunTimeStamp;
         private long lastRunDuration;
         private long wakeUpTime;
+        private String lastRound;
         private final ObjectName jmxObjectName;
 
         Introduction() throws JMException {
@@ -101,6 +111,7 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             this.setPriority(Thread.NORM_PRIORITY);
             this.currentIntroductionRateSeconds = this.getIntroductionRate();
             this.wakeUpTime = 0;
+            this.lastRound = "";
 
             if (RoutingDaemon.this.jmxObjectNameRoot != null) {
                 this.jmxObjectName = JMX.objectName(RoutingDaemon.this.jmxObjectNameRoot, "Introduction");
@@ -133,6 +144,10 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             return "";
         }
 
+        public String getLastRound() {
+            return this.lastRound;
+        }
+
         @Override
         public void run() {
             try {
@@ -149,39 +164,55 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
                     RoutingDaemon.this.log.finest("Running");
 
                     Set<NodeAddress> neighbours = RoutingDaemon.this.node.getNeighbourMap().keySet();
+                    boolean churn = false;
 
                     if (neighbours.size() > 1) {
-                        Set<NodeAddress> potentialNeighbours = new HashSet<NodeAddress>();
+                        // Ping every neighbour concurrently.
+                        // A neighbour that fails to respond is removed from the neighbour map as soon as it fails.
+                        final Set<NodeAddress> potentialNeighbours = Collections.synchronizedSet(new HashSet<NodeAddress>());
 
-                        for (NodeAddress address : neighbours) {
-                            try {
-                                PingOperation.Response pong = RoutingDaemon.this.ping(address, new PingOperation.Request(new byte[0]));
+                        ProbeScheduler.Round neighbourRound = RoutingDaemon.this.probe(neighbours, new ProbeScheduler.Listener<NodeAddress,PingOperation.Response>() {
+                            public void success(NodeAddress address, PingOperation.Response pong) {
                                 potentialNeighbours.addAll(pong.getNeighbourSet());
-                            } catch (Exception e) {
-                                RoutingDaemon.this.log.fine("Failed: " + address);
+                            }
+
+                            public void failure(NodeAddress address, Throwable reason) {
+                                RoutingDaemon.this.log.fine("Failed: %s %s", address, reason);
                                 RoutingDaemon.this.node.getNeighbourMap().remove(address);
                             }
-                            // In the interest of being nice, throttle ourselves.
-//                            synchronized (this) {
-//                                this.wait(Time.secondsInMilliseconds(2));
-//                            }
-                        }
-                        //potentialNeighbours.remove(NeighbourMapApplication.this.node.getAddress().toString());
-
-                        // At this point, the Set "nodes" contains every NodeAddress
-                        // that is a neighbour of our neighbours, excluding this node.
-                        // For each of these NodeAddresses that is not already
-                        // in the local routing table, perform a Join with them.
-                        for (NodeAddress potentialNeighbour : potentialNeighbours) {
-                            if (!RoutingDaemon.this.node.getNeighbourMap().keySet().contains(potentialNeighbour)) {
-                                try {
-                                    RoutingDaemon.this.ping(potentialNeighbour, new PingOperation.Request(new byte[0]));
-                                    RoutingDaemon.this.node.getNeighbourMap().add(potentialNeighbour);
-                                } catch (Exception reportAndIgnore) {
-                                    reportAndIgnore.printStackTrace();
-                                    RoutingDaemon.this.log.finest(potentialNeighbour.toString() + " " + reportAndIgnore.toString());
-                                }
+
+                            public void timeout(NodeAddress address) {
+                                RoutingDaemon.this.log.fine("Timed out: %s", address);
+                                RoutingDaemon.this.node.getNeighbourMap().remove(address);
+                            }
+                        });
+
+                        // At this point, the Set "potentialNeighbours" contains every NodeAddress
+                        // that is a neighbour of our neighbours.
+                        // Ping each of these NodeAddresses that is not already in the local routing table,
+                        // adding each to the routing table as soon as it responds.
+                        Set<NodeAddress> candidates = new HashSet<NodeAddress>(potentialNeighbours);
+                        candidates.removeAll(RoutingDaemon.this.node.getNeighbourMap().keySet());
+                        candidates.remove(RoutingDaemon.this.node.getNodeAddress());
+
+                        ProbeScheduler.Round candidateRound = RoutingDaemon.this.probe(candidates, new ProbeScheduler.Listener<NodeAddress,PingOperation.Response>() {
+                            public void success(NodeAddress address, PingOperation.Response pong) {
+                                RoutingDaemon.this.node.getNeighbourMap().add(address);
+                            }
+
+                            public void failure(NodeAddress address, Throwable reason) {
+                                RoutingDaemon.this.log.finest("%s %s", address, reason);
                             }
+
+                            public void timeout(NodeAddress address) {
+                                RoutingDaemon.this.log.finest("%s timed out", address);
+                            }
+                        });
+
+                        churn = (neighbourRound.getSucceeded() < neighbourRound.getTargets()) || candidateRound.getSucceeded() > 0;
+                        this.lastRound = String.format("neighbours: %s; candidates: %s", neighbourRound, candidateRound);
+                        if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
+                            RoutingDaemon.this.log.fine(this.lastRound);
                         }
                     } else {
                         // If we have nothing in our neighbour map, we need to bump
@@ -198,7 +229,12 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
 
                     long introductionRateSeconds = RoutingDaemon.this.node.getConfiguration().asLong(RoutingDaemon.IntroductionRateSeconds);
 
-                    if (this.currentIntroductionRateSeconds < introductionRateSeconds) {
+                    // While the neighbour map is changing, introduce more often (down to a fraction of the configured rate) to track the changes.
+                    // Otherwise, back off to the configured rate.
+                    if (churn) {
+                        this.currentIntroductionRateSeconds = Math.max(this.currentIntroductionRateSeconds / 2,
+                                Math.max(1, introductionRateSeconds / RoutingDaemon.ChurnRateDivisor));
+                    } else if (this.currentIntroductionRateSeconds < introductionRateSeconds) {
                         this.currentIntroductionRateSeconds *= 2;
                     }
                     if (this.currentIntroductionRateSeconds > introductionRateSeconds) {
@@ -208,7 +244,9 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
                     long currentTimeStamp = System.currentTimeMillis();
                     this.lastRunDuration = currentTimeStamp - this.lastRunTimeStamp;
 
-                    long sleepTimeMillis = Time.secondsInMilliseconds(this.currentIntroductionRateSeconds);
+                    // Never spend more than a fraction of the time probing, however long the rounds take.
+                    long sleepTimeMillis = Math.max(Time.secondsInMilliseconds(this.currentIntroductionRateSeconds),
+                            RoutingDaemon.RoundDutyCycle * this.lastRunDuration);
                     this.wakeUpTime = currentTimeStamp + sleepTimeMillis;
 
                     RoutingDaemon.this.setStatus(String.format("Wakeup %s", Time.ISO8601(this.wakeUpTime)));
@@ -274,22 +312,25 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
          * <ul>
          * <li>The {@link TitanGuid} of the Titan network.</li>
          * <li>A {@link Set} containing this node's routing table.</li>
-         * <li>A {@link Map} of this node's object publishers.</li>
+         * <li>The {@link NodeAddress} of the root node of the joining node's object-id,
+         * and the number of objects whose back-pointers the joining node must fetch from it with {@link HandoffOperation}.</li>
          * </ul>
          */
         public static class Response implements Serializable {
-            private final static long serialVersionUID = 1L;
+            private final static long serialVersionUID = 2L;
 
             private TitanGuid networkObjectId;
             private Set<NodeAddress> routingTable;
-            private Map<TitanGuid,Set<Publishers.PublishRecord>> publishRecords;
             private Map<TitanNodeId,OrderedProperties> census;
+            private NodeAddress root;
+            private int handoffCount;
 
-            public Response(TitanGuid networkObjectId, Set<NodeAddress> map, Map<TitanGuid,Set<Publishers.PublishRecord>> roots, Map<TitanNodeId,OrderedProperties> census) {
+            public Response(TitanGuid networkObjectId, Set<NodeAddress> map, Map<TitanNodeId,OrderedProperties> census, NodeAddress root, int handoffCount) {
                 this.networkObjectId = networkObjectId;
                 this.routingTable = map;
-                this.publishRecords = roots;
                 this.census = census;
+                this.root = root;
+                this.handoffCount = handoffCount;
             }
 
             public Set<NodeAddress> getMap() {
@@ -301,11 +342,17 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             }
 
             /**
-             * Return the encapsulated Map of {@link TitanGuid}s to {@link Set}s
-             * of {@link sunlabs.titan.node.Publishers.PublishRecord} instances.
+             * Get the {@link NodeAddress} of the node that was the root of the joining node's object-id.
              */
-            public Map<TitanGuid,Set<Publishers.PublishRecord>> getPublishRecords() {
-                return this.publishRecords;
+            public NodeAddress getRoot() {
+                return this.root;
+            }
+
+            /**
+             * Get the number of objects that the joining node has become the root of.
+             */
+            public int getHandoffCount() {
+                return this.handoffCount;
             }
 
             public void setMap(Set<NodeAddress> map) {
@@ -318,6 +365,90 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         }
     }
 
+    /**
+     * The payload of a Handoff message.
+     * <p>
+     * When a node joins, it becomes the root of some of the objects that the root of its object-id was the root of.
+     * That root collects the object-ids of those objects when it responds to the {@link JoinOperation},
+     * and the joining node then fetches their back-pointers in chunks of a bounded number of {@link Publishers.PublishRecord} instances.
+     * Each request names the last object-id received, and the joining node sends the next request only after it has stored the previous chunk.
+     * </p>
+     */
+    public static class HandoffOperation {
+        public static class Request implements Serializable {
+            private final static long serialVersionUID = 1L;
+
+            private TitanGuid after;
+            private int maxRecords;
+
+            /**
+             * @param after the last object-id received, or {@code null} to start from the beginning.
+             * @param maxRecords the maximum number of publish records to return.
+             */
+            public Request(TitanGuid after, int maxRecords) {
+                this.after = after;
+                this.maxRecords = maxRecords;
+            }
+
+            public TitanGuid getAfter() {
+                return this.after;
+            }
+
+            public int getMaxRecords() {
+                return this.maxRecords;
+            }
+        }
+
+        public static class Response implements Serializable {
+            private final static long serialVersionUID = 1L;
+
+            private Map<TitanGuid,Set<Publishers.PublishRecord>> publishRecords;
+            private TitanGuid last;
+            private boolean complete;
+
+            public Response(Map<TitanGuid,Set<Publishers.PublishRecord>> publishRecords, TitanGuid last, boolean complete) {
+                this.publishRecords = publishRecords;
+                this.last = last;
+                this.complete = complete;
+            }
+
+            /**
+             * Return the encapsulated Map of {@link TitanGuid}s to {@link Set}s
+             * of {@link sunlabs.titan.node.Publishers.PublishRecord} instances.
+             */
+            public Map<TitanGuid,Set<Publishers.PublishRecord>> getPublishRecords() {
+                return this.publishRecords;
+            }
+
+            /**
+             * Get the last object-id in this chunk, to be sent in the {@link Request} for the next chunk.
+             */
+            public TitanGuid getLast() {
+                return this.last;
+            }
+
+            /**
+             * Return {@code true} if there are no more chunks.
+             */
+            public boolean isComplete() {
+                return this.complete;
+            }
+        }
+    }
+
+    /**
+     * The object-ids being handed off to a joining node.
+     */
+    private static class Handoff {
+        final NavigableSet<TitanGuid> objectIds;
+        volatile long lastUsed;
+
+        Handoff(NavigableSet<TitanGuid> objectIds) {
+            this.objectIds = objectIds;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
     /**
      *
      */
@@ -408,14 +539,19 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         public void run() {
             try {
                 while (!interrupted()) {
+                    long sleepTimeMillis = Math.max(Time.secondsInMilliseconds(this.getReunionRate()), RoutingDaemon.RoundDutyCycle * this.lastRunDuration);
                     if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-                        RoutingDaemon.this.log.fine("Sleeping %dms", this.getReunionRate());
+                        RoutingDaemon.this.log.fine("Sleeping %dms", sleepTimeMillis);
                     }
                     synchronized (this) {
-                        this.wait(this.getReunionRate());
+                        this.wait(sleepTimeMillis);
                     }
 
                     this.lastRunTime = System.currentTimeMillis();
+
+                    // Collect the nodes in the Dossier that we're not already connected to.
+                    Set<NodeAddress> neighbours = RoutingDaemon.this.node.getNeighbourMap().keySet();
+                    List<NodeAddress> absent = new LinkedList<NodeAddress>();
                     for (TitanGuid objectId : RoutingDaemon.this.node.getNeighbourMap().getDossier()) {
                         try {
                             Dossier.Entry entry = RoutingDaemon.this.node.getNeighbourMap().getDossier().get(objectId);
@@ -423,42 +559,8 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
                             if (entry != null) {
                                 NodeAddress address = entry.getNodeAddress();
                                 if (address != null) {
-                                    if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-                                        RoutingDaemon.this.log.fine("Reunion %s", address.format());
-                                    }
-
-                                    //  Reunite only with nodes that we're not already connected to.
-                                    if (!RoutingDaemon.this.node.getNeighbourMap().keySet().contains(address)) {
-                                        if (!address.getObjectId().equals(RoutingDaemon.this.node.getNodeId())) {
-                                            try {
-                                                if (RoutingDaemon.this.ping(address, new PingOperation.Request(new byte[0])) != null) {
-                                                    /**/
-                                                } else {
-                                                    if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-                                                        RoutingDaemon.this.log.fine("fail %s", address.format());
-                                                    }
-                                                    // Get dossier entry: if it is too old, then delete it
-                                                    long tooOld = System.currentTimeMillis()
-                                                        - Time.secondsInMilliseconds(RoutingDaemon.this.node.getConfiguration().asLong(RoutingDaemon.DossierTimeToLiveSeconds));
-                                                    Dossier.Entry e = RoutingDaemon.this.node.getNeighbourMap().getDossier().getEntryAndLock(address);
-                                                    try {
-                                                        if (e.getTimestamp() < tooOld) {
-                                                            if (RoutingDaemon.this.log.isLoggable(Level.FINEST)) {
-                                                                RoutingDaemon.this.log.finest("Removing old Dossier %s", address.format());
-                                                            }
-                                                            RoutingDaemon.this.node.getNeighbourMap().getDossier().removeEntry(e);
-                                                        }
-                                                    } finally {
-                                                        RoutingDaemon.this.node.getNeighbourMap().getDossier().unlockEntry(e);
-                                                    }
-                                                }
-                                            } catch (Exception reportAndIgnore) {
-                                                reportAndIgnore.printStackTrace();
-                                                if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-                                                    RoutingDaemon.this.log.fine("fail %s %s", address.format(), reportAndIgnore.toString());
-                                                }
-                                            }
-                                        }
+                                    if (!neighbours.contains(address) && !address.getObjectId().equals(RoutingDaemon.this.node.getNodeId())) {
+                                        absent.add(address);
                                     }
                                 } else {
                                     if (RoutingDaemon.this.log.isLoggable(Level.WARNING)) {
@@ -466,11 +568,6 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
                                     }
                                 }
                             }
-                            this.lastRunDuration = System.currentTimeMillis() - this.lastRunTime;
-
-                            synchronized (this) {
-                                this.wait(Time.minutesInMilliseconds(RoutingDaemon.this.node.getConfiguration().asLong(RoutingDaemon.ReunionRateSeconds)));
-                            }
                         } catch (FileNotFoundException e) {
                             // it's okay, just skip it.
                         } catch (ClassCastException e) {
@@ -481,63 +578,26 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
                             RoutingDaemon.this.node.getNeighbourMap().getDossier().remove(objectId);
                         }
                     }
-                    
-//                    for (Map.Entry<TitanGuid,Dossier.Entry> mapEntry : RoutingDaemon.this.node.getNeighbourMap().getDossier().entrySet()) {
-//                        // Since we don't lock the Dossier, the next statement may fail to produce the Entry because it's been deleted.
-//                        Dossier.Entry entry = mapEntry.getValue();
-//                        if (entry != null) {
-//                            NodeAddress address = entry.getNodeAddress();
-//                            if (address != null) {
-//                                if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-//                                    RoutingDaemon.this.log.fine("Reunion %s", address.format());
-//                                }
-//
-//                                //  Reunite only with nodes that we're not already connected to.
-//                                if (!RoutingDaemon.this.node.getNeighbourMap().keySet().contains(address)) {
-//                                    if (!address.getObjectId().equals(RoutingDaemon.this.node.getNodeId())) {
-//                                        try {
-//                                            if (RoutingDaemon.this.ping(address, new PingOperation.Request(new byte[0])) != null) {
-//                                                /**/
-//                                            } else {
-//                                                if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-//                                                    RoutingDaemon.this.log.fine("fail %s", address.format());
-//                                                }
-//                                                // Get dossier entry: if it is too old, then delete it
-//                                                long tooOld = Time.millisecondsToSeconds(System.currentTimeMillis()) - RoutingDaemon.this.node.getConfiguration().asLong(RoutingDaemon.DossierTimeToLiveSeconds);
-//                                                Dossier.Entry e = RoutingDaemon.this.node.getNeighbourMap().getDossier().getEntryAndLock(address);
-//                                                try {
-//                                                    if (e.getTimestamp() < tooOld) {
-//                                                        if (RoutingDaemon.this.log.isLoggable(Level.FINEST)) {
-//                                                            RoutingDaemon.this.log.finest("Removing old Dossier %s", address.format());
-//                                                        }
-//                                                        RoutingDaemon.this.node.getNeighbourMap().getDossier().removeEntry(e);
-//                                                    }
-//                                                } finally {
-//                                                    RoutingDaemon.this.node.getNeighbourMap().getDossier().unlockEntry(e);
-//                                                }
-//                                            }
-//                                        } catch (Exception reportAndIgnore) {
-//                                            reportAndIgnore.printStackTrace();
-//                                            if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
-//                                                RoutingDaemon.this.log.fine("fail %s %s", address.format(), reportAndIgnore.toString());
-//                                            }
-//                                        }
-//                                    }
-//                                }
-//                            } else {
-//                                if (RoutingDaemon.this.log.isLoggable(Level.WARNING)) {
-//                                    RoutingDaemon.this.log.warning("Dossier entry for %s had no address.", mapEntry.getKey());
-//                                }
-//                            }
-//                        }
-//                        this.lastRunDuration = System.currentTimeMillis() - this.lastRunTime;
-//
-//                        synchronized (this) {
-//                            this.wait(Time.minutesInMilliseconds(1));
-//                        }
-//                    }
 
+                    // Reunite with each of them concurrently.
+                    ProbeScheduler.Round round = RoutingDaemon.this.probe(absent, new ProbeScheduler.Listener<NodeAddress,PingOperation.Response>() {
+                        public void success(NodeAddress address, PingOperation.Response pong) {
+                            /**/
+                        }
+
+                        public void failure(NodeAddress address, Throwable reason) {
+                            Reunion.this.failed(address);
+                        }
+
+                        public void timeout(NodeAddress address) {
+                            Reunion.this.failed(address);
+                        }
+                    });
+                    this.lastRunDuration = System.currentTimeMillis() - this.lastRunTime;
 
+                    if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
+                        RoutingDaemon.this.log.fine("Reunion %s", round);
+                    }
                 } // while
             } catch (InterruptedException e) {
                 // Do nothing, let the thread stop.
@@ -553,6 +613,34 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             return;
         }
 
+        /**
+         * Remove the {@link Dossier.Entry} of the node at the given {@link NodeAddress} if it has not responded for {@link RoutingDaemon#DossierTimeToLiveSeconds}.
+         */
+        private void failed(NodeAddress address) {
+            if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
+                RoutingDaemon.this.log.fine("fail %s", address.format());
+            }
+            long tooOld = System.currentTimeMillis()
+                - Time.secondsInMilliseconds(RoutingDaemon.this.node.getConfiguration().asLong(RoutingDaemon.DossierTimeToLiveSeconds));
+            try {
+                Dossier.Entry e = RoutingDaemon.this.node.getNeighbourMap().getDossier().getEntryAndLock(address);
+                try {
+                    if (e.getTimestamp() < tooOld) {
+                        if (RoutingDaemon.this.log.isLoggable(Level.FINEST)) {
+                            RoutingDaemon.this.log.finest("Removing old Dossier %s", address.format());
+                        }
+                        RoutingDaemon.this.node.getNeighbourMap().getDossier().removeEntry(e);
+                    }
+                } finally {
+                    RoutingDaemon.this.node.getNeighbourMap().getDossier().unlockEntry(e);
+                }
+            } catch (Exception reportAndIgnore) {
+                if (RoutingDaemon.this.log.isLoggable(Level.FINE)) {
+                    RoutingDaemon.this.log.fine("fail %s %s", address.format(), reportAndIgnore.toString());
+                }
+            }
+        }
+
         public void setReunionRate(long seconds) {
            RoutingDaemon.this.node.getConfiguration().set(RoutingDaemon.ReunionRateSeconds, seconds);
         }
@@ -592,8 +680,47 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             Time.daysToSeconds(30),
             "The number of seconds until a Dossier.Entry becomes old and is removed.");
 
+    /**
+     * The maximum number of {@link Publishers.PublishRecord} instances in each chunk of a {@link HandoffOperation}.
+     */
+    private final static Attributes.Prototype HandoffChunkRecords = new Attributes.Prototype(RoutingDaemon.class, "HandoffChunkRecords",
+            1000,
+            "The maximum number of publish records in each chunk of back-pointers handed off to a joining node.");
+
+    /**
+     * The number of seconds that an unfinished handoff to a joining node is retained.
+     */
+    private final static Attributes.Prototype HandoffTimeoutSeconds = new Attributes.Prototype(RoutingDaemon.class, "HandoffTimeoutSeconds",
+            Time.minutesInSeconds(10),
+            "The number of seconds that an unfinished handoff of back-pointers to a joining node is retained.");
+
+    /**
+     * The maximum number of neighbour pings outstanding at once.
+     */
+    private final static Attributes.Prototype ProbeConcurrency = new Attributes.Prototype(RoutingDaemon.class, "ProbeConcurrency",
+            16,
+            "The maximum number of neighbour pings outstanding at once.");
+
+    /**
+     * The number of seconds to wait for the response to a neighbour ping.
+     */
+    private final static Attributes.Prototype ProbeTimeoutSeconds = new Attributes.Prototype(RoutingDaemon.class, "ProbeTimeoutSeconds",
+            10,
+            "The number of seconds to wait for the response to a neighbour ping.");
+
+    /** The introduction and reunion daemons sleep at least this many times as long as their last round took. */
+    private final static long RoundDutyCycle = 4;
+
+    /** While the neighbour map is changing, the introduction rate may increase to this multiple of the configured rate. */
+    private final static long ChurnRateDivisor = 8;
+
+    transient private volatile ProbeScheduler prober;
+
     transient private Introduction introductionDaemon;
 
+    /** The unfinished handoffs of back-pointers to joining nodes, keyed by the joining node's object-id. */
+    transient private ConcurrentMap<TitanNodeId,Handoff> handoffs;
+
     transient private Reunion reunion;
 
     public RoutingDaemon(final TitanNode node) throws JMException {
@@ -602,6 +729,12 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         node.getConfiguration().add(RoutingDaemon.IntroductionRateSeconds);
         node.getConfiguration().add(RoutingDaemon.DossierTimeToLiveSeconds);
         node.getConfiguration().add(RoutingDaemon.ReunionRateSeconds);
+        node.getConfiguration().add(RoutingDaemon.ProbeConcurrency);
+        node.getConfiguration().add(RoutingDaemon.ProbeTimeoutSeconds);
+        node.getConfiguration().add(RoutingDaemon.HandoffChunkRecords);
+        node.getConfiguration().add(RoutingDaemon.HandoffTimeoutSeconds);
+
+        this.handoffs = new ConcurrentHashMap<TitanNodeId,Handoff>();
 
         Map<String,Integer> mapReputationRequirements = Reputation.newCoefficients();
         mapReputationRequirements.put(Dossier.LATENCY, new Integer(50));
@@ -652,20 +785,128 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             return response;
         } else {
             // This clause is executed on the root node of the joining object-id.
-            Map<TitanGuid,Set<Publishers.PublishRecord>> objectRoots = new Hashtable<TitanGuid,Set<Publishers.PublishRecord>>();
-
+            // Collect the object-ids that the joining node becomes the root of.
+            // The joining node fetches their back-pointers in chunks by invoking handoff().
+            TitanNodeId joiningNodeId = message.getSource().getObjectId();
+            TreeSet<TitanGuid> objectIds = new TreeSet<TitanGuid>();
             for (TitanGuid objectId: this.node.getObjectPublishers()) {
-                if (this.node.getNeighbourMap().isRoot(objectId)) {
-                    objectRoots.put(objectId, this.node.getObjectPublishers().getPublishers(objectId));
+                if (this.node.getNeighbourMap().isRootAndWouldRouteTo(objectId, joiningNodeId)) {
+                    objectIds.add(objectId);
                 }
             }
+            this.expireHandoffs();
+            if (objectIds.isEmpty()) {
+                this.handoffs.remove(joiningNodeId);
+            } else {
+                this.handoffs.put(joiningNodeId, new Handoff(objectIds));
+            }
+            if (this.log.isLoggable(Level.FINE)) {
+                this.log.fine("%s joining, handing off %d objects", joiningNodeId, objectIds.size());
+            }
+
             Census censusService = this.node.getService(CensusService.class);
             Map<TitanNodeId,OrderedProperties> census = censusService.select(this.node.getNodeAddress(), Integer.MAX_VALUE, new HashSet<TitanNodeId>(), new LinkedList<SelectComparator>());
 
-            return new JoinOperation.Response(this.node.getNetworkObjectId(), this.node.getNeighbourMap().keySet(), objectRoots, census);
+            return new JoinOperation.Response(this.node.getNetworkObjectId(), this.node.getNeighbourMap().keySet(), census, this.node.getNodeAddress(), objectIds.size());
         }
     }
 
+    /**
+     * Receive and process a {@link HandoffOperation} message from a joining node,
+     * responding with the next chunk of the back-pointers that the joining node has become the root of.
+     */
+    public HandoffOperation.Response handoff(TitanMessage message, HandoffOperation.Request request) {
+        TitanNodeId joiningNodeId = message.getSource().getObjectId();
+        Handoff handoff = this.handoffs.get(joiningNodeId);
+        if (handoff == null) {
+            return new HandoffOperation.Response(new HashMap<TitanGuid,Set<Publishers.PublishRecord>>(), request.getAfter(), true);
+        }
+        handoff.lastUsed = System.currentTimeMillis();
+
+        int maxRecords = Math.max(1, Math.min(request.getMaxRecords(), this.node.getConfiguration().asInt(RoutingDaemon.HandoffChunkRecords)));
+        SortedSet<TitanGuid> remaining = (request.getAfter() == null) ? handoff.objectIds : handoff.objectIds.tailSet(request.getAfter(), false);
+
+        Map<TitanGuid,Set<Publishers.PublishRecord>> chunk = new HashMap<TitanGuid,Set<Publishers.PublishRecord>>();
+        TitanGuid last = request.getAfter();
+        int records = 0;
+        for (TitanGuid objectId : remaining) {
+            if (records >= maxRecords) {
+                break;
+            }
+            // Objects whose back-pointers have expired since the join are simply skipped.
+            Set<Publishers.PublishRecord> publishers = this.node.getObjectPublishers().getPublishers(objectId);
+            if (!publishers.isEmpty()) {
+                chunk.put(objectId, publishers);
+                records += publishers.size();
+            }
+            last = objectId;
+        }
+
+        boolean complete = (last == null) || handoff.objectIds.higher(last) == null;
+        if (complete) {
+            this.handoffs.remove(joiningNodeId, handoff);
+        }
+        return new HandoffOperation.Response(chunk, last, complete);
+    }
+
+    /**
+     * Discard the unfinished handoffs that have not been used for {@link #HandoffTimeoutSeconds}.
+     */
+    private void expireHandoffs() {
+        long oldest = System.currentTimeMillis() - Time.secondsInMilliseconds(this.node.getConfiguration().asLong(RoutingDaemon.HandoffTimeoutSeconds));
+        for (Map.Entry<TitanNodeId,Handoff> entry : this.handoffs.entrySet()) {
+            if (entry.getValue().lastUsed < oldest) {
+                this.handoffs.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Fetch, in chunks, the back-pointers that this node has become the root of from the node {@code root},
+     * which was the root of this node's object-id when this node joined.
+     *
+     * @return the number of {@link Publishers.PublishRecord} instances received.
+     */
+    private long fetchHandoff(NodeAddress root) throws IOException, ClassNotFoundException, ClassCastException, RemoteException {
+        long startTime = System.currentTimeMillis();
+        long records = 0;
+        int chunks = 0;
+        int maxRecords = this.node.getConfiguration().asInt(RoutingDaemon.HandoffChunkRecords);
+        TitanGuid after = null;
+
+        while (true) {
+            TitanMessage message = new TitanMessage(TitanMessage.Type.RouteToNode,
+                    this.node.getNodeAddress(),
+                    root.getObjectId(),
+                    root.getObjectId(),
+                    RoutingDaemon.name,
+                    "handoff",
+                    TitanMessage.Transmission.UNICAST,
+                    TitanMessage.Route.EXACTLY,
+                    new HandoffOperation.Request(after, maxRecords));
+
+            TitanMessage reply = this.node.getMessageService().transmit(root, message);
+            if (reply == null || !reply.getStatus().isSuccessful()) {
+                if (this.log.isLoggable(Level.WARNING)) {
+                    this.log.warning("Handoff from %s failed after %d chunks: %s", root.getObjectId(), chunks, (reply == null) ? "no reply" : reply.getStatus());
+                }
+                break;
+            }
+            HandoffOperation.Response response = reply.getPayload(HandoffOperation.Response.class, this.node);
+            records += this.node.getObjectPublishers().update(response.getPublishRecords());
+            chunks++;
+            if (response.isComplete()) {
+                break;
+            }
+            after = response.getLast();
+        }
+
+        if (this.log.isLoggable(Level.INFO)) {
+            this.log.info("%d publish records in %d chunks from %s in %dms", records, chunks, root.getObjectId(), System.currentTimeMillis() - startTime);
+        }
+        return records;
+    }
+
     /**
      * "Top-side" {@link TitanService} method to perform a "join" with a Titan system,
      * using the given {@link NodeAddress NodeAddress} gateway as the joining server for the network.
@@ -701,16 +942,8 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         try {
             JoinOperation.Response response = reply.getPayload(JoinOperation.Response.class, this.node);
 
-            Map<TitanGuid,Set<Publishers.PublishRecord>> publishRecords = response.getPublishRecords();
-            this.log.finest("%d publish records", publishRecords.size());
-            for (TitanGuid objectId : publishRecords.keySet()) {
-                Set<Publishers.PublishRecord> publishers = publishRecords.get(objectId);
-                this.log.finest("Adding publish record %s", publishers);
-                try {
-                    this.node.getObjectPublishers().update(objectId, publishers);
-                } catch (AbstractStoredMap.OutOfSpace e) {
-                    this.node.getObjectPublishers().remove(objectId);                    
-                }
+            if (response.getHandoffCount() > 0) {
+                this.fetchHandoff(response.getRoot());
             }
 
             // For each NodeAddress in the reply, add it to our local neighbour-map.
@@ -725,7 +958,7 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
             censusService.putAllLocal(census);
 
             // At this point this node should be setup and ready to participate.
-            // Object publishers has been copied from the old-root.
+            // The object publishers that this node is now the root of have been copied from the old-root.
             // The neighbour-map is populated.
             // The census data is inherited.
             // The next time the introduction daemon runs, this node will announce its debut.
@@ -809,16 +1042,30 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
 
     /**
      * Transmit a ping message to the given {@link NodeAddress} {@code target}.
+     * <p>
+     * The message is transmitted directly to {@code target}, and the ping fails if {@code target} does not answer
+     * within {@code timeoutMillis} milliseconds.
+     * </p>
      *
      * @param target the destination {@link NodeAddress} of the {@link TitanNode} to ping.
      * @param request the {@link PingOperation.Request} to transmit to the destination {@code TitanNode}
+     * @param timeoutMillis the number of milliseconds to wait for the connection and for the reply, or {@code 0} for no timeout.
      */
-    public PingOperation.Response ping(NodeAddress target, PingOperation.Request request) throws IOException, RemoteException {
+    public PingOperation.Response ping(NodeAddress target, PingOperation.Request request, long timeoutMillis) throws IOException, RemoteException {
         long startTime = System.currentTimeMillis();
         if (this.log.isLoggable(Level.FINEST)) {
             this.log.finest("%s", target.format());
         }
-        TitanMessage reply = this.node.sendToNode(target.getObjectId(), RoutingDaemon.name, "ping", request);
+        TitanMessage message = new TitanMessage(TitanMessage.Type.RouteToNode,
+                this.node.getNodeAddress(),
+                target.getObjectId(),
+                target.getObjectId(),
+                RoutingDaemon.name,
+                "ping",
+                TitanMessage.Transmission.UNICAST,
+                TitanMessage.Route.LOOSELY,
+                request);
+        TitanMessage reply = this.node.getMessageService().transmit(target, message, timeoutMillis);
         long latency = System.currentTimeMillis() - startTime;
         if (this.log.isLoggable(Level.FINEST)) {
             this.log.finest("%s response %dms", target.format(), latency);
@@ -864,13 +1111,41 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
         return null;
     }
 
+    /**
+     * Ping each of the given {@link NodeAddress} instances concurrently, giving each result to {@code listener} as it arrives.
+     * A ping that fails to produce a response is reported as a failure.
+     */
+    private ProbeScheduler.Round probe(Collection<NodeAddress> targets, ProbeScheduler.Listener<NodeAddress,PingOperation.Response> listener) throws InterruptedException {
+        ProbeScheduler scheduler = this.prober;
+        if (scheduler == null) {
+            throw new InterruptedException("stopped");
+        }
+        scheduler.setConcurrency(this.node.getConfiguration().asInt(RoutingDaemon.ProbeConcurrency));
+        scheduler.setDeadlineMillis(Time.secondsInMilliseconds(this.node.getConfiguration().asLong(RoutingDaemon.ProbeTimeoutSeconds)));
+
+        return scheduler.probe(targets, new ProbeScheduler.Probe<NodeAddress,PingOperation.Response>() {
+            public PingOperation.Response probe(NodeAddress target, long deadlineMillis) throws Exception {
+                PingOperation.Response response = RoutingDaemon.this.ping(target, new PingOperation.Request(new byte[0]), deadlineMillis);
+                if (response == null) {
+                    throw new IOException("No response from " + target.getObjectId());
+                }
+                return response;
+            }
+        }, listener);
+    }
+
     @Override
     public synchronized void start() {
         if (this.isStarted()) {
             return;
         }
         super.start();
-        
+
+        if (this.prober == null) {
+            this.prober = new ProbeScheduler(this.node.getThreadGroup(), this.node.getNodeId() + " " + RoutingDaemon.name + ".Probe",
+                    this.node.getConfiguration().asInt(RoutingDaemon.ProbeConcurrency),
+                    Time.secondsInMilliseconds(this.node.getConfiguration().asLong(RoutingDaemon.ProbeTimeoutSeconds)));
+        }
         if (this.introductionDaemon == null) {
             this.setStatus("start");
             try {
@@ -901,6 +1176,12 @@ public final class RoutingDaemon extends AbstractTitanService implements Routing
     @Override
     public void stop() {
         super.stop();
+        synchronized (this) {
+            if (this.prober != null) {
+                this.prober.shutdown();
+                this.prober = null;
+            }
+        }
     }
 
     public XHTML.EFlow toXHTML(URI uri, Map<String,HTTP.Message> props) {
@@ -159,9 +159,10 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
         /**
          * If the socket cache contains a socket bound to the specified node
          * address, remove it from the cache and return it. Otherwise, create a
-         * new socket bound to that node address.
+         * new socket bound to that node address, allowing it
+         * {@code connectTimeoutMillis} milliseconds (0 for no limit) to connect.
          */
-        public abstract Socket getAndRemove(NodeAddress addr) throws Exception;
+        public abstract Socket getAndRemove(NodeAddress addr, long connectTimeoutMillis) throws Exception;
 
         /**
          * Add the specified socket (assumed to be bound to the specified node
@@ -261,6 +262,7 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
                         this.node.getLogger().finest("Request: %s", request);
                     }
 
+                    this.node.getLoadMonitor().addBytesIn(this.request.getWireLength());
                     TitanMessage myResponse = this.node.receive(this.request);
 
                     if (this.node.getLogger().isLoggable(Level.FINEST)) {
@@ -271,6 +273,7 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
                     DataOutputStream dos = new DataOutputStream(bos);
                     myResponse.writeObject(dos);
                     dos.flush();
+                    this.node.getLoadMonitor().addBytesOut(bos.size());
                     this.channel.output(ByteBuffer.wrap(bos.toByteArray()));
                 } catch (ClosedChannelException e) {
 
@@ -420,8 +423,8 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
             return this.getConnections().size();            
         }
 
-        public Socket getAndRemove(NodeAddress address) throws Exception {
-            return this.sockets.getAndRemove(address);
+        public Socket getAndRemove(NodeAddress address, long connectTimeoutMillis) throws Exception {
+            return this.sockets.getAndRemove(address, connectTimeoutMillis);
         }
 
         public void addAndEvictOld(NodeAddress addr, Socket socket) {
@@ -474,6 +477,7 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
 
                             this.lastActivityMillis = System.currentTimeMillis();
 
+                            this.service.node.getLoadMonitor().addBytesIn(request.getWireLength());
                             TitanMessage myResponse = this.service.node.receive(request);
                             DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
                             try {
@@ -485,6 +489,7 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
                                 }
                             }
                             dos.flush();
+                            this.service.node.getLoadMonitor().addBytesOut(dos.size());
                         } catch (ClassNotFoundException e) {
                             if (this.service.getLogger().isLoggable(Level.WARNING)) {
                                 this.service.getLogger().warning("%s reading input TitanMessage from %s%n", e.toString(), this.socket);
@@ -660,8 +665,8 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
             return this.service.executor.getLargestPoolSize();
         }
 
-        public Socket getAndRemove(NodeAddress address) throws Exception {
-            return this.sockets.getAndRemove(address);
+        public Socket getAndRemove(NodeAddress address, long connectTimeoutMillis) throws Exception {
+            return this.sockets.getAndRemove(address, connectTimeoutMillis);
         }
 
         public void addAndEvictOld(NodeAddress addr, Socket socket) {
@@ -695,11 +700,25 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
      * This handles both the SSL and non-SSL connections through the classes implementing the Connector interface.
      */
     public TitanMessage transmit(NodeAddress addr, TitanMessage message) /*throws InterruptedException*/ {
+        return this.transmit(addr, message, 0);
+    }
+
+    /**
+     * Transmit a {@link TitanMessage} directly to a {@link NodeAddress} and return the reply,
+     * waiting no more than {@code timeoutMillis} milliseconds to connect to {@code addr} and for each read of the reply.
+     * The cached socket's own timeout is restored before the socket is returned to the cache.
+     */
+    public TitanMessage transmit(NodeAddress addr, TitanMessage message, long timeoutMillis) {
         while (true) {
             Socket socket = null;
             boolean socketIsGood = true;
+            int socketTimeout = 0;
             try {
-                socket = this.connection.getAndRemove(addr);
+                socket = this.connection.getAndRemove(addr, timeoutMillis);
+                socketTimeout = socket.getSoTimeout();
+                if (timeoutMillis > 0 && (socketTimeout == 0 || timeoutMillis < socketTimeout)) {
+                    socket.setSoTimeout((int) timeoutMillis);
+                }
 
                 if (message.isTraced()) {
                     this.log.info("%s to %s", message.traceReport(), addr.format());
@@ -709,8 +728,10 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
                 message.writeObject(out);
                 out.flush();
+                this.node.getLoadMonitor().addBytesOut(out.size());
 
                 TitanMessage response = TitanMessage.newInstance(socket.getInputStream());
+                this.node.getLoadMonitor().addBytesIn(response.getWireLength());
                 if (response.isTraced()) {
                     this.log.info("recv: %s, reply: %ss", message.traceReport(), response.traceReport());
                 }
@@ -747,6 +768,13 @@ public class TCPMessageService extends AbstractTitanService implements MessageSe
                 socketIsGood = false;
                 // close this socket and try again with a new one.
             } finally {
+                if (socketIsGood) {
+                    try {
+                        socket.setSoTimeout(socketTimeout);
+                    } catch (java.net.SocketException e) {
+                        socketIsGood = false;
+                    }
+                }
                 if (socketIsGood) {
                     // The socket is (still) good, so return the socket to the cache.
                     this.connection.addAndEvictOld(addr, socket);
@@ -38,6 +38,19 @@ public interface MessageService extends TitanService {
      * </p>
      */
     public TitanMessage transmit(NodeAddress addr, TitanMessage message) /*throws InterruptedException*/;
+
+    /**
+     * Transmit a {@link TitanMessage} directly to a {@link NodeAddress} and return the reply,
+     * waiting no more than {@code timeoutMillis} milliseconds to connect to the destination and for each read of the reply.
+     * If the destination {@code NodeAddress} is unresponsive, cannot be reached, or does not answer in time, the return value is {@code null}.
+     * <p>
+     * The timeout is enforced by the transport itself, so the calling thread is never interrupted and a connection that
+     * times out is discarded rather than returned for reuse.
+     * </p>
+     *
+     * @param timeoutMillis the timeout in milliseconds, or {@code 0} for no timeout.
+     */
+    public TitanMessage transmit(NodeAddress addr, TitanMessage message, long timeoutMillis);
     
     /**
      * This returns the Thread listening for incoming messages.
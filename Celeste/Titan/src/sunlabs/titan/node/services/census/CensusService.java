@@ -11,6 +11,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -126,8 +127,17 @@ public class CensusService extends AbstractTitanService implements Census {
     /** The list of the {@link CensusReportGenerator} classes, invoked in order. */
     public final static Attributes.Prototype ReportGenerators = new Attributes.Prototype(CensusService.class,
             "ReportGenerators",
-            "sunlabs.titan.node.services.census.BasicReport",
+            "sunlabs.titan.node.services.census.BasicReport,sunlabs.titan.node.services.census.LoadReport",
     "The list of the CensusReportGenerator classes, invoked in order.");
+
+    /**
+     * The policy for choosing among the nodes that match a select query when there are more than requested:
+     * {@code Load} chooses each node as the less loaded (see {@link LoadReport#compare(OrderedProperties, OrderedProperties)}) of two matching nodes chosen at random,
+     * {@code Random} chooses nodes at random.
+     */
+    public final static Attributes.Prototype SelectPolicy = new Attributes.Prototype(CensusService.class,
+            "SelectPolicy", "Load",
+    "The policy for choosing among the nodes that match a select query: Load (the less loaded of two random nodes) or Random.");
     
     private static String release = Release.ThisRevision();
 
@@ -392,6 +402,8 @@ public class CensusService extends AbstractTitanService implements Census {
     // This ought to just be the Dossier file.  But the Dossier may have information that is not up-to-date.
     private SortedMap<TitanNodeId,OrderedProperties> catalogue;
 
+    private final Random random = new Random();
+
     private List<CensusReportGenerator> reportGenerators;
     
     protected CensusService(TitanNode node, String name, String description) throws JMException, ClassNotFoundException, SecurityException, NoSuchMethodException, IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
@@ -401,6 +413,7 @@ public class CensusService extends AbstractTitanService implements Census {
         node.getConfiguration().add(CensusService.ClockSlopToleranceSeconds);
         node.getConfiguration().add(CensusService.ReportRateSeconds);
         node.getConfiguration().add(CensusService.ReportGenerators);
+        node.getConfiguration().add(CensusService.SelectPolicy);
 
         if (this.log.isLoggable(Level.CONFIG)) {
             this.log.config("%s",node.getConfiguration().get(CensusService.ReportRateSeconds));
@@ -424,6 +437,7 @@ public class CensusService extends AbstractTitanService implements Census {
             this.log.config("%s", node.getConfiguration().get(CensusService.ClockSlopToleranceSeconds));
             this.log.config("%s", node.getConfiguration().get(CensusService.ReportRateSeconds));
             this.log.config("%s", node.getConfiguration().get(CensusService.ReportGenerators));
+            this.log.config("%s", node.getConfiguration().get(CensusService.SelectPolicy));
         }
     }
     
@@ -469,8 +483,9 @@ public class CensusService extends AbstractTitanService implements Census {
     }
 
     /**
-     * Randomly select {@code count} nodes, excluding those present in the  {@link Set} {@code exclude},
+     * Select {@code count} nodes, excluding those present in the  {@link Set} {@code exclude},
      * that match properties specified in the {@link OrderedProperties} instance.
+     * If there are more matching nodes than {@code count}, the nodes are chosen according to the {@link CensusService#SelectPolicy}.
      *
      * @param count the number of nodes to select. A count of zero means to return the entire set of nodes.
      * @param exclude the {@code Set} of nodes to exclude from the result, or {@code null}.
@@ -482,29 +497,65 @@ public class CensusService extends AbstractTitanService implements Census {
         if (count == 0) {
             count = Integer.MAX_VALUE;
         }
-//        if (count == Integer.MAX_VALUE && comparatorList.size() == 0) {
-//            synchronized (this.catalogue) {
-//                result.putAll(this.catalogue);
-//            }
-//            return result;
-//        }
+        boolean byLoad = this.node.getConfiguration().asString(CensusService.SelectPolicy).equalsIgnoreCase("Load");
 
         synchronized (this.catalogue) {
-            List<TitanNodeId> nodes = new LinkedList<TitanNodeId>(this.catalogue.keySet());
-            Collections.shuffle(nodes, new Random(System.currentTimeMillis()));
-
-            for (TitanNodeId id : nodes) {
+            List<TitanNodeId> nodes = new ArrayList<TitanNodeId>();
+            for (TitanNodeId id : this.catalogue.keySet()) {
                 if (!exclude.contains(id) && applySelectComparators(this.catalogue.get(id), comparatorList)) {
-                    result.put(id, this.catalogue.get(id));
-                    if (result.size() == count) {
-                        break;
-                    }
+                    nodes.add(id);
                 }
             }
+
+            List<TitanNodeId> selected;
+            if (byLoad && count < nodes.size()) {
+                selected = CensusService.selectByLoad(nodes, this.catalogue, count, this.random);
+            } else {
+                Collections.shuffle(nodes, this.random);
+                selected = nodes.subList(0, Math.min(count, nodes.size()));
+            }
+            for (TitanNodeId id : selected) {
+                result.put(id, this.catalogue.get(id));
+            }
         }
 
         return result;
     }
+
+    /**
+     * Choose {@code count} of the {@code candidates}, each as the less loaded of two of the remaining candidates chosen at random.
+     * <p>
+     * Choosing the better of two random nodes, rather than the least loaded node, avoids sending every request to the same node
+     * between Census reports, while still steering requests away from loaded nodes.
+     * </p>
+     *
+     * @param candidates the nodes to choose from.
+     * @param reports the Census report of each candidate.
+     * @param count the number of nodes to choose.
+     * @param random the source of random choices.
+     * @return the chosen nodes, or all of the {@code candidates} if there are no more than {@code count}.
+     */
+    static List<TitanNodeId> selectByLoad(List<TitanNodeId> candidates, Map<TitanNodeId,OrderedProperties> reports, int count, Random random) {
+        List<TitanNodeId> remaining = new ArrayList<TitanNodeId>(candidates);
+        List<TitanNodeId> result = new ArrayList<TitanNodeId>(Math.min(count, remaining.size()));
+
+        while (result.size() < count && !remaining.isEmpty()) {
+            int choice = random.nextInt(remaining.size());
+            if (remaining.size() > 1) {
+                int other = random.nextInt(remaining.size() - 1);
+                if (other >= choice) {
+                    other++;
+                }
+                if (LoadReport.compare(reports.get(remaining.get(other)), reports.get(remaining.get(choice))) < 0) {
+                    choice = other;
+                }
+            }
+            result.add(remaining.get(choice));
+            remaining.set(choice, remaining.get(remaining.size() - 1));
+            remaining.remove(remaining.size() - 1);
+        }
+        return result;
+    }
     
     public boolean applySelectComparators(OrderedProperties orderedProperties, List<SelectComparator> comparatorList) {
         for (SelectComparator comparator: comparatorList) {
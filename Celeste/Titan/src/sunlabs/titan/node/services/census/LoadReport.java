@@ -0,0 +1,104 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.services.census;
+
+import java.util.Properties;
+
+import sunlabs.titan.api.TitanNode;
+import sunlabs.titan.api.TitanService;
+import sunlabs.titan.node.services.Census;
+import sunlabs.titan.node.util.LoadMonitor;
+import sunlabs.titan.util.OrderedProperties;
+
+/**
+ * Report the current load on this node, as measured by its {@link LoadMonitor}, and the free space in its object store.
+ * <p>
+ * Each report folds the activity since the previous report into the smoothed values of the {@code LoadMonitor},
+ * so the reports are smoothed over the last few Census report intervals.
+ * </p>
+ * <p>
+ * {@link #compare(OrderedProperties, OrderedProperties)} ranks two nodes by the load in their reports.
+ * </p>
+ */
+public class LoadReport implements CensusReportGenerator {
+    /** A node with less than this number of bytes free in its object store is considered to be more loaded than any node with more. */
+    public final static long SPOOL_RESERVE_BYTES = 64L * 1024 * 1024;
+
+    protected OrderedProperties report;
+    protected TitanService service;
+
+    public LoadReport(Census census) {
+        this.report = new OrderedProperties();
+        this.service = census;
+    }
+
+    public Properties report() {
+        TitanNode node = this.service.getNode();
+        LoadMonitor load = node.getLoadMonitor();
+        load.sample();
+
+        this.report.setProperty(Census.DispatchQueueDepth, load.getDispatchQueueDepth());
+        this.report.setProperty(Census.ObjectStorePutLatencyMillis, load.getPutLatencyMillis());
+        this.report.setProperty(Census.BytesInPerSecond, load.getBytesInPerSecond());
+        this.report.setProperty(Census.BytesOutPerSecond, load.getBytesOutPerSecond());
+        this.report.setProperty(Census.SpoolFreeBytes, node.getObjectStore().getSpoolAvailable());
+        return this.report;
+    }
+
+    /**
+     * Compare the load on two nodes given their Census reports.
+     * <p>
+     * A node with less than {@link #SPOOL_RESERVE_BYTES} bytes free in its object store is more loaded than a node with more.
+     * Otherwise, the dispatch queue depth, object store put latency, and network traffic of the two nodes are each
+     * expressed as the difference between the two values relative to their sum, and the three relative differences are added.
+     * Consequently no one signal needs to be scaled to the others, and a signal that is zero on both nodes has no effect.
+     * A value missing from a report, such as in a report from a node that does not include this generator, is taken to be zero.
+     * </p>
+     *
+     * @return a negative integer, zero, or a positive integer as the node reporting {@code a} is less, equally, or more loaded than the node reporting {@code b}.
+     */
+    public static int compare(OrderedProperties a, OrderedProperties b) {
+        boolean aFull = a.getPropertyAsLong(Census.SpoolFreeBytes, Long.MAX_VALUE) < SPOOL_RESERVE_BYTES;
+        boolean bFull = b.getPropertyAsLong(Census.SpoolFreeBytes, Long.MAX_VALUE) < SPOOL_RESERVE_BYTES;
+        if (aFull != bFull) {
+            return aFull ? 1 : -1;
+        }
+
+        double difference =
+            LoadReport.relativeDifference(a.getPropertyAsDouble(Census.DispatchQueueDepth, 0), b.getPropertyAsDouble(Census.DispatchQueueDepth, 0))
+            + LoadReport.relativeDifference(a.getPropertyAsDouble(Census.ObjectStorePutLatencyMillis, 0), b.getPropertyAsDouble(Census.ObjectStorePutLatencyMillis, 0))
+            + LoadReport.relativeDifference(LoadReport.traffic(a), LoadReport.traffic(b));
+
+        return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+    }
+
+    private static double traffic(OrderedProperties report) {
+        return report.getPropertyAsDouble(Census.BytesInPerSecond, 0) + report.getPropertyAsDouble(Census.BytesOutPerSecond, 0);
+    }
+
+    private static double relativeDifference(double a, double b) {
+        double sum = a + b;
+        return sum <= 0 ? 0 : (a - b) / sum;
+    }
+}
@@ -41,6 +41,7 @@ import sunlabs.titan.api.TitanObject;
 import sunlabs.titan.api.TitanObject.Metadata;
 import sunlabs.titan.node.BeehiveObjectPool;
 import sunlabs.titan.node.BeehiveObjectPool.DisallowedDuplicateException;
+import sunlabs.titan.node.TitanNodeImpl;
 import sunlabs.titan.node.TitanObjectStoreImpl;
 import sunlabs.titan.node.Publishers.PublishRecord;
 import sunlabs.titan.node.TitanMessage;
@@ -65,6 +66,8 @@ public final class CredentialObjectHandler extends AbstractObjectHandler impleme
 
     public CredentialObjectHandler(TitanNode node) throws JMException {
         super(node, CredentialObjectHandler.name, "Credential Object Handler");
+
+        node.getObjectStore().setCacheAdmission(Credential.class, node.getConfiguration().asLong(TitanNodeImpl.ObjectStoreCacheMaximumObjectSize));
     }
 
     //
@@ -123,7 +126,7 @@ public final class CredentialObjectHandler extends AbstractObjectHandler impleme
     }
 
     public TitanObject retrieveLocalObject(TitanMessage message, TitanGuid objectId) throws TitanObjectStoreImpl.NotFoundException {
-        return node.getObjectStore().get(TitanObject.class, message.subjectId);
+        return RetrievableObject.retrieveLocalObjectHelper(this, message);
     }
 
     //
@@ -0,0 +1,909 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.services.objectstore;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import sunlabs.asdf.jmx.JMX;
+import sunlabs.asdf.jmx.ThreadMBean;
+import sunlabs.asdf.util.Attributes;
+import sunlabs.asdf.util.Time;
+import sunlabs.asdf.web.XML.XHTML;
+import sunlabs.asdf.web.http.HTTP;
+import sunlabs.asdf.web.http.HttpMessage;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanNode;
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.api.TitanObjectStore;
+import sunlabs.titan.node.Publishers;
+import sunlabs.titan.node.TitanMessage;
+import sunlabs.titan.node.TitanMessage.RemoteException;
+import sunlabs.titan.node.object.ReplicatableObject;
+import sunlabs.titan.node.services.AbstractTitanService;
+
+/**
+ * The Titan Node Object Repair Daemon
+ *
+ * <p>
+ * The root of an object's identifier is the only node that knows how many copies of the object exist,
+ * because it holds the publish records for every copy.
+ * When a node unpublishes a {@link ReplicatableObject.Handler.Object} the root hands the object to this service
+ * (see {@link ReplicatableObject#unpublishObjectRootHelper(ReplicatableObject.Handler, sunlabs.titan.node.services.api.Publish.PublishUnpublishRequest)}),
+ * which keeps a queue of the objects that may be under-replicated and restores them in order of need.
+ * </p>
+ * <p>
+ * The queue is ordered by the number of copies remaining, then by the number of copies missing,
+ * then by the remaining time-to-live of the object, so that the objects closest to being lost are repaired first,
+ * and among equally endangered objects the longer lived objects are repaired before those that will soon expire anyway.
+ * Objects whose copies are all gone, that are deleted, that have regained their copies,
+ * or that have less than {@link #MinimumSecondsToLive} seconds to live are dropped from the queue.
+ * </p>
+ * <p>
+ * A repair is a request to one of the nodes still publishing the object to store additional copies of it
+ * (see {@link ReplicatableObject.Handler#replicateObjects(TitanMessage, ReplicatableObject.Replicate.BatchRequest)}).
+ * Requests for different objects sent to the same node are batched together into a single message of
+ * at most {@link #BatchSize} objects, and each node has at most one batch outstanding at a time.
+ * The rate at which copies are made is limited both in total, by {@link #TransfersPerSecond},
+ * and for each node asked to make copies, by {@link #TargetTransfersPerSecond},
+ * so that the loss of a node holding many objects is repaired as a steady stream of transfers spread across the surviving copies
+ * rather than as a burst.
+ * </p>
+ * <p>
+ * Published object metadata does not record the size of an object, so rates are expressed in object copies rather than in bytes.
+ * </p>
+ */
+public final class RepairDaemon extends AbstractTitanService implements RepairDaemonMBean {
+    private final static long serialVersionUID = 1L;
+    private final static String name = AbstractTitanService.makeName(RepairDaemon.class, RepairDaemon.serialVersionUID);
+
+    public final static Attributes.Prototype TransfersPerSecond = new Attributes.Prototype(RepairDaemon.class,
+            "TransfersPerSecond",
+            20,
+            "The maximum number of object copies per second this node will request when repairing under-replicated objects.");
+
+    public final static Attributes.Prototype TargetTransfersPerSecond = new Attributes.Prototype(RepairDaemon.class,
+            "TargetTransfersPerSecond",
+            4,
+            "The maximum number of object copies per second this node will request from any single node.");
+
+    public final static Attributes.Prototype BatchSize = new Attributes.Prototype(RepairDaemon.class,
+            "BatchSize",
+            32,
+            "The maximum number of objects in a single repair request to a node.");
+
+    public final static Attributes.Prototype Concurrency = new Attributes.Prototype(RepairDaemon.class,
+            "Concurrency",
+            4,
+            "The maximum number of repair requests outstanding at any one time.");
+
+    public final static Attributes.Prototype MaxAttempts = new Attributes.Prototype(RepairDaemon.class,
+            "MaxAttempts",
+            3,
+            "The number of times the repair of an object is attempted before it is abandoned.");
+
+    public final static Attributes.Prototype MinimumSecondsToLive = new Attributes.Prototype(RepairDaemon.class,
+            "MinimumSecondsToLive",
+            60,
+            "Objects with fewer than this number of seconds to live are not repaired.");
+
+    /** The number of milliseconds to wait before re-examining an object after a repair attempt. */
+    private final static long SettleMillis = Time.secondsInMilliseconds(5);
+
+    /** The number of milliseconds between scheduling passes while the queue is not empty. */
+    private final static long PassMillis = 250;
+
+    /** The number of queued entries examined in a scheduling pass, as a multiple of the number of objects that could be dispatched. */
+    private final static int ScanFactor = 4;
+
+    private enum Assessment { NEEDED, SATISFIED, DELETED, LOST, EXPIRING };
+
+    /**
+     * An object that may need repair.
+     * <p>
+     * The fields that determine the order of a {@code Repair} in the queue are only modified while it is not in the queue.
+     * </p>
+     */
+    private static class Repair {
+        final TitanGuid objectId;
+        final long sequence;
+        final long enqueuedMillis;
+        /** Nodes that must not be chosen to hold a new copy: nodes that have unpublished the object, and unreachable nodes. */
+        final Set<TitanNodeId> excluded;
+        /** Nodes that did not respond to a repair request, and are not counted as holding a copy. */
+        final Set<TitanNodeId> unreachable;
+        List<Publishers.PublishRecord> sources;
+        int remaining;
+        int desired;
+        long expireTimeSeconds;
+        int attempts;
+        long notBeforeMillis;
+        boolean inFlight;
+        boolean dirty;
+
+        Repair(TitanGuid objectId, long sequence, long now) {
+            this.objectId = objectId;
+            this.sequence = sequence;
+            this.enqueuedMillis = now;
+            this.excluded = new HashSet<TitanNodeId>();
+            this.unreachable = new HashSet<TitanNodeId>();
+            this.sources = Collections.emptyList();
+            this.desired = 0;
+        }
+
+        int deficit() {
+            return this.desired - this.remaining;
+        }
+
+        /**
+         * The number of copies a repair request for this object asks for, and is charged for.
+         */
+        int copies() {
+            return Math.max(1, this.deficit());
+        }
+    }
+
+    private final static Comparator<Repair> Priority = new Comparator<Repair>() {
+        public int compare(Repair a, Repair b) {
+            if (a.remaining != b.remaining) {
+                return a.remaining < b.remaining ? -1 : 1;
+            }
+            if (a.deficit() != b.deficit()) {
+                return a.deficit() > b.deficit() ? -1 : 1;
+            }
+            if (a.expireTimeSeconds != b.expireTimeSeconds) {
+                return a.expireTimeSeconds > b.expireTimeSeconds ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    /**
+     * A token bucket limiting a rate of object copies.
+     * <p>
+     * A repair may start whenever at least one token is available, and is then charged one token for each copy it makes.
+     * A repair making more copies than there are tokens leaves the bucket in debt,
+     * which delays the next repair until the debt has been repaid at the bucket's rate.
+     * </p>
+     */
+    static class TokenBucket {
+        private double tokens;
+        private long lastMillis;
+
+        TokenBucket(double rate, long now) {
+            this.tokens = Math.max(1.0, rate);
+            this.lastMillis = now;
+        }
+
+        /**
+         * Add the tokens accumulated since the last refill at the given rate and return the number available.
+         */
+        double refill(double rate, long now) {
+            double capacity = Math.max(1.0, rate);
+            this.tokens = Math.min(capacity, this.tokens + rate * (now - this.lastMillis) / 1000.0);
+            this.lastMillis = now;
+            return this.tokens;
+        }
+
+        boolean isFull(double rate) {
+            return this.tokens >= Math.max(1.0, rate);
+        }
+
+        /**
+         * Charge the bucket for {@code copies} copies.
+         */
+        void take(int copies) {
+            this.tokens -= copies;
+        }
+    }
+
+    /**
+     * A batch of repairs sent to a single node.
+     */
+    private class Transfer implements Runnable {
+        private final TitanNodeId source;
+        private final String objectClass;
+        private final List<Repair> repairs;
+        private final List<ReplicatableObject.Replicate.Request> requests;
+
+        Transfer(TitanNodeId source, String objectClass) {
+            this.source = source;
+            this.objectClass = objectClass;
+            this.repairs = new ArrayList<Repair>();
+            this.requests = new ArrayList<ReplicatableObject.Replicate.Request>();
+        }
+
+        /**
+         * Add the given repair to this batch, composing the request from the current state of the repair.
+         * Must be called while synchronized on the queue.
+         */
+        void add(Repair repair) {
+            Set<TitanNodeId> exclude = new HashSet<TitanNodeId>(repair.excluded);
+            for (Publishers.PublishRecord record : repair.sources) {
+                exclude.add(record.getNodeId());
+            }
+            this.repairs.add(repair);
+            this.requests.add(new ReplicatableObject.Replicate.Request(repair.objectId, exclude, repair.deficit()));
+        }
+
+        public void run() {
+            Set<TitanGuid> replicated = Collections.emptySet();
+            boolean unreachable = false;
+
+            try {
+                TitanMessage reply = RepairDaemon.this.node.sendToNodeExactly(this.source, this.repairs.get(0).objectId, this.objectClass,
+                        "replicateObjects", new ReplicatableObject.Replicate.BatchRequest(this.requests));
+                replicated = reply.getPayload(ReplicatableObject.Replicate.BatchResponse.class, RepairDaemon.this.node).getReplicated();
+            } catch (TitanNode.NoSuchNodeException e) {
+                unreachable = true;
+            } catch (RemoteException e) {
+                if (RepairDaemon.this.log.isLoggable(Level.WARNING)) {
+                    RepairDaemon.this.log.warning("%s: %s", this.source, e.getCause());
+                }
+            } catch (ClassNotFoundException e) {
+                if (RepairDaemon.this.log.isLoggable(Level.WARNING)) {
+                    RepairDaemon.this.log.warning("%s: %s", this.source, e);
+                }
+            } catch (ClassCastException e) {
+                if (RepairDaemon.this.log.isLoggable(Level.WARNING)) {
+                    RepairDaemon.this.log.warning("%s: %s", this.source, e);
+                }
+            } finally {
+                RepairDaemon.this.completed(this, replicated, unreachable);
+            }
+        }
+    }
+
+    private class SimpleThreadFactory implements ThreadFactory {
+        private String name;
+        private long counter;
+        private ThreadGroup threadGroup;
+
+        public SimpleThreadFactory(ThreadGroup group, String name) {
+            this.threadGroup = group;
+            this.name = name;
+            this.counter = 0;
+        }
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(this.threadGroup, r);
+            thread.setName(String.format("%s-pool-%d", this.name, this.counter));
+            thread.setDaemon(true);
+            this.counter++;
+            return thread;
+        }
+    }
+
+    public interface SchedulerMBean extends ThreadMBean {
+        public int getQueueLength();
+        public int getObjectsInFlight();
+        public int getBatchesInFlight();
+        public long getEnqueued();
+        public long getReplicated();
+        public long getSatisfied();
+        public long getLost();
+        public long getExpiring();
+        public long getFailed();
+        public long getBatches();
+        public String getOldestRepair();
+        public long getTransfersPerSecond();
+        public void setTransfersPerSecond(long transfers);
+        public long getTargetTransfersPerSecond();
+        public void setTargetTransfersPerSecond(long transfers);
+        public void wakeup();
+    }
+
+    /**
+     * Repeatedly take the most urgent repairs from the queue and dispatch them in batches, within the rate limits.
+     */
+    private class Scheduler extends Thread implements SchedulerMBean {
+        private final ObjectName jmxObjectName;
+
+        Scheduler() throws JMException {
+            super(RepairDaemon.this.node.getThreadGroup(), RepairDaemon.this.node.getNodeId() + " " + RepairDaemon.name + ".Scheduler");
+            this.setPriority(Thread.NORM_PRIORITY);
+            this.setDaemon(true);
+
+            if (RepairDaemon.this.jmxObjectNameRoot != null) {
+                this.jmxObjectName = JMX.objectName(RepairDaemon.this.jmxObjectNameRoot, "Scheduler");
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.jmxObjectName);
+            } else {
+                this.jmxObjectName = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!interrupted()) {
+                    List<Transfer> transfers;
+                    synchronized (RepairDaemon.this.queue) {
+                        transfers = RepairDaemon.this.assemble(System.currentTimeMillis());
+                    }
+                    for (Transfer transfer : transfers) {
+                        try {
+                            RepairDaemon.this.transfers.execute(transfer);
+                        } catch (RejectedExecutionException e) {
+                            RepairDaemon.this.completed(transfer, Collections.<TitanGuid>emptySet(), false);
+                        }
+                    }
+                    synchronized (RepairDaemon.this.queue) {
+                        if (RepairDaemon.this.queue.isEmpty()) {
+                            RepairDaemon.this.setStatus("idle");
+                            RepairDaemon.this.queue.wait();
+                        } else {
+                            RepairDaemon.this.setStatus(String.format("repairing %d objects", RepairDaemon.this.repairs.size()));
+                            RepairDaemon.this.queue.wait(RepairDaemon.PassMillis);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Do nothing, let the thread stop.
+            }
+
+            if (this.jmxObjectName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.jmxObjectName);
+                } catch (JMException ignore) {
+
+                }
+            }
+            RepairDaemon.this.setStatus("stopped");
+        }
+
+        public int getQueueLength() {
+            synchronized (RepairDaemon.this.queue) {
+                return RepairDaemon.this.queue.size();
+            }
+        }
+
+        public int getObjectsInFlight() {
+            synchronized (RepairDaemon.this.queue) {
+                return RepairDaemon.this.repairs.size() - RepairDaemon.this.queue.size();
+            }
+        }
+
+        public int getBatchesInFlight() {
+            synchronized (RepairDaemon.this.queue) {
+                return RepairDaemon.this.busy.size();
+            }
+        }
+
+        public long getEnqueued() {
+            return RepairDaemon.this.enqueued;
+        }
+
+        public long getReplicated() {
+            return RepairDaemon.this.replicated;
+        }
+
+        public long getSatisfied() {
+            return RepairDaemon.this.satisfied;
+        }
+
+        public long getLost() {
+            return RepairDaemon.this.lost;
+        }
+
+        public long getExpiring() {
+            return RepairDaemon.this.expiring;
+        }
+
+        public long getFailed() {
+            return RepairDaemon.this.failed;
+        }
+
+        public long getBatches() {
+            return RepairDaemon.this.batches;
+        }
+
+        public String getOldestRepair() {
+            long oldest = Long.MAX_VALUE;
+            synchronized (RepairDaemon.this.queue) {
+                for (Repair repair : RepairDaemon.this.repairs.values()) {
+                    oldest = Math.min(oldest, repair.enqueuedMillis);
+                }
+            }
+            return oldest == Long.MAX_VALUE ? "" : Time.formattedElapsedTime(System.currentTimeMillis() - oldest);
+        }
+
+        public long getTransfersPerSecond() {
+            return RepairDaemon.this.node.getConfiguration().asLong(RepairDaemon.TransfersPerSecond);
+        }
+
+        public void setTransfersPerSecond(long transfers) {
+            RepairDaemon.this.node.getConfiguration().set(RepairDaemon.TransfersPerSecond, transfers);
+        }
+
+        public long getTargetTransfersPerSecond() {
+            return RepairDaemon.this.node.getConfiguration().asLong(RepairDaemon.TargetTransfersPerSecond);
+        }
+
+        public void setTargetTransfersPerSecond(long transfers) {
+            RepairDaemon.this.node.getConfiguration().set(RepairDaemon.TargetTransfersPerSecond, transfers);
+        }
+
+        public void wakeup() {
+            synchronized (RepairDaemon.this.queue) {
+                RepairDaemon.this.queue.notifyAll();
+            }
+        }
+    }
+
+    // The queue, the map of all repairs (queued and in flight), the token buckets and the set of busy nodes are all guarded by the queue.
+    transient private final TreeSet<Repair> queue;
+    transient private final Map<TitanGuid,Repair> repairs;
+    transient private final Map<TitanNodeId,TokenBucket> targetBuckets;
+    transient private final Set<TitanNodeId> busy;
+    transient private TokenBucket globalBucket;
+    transient private long sequence;
+
+    transient private volatile long enqueued;
+    transient private volatile long replicated;
+    transient private volatile long satisfied;
+    transient private volatile long lost;
+    transient private volatile long expiring;
+    transient private volatile long failed;
+    transient private volatile long batches;
+
+    transient private Scheduler scheduler;
+    transient private ExecutorService transfers;
+
+    public RepairDaemon(final TitanNode node) throws JMException {
+        super(node, RepairDaemon.name, "Repair under-replicated objects");
+
+        node.getConfiguration().add(RepairDaemon.TransfersPerSecond);
+        node.getConfiguration().add(RepairDaemon.TargetTransfersPerSecond);
+        node.getConfiguration().add(RepairDaemon.BatchSize);
+        node.getConfiguration().add(RepairDaemon.Concurrency);
+        node.getConfiguration().add(RepairDaemon.MaxAttempts);
+        node.getConfiguration().add(RepairDaemon.MinimumSecondsToLive);
+
+        if (this.log.isLoggable(Level.CONFIG)) {
+            this.log.config("%s", node.getConfiguration().get(RepairDaemon.TransfersPerSecond));
+            this.log.config("%s", node.getConfiguration().get(RepairDaemon.TargetTransfersPerSecond));
+            this.log.config("%s", node.getConfiguration().get(RepairDaemon.BatchSize));
+            this.log.config("%s", node.getConfiguration().get(RepairDaemon.Concurrency));
+            this.log.config("%s", node.getConfiguration().get(RepairDaemon.MaxAttempts));
+            this.log.config("%s", node.getConfiguration().get(RepairDaemon.MinimumSecondsToLive));
+        }
+
+        this.queue = new TreeSet<Repair>(RepairDaemon.Priority);
+        this.repairs = new HashMap<TitanGuid,Repair>();
+        this.targetBuckets = new HashMap<TitanNodeId,TokenBucket>();
+        this.busy = new HashSet<TitanNodeId>();
+        this.globalBucket = new TokenBucket(node.getConfiguration().asLong(RepairDaemon.TransfersPerSecond), System.currentTimeMillis());
+        this.sequence = 0;
+    }
+
+    /**
+     * Examine the object identified by {@code objectId}, which has just been unpublished by the node {@code unpublisher},
+     * and queue it for repair if it has fewer copies than it should.
+     * <p>
+     * Must only be called by the root of the object id.
+     * </p>
+     */
+    public void repair(TitanGuid objectId, TitanNodeId unpublisher) {
+        long now = System.currentTimeMillis();
+
+        synchronized (this.queue) {
+            Repair repair = this.repairs.get(objectId);
+            if (repair == null) {
+                repair = new Repair(objectId, this.sequence++, now);
+                this.enqueued++;
+            } else if (repair.inFlight) {
+                // Look at it again once the repair in progress completes.
+                repair.excluded.add(unpublisher);
+                repair.dirty = true;
+                return;
+            } else {
+                this.queue.remove(repair);
+            }
+            repair.excluded.add(unpublisher);
+
+            if (this.dispose(repair, this.assess(repair, Time.millisecondsToSeconds(now)))) {
+                return;
+            }
+            this.repairs.put(objectId, repair);
+            this.queue.add(repair);
+            this.queue.notifyAll();
+        }
+    }
+
+    /**
+     * Recompute the number of copies of the object to be repaired, and the number there should be, from this node's publish records.
+     */
+    private Assessment assess(Repair repair, long nowSeconds) {
+        Set<Publishers.PublishRecord> publishers = this.node.getObjectPublishers().getPublishers(repair.objectId);
+
+        List<Publishers.PublishRecord> sources = new ArrayList<Publishers.PublishRecord>(publishers.size());
+        int desired = -1;
+        long expireTime = 0;
+        for (Publishers.PublishRecord record : publishers) {
+            if (record.getMetadata() == null) {
+                continue;
+            }
+            if (record.isDeleted()) {
+                return Assessment.DELETED;
+            }
+            if (repair.unreachable.contains(record.getNodeId())) {
+                continue;
+            }
+            sources.add(record);
+            try {
+                desired = Math.max(desired, Integer.parseInt(record.getMetadataProperty(TitanObjectStore.METADATA_REPLICATION_STORE, "-1")));
+            } catch (NumberFormatException e) {
+                // Ignore a malformed value, another publisher may have a good one.
+            }
+            expireTime = Math.max(expireTime, RepairDaemon.expireTimeSeconds(record, nowSeconds));
+        }
+
+        repair.sources = sources;
+        repair.remaining = sources.size();
+        if (desired < 0) {
+            // Without a stated replication count, maintain the number of copies there were before the first unpublish.
+            desired = repair.desired > 0 ? repair.desired : repair.remaining + 1;
+        }
+        repair.desired = desired;
+        repair.expireTimeSeconds = expireTime;
+
+        if (repair.remaining == 0) {
+            return Assessment.LOST;
+        }
+        if (repair.remaining >= repair.desired) {
+            return Assessment.SATISFIED;
+        }
+        if (expireTime - nowSeconds < this.node.getConfiguration().asLong(RepairDaemon.MinimumSecondsToLive)) {
+            return Assessment.EXPIRING;
+        }
+        return Assessment.NEEDED;
+    }
+
+    /**
+     * Get the absolute time, in seconds, that the copy of the object described by the given publish record will expire.
+     */
+    private static long expireTimeSeconds(Publishers.PublishRecord record, long nowSeconds) {
+        long timeToLive = record.getObjectTTL();
+        if (timeToLive == TitanObject.INFINITE_TIME_TO_LIVE) {
+            return Long.MAX_VALUE;
+        }
+        long createdTime = record.getMetadata().getPropertyAsLong(TitanObjectStore.METADATA_CREATEDTIME, -1);
+        return (createdTime < 0 ? nowSeconds : createdTime) + timeToLive;
+    }
+
+    /**
+     * Account for, and forget, a repair that needs no further work.
+     * Return {@code true} if the repair was disposed of.
+     */
+    private boolean dispose(Repair repair, Assessment assessment) {
+        switch (assessment) {
+        case NEEDED:
+            return false;
+        case SATISFIED:
+        case DELETED:
+            this.satisfied++;
+            break;
+        case LOST:
+            this.lost++;
+            if (this.log.isLoggable(Level.WARNING)) {
+                this.log.warning("No publishers of object %s remaining", repair.objectId);
+            }
+            break;
+        case EXPIRING:
+            this.expiring++;
+            break;
+        }
+        this.repairs.remove(repair.objectId);
+        return true;
+    }
+
+    /**
+     * Take the most urgent repairs from the queue, within the rate and concurrency limits,
+     * and compose them into one {@link Transfer} for each node asked to make copies.
+     * Must be called while synchronized on the queue.
+     */
+    private List<Transfer> assemble(long now) {
+        double globalRate = this.node.getConfiguration().asLong(RepairDaemon.TransfersPerSecond);
+        double targetRate = this.node.getConfiguration().asLong(RepairDaemon.TargetTransfersPerSecond);
+        int batchSize = Math.max(1, this.node.getConfiguration().asInt(RepairDaemon.BatchSize));
+        int concurrency = Math.max(1, this.node.getConfiguration().asInt(RepairDaemon.Concurrency));
+        long nowSeconds = Time.millisecondsToSeconds(now);
+
+        Map<TitanNodeId,Transfer> open = new HashMap<TitanNodeId,Transfer>();
+        List<Repair> deferred = new ArrayList<Repair>();
+
+        int scanLimit = batchSize * concurrency * RepairDaemon.ScanFactor;
+        for (int scanned = 0; scanned < scanLimit && !this.queue.isEmpty() && this.globalBucket.refill(globalRate, now) >= 1.0; scanned++) {
+            Repair repair = this.queue.pollFirst();
+            if (repair.notBeforeMillis > now) {
+                deferred.add(repair);
+                continue;
+            }
+            if (this.dispose(repair, this.assess(repair, nowSeconds))) {
+                continue;
+            }
+
+            Publishers.PublishRecord source = this.chooseSource(repair, open, batchSize, concurrency, targetRate, now);
+            if (source == null) {
+                deferred.add(repair);
+                continue;
+            }
+
+            Transfer transfer = open.get(source.getNodeId());
+            if (transfer == null) {
+                transfer = new Transfer(source.getNodeId(), source.getObjectClass());
+                open.put(source.getNodeId(), transfer);
+            }
+            transfer.add(repair);
+            repair.inFlight = true;
+            repair.dirty = false;
+            this.globalBucket.take(repair.copies());
+            this.targetBuckets.get(source.getNodeId()).take(repair.copies());
+        }
+        this.queue.addAll(deferred);
+
+        for (Iterator<Map.Entry<TitanNodeId,TokenBucket>> iterator = this.targetBuckets.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<TitanNodeId,TokenBucket> entry = iterator.next();
+            if (!open.containsKey(entry.getKey()) && !this.busy.contains(entry.getKey()) && entry.getValue().refill(targetRate, now) >= Math.max(1.0, targetRate)) {
+                iterator.remove();
+            }
+        }
+
+        List<Transfer> result = new ArrayList<Transfer>(open.values());
+        for (Transfer transfer : result) {
+            this.busy.add(transfer.source);
+            this.batches++;
+        }
+        return result;
+    }
+
+    /**
+     * Choose the node to ask to make new copies for the given repair.
+     * <p>
+     * A node that already has a batch being composed in this pass is preferred, so that transfers between the same nodes are batched.
+     * Otherwise choose an idle node with the most unused rate, preferring the copy with the longest time-to-live.
+     * Return {@code null} if no suitable node is available now.
+     * </p>
+     */
+    private Publishers.PublishRecord chooseSource(Repair repair, Map<TitanNodeId,Transfer> open, int batchSize, int concurrency, double targetRate, long now) {
+        Publishers.PublishRecord best = null;
+        double bestTokens = 0;
+
+        for (Publishers.PublishRecord record : repair.sources) {
+            TitanNodeId nodeId = record.getNodeId();
+            String objectClass = record.getObjectClass();
+            if (objectClass == null) {
+                continue;
+            }
+
+            Transfer transfer = open.get(nodeId);
+            if (transfer == null && (this.busy.contains(nodeId) || open.size() + this.busy.size() >= concurrency)) {
+                continue;
+            }
+            if (transfer != null && (transfer.repairs.size() >= batchSize || !transfer.objectClass.equals(objectClass))) {
+                continue;
+            }
+
+            TokenBucket bucket = this.targetBuckets.get(nodeId);
+            if (bucket == null) {
+                bucket = new TokenBucket(targetRate, now);
+                this.targetBuckets.put(nodeId, bucket);
+            }
+            double tokens = bucket.refill(targetRate, now);
+            if (tokens < 1.0) {
+                continue;
+            }
+            if (transfer != null) {
+                return record;
+            }
+            if (best == null || tokens > bestTokens || (tokens == bestTokens && record.getObjectTTL() > best.getObjectTTL())) {
+                best = record;
+                bestTokens = tokens;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Record the outcome of a {@link Transfer}.
+     * Repairs that succeeded are re-examined later if the object was unpublished again meanwhile,
+     * repairs that failed are retried with a growing delay until {@link #MaxAttempts} is reached.
+     */
+    private void completed(Transfer transfer, Set<TitanGuid> succeeded, boolean unreachable) {
+        long now = System.currentTimeMillis();
+        int maxAttempts = this.node.getConfiguration().asInt(RepairDaemon.MaxAttempts);
+
+        synchronized (this.queue) {
+            this.busy.remove(transfer.source);
+
+            for (Repair repair : transfer.repairs) {
+                repair.inFlight = false;
+                if (succeeded.contains(repair.objectId)) {
+                    this.replicated += repair.copies();
+                    repair.attempts = 0;
+                    if (!repair.dirty) {
+                        this.repairs.remove(repair.objectId);
+                        continue;
+                    }
+                    repair.notBeforeMillis = now + RepairDaemon.SettleMillis;
+                } else {
+                    repair.attempts++;
+                    if (unreachable) {
+                        repair.unreachable.add(transfer.source);
+                        repair.excluded.add(transfer.source);
+                    }
+                    if (repair.attempts >= maxAttempts) {
+                        this.failed++;
+                        this.repairs.remove(repair.objectId);
+                        if (this.log.isLoggable(Level.WARNING)) {
+                            this.log.warning("Abandoned repair of %s after %d attempts", repair.objectId, repair.attempts);
+                        }
+                        continue;
+                    }
+                    repair.notBeforeMillis = now + (RepairDaemon.SettleMillis << (repair.attempts - 1));
+                }
+                repair.dirty = false;
+                this.queue.add(repair);
+            }
+            this.queue.notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.isStarted()) {
+            return;
+        }
+        super.start();
+
+        this.transfers = Executors.newCachedThreadPool(new SimpleThreadFactory(this.node.getThreadGroup(), this.node.getNodeId() + "." + this.getName()));
+        try {
+            this.scheduler = new Scheduler();
+        } catch (JMException e) {
+            this.stop();
+            if (this.log.isLoggable(Level.SEVERE)) {
+                this.log.severe("Cannot start: %s", e);
+            }
+            return;
+        }
+        this.scheduler.start();
+        this.setStatus("running");
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        synchronized (this) {
+            if (this.scheduler != null) {
+                this.scheduler.interrupt();
+                this.scheduler = null;
+            }
+            if (this.transfers != null) {
+                this.transfers.shutdown();
+                this.transfers = null;
+            }
+        }
+    }
+
+    public XHTML.EFlow toXHTML(URI uri, Map<String,HTTP.Message> props) {
+        String action = HttpMessage.asString(props.get("action"), null);
+        if (action != null) {
+            if (action.equals("stop")) {
+                this.stop();
+            } else if (action.equals("start")) {
+                this.start();
+            } else if (action.equals("repairNow")) {
+                synchronized (this.queue) {
+                    this.queue.notifyAll();
+                }
+            }
+        }
+
+        XHTML.Button repairNow = new XHTML.Button("Repair Now").setType(XHTML.Button.Type.SUBMIT)
+        .setName("action").setValue("repairNow").setTitle("Run the repair scheduler now");
+
+        XHTML.Table.Body tbody = new XHTML.Table.Body();
+        for (String name : this.node.getConfiguration().keySet()) {
+            if (name.startsWith(RepairDaemon.class.getCanonicalName())) {
+                tbody.add(new XHTML.Table.Row(new XHTML.Table.Data(name),
+                        new XHTML.Table.Data(String.valueOf(this.node.getConfiguration().get(name).getValue()))));
+            }
+        }
+        XHTML.Table configurationTable = new XHTML.Table(new XHTML.Table.Caption("Configuration Values"), tbody).addClass("striped");
+
+        XHTML.Table.Body queueBody = new XHTML.Table.Body();
+        int queued;
+        int inFlight;
+        int busy;
+        long now = System.currentTimeMillis();
+        synchronized (this.queue) {
+            queued = this.queue.size();
+            inFlight = this.repairs.size() - queued;
+            busy = this.busy.size();
+            int row = 0;
+            for (Repair repair : this.queue) {
+                if (row++ == 20) {
+                    break;
+                }
+                queueBody.add(new XHTML.Table.Row(new XHTML.Table.Data(repair.objectId),
+                        new XHTML.Table.Data("%d/%d", repair.remaining, repair.desired),
+                        new XHTML.Table.Data(repair.attempts),
+                        new XHTML.Table.Data(Time.formattedElapsedTime(now - repair.enqueuedMillis))));
+            }
+        }
+
+        XHTML.Table scheduler = new XHTML.Table(new XHTML.Table.Caption("Repair Scheduler"),
+                new XHTML.Table.Body(
+                        new XHTML.Table.Row(new XHTML.Table.Data("Queued"), new XHTML.Table.Data(queued)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("In Flight"), new XHTML.Table.Data("%d objects in %d batches", inFlight, busy)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Enqueued"), new XHTML.Table.Data(this.enqueued)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Copies Made"), new XHTML.Table.Data(this.replicated)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Batches"), new XHTML.Table.Data(this.batches)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Already Satisfied"), new XHTML.Table.Data(this.satisfied)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Expiring"), new XHTML.Table.Data(this.expiring)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Lost"), new XHTML.Table.Data(this.lost)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Abandoned"), new XHTML.Table.Data(this.failed)),
+                        new XHTML.Table.Row(new XHTML.Table.Data(""), new XHTML.Table.Data(repairNow))
+                )
+        );
+
+        XHTML.Table queueTable = new XHTML.Table(new XHTML.Table.Caption("Most Urgent Repairs"),
+                new XHTML.Table.Head(new XHTML.Table.Row(new XHTML.Table.Heading("Object Identifier"),
+                        new XHTML.Table.Heading("Copies"),
+                        new XHTML.Table.Heading("Attempts"),
+                        new XHTML.Table.Heading("Queued For"))),
+                queueBody).addClass("striped");
+
+        XHTML.Table t = new XHTML.Table(
+                new XHTML.Table.Body(new XHTML.Table.Row(new XHTML.Table.Data(scheduler), new XHTML.Table.Data(configurationTable)))).setClass("controls");
+
+        XHTML.Form form = new XHTML.Form("").setMethod("get").setEncodingType("application/x-www-url-encoded");
+        form.add(t);
+
+        XHTML.Div div = (XHTML.Div) super.toXHTML(uri, props);
+        div.add(new XHTML.Div(form).setClass("section"));
+        div.add(new XHTML.Div(queueTable).setClass("section"));
+
+        return div;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2007-2010 Oracle. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Oracle Corporation, 500 Oracle Parkway, Redwood Shores, CA 94065
+ * or visit www.oracle.com if you need additional information or
+ * have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * A {@link Handler} that hands {@link LogRecord}s to another {@code Handler}
+ * on a separate thread, so that logging threads do not wait for formatting
+ * and output.
+ * <p>
+ * Records wait in a bounded queue.  When the queue is full, new records are
+ * dropped rather than blocking the logging thread, and counted.  The number
+ * of dropped records is reported by {@link #getDropped()} and, when output
+ * resumes, by a warning written through the target handler.
+ * </p>
+ * <p>
+ * Closing this handler writes every record still in the queue before
+ * closing the target handler.  This handler closes itself when the JVM exits,
+ * so the records queued at exit are written too.
+ * </p>
+ */
+public class AsyncLogHandler extends Handler {
+    private final static int DEFAULT_CAPACITY = 8192;
+
+    private final Handler target;
+    private final BlockingQueue<LogRecord> queue;
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long droppedReported;
+    private volatile boolean closed;
+
+    /**
+     * Create an {@code AsyncLogHandler} with a default capacity.
+     *
+     * @param target    the handler that writes the records
+     */
+    public AsyncLogHandler(Handler target) {
+        this(target, AsyncLogHandler.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an {@code AsyncLogHandler} that holds at most {@code capacity}
+     * records waiting to be written.
+     *
+     * @param target    the handler that writes the records
+     * @param capacity  the maximum number of records waiting to be written
+     */
+    public AsyncLogHandler(Handler target, int capacity) {
+        super();
+        this.target = target;
+        this.setLevel(target.getLevel());
+        this.queue = new ArrayBlockingQueue<LogRecord>(capacity);
+        this.droppedReported = 0;
+        this.closed = false;
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                AsyncLogHandler.this.drain();
+            }
+        }, "AsyncLogHandler " + target.getClass().getSimpleName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        this.shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                AsyncLogHandler.this.close();
+            }
+        }, "AsyncLogHandler shutdown " + target.getClass().getSimpleName());
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    /**
+     * Get the handler that writes this handler's records.
+     */
+    public Handler getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (this.closed || !this.isLoggable(record))
+            return;
+        if (this.queue.offer(record)) {
+            this.published.incrementAndGet();
+        } else {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Wait (briefly) for the records queued so far to be written, and flush
+     * the target handler.
+     */
+    @Override
+    public void flush() {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!this.queue.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.target.flush();
+    }
+
+    /**
+     * Stop accepting records, wait for the records already queued to be
+     * written, and close the target handler.
+     */
+    @Override
+    public synchronized void close() throws SecurityException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        if (Thread.currentThread() != this.shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down.
+            }
+        }
+
+        //
+        // The writer empties the queue before it exits.
+        //
+        this.writer.interrupt();
+        boolean interrupted = false;
+        while (this.writer.isAlive()) {
+            try {
+                this.writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        this.target.close();
+    }
+
+    /**
+     * Return the number of records accepted for writing.
+     */
+    public long getPublished() {
+        return this.published.get();
+    }
+
+    /**
+     * Return the number of records discarded because the queue was full.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Return the number of records waiting to be written.
+     */
+    public int getQueued() {
+        return this.queue.size();
+    }
+
+    private void drain() {
+        while (true) {
+            LogRecord record;
+            if (this.closed) {
+                // Write whatever is left, then stop.  The interrupt from close() has done its job.
+                Thread.interrupted();
+                record = this.queue.poll();
+                if (record == null)
+                    break;
+            } else {
+                try {
+                    record = this.queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (record == null) {
+                    this.target.flush();
+                    continue;
+                }
+            }
+
+            long dropped = this.dropped.get();
+            if (dropped != this.droppedReported) {
+                LogRecord warning = new LogRecord(java.util.logging.Level.WARNING,
+                        String.format("%d log records dropped", dropped - this.droppedReported));
+                warning.setLoggerName(record.getLoggerName());
+                warning.setSourceClassName(AsyncLogHandler.class.getSimpleName());
+                warning.setSourceMethodName("publish");
+                this.droppedReported = dropped;
+                this.target.publish(warning);
+            }
+
+            try {
+                this.target.publish(record);
+            } catch (RuntimeException e) {
+                this.reportError(null, e, java.util.logging.ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+}
@@ -98,9 +98,14 @@ public class DOLRLogFormatter extends Formatter {
      * {@inheritDoc}
      */
     @Override public String format(LogRecord record) {        
-        String now = Time.ISO8601(System.currentTimeMillis());
+        String now = Time.ISO8601(record.getMillis());
         StringBuilder sb = new StringBuilder(now).append(" ").append(record.getLevel()).append(" ");
-        sb.append(Thread.currentThread().getName());
+        // Records may be formatted on a thread other than the one that logged them.
+        if (record instanceof DOLRLogger.Record) {
+            sb.append(((DOLRLogger.Record) record).getThreadName());
+        } else {
+            sb.append(Thread.currentThread().getName());
+        }
         sb.append(": ");
         sb.append(record.getSourceClassName());
         sb.append(".");
@@ -33,6 +33,7 @@ import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import sunlabs.titan.api.TitanGuid;
@@ -47,8 +48,33 @@ import sunlabs.titan.api.TitanGuid;
  * be multiple loggers for a single program element.  For example, if
  * multiple Nodes are created in the same VM, each would need to
  * have a unique name.
+ * <p>
+ * Each logging method first checks whether the message's level is enabled,
+ * and only then formats the message and determines the calling class and
+ * method.  Console output is written by an {@link AsyncLogHandler}, so
+ * logging threads do not wait for the console.
+ * </p>
  */
 public class DOLRLogger implements DOLRLoggerMBean {
+    /**
+     * A {@link LogRecord} that also carries the name of the thread that
+     * created it, since records may be formatted on another thread.
+     */
+    public static class Record extends LogRecord {
+        private final static long serialVersionUID = 1L;
+
+        private final String threadName;
+
+        public Record(Level level, String msg) {
+            super(level, msg);
+            this.threadName = Thread.currentThread().getName();
+        }
+
+        public String getThreadName() {
+            return this.threadName;
+        }
+    }
+
     public Logger logger;
     private final String directory;
     private final String fileName;
@@ -122,13 +148,13 @@ public class DOLRLogger implements DOLRLoggerMBean {
             // in the logging config file, like set levels for applications.
             boolean gotConsoleHandler = false;
             for (Handler h : this.logger.getHandlers()) {
-                if (h instanceof ConsoleHandler)
+                if (h instanceof ConsoleHandler || h instanceof AsyncLogHandler)
                     gotConsoleHandler = true;
             }
             if (!gotConsoleHandler) {
                 Handler ch = new ConsoleHandler();
                 ch.setFormatter(new DOLRLogFormatter());
-                this.logger.addHandler(ch);
+                this.logger.addHandler(new AsyncLogHandler(ch));
             }
             
             this.logger.setUseParentHandlers(false);
@@ -138,18 +164,43 @@ public class DOLRLogger implements DOLRLoggerMBean {
         }
     }
 
-    private String getCallingClass() {
-        StackTraceElement t = new Throwable().getStackTrace()[2];
+    //
+    // Log msg at the given level, attributing it to the caller of the
+    // DOLRLogger method that called this one.  The stack is walked once, and
+    // only for records that will be logged.
+    //
+    private void log(Level level, String msg) {
+        StackTraceElement caller = new Throwable().getStackTrace()[2];
+        String[] tokens = caller.getClassName().split("\\.");
 
-        String[] tokens = t.getClassName().split("\\.");
-        String className = tokens[tokens.length - 1];
-        return className;
+        Record record = new Record(level, msg);
+        record.setLoggerName(this.logger.getName());
+        record.setSourceClassName(tokens[tokens.length - 1]);
+        record.setSourceMethodName(caller.getMethodName());
+        this.logger.log(record);
     }
 
-    private String getCallingMethod() {
+    //
+    // Return the calling class and method, for Logger methods that take them
+    // as arguments.
+    //
+    private static String[] getCaller() {
         StackTraceElement t = new Throwable().getStackTrace()[2];
-        String methodName = t.getMethodName();
-        return methodName;
+        String[] tokens = t.getClassName().split("\\.");
+        return new String[] { tokens[tokens.length - 1], t.getMethodName() };
+    }
+
+    /**
+     * Return the number of log records discarded because console output
+     * could not keep up.
+     */
+    public long getDroppedRecords() {
+        long dropped = 0;
+        for (Handler h : this.logger.getHandlers()) {
+            if (h instanceof AsyncLogHandler)
+                dropped += ((AsyncLogHandler) h).getDropped();
+        }
+        return dropped;
     }
 
     public Logger getLogger() {
@@ -176,11 +227,13 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * Call {@link Logger#config(String)}.
      */
     public void config(String msg) {
-        this.logger.logp(Level.CONFIG, this.getCallingClass(), this.getCallingMethod(), msg);
+        if (this.logger.isLoggable(Level.CONFIG))
+            this.log(Level.CONFIG, msg);
     }
 
     public void config(String format, Object... args) {
-        this.logger.logp(Level.CONFIG, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.CONFIG))
+            this.log(Level.CONFIG, String.format(format, args));
     }
 
     /**
@@ -188,7 +241,10 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * class and method.
      */
     public void entering() {
-        this.logger.entering(this.getCallingClass(), this.getCallingMethod());
+        if (this.logger.isLoggable(Level.FINER)) {
+            String[] caller = DOLRLogger.getCaller();
+            this.logger.entering(caller[0], caller[1]);
+        }
     }
 
     /**
@@ -196,7 +252,10 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * class and method.
      */
     public void entering(Object param1) {
-        this.logger.entering(this.getCallingClass(), this.getCallingMethod(), param1);
+        if (this.logger.isLoggable(Level.FINER)) {
+            String[] caller = DOLRLogger.getCaller();
+            this.logger.entering(caller[0], caller[1], param1);
+        }
     }
 
     /**
@@ -204,7 +263,10 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * class and method.
      */
     public void entering(Object[] params) {
-        this.logger.entering(this.getCallingClass(), this.getCallingMethod(), params);
+        if (this.logger.isLoggable(Level.FINER)) {
+            String[] caller = DOLRLogger.getCaller();
+            this.logger.entering(caller[0], caller[1], params);
+        }
     }
 
     /**
@@ -212,7 +274,10 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * class and method.
      */
     public void exiting() {
-        this.logger.exiting(this.getCallingClass(), this.getCallingMethod());
+        if (this.logger.isLoggable(Level.FINER)) {
+            String[] caller = DOLRLogger.getCaller();
+            this.logger.exiting(caller[0], caller[1]);
+        }
     }
 
     /**
@@ -220,7 +285,10 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * class and method.
      */
     public void exiting(Object result) {
-        this.logger.exiting(this.getCallingClass(), this.getCallingMethod(), result);
+        if (this.logger.isLoggable(Level.FINER)) {
+            String[] caller = DOLRLogger.getCaller();
+            this.logger.exiting(caller[0], caller[1], result);
+        }
     }
 
     /**
@@ -236,11 +304,13 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the FINE message level.
      */
     public void fine(String msg) {
-        this.logger.logp(Level.FINE, this.getCallingClass(), this.getCallingMethod(), msg);
+        if (this.logger.isLoggable(Level.FINE))
+            this.log(Level.FINE, msg);
     }
 
     public void fine(String format, Object... args) {
-        this.logger.logp(Level.FINE, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.FINE))
+            this.log(Level.FINE, String.format(format, args));
     }
 
     /**
@@ -248,7 +318,8 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the FINER message level.
      */
     public void finer(String format, Object... args) {
-        this.logger.logp(Level.FINER, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.FINER))
+            this.log(Level.FINER, String.format(format, args));
     }
 
     /**
@@ -256,11 +327,13 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the FINEST message level.
      */
     public void finest(String msg) {
-        this.logger.logp(Level.FINEST, this.getCallingClass(), this.getCallingMethod(), msg);
+        if (this.logger.isLoggable(Level.FINEST))
+            this.log(Level.FINEST, msg);
     }
 
     public void finest(String format, Object... args) {
-        this.logger.logp(Level.FINEST, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.FINEST))
+            this.log(Level.FINEST, String.format(format, args));
     }
 
     /**
@@ -268,25 +341,32 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the SEVERE message level.
      */
     public void severe(String msg) {
-        this.logger.logp(Level.SEVERE, this.getCallingClass(), this.getCallingMethod(), msg);
+        if (this.logger.isLoggable(Level.SEVERE))
+            this.log(Level.SEVERE, msg);
     }
 
     public void severe(Exception exception) {
+        if (!this.logger.isLoggable(Level.SEVERE))
+            return;
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         PrintStream s = new java.io.PrintStream(out);
         exception.printStackTrace(s);
-        this.logger.logp(Level.SEVERE, this.getCallingClass(), this.getCallingMethod(), out.toString());
+        this.log(Level.SEVERE, out.toString());
     }
     
     public void severe(String format, Object... args) {
-        this.logger.logp(Level.SEVERE, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.SEVERE))
+            this.log(Level.SEVERE, String.format(format, args));
     }
 
     /**
      * Call {@link Logger#throwing(String, String, Throwable)}.
      */
     public void throwing(Throwable thrown) {
-        this.logger.throwing(this.getCallingClass(), this.getCallingMethod(), thrown);
+        if (this.logger.isLoggable(Level.FINER)) {
+            String[] caller = DOLRLogger.getCaller();
+            this.logger.throwing(caller[0], caller[1], thrown);
+        }
     }
 
     /**
@@ -294,7 +374,8 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the WARNING message level.
      */
     public void warning(String msg) {
-    	this.logger.logp(Level.WARNING, this.getCallingClass(), this.getCallingMethod(), msg);
+        if (this.logger.isLoggable(Level.WARNING))
+            this.log(Level.WARNING, msg);
     }
 
     /**
@@ -302,7 +383,8 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the WARNING message level.
      */
     public void warning(String format, Object... args) {
-    	this.logger.logp(Level.WARNING, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.WARNING))
+            this.log(Level.WARNING, String.format(format, args));
     }
 
     /**
@@ -310,11 +392,13 @@ public class DOLRLogger implements DOLRLoggerMBean {
      * is enabled for the INFO message level.
      */
     public void info(String msg) {
-    	this.logger.logp(Level.INFO, this.getCallingClass(), this.getCallingMethod(), msg);
+        if (this.logger.isLoggable(Level.INFO))
+            this.log(Level.INFO, msg);
     }
 
     public void info(String format, Object... args) {
-    	this.logger.logp(Level.INFO, this.getCallingClass(), this.getCallingMethod(), String.format(format, args));
+        if (this.logger.isLoggable(Level.INFO))
+            this.log(Level.INFO, String.format(format, args));
     }
 
 //    /**
@@ -382,4 +466,8 @@ public class DOLRLogger implements DOLRLoggerMBean {
    public void jmxSetLogLevel(String name) {
        this.logger.setLevel(Level.parse(name));
    }
+
+   public long jmxGetDroppedRecords() {
+       return this.getDroppedRecords();
+   }
 }
@@ -29,4 +29,6 @@ public interface DOLRLoggerMBean extends PersistentMBean {
     public String jmxGetLogLevel();
 
     public void jmxSetLogLevel(String Level);
+
+    public long jmxGetDroppedRecords();
 }
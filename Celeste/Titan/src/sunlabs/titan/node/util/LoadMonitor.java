@@ -0,0 +1,175 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measure the load on a node.
+ * <p>
+ * The node accumulates the time spent dispatching messages to its services, the number and duration of object store puts,
+ * and the number of bytes of messages received and transmitted.
+ * Each time {@link #sample()} is invoked, these are turned into rates over the interval since the previous sample,
+ * and each rate is smoothed into an exponentially weighted moving average in which the newest interval has the weight {@link #WEIGHT}.
+ * </p>
+ * <p>
+ * The dispatch queue depth is the mean number of messages being dispatched at once during the interval,
+ * computed by Little's law as the total dispatch time divided by the length of the interval.
+ * A dispatch contributes its whole duration to the interval in which it completes.
+ * </p>
+ * <p>
+ * An interval in which there are no puts counts as a put latency of zero,
+ * so a node that is avoided because it was slow is eventually tried again.
+ * </p>
+ */
+public class LoadMonitor {
+    /** The weight of the newest sample in each moving average. */
+    public final static double WEIGHT = 0.5;
+
+    private final AtomicLong dispatchNanoseconds;
+    private final AtomicLong putCount;
+    private final AtomicLong putNanoseconds;
+    private final AtomicLong bytesIn;
+    private final AtomicLong bytesOut;
+
+    private long lastSampleTime;
+    private long lastDispatchNanoseconds;
+    private long lastPutCount;
+    private long lastPutNanoseconds;
+    private long lastBytesIn;
+    private long lastBytesOut;
+
+    private double dispatchQueueDepth;
+    private double putLatencyMillis;
+    private double bytesInPerSecond;
+    private double bytesOutPerSecond;
+
+    public LoadMonitor() {
+        this.dispatchNanoseconds = new AtomicLong();
+        this.putCount = new AtomicLong();
+        this.putNanoseconds = new AtomicLong();
+        this.bytesIn = new AtomicLong();
+        this.bytesOut = new AtomicLong();
+        this.lastSampleTime = System.nanoTime();
+    }
+
+    /**
+     * Record the completion of the dispatch of a message that took {@code nanoseconds} nanoseconds.
+     */
+    public void addDispatch(long nanoseconds) {
+        this.dispatchNanoseconds.addAndGet(nanoseconds);
+    }
+
+    /**
+     * Record the completion of an object store put that took {@code nanoseconds} nanoseconds.
+     */
+    public void addPut(long nanoseconds) {
+        this.putCount.incrementAndGet();
+        this.putNanoseconds.addAndGet(nanoseconds);
+    }
+
+    /**
+     * Record the receipt of {@code bytes} bytes.
+     */
+    public void addBytesIn(long bytes) {
+        this.bytesIn.addAndGet(bytes);
+    }
+
+    /**
+     * Record the transmission of {@code bytes} bytes.
+     */
+    public void addBytesOut(long bytes) {
+        this.bytesOut.addAndGet(bytes);
+    }
+
+    /**
+     * Fold the activity since the previous sample into the moving averages.
+     */
+    public void sample() {
+        this.sample(System.nanoTime());
+    }
+
+    /**
+     * Fold the activity since the previous sample into the moving averages, taking the time now to be {@code now} as given by {@link System#nanoTime()}.
+     */
+    synchronized void sample(long now) {
+        long elapsed = now - this.lastSampleTime;
+        if (elapsed <= 0) {
+            return;
+        }
+        long dispatch = this.dispatchNanoseconds.get();
+        long puts = this.putCount.get();
+        long put = this.putNanoseconds.get();
+        long in = this.bytesIn.get();
+        long out = this.bytesOut.get();
+
+        double seconds = elapsed / 1e9;
+        long intervalPuts = puts - this.lastPutCount;
+        double latency = intervalPuts == 0 ? 0 : (put - this.lastPutNanoseconds) / 1e6 / intervalPuts;
+
+        this.dispatchQueueDepth = LoadMonitor.smooth(this.dispatchQueueDepth, (dispatch - this.lastDispatchNanoseconds) / (double) elapsed);
+        this.putLatencyMillis = LoadMonitor.smooth(this.putLatencyMillis, latency);
+        this.bytesInPerSecond = LoadMonitor.smooth(this.bytesInPerSecond, (in - this.lastBytesIn) / seconds);
+        this.bytesOutPerSecond = LoadMonitor.smooth(this.bytesOutPerSecond, (out - this.lastBytesOut) / seconds);
+
+        this.lastSampleTime = now;
+        this.lastDispatchNanoseconds = dispatch;
+        this.lastPutCount = puts;
+        this.lastPutNanoseconds = put;
+        this.lastBytesIn = in;
+        this.lastBytesOut = out;
+    }
+
+    private static double smooth(double average, double value) {
+        return average + LoadMonitor.WEIGHT * (value - average);
+    }
+
+    /**
+     * Get the smoothed mean number of messages being dispatched at once.
+     */
+    public synchronized double getDispatchQueueDepth() {
+        return this.dispatchQueueDepth;
+    }
+
+    /**
+     * Get the smoothed mean duration, in milliseconds, of an object store put.
+     */
+    public synchronized double getPutLatencyMillis() {
+        return this.putLatencyMillis;
+    }
+
+    /**
+     * Get the smoothed number of bytes received per second.
+     */
+    public synchronized double getBytesInPerSecond() {
+        return this.bytesInPerSecond;
+    }
+
+    /**
+     * Get the smoothed number of bytes transmitted per second.
+     */
+    public synchronized double getBytesOutPerSecond() {
+        return this.bytesOutPerSecond;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of values, each of which has a size.
+ * <p>
+ * The cache holds values whose sizes total no more than its capacity.
+ * Adding a value evicts the least recently used values until the new value fits.
+ * A value larger than the whole capacity is not admitted.
+ * </p>
+ * <p>
+ * The cache counts hits, misses, evictions and invalidations (removals of values present in the cache)
+ * so that its effectiveness can be displayed.
+ * </p>
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+public class ObjectCache<K,V> {
+    private static class Entry<V> {
+        final V value;
+        final long size;
+
+        Entry(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private final LinkedHashMap<K,Entry<V>> entries;
+    private volatile long capacity;
+    private long size;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Create a new cache holding values whose sizes total no more than {@code capacity}.
+     * A cache with a capacity of zero holds nothing.
+     */
+    public ObjectCache(long capacity) {
+        this.entries = new LinkedHashMap<K,Entry<V>>(16, 0.75F, true);
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Get the value cached under {@code key}, or {@code null} if there is none.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.value;
+    }
+
+    /**
+     * Cache {@code value} of size {@code size} under {@code key}, replacing any value already cached under {@code key}.
+     *
+     * @return {@code true} if the value was admitted to the cache.
+     */
+    public synchronized boolean put(K key, V value, long size) {
+        Entry<V> previous = this.entries.remove(key);
+        if (previous != null) {
+            this.size -= previous.size;
+        }
+        if (size > this.capacity) {
+            return false;
+        }
+        this.evict(this.capacity - size);
+        this.entries.put(key, new Entry<V>(value, size));
+        this.size += size;
+        return true;
+    }
+
+    /**
+     * Remove the value cached under {@code key}.
+     *
+     * @return {@code true} if there was a value cached under {@code key}.
+     */
+    public synchronized boolean remove(K key) {
+        Entry<V> entry = this.entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        this.size -= entry.size;
+        this.invalidations++;
+        return true;
+    }
+
+    /**
+     * Evict the least recently used values until the remaining values total no more than {@code limit}.
+     */
+    private void evict(long limit) {
+        Iterator<Map.Entry<K,Entry<V>>> iterator = this.entries.entrySet().iterator();
+        while (this.size > limit && iterator.hasNext()) {
+            this.size -= iterator.next().getValue().size;
+            iterator.remove();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Set the capacity of this cache, evicting values as necessary to fit.
+     */
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        this.evict(capacity);
+    }
+
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the total size of the cached values.
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Get the number of cached values.
+     */
+    public synchronized int getCount() {
+        return this.entries.size();
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return this.invalidations;
+    }
+}
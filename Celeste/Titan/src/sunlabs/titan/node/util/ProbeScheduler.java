@@ -0,0 +1,291 @@
+/*
+ * Copyright 2007-2010 Oracle. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Oracle Corporation, 500 Oracle Parkway, Redwood Shores, CA 94065
+ * or visit www.oracle.com if you need additional information or
+ * have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Probe a collection of targets concurrently.
+ * <p>
+ * At most {@link #getConcurrency()} probes are running at once, each in one of a fixed number of threads, and each probe has a deadline.
+ * The result of each probe is given to a {@link Listener} as soon as the probe completes,
+ * rather than when the whole round of probes completes.
+ * A probe that is still running at its deadline is reported to the {@code Listener} as timed out and its eventual result is discarded.
+ * </p>
+ * <p>
+ * Probes are never interrupted, because interrupting a thread in the middle of a transmission can damage a connection
+ * that other threads share.
+ * Instead each probe is given its deadline and must enforce it itself, for example with a connect and socket timeout,
+ * and a probe continues to count against the concurrency limit until it actually returns.
+ * Consequently a round of probes over {@code n} targets takes no longer than about
+ * {@code ceiling(n / concurrency)} deadlines, no matter how many of the targets never respond.
+ * </p>
+ */
+public class ProbeScheduler {
+    /**
+     * A probe of a single target.
+     */
+    public interface Probe<T,R> {
+        /**
+         * Probe the given target, returning the result or throwing an {@link Exception} if the probe failed.
+         * The probe must give up by itself, by returning or throwing, once {@code deadlineMillis} milliseconds have elapsed.
+         */
+        public R probe(T target, long deadlineMillis) throws Exception;
+    }
+
+    /**
+     * Receives the result of each probe.
+     * Methods are invoked by the thread that ran the probe, or by the deadline thread, so implementations must be thread-safe.
+     */
+    public interface Listener<T,R> {
+        public void success(T target, R result);
+
+        public void failure(T target, Throwable reason);
+
+        public void timeout(T target);
+    }
+
+    /**
+     * The outcome of a round of probes.
+     */
+    public static class Round {
+        private final int targets;
+        private final AtomicInteger succeeded;
+        private final AtomicInteger failed;
+        private final AtomicInteger timedOut;
+        private long elapsedMillis;
+
+        Round(int targets) {
+            this.targets = targets;
+            this.succeeded = new AtomicInteger();
+            this.failed = new AtomicInteger();
+            this.timedOut = new AtomicInteger();
+        }
+
+        public int getTargets() {
+            return this.targets;
+        }
+
+        public int getSucceeded() {
+            return this.succeeded.get();
+        }
+
+        public int getFailed() {
+            return this.failed.get();
+        }
+
+        public int getTimedOut() {
+            return this.timedOut.get();
+        }
+
+        public long getElapsedMillis() {
+            return this.elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d targets %d succeeded %d failed %d timed out in %dms",
+                    this.targets, this.getSucceeded(), this.getFailed(), this.getTimedOut(), this.elapsedMillis);
+        }
+    }
+
+    /**
+     * A {@link Semaphore} whose number of permits can be reduced as well as increased.
+     */
+    private static class Permits extends Semaphore {
+        private final static long serialVersionUID = 1L;
+
+        Permits(int permits) {
+            super(permits);
+        }
+
+        @Override
+        public void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService deadlines;
+    /** One permit for each probe that may be started, held from the submission of a probe until its thread is finished with it. */
+    private final Permits permits;
+    private int concurrency;
+    private volatile long deadlineMillis;
+
+    /**
+     * Create a {@code ProbeScheduler} running probes in daemon threads in the given {@link ThreadGroup}.
+     *
+     * @param group the {@code ThreadGroup} of the probe threads
+     * @param name the prefix of the names of the probe threads
+     * @param concurrency the maximum number of probes running at once, which is also the number of probe threads
+     * @param deadlineMillis the number of milliseconds each probe may run
+     */
+    public ProbeScheduler(final ThreadGroup group, final String name, int concurrency, long deadlineMillis) {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(group, r, name + "." + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        this.concurrency = Math.max(1, concurrency);
+        this.executor = new ThreadPoolExecutor(this.concurrency, this.concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.deadlines = new ScheduledThreadPoolExecutor(1, factory);
+        this.permits = new Permits(this.concurrency);
+        this.setDeadlineMillis(deadlineMillis);
+    }
+
+    public synchronized int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * Set the maximum number of probes running at once.
+     * When the limit is reduced, probes already running are not affected, but no new probe is started until enough of them have finished.
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        concurrency = Math.max(1, concurrency);
+        if (concurrency > this.concurrency) {
+            this.executor.setMaximumPoolSize(concurrency);
+            this.executor.setCorePoolSize(concurrency);
+            this.permits.release(concurrency - this.concurrency);
+        } else if (concurrency < this.concurrency) {
+            this.permits.reducePermits(this.concurrency - concurrency);
+            this.executor.setCorePoolSize(concurrency);
+            this.executor.setMaximumPoolSize(concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    public long getDeadlineMillis() {
+        return this.deadlineMillis;
+    }
+
+    public void setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = Math.max(1, deadlineMillis);
+    }
+
+    /**
+     * Probe each of the given {@code targets}, returning when every probe has either completed or reached its deadline.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     *         Probes already started continue and report their results to the {@code Listener}.
+     */
+    public <T,R> Round probe(Collection<? extends T> targets, final Probe<T,R> probe, final Listener<T,R> listener) throws InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        final Round round = new Round(targets.size());
+        final Semaphore permits = this.permits;
+        final CountDownLatch done = new CountDownLatch(targets.size());
+        final long deadlineMillis = this.deadlineMillis;
+
+        for (final T target : targets) {
+            permits.acquire();
+
+            final AtomicBoolean settled = new AtomicBoolean(false);
+            Runnable task = new Runnable() {
+                public void run() {
+                    try {
+                        R result = probe.probe(target, deadlineMillis);
+                        if (settled.compareAndSet(false, true)) {
+                            try {
+                                round.succeeded.incrementAndGet();
+                                listener.success(target, result);
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    } catch (Throwable reason) {
+                        if (settled.compareAndSet(false, true)) {
+                            try {
+                                round.failed.incrementAndGet();
+                                listener.failure(target, reason);
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    } finally {
+                        // Only now is the thread free to run another probe.
+                        permits.release();
+                    }
+                }
+            };
+
+            try {
+                this.executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The scheduler has been shut down.
+                settled.set(true);
+                round.failed.incrementAndGet();
+                permits.release();
+                done.countDown();
+                listener.failure(target, e);
+                continue;
+            }
+
+            try {
+                this.deadlines.schedule(new Runnable() {
+                    public void run() {
+                        if (settled.compareAndSet(false, true)) {
+                            try {
+                                round.timedOut.incrementAndGet();
+                                listener.timeout(target);
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    }
+                }, deadlineMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shut down after the probe started. The probe settles on its own.
+            }
+        }
+
+        done.await();
+        round.elapsedMillis = System.currentTimeMillis() - startTime;
+        return round;
+    }
+
+    /**
+     * Stop this {@code ProbeScheduler}.
+     * Probes in progress are not interrupted, they run until they complete or give up at their deadlines.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+        this.deadlines.shutdown();
+    }
+}
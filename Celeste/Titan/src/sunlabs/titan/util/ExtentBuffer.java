@@ -35,6 +35,9 @@ import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.Comparator;
 
+import sunlabs.asdf.io.BulkDataInputStream;
+import sunlabs.asdf.io.BulkDataOutputStream;
+
 /**
  * <p>
  *
@@ -119,6 +122,12 @@ public class ExtentBuffer implements
     //
     private transient ByteBuffer    buffer;
 
+    //
+    // The largest scratch array used to serialize a buffer that has no
+    // accessible backing array.
+    //
+    private final static int serializationChunkSize = 64 * 1024;
+
     //
     // The comparator returned by getExtentBufferComparator().
     //
@@ -969,17 +978,27 @@ public class ExtentBuffer implements
         out.writeInt(this.position());
         out.writeInt(this.limit());
         //
-        // If the buffer doesn't have an accessible backing array, synthesize
-        // one.
+        // If the stream keeps bulk data out of line, hand it the buffer
+        // itself rather than copying its contents into the stream.
         //
-        if (this.buffer.hasArray()) {
+        if (out instanceof BulkDataOutputStream) {
+            ((BulkDataOutputStream) out).writeBulk(this.buffer);
+        } else if (this.buffer.hasArray()) {
             out.write(this.buffer.array(),
                 this.buffer.arrayOffset() + this.buffer.position(),
                 this.buffer.remaining());
         } else {
-            byte[] xxx = new byte[this.buffer.remaining()];
-            this.buffer.duplicate().get(xxx);
-            out.write(xxx, 0, xxx.length);
+            //
+            // The buffer doesn't have an accessible backing array, so copy
+            // its contents out through a bounded scratch array.
+            //
+            ByteBuffer b = this.buffer.duplicate();
+            byte[] chunk = new byte[Math.min(b.remaining(), ExtentBuffer.serializationChunkSize)];
+            while (b.hasRemaining()) {
+                int length = Math.min(b.remaining(), chunk.length);
+                b.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
         }
     }
 
@@ -1008,9 +1027,18 @@ public class ExtentBuffer implements
         //    new Throwable().printStackTrace();
         //}
 
+        //
+        // Bulk data is read directly from its source into the array.  The
+        // buffer is not direct, so that it has an accessible backing array
+        // and its memory is reclaimed as promptly as any other object's.
+        //
         byte[] array = new byte[capacity];
-        in.readFully(array, position, limit - position);
         this.buffer = ByteBuffer.wrap(array, position, limit - position);
+        if (in instanceof BulkDataInputStream) {
+            ((BulkDataInputStream) in).readBulk(this.buffer.duplicate());
+        } else {
+            in.readFully(array, position, limit - position);
+        }
         if (isReadOnly)
             this.buffer = this.buffer.asReadOnlyBuffer();
     }
@@ -29,8 +29,12 @@ import java.io.OutputStream;
 import java.io.Serializable;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import sunlabs.titan.TitanGuidImpl;
@@ -47,6 +51,13 @@ public class ExtentBufferStreamer extends BufferableExtentImpl
         implements Iterable<byte[]>, Serializable {
     private final static long serialVersionUID = 1L;
 
+    //
+    // The size of the buffer of fill bytes shared by the holes in a stream,
+    // and of the scratch array used to copy out buffers that have no
+    // accessible backing array.
+    //
+    private final static int fillBufferSize = 64 * 1024;
+
     //
     // Iteration support.
     //
@@ -195,10 +206,19 @@ public class ExtentBufferStreamer extends BufferableExtentImpl
         return String.format("ExtentBufferStreamer: %s %s", super.toString(), this.map.asString());
     }
 
-    public long streamExtentBufferMap(OutputStream out) throws IOException {
+    //
+    // Produce the sequence of buffers that together form the contents of
+    // this ExtentBufferStreamer.  The buffers for the extent buffers in the
+    // map share their contents with them, and the buffers for the gaps
+    // between them all share a single buffer of fill bytes.
+    //
+    private List<ByteBuffer> segments() {
+        List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+        ByteBuffer fill = null;
+
         long offset = this.getStartOffset();
         final int length = this.getLength();
-        
+
         //
         // Iterate through the set of ExtentBuffers in this map.
         //
@@ -219,9 +239,9 @@ public class ExtentBufferStreamer extends BufferableExtentImpl
             //
             if (offset < startOffset) {
                 System.err.printf("padding to initial offset %d%n", startOffset - offset);
+                fill = this.fill(segments, fill, startOffset - offset);
+                offset = startOffset;
             }
-            for ( ; offset < startOffset; offset++)
-                out.write(this.fillByte);
 
             //
             // Pad from there to eb's current position.
@@ -230,36 +250,105 @@ public class ExtentBufferStreamer extends BufferableExtentImpl
             if (pos < startPos) {
                 System.err.printf("padding to current position %d%n", startPos - pos);
             }
-            for (pos = 0; pos < startPos; pos++, offset++)
-                out.write(this.fillByte);
+            fill = this.fill(segments, fill, startPos);
+            offset += startPos;
 
             //
             // Emit this buffer.
             //
-            if (eb.hasArray()) {
-                byte[] array = eb.array();
-                int arrayOffset = eb.arrayOffset();
-                int ebLength = eb.remaining();
-                out.write(array, arrayOffset + startPos, ebLength);
-                pos = startPos + ebLength;
-                offset += ebLength;
+            ByteBuffer b = eb.getByteBuffer().duplicate();
+            segments.add(b);
+            pos = startPos + b.remaining();
+            offset += b.remaining();
+        }
+
+        //
+        // Pad to the end.
+        //
+        pos = (int)(offset - this.getStartOffset());
+        if (pos < length) {
+            this.fill(segments, fill, length - pos);
+        }
+
+        return segments;
+    }
+
+    //
+    // Append buffers of fill bytes totalling count bytes to segments.  The
+    // buffer of fill bytes is created if it is null, and is returned for use
+    // in subsequent calls.
+    //
+    private ByteBuffer fill(List<ByteBuffer> segments, ByteBuffer fill, long count) {
+        if (count <= 0)
+            return fill;
+        if (fill == null) {
+            fill = ByteBuffer.allocate((int) Math.min(Math.max(count, this.getLength()), ExtentBufferStreamer.fillBufferSize));
+            while (fill.hasRemaining())
+                fill.put(this.fillByte);
+            fill.flip();
+        }
+        while (count > 0) {
+            ByteBuffer b = fill.duplicate();
+            b.limit((int) Math.min(count, b.capacity()));
+            segments.add(b);
+            count -= b.remaining();
+        }
+        return fill;
+    }
+
+    public long streamExtentBufferMap(OutputStream out) throws IOException {
+        byte[] chunk = null;
+
+        for (ByteBuffer b : this.segments()) {
+            if (b.hasArray()) {
+                out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
             } else {
                 //
-                // Do it the hard way.
+                // Copy out through a bounded scratch array.
                 //
-                for (pos = startPos; pos < eb.limit(); pos++, offset++)
-                    out.write(eb.get(pos));
+                if (chunk == null)
+                    chunk = new byte[ExtentBufferStreamer.fillBufferSize];
+                while (b.hasRemaining()) {
+                    int length = Math.min(b.remaining(), chunk.length);
+                    b.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
             }
         }
 
-        //
-        // Pad to the end.
-        //
-        for (pos = (int)(offset - this.getStartOffset()); pos < length; pos++) {
-            out.write(this.fillByte);
+        return this.getLength();
+    }
+
+    /**
+     * Write the contents of this {@code ExtentBufferStreamer} to the given
+     * channel, filling holes with the fill-byte.
+     * <p>
+     * The extent buffers are written directly from their {@link ByteBuffer}s
+     * without copying, and if {@code out} is a
+     * {@link GatheringByteChannel}, such as a {@code FileChannel} or a
+     * {@code SocketChannel}, the entire contents are written with gathering
+     * writes.
+     * </p>
+     *
+     * @return the number of bytes written
+     */
+    public long streamExtentBufferMap(WritableByteChannel out) throws IOException {
+        List<ByteBuffer> segments = this.segments();
+
+        if (out instanceof GatheringByteChannel) {
+            ByteBuffer[] buffers = segments.toArray(new ByteBuffer[segments.size()]);
+            GatheringByteChannel channel = (GatheringByteChannel) out;
+            for (long remaining = this.getLength(); remaining > 0; /**/) {
+                remaining -= channel.write(buffers);
+            }
+        } else {
+            for (ByteBuffer b : segments) {
+                while (b.hasRemaining())
+                    out.write(b);
+            }
         }
 
-        return length;
+        return this.getLength();
     }
 
     public byte[] render() {
@@ -24,12 +24,16 @@
 package sunlabs.titan.util;
 
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
@@ -112,22 +116,21 @@ import sunlabs.asdf.jmx.JMX;
  *
  * </p><p>
  *
- * The cache synchronizes modifications made through its {@code getAndRemove()},
- * {@code addAndEvictOld()}, and {@code dispose()} methods.
- * Modifications made through other {@code Map} methods (which are not
- * recommended) require explicit synchronization.
+ * The cache is divided into segments, each holding the entries and active
+ * items for the keys that hash to it and each with its own lock.  Requests
+ * for keys in different segments do not contend with each other.  Creating
+ * and activating an item (which may be slow, for example when it entails
+ * opening a connection) is done without holding any lock, so it delays only
+ * the requests that are waiting for that particular key's shared item.
  *
  * </p><p>
  *
- * This class provides a default implementation of the
- * {@link #removeEldestEntry(Map.Entry) removeEldestEntry()}
- * method that monitors
- * whether the cache has exceeded its capacity.  If so, the method calls
- * {@link #disposeItem(Object, Object) disposeItem()}
- * on all the items of the
- * the eldest entry and returns {@code true}.  Subclasses overriding this
- * method should have it call {@code disposeItem()} on all of the entry's
- * items whenever the method returns {@code true}.
+ * When the cache exceeds its capacity, the eldest entries of the segments
+ * are compared and the least recently used of them is evicted.  Concurrent
+ * evictions may race with concurrent uses, so the order of eviction is only
+ * approximately least recently used.
+ * The {@link #disposeItem(Object, Object) disposeItem()} method is called on
+ * each item of the evicted entry after it has been removed from the cache.
  *
  * </p><p>
  *
@@ -148,8 +151,7 @@ import sunlabs.asdf.jmx.JMX;
  *
  * </p>
  */
-public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
-        implements LRUCacheMBean {
+public class LRUCache<K, V> implements LRUCacheMBean {
     /**
      * The {@code Factory} interface packages a method that is invoked when an
      * object is requested from a {@code LRUCache} that contains no entry for
@@ -183,9 +185,8 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
     }
 
     //
-    // The target type for the (revised) activeObjects map.  Calling code is
-    // responsible for overall synchronization, but, just to be sure, the
-    // count field is protected locally.
+    // The target type for the active objects maps.  The count field is
+    // protected by the lock of the segment holding the item.
     //
     private static class CountedItem<V> {
         public final V  item;
@@ -200,20 +201,105 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
             this.count = 1;
         }
 
-        public synchronized void addUse() {
+        public void addUse() {
             this.count++;
         }
 
         //
         // Return true if there are no more active uses of this's item.
         //
-        public synchronized boolean relinquishUse() {
+        public boolean relinquishUse() {
             if (this.count > 0)
                 this.count--;
             return this.count == 0;
         }
     }
 
+    //
+    // The inactive items cached for a key, together with the value of the
+    // cache's clock when the entry was last used.
+    //
+    private static class Entry<V> {
+        public final Set<V> items = new HashSet<V>();
+        public long lastUse;
+    }
+
+    //
+    // A segment of the cache.  All fields are protected by the segment's
+    // monitor.
+    //
+    private static class Segment<K, V> {
+        //
+        // The entries of inactive items, in least to most recently used
+        // order.
+        //
+        public final LinkedHashMap<K, Entry<V>> entries =
+            new LinkedHashMap<K, Entry<V>>(16, 0.75F, true);
+
+        //
+        // A map that tracks objects that the cache has handed out and that
+        // are still active.  The value set pairs objects with counts of
+        // active users.
+        //
+        // If exclusiveItemUse is false, then the value for a given key will
+        // be a singleton (or empty) with the count of the singleton
+        // CountedItem recording how many clients share the item.  But if
+        // exclusiveItemUse is true, there can be many things associated with
+        // a key, each having a count value of one.
+        //
+        public final Map<K, Set<CountedItem<V>>> activeObjects =
+            new HashMap<K, Set<CountedItem<V>>>();
+
+        //
+        // Keys whose shared item is being created or activated.  Used only
+        // when exclusiveItemUse is false, so that requests arriving during
+        // activation wait for (and then share) the item rather than creating
+        // another one.
+        //
+        public final Set<K> activating = new HashSet<K>();
+
+        //
+        // Add an item to an entry in this segment, returning true if the
+        // entry is new.
+        //
+        public boolean addItemToEntry(K key, V v, long now) {
+            Entry<V> entry = this.entries.get(key);
+            boolean created = false;
+            if (entry == null) {
+                entry = new Entry<V>();
+                this.entries.put(key, entry);
+                created = true;
+            }
+            entry.items.add(v);
+            entry.lastUse = now;
+            return created;
+        }
+
+        //
+        // Add a counted item to the active objects map.
+        //
+        public void addCountedItem(K key, V v) {
+            Set<CountedItem<V>> countedItems = this.activeObjects.get(key);
+            if (countedItems == null) {
+                countedItems = new HashSet<CountedItem<V>>();
+                this.activeObjects.put(key, countedItems);
+            }
+            countedItems.add(new CountedItem<V>(v));
+        }
+
+        //
+        // Return the shared active item for key, or null if there is none.
+        //
+        public CountedItem<V> getSharedItem(K key) {
+            Set<CountedItem<V>> countedItems = this.activeObjects.get(key);
+            if (countedItems != null && countedItems.size() != 0) {
+                assert countedItems.size() == 1;
+                return countedItems.iterator().next();
+            }
+            return null;
+        }
+    }
+
     //
     // Arrange to use weak references for registrations with the MBean server.
     //
@@ -221,15 +307,14 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
         new WeakMBeanRegistrar(ManagementFactory.getPlatformMBeanServer());
 
     //
-    // XXX: Here's a place where the Java type system forces us into lies.
-    //      Since this class inherits from LinkedHashMap, which is
-    //      Serializable, it must itself be Serializable.  Except that in
-    //      reality it's not, because of the factory field immediately below.
-    //      Since we can't properly express the truth, we lie and claim that
-    //      the factory is transient.
+    // The largest number of segments a cache is divided into, and the
+    // number of entries of capacity per segment below which the cache uses
+    // fewer segments.
     //
-    private final static long               serialVersionUID = 1L;
-    private transient final Factory<K, V>   factory;
+    private final static int MAX_SEGMENTS = 16;
+    private final static int MIN_SEGMENT_CAPACITY = 16;
+
+    private final Factory<K, V>   factory;
 
     //
     // true if each item obtained from the cache can be used by only one
@@ -241,28 +326,28 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
     // The cache's capacity.  This is the maximum number of entries
     // (containing inactive items) the cache can contain.
     //
-    private int capacity;
+    private volatile int capacity;
+
+    private final Segment<K, V>[] segments;
 
     //
-    // A map that tracks objects that the cache has handed out and that are
-    // still active.  The value set pairs objects with counts of active users.
+    // The total number of entries in all segments.
     //
-    // If exclusiveItemUse is false, then the value for a given key will be a
-    // singleton (or empty) with the count of the singleton CountedItem
-    // recording how many clients share the item.  But if exclusiveItemUse is
-    // true, there can be many things associated with a key, each having a
-    // count value of one.
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    //
+    // Advanced on each use of an entry, to order entries in different
+    // segments by recency of use.
     //
-    private Map<K, Set<CountedItem<V>>> activeObjects =
-        new HashMap<K, Set<CountedItem<V>>>();
+    private final AtomicLong clock = new AtomicLong();
 
     //
     // The difference in the number of (successful) calls to getAndRemove()
     // and addAndEvictOld().  This is (or ought to be) the sum of the counts
     // in the CountedItems residing in the sets that are the members of the
-    // value set for activeObjects.
+    // value sets of the segments' activeObjects maps.
     //
-    private int itemsInUse = 0;
+    private final AtomicInteger itemsInUse = new AtomicInteger();
 
     //
     // The name by which this instance is known to JMX.
@@ -272,11 +357,11 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
     //
     // Performance instrumentation counters.
     //
-    private int hits = 0;
-    private int shareHits = 0;
-    private int misses = 0;
-    private int evictions = 0;
-    private int disposes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong shareHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong disposes = new AtomicLong();
 
     /**
      * Create a new {@code LRUCache} with the given {@code capacity} and with
@@ -346,14 +431,22 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
      * @throws ClassCastException
      *      if {@code this} does not implement {@code mbeanInterface}
      */
+    @SuppressWarnings({"unchecked", "rawtypes"})
     protected LRUCache(int capacity, Factory<K, V> factory,
             boolean exclusiveItemUse, ObjectName jmxObjectNamePrefix,
             Class<?> mbeanInterface) {
-        super(capacity, (float) 0.75, true);
         this.capacity = capacity;
         this.exclusiveItemUse = exclusiveItemUse;
         this.factory = factory;
 
+        int nSegments = 1;
+        while (nSegments < LRUCache.MAX_SEGMENTS &&
+                nSegments * 2 * LRUCache.MIN_SEGMENT_CAPACITY <= capacity)
+            nSegments *= 2;
+        this.segments = new Segment[nSegments];
+        for (int i = 0; i < nSegments; i++)
+            this.segments[i] = new Segment<K, V>();
+
         //
         // JMX initialization
         //
@@ -480,49 +573,49 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
         return this.capacity;
     }
 
-    public synchronized int getCacheHits() {
-        return this.hits;
+    public int getCacheHits() {
+        return (int) this.hits.get();
     }
 
-    public synchronized int getCacheShareHits() {
-        return this.shareHits;
+    public int getCacheShareHits() {
+        return (int) this.shareHits.get();
     }
 
-    public synchronized int getCacheMisses() {
-        return this.misses;
+    public int getCacheMisses() {
+        return (int) this.misses.get();
     }
 
-    public synchronized int getCacheEvictions() {
-        return this.evictions;
+    public int getCacheEvictions() {
+        return (int) this.evictions.get();
     }
 
-    public synchronized int getItemsDisposed() {
-        return this.disposes;
+    public int getItemsDisposed() {
+        return (int) this.disposes.get();
     }
 
-    public synchronized int getCacheActiveCount() {
-        return this.itemsInUse;
+    public int getCacheActiveCount() {
+        return this.itemsInUse.get();
     }
 
     public void setCapacity(int capacity) {
         if (capacity < 0)
             throw new IllegalArgumentException(
                 "new capacity must be greater non-negative");
-        synchronized (this) {
-            int oldCapacity = this.capacity;
-            this.capacity = capacity;
-            if (capacity >= oldCapacity)
-                return;
+        this.capacity = capacity;
 
-            //
-            // Force entries out of the cache until capacity is reached.  The
-            // loop considers entries in least to most recently used order.
-            //
-            for (Map.Entry<K, Set<V>> entry : this.entrySet()) {
-                if (!this.removeEldestEntry(entry))
-                    break;
-            }
-        }
+        //
+        // Force entries out of the cache until capacity is reached.
+        //
+        this.evictExcessEntries();
+    }
+
+    /**
+     * Return the number of entries (keys with inactive items) in the cache.
+     *
+     * @return  the number of entries in the cache
+     */
+    public int size() {
+        return this.entryCount.get();
     }
 
     //
@@ -545,7 +638,12 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
      * activating such a new item fails, the method throws {@code
      * ActivationException}.
      *
-     * <p>
+     * </p><p>
+     *
+     * Items are created and activated without holding any of the cache's
+     * locks.
+     *
+     * </p>
      *
      * @param key   the lookup key used to fetch a cached object
      *
@@ -560,81 +658,67 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
      *      exception
      */
     public V getAndRemove(K key) throws Exception {
-        synchronized (this) {
+        Segment<K, V> segment = this.segmentFor(key);
+
+        if (!this.exclusiveItemUse) {
             //
-            // Attempt to reuse a non-exclusive active item.
+            // See whether the object's already in use (or about to be).  If
+            // so, simply bump its reference count and return it.  Otherwise
+            // claim the right to activate one.
             //
-            if (!this.exclusiveItemUse) {
-                //
-                // See whether the object's already in use.  If so, simply
-                // bump its reference count and return it.
-                //
-                Set<CountedItem<V>> countedItems =
-                    this.activeObjects.get(key);
-                if (countedItems != null && countedItems.size() != 0) {
-                    assert countedItems.size() == 1;
-                    CountedItem<V> ct = countedItems.iterator().next();
-                    ct.addUse();
-                    this.itemsInUse++;
-                    this.addShareHit();
-                    return ct.item;
+            synchronized (segment) {
+                while (true) {
+                    CountedItem<V> ct = segment.getSharedItem(key);
+                    if (ct != null) {
+                        ct.addUse();
+                        this.itemsInUse.incrementAndGet();
+                        this.shareHits.incrementAndGet();
+                        return ct.item;
+                    }
+                    if (!segment.activating.contains(key))
+                        break;
+                    segment.wait();
                 }
+                segment.activating.add(key);
             }
+        }
 
+        boolean activated = false;
+        try {
             //
-            // Attempt to satisfy the request from the cache.
+            // Attempt to satisfy the request from the cache.  Grab an item
+            // and attempt to activate it until there are no more or
+            // activation succeeds.
             //
-            Set<V> itemsForKey = this.get(key);
-            if (itemsForKey != null) {
-                if (itemsForKey.size() != 0) {
-                    //
-                    // The request can potentially be satisfied from the
-                    // cache.  Grab an item and attempt to activate it until
-                    // there are no more or activation succeeds.
-                    //
-                    Iterator<V> itemIterator = itemsForKey.iterator();
-                    while (itemIterator.hasNext()) {
-                        V v = itemIterator.next();
-                        itemIterator.remove();
-                        //
-                        // If the item set for this entry has become empty,
-                        // avoid confusing the underlying LinkedHashMap LRU
-                        // machinery by removing the entry from the map.
-                        // (Note that the loop will terminate in this case.)
-                        //
-                        if (itemsForKey.size() == 0)
-                            this.remove(key);
-                        if (this.activate(v)) {
-                            this.addHit();
-                            this.addCountedItem(key, v);
-                            this.itemsInUse++;
-                            return v;
-                        } else {
-                            this.disposeItem(key, v);
-                        }
-                    }
-                } else {
-                    //
-                    // Avoid confusing the underlying LinkedHashMap LRU
-                    // machinery by removing the empty set from the map.
-                    //
-                    this.remove(key);
+            V v;
+            while ((v = this.takeItem(segment, key)) != null) {
+                if (this.activate(v)) {
+                    this.hits.incrementAndGet();
+                    this.activated(segment, key, v);
+                    activated = true;
+                    return v;
                 }
+                this.disposeItem(key, v);
             }
 
             //
             // No existing item satisfies the request.  Make a new one.
             //
-            // This LRUCache instance is locked while the factory newInstance() is working.
-            V v = this.factory.newInstance(key);
+            v = this.factory.newInstance(key);
             if (this.activate(v)) {
-                this.addMiss();
-                this.addCountedItem(key, v);
-                this.itemsInUse++;
+                this.misses.incrementAndGet();
+                this.activated(segment, key, v);
+                activated = true;
                 return v;
-            } else {
-                this.disposeItem(key, v);
-                throw new ActivationException();
+            }
+            this.disposeItem(key, v);
+            throw new ActivationException();
+        } finally {
+            if (!activated && !this.exclusiveItemUse) {
+                synchronized (segment) {
+                    segment.activating.remove(key);
+                    segment.notifyAll();
+                }
             }
         }
     }
@@ -647,8 +731,9 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
      * @param v     the object to be inactivated and added
      */
     public void addAndEvictOld(K key, V v) {
-        synchronized (this) {
-            Set<CountedItem<V>> countedItems = this.activeObjects.get(key);
+        Segment<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            Set<CountedItem<V>> countedItems = segment.activeObjects.get(key);
             if (countedItems == null || countedItems.size() == 0)
                 throw new IllegalStateException(
                     "no active object with key " + key.toString());
@@ -659,7 +744,11 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
             // search.
             //
             Iterator<CountedItem<V>> it = countedItems.iterator();
-            while (it.hasNext()) {
+            while (true) {
+                if (!it.hasNext()) {
+                    assert false;   // not reached
+                    return;
+                }
                 CountedItem<V> ci = it.next();
                 if (ci.item != v)
                     continue;
@@ -669,7 +758,7 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
                 //      after the decrement.  It had better remain
                 //      non-negative!
                 //
-                this.itemsInUse--;
+                this.itemsInUse.decrementAndGet();
                 //
                 // We're done if there's a use remaining after relinquishing
                 // this one.
@@ -679,83 +768,46 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
 
                 //
                 // Deactivate the item and transfer it from activeObjects to
-                // the LRU map.
+                // the segment's entries.
                 //
                 this.deactivate(v);
-                this.addItemToEntry(key, v);
                 it.remove();
-                return;
+                if (countedItems.size() == 0)
+                    segment.activeObjects.remove(key);
+                if (segment.addItemToEntry(key, v, this.clock.incrementAndGet()))
+                    this.entryCount.incrementAndGet();
+                break;
             }
-            assert false;   // not reached
         }
+        this.evictExcessEntries();
     }
 
     /**
      * Reclaim all resources associated with this cache by invoking
      * {@link #disposeItem(Object, Object) disposeItem()}
      * on every item of every
-     * entry in its entry set and removing all items from the map.
+     * entry in the cache and removing all entries from the cache.
      */
     //
     // XXX: What about items in use?  Ideally, there shouldn't be any, but can
     //      that be counted on?
     //
-    public synchronized void dispose() {
-        Iterator<Map.Entry<K, Set<V>>> it = this.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<K, Set<V>> entry = it.next();
-            it.remove();
-
-            K key = entry.getKey();
-            for (V v : entry.getValue()) {
-                this.disposeItem(key, v);
+    public void dispose() {
+        for (Segment<K, V> segment : this.segments) {
+            List<Map.Entry<K, Entry<V>>> removed =
+                new ArrayList<Map.Entry<K, Entry<V>>>();
+            synchronized (segment) {
+                removed.addAll(segment.entries.entrySet());
+                segment.entries.clear();
+                this.entryCount.addAndGet(-removed.size());
             }
-        }
-    }
-
-    /**
-     * <p>
-     *
-     * Determine whether or not the eldest entry in the cache should be
-     * removed.  See the documentation for the superclass's
-     * {@link java.util.LinkedHashMap#removeEldestEntry(Map.Entry) removeEldestEntry()}
-     * method for the specification of this method.  Note
-     * that entries consist of sets of cached items associated with the item's
-     * key.
-     *
-     * </p><p>
-     *
-     * This class's implementation arranges to remove the entry if retaining
-     * it would otherwise exceed the map's capacity.  In this case, it invokes
-     * {@link #disposeItem(Object, Object) disposeItem()} on all the items
-     * associated with the entry's key.  Note that capacity is calculated in
-     * terms of the number of keys in the map, rather than the number of items
-     * present in the cache.
-     *
-     * </p><p>
-     *
-     * Subclasses that override this method should first determine whether the
-     * entry is to be removed, and, if so, then invoke {@code disposeItem()}
-     * on the entry's items, as described above.
-     *
-     * </p>
-     *
-     * @param entry a key-value pair describing the map's eldest entry
-     *
-     * @return  {@code true} if the entry (and contained cached items)
-     *          described by {@code entry} should be removed, {@code false}
-     *          otherwise
-     */
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<K, Set<V>> entry) {
-        boolean remove = this.size() > this.capacity;
-        if (remove) {
-            K key = entry.getKey();
-            for (V v : entry.getValue()) {
-                this.disposeItem(key, v);
+            for (Map.Entry<K, Entry<V>> entry : removed) {
+                K key = entry.getKey();
+                for (V v : entry.getValue().items) {
+                    this.disposeItem(key, v);
+                }
             }
         }
-        return remove;
     }
 
     /**
@@ -812,72 +864,127 @@ public class LRUCache<K, V> extends LinkedHashMap<K, Set<V>>
      *
      * </p><p>
      *
-     * This default implementation does nothing other than record that the
-     * item is not in active use and update the cache statistics entries for
-     * cache evictions and item disposals.  Subclasses may override this
-     * method to provide whatever cleanup processing they find to be
-     * appropriate, such as invoking {@code close()} or {@code dispose()} on
-     * it.  Any such override should call this method as part of its
-     * processing.
+     * This default implementation does nothing other than update the cache
+     * statistics entries for cache evictions and item disposals.  Subclasses
+     * may override this method to provide whatever cleanup processing they
+     * find to be appropriate, such as invoking {@code close()} or {@code
+     * dispose()} on it.  Any such override should call this method as part
+     * of its processing.  The cache never holds any of its locks while
+     * calling this method.
      *
      * </p>
      *
      * @param key   the item's key
      * @param v     the item to be disposed of
      */
-    protected synchronized void disposeItem(K key, V v) {
-        this.addEviction();
-        this.addItemDisposed();
-        this.activeObjects.remove(v);
+    protected void disposeItem(K key, V v) {
+        this.evictions.incrementAndGet();
+        this.disposes.incrementAndGet();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return this.segments[h & (this.segments.length - 1)];
     }
 
     //
-    // Add an item to an entry in this map.  Assumes the caller holds suitable
-    // locks.
+    // Remove and return an inactive item for key from segment, or null if
+    // there are none.
     //
-    private void addItemToEntry(K key, V v) {
-        Set<V> itemsForKey = this.get(key);
-        if (itemsForKey == null) {
-            itemsForKey = new HashSet<V>();
-            this.put(key, itemsForKey);
+    private V takeItem(Segment<K, V> segment, K key) {
+        synchronized (segment) {
+            Entry<V> entry = segment.entries.get(key);
+            if (entry == null)
+                return null;
+            Iterator<V> itemIterator = entry.items.iterator();
+            V v = itemIterator.next();
+            itemIterator.remove();
+            //
+            // Never leave an empty entry in the map, since it would count
+            // against the cache's capacity.
+            //
+            if (entry.items.size() == 0) {
+                segment.entries.remove(key);
+                this.entryCount.decrementAndGet();
+            } else {
+                entry.lastUse = this.clock.incrementAndGet();
+            }
+            return v;
         }
-        itemsForKey.add(v);
     }
 
     //
-    // Add a counted item to the active objects map.  Assumes the caller
-    // holds suitable locks.
+    // Record that v has been activated for key.
     //
-    private void addCountedItem(K key, V v) {
-        Set<CountedItem<V>> countedItems = this.activeObjects.get(key);
-        if (countedItems == null) {
-            countedItems = new HashSet<CountedItem<V>>();
-            this.activeObjects.put(key, countedItems);
+    private void activated(Segment<K, V> segment, K key, V v) {
+        synchronized (segment) {
+            segment.addCountedItem(key, v);
+            this.itemsInUse.incrementAndGet();
+            if (!this.exclusiveItemUse) {
+                segment.activating.remove(key);
+                segment.notifyAll();
+            }
         }
-        countedItems.add(new CountedItem<V>(v));
     }
 
     //
-    // Methods for updating performance counters.
+    // Evict entries until the cache is within its capacity.  Each eviction
+    // removes the least recently used of the segments' eldest entries and
+    // disposes of its items after the segment's lock has been released.
     //
+    private void evictExcessEntries() {
+        while (true) {
+            //
+            // Reserve an eviction, so that concurrent callers do not evict
+            // more entries than needed.
+            //
+            int count = this.entryCount.get();
+            if (count <= this.capacity)
+                return;
+            if (!this.entryCount.compareAndSet(count, count - 1))
+                continue;
+
+            Segment<K, V> victim = null;
+            long oldest = Long.MAX_VALUE;
+            for (Segment<K, V> segment : this.segments) {
+                synchronized (segment) {
+                    Iterator<Entry<V>> it = segment.entries.values().iterator();
+                    if (it.hasNext()) {
+                        long lastUse = it.next().lastUse;
+                        if (lastUse < oldest) {
+                            oldest = lastUse;
+                            victim = segment;
+                        }
+                    }
+                }
+            }
 
-    private synchronized void addHit() {
-        this.hits++;
-    }
-
-    private synchronized void addShareHit() {
-        this.shareHits++;
-    }
-
-    private synchronized void addMiss() {
-        this.misses++;
-    }
-
-    private synchronized void addEviction() {
-        this.evictions++;
-    }
-
-    private synchronized void addItemDisposed() {
-        this.disposes++;
+            K key = null;
+            Entry<V> entry = null;
+            if (victim != null) {
+                synchronized (victim) {
+                    Iterator<Map.Entry<K, Entry<V>>> it = victim.entries.entrySet().iterator();
+                    if (it.hasNext()) {
+                        Map.Entry<K, Entry<V>> eldest = it.next();
+                        key = eldest.getKey();
+                        entry = eldest.getValue();
+                        it.remove();
+                    }
+                }
+            }
+            if (entry == null) {
+                //
+                // The entry was taken by another thread.  Undo the
+                // reservation and look again.
+                //
+                this.entryCount.incrementAndGet();
+                continue;
+            }
+            for (V v : entry.items) {
+                this.disposeItem(key, v);
+            }
+        }
     }
 }
@@ -86,11 +86,9 @@ public interface LRUCacheMBean {
 
     /**
      * Set the cache's capacity to the value given by the argument.  If the
-     * new capacity is less than the old, remove the cache's eldest entries
-     * (by calling {@link
-     * sunlabs.titan.util.LRUCache#removeEldestEntry(java.util.Map.Entry)
-     * removeEldestEntry()}) until the number of remaining entries does not
-     * exceed the capacity.
+     * new capacity is less than the old, evict the cache's least recently
+     * used entries until the number of remaining entries does not exceed the
+     * capacity.
      *
      * @param capacity  the cache's new capacity
      *
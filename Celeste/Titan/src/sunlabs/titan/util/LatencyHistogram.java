@@ -0,0 +1,205 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies.
+ * <p>
+ * Latencies are recorded in nanoseconds into logarithmic buckets, each power of two being divided into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so that any reported value is within 1/{@value #SUB_BUCKETS}
+ * of a latency actually recorded, from one nanosecond up to about 73 minutes.
+ * Longer latencies are counted in the last bucket.
+ * </p>
+ * <p>
+ * Recording a latency takes no locks and allocates nothing: it is a few arithmetic operations and three or four atomic updates.
+ * All of the work of summarising the histogram, such as computing percentiles, is done by the reader.
+ * Because the buckets are updated independently, a summary computed while latencies are being recorded
+ * may reflect some recordings only partially.
+ * </p>
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    public final static int SUB_BUCKET_BITS = 4;
+    public final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int MAX_EXPONENT = 42;
+    private final static int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) << SUB_BUCKET_BITS;
+
+    private final static double NANOS_PER_MILLI = 1000000.0;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Get the name of this histogram.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Record a latency of {@code nanoseconds}.
+     */
+    public void record(long nanoseconds) {
+        if (nanoseconds < 0) {
+            nanoseconds = 0;
+        }
+        this.counts.incrementAndGet(LatencyHistogram.bucket(nanoseconds));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(nanoseconds);
+
+        long m;
+        while (nanoseconds > (m = this.max.get())) {
+            if (this.max.compareAndSet(m, nanoseconds)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Record the latency from {@code startNanos}, a value previously obtained from {@link System#nanoTime()}, until now.
+     * Return the current value of {@link System#nanoTime()}.
+     */
+    public long recordSince(long startNanos) {
+        long now = System.nanoTime();
+        this.record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * Get the index of the bucket counting the given value.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Get the largest value counted by the given bucket.
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = (bucket & (SUB_BUCKETS - 1)) | SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Get the sum, in nanoseconds, of all the recorded latencies.
+     */
+    public long getTotalNanoseconds() {
+        return this.sum.get();
+    }
+
+    /**
+     * Get the latency, in nanoseconds, below which the given percentage of the recorded latencies fall.
+     * Return zero if no latencies have been recorded.
+     */
+    public long getPercentileNanoseconds(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(LatencyHistogram.highestValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long n = this.count.get();
+        return n == 0 ? 0.0 : this.sum.get() / NANOS_PER_MILLI / n;
+    }
+
+    public double getMax() {
+        return this.max.get() / NANOS_PER_MILLI;
+    }
+
+    public double getMedian() {
+        return this.getPercentileNanoseconds(50.0) / NANOS_PER_MILLI;
+    }
+
+    public double get90thPercentile() {
+        return this.getPercentileNanoseconds(90.0) / NANOS_PER_MILLI;
+    }
+
+    public double get99thPercentile() {
+        return this.getPercentileNanoseconds(99.0) / NANOS_PER_MILLI;
+    }
+
+    public double get999thPercentile() {
+        return this.getPercentileNanoseconds(99.9) / NANOS_PER_MILLI;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s n=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+                this.name, this.getCount(), this.getMean(), this.getMedian(), this.get99thPercentile(), this.getMax());
+    }
+}
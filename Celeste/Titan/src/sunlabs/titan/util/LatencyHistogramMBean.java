@@ -0,0 +1,72 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.util;
+
+/**
+ * The JMX management interface for the {@code LatencyHistogram} class.
+ * <p>
+ * All times are in milliseconds.
+ * </p>
+ */
+public interface LatencyHistogramMBean {
+    /**
+     * Return the number of latencies recorded.
+     */
+    public long getCount();
+
+    /**
+     * Return the mean of the recorded latencies.
+     */
+    public double getMean();
+
+    /**
+     * Return the largest recorded latency.
+     */
+    public double getMax();
+
+    /**
+     * Return the latency below which half of the recorded latencies fall.
+     */
+    public double getMedian();
+
+    /**
+     * Return the latency below which 90% of the recorded latencies fall.
+     */
+    public double get90thPercentile();
+
+    /**
+     * Return the latency below which 99% of the recorded latencies fall.
+     */
+    public double get99thPercentile();
+
+    /**
+     * Return the latency below which 99.9% of the recorded latencies fall.
+     */
+    public double get999thPercentile();
+
+    /**
+     * Discard all of the recorded latencies.
+     */
+    public void reset();
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import sunlabs.asdf.jmx.JMX;
+import sunlabs.asdf.util.TimeProfiler;
+import sunlabs.asdf.web.XML.XHTML;
+
+/**
+ * A collection of named {@link LatencyHistogram}s and {@link Metrics.Counter}s describing the operations performed by a service.
+ * <p>
+ * Each operation has a histogram of its total latency, a histogram for each phase of the operation,
+ * and counters of the number of times it has been started and the number currently in progress.
+ * Operations, phases and counters are created the first time they are used.
+ * If this {@code Metrics} instance was created with a JMX {@link ObjectName}, each histogram and counter is
+ * registered as an MBean beneath that name.
+ * </p>
+ * <p>
+ * An operation is timed by a {@link Metrics.Timer}:
+ * </p>
+ * <pre>
+ * Metrics.Timer timer = metrics.start("readFile");
+ * try {
+ *     ...
+ *     timer.stamp("fetchAnchor");
+ *     ...
+ * } finally {
+ *     timer.stamp("remainder");
+ *     timer.stop();
+ * }
+ * </pre>
+ * <p>
+ * When {@link TimeProfiler} profiling is enabled, each {@code Timer} also prints its time-stamps
+ * as {@link TimeProfiler} does, otherwise nothing is printed.
+ * </p>
+ */
+public class Metrics {
+    public interface CounterMBean {
+        public long getValue();
+        public void reset();
+    }
+
+    /**
+     * A counter.
+     */
+    public static class Counter implements CounterMBean {
+        private final AtomicLong value;
+
+        public Counter() {
+            this.value = new AtomicLong();
+        }
+
+        public long increment() {
+            return this.value.incrementAndGet();
+        }
+
+        public long decrement() {
+            return this.value.decrementAndGet();
+        }
+
+        public long add(long delta) {
+            return this.value.addAndGet(delta);
+        }
+
+        public long getValue() {
+            return this.value.get();
+        }
+
+        public void reset() {
+            this.value.set(0);
+        }
+    }
+
+    /**
+     * The histograms and counters of a single operation.
+     */
+    public class Operation {
+        private final String name;
+        private final LatencyHistogram total;
+        private final ConcurrentMap<String,LatencyHistogram> phases;
+        private final Counter started;
+        private final Counter active;
+
+        Operation(String name) {
+            this.name = name;
+            this.total = new LatencyHistogram(name);
+            this.phases = new ConcurrentHashMap<String,LatencyHistogram>();
+            this.started = new Counter();
+            this.active = new Counter();
+            Metrics.this.register(this.total, LatencyHistogramMBean.class, name, "total");
+            Metrics.this.register(this.started, CounterMBean.class, name, "started");
+            Metrics.this.register(this.active, CounterMBean.class, name, "active");
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public LatencyHistogram getTotal() {
+            return this.total;
+        }
+
+        public long getStarted() {
+            return this.started.getValue();
+        }
+
+        public long getActive() {
+            return this.active.getValue();
+        }
+
+        /**
+         * Get the histogram of the named phase of this operation, creating it if necessary.
+         */
+        public LatencyHistogram getPhase(String phase) {
+            LatencyHistogram histogram = this.phases.get(phase);
+            if (histogram == null) {
+                LatencyHistogram h = new LatencyHistogram(this.name + "." + phase);
+                histogram = this.phases.putIfAbsent(phase, h);
+                if (histogram == null) {
+                    histogram = h;
+                    Metrics.this.register(h, LatencyHistogramMBean.class, this.name, phase);
+                }
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Time a single execution of an {@link Operation}.
+     * <p>
+     * A {@code Timer} is used by a single thread.
+     * </p>
+     */
+    public class Timer {
+        private final Operation operation;
+        private final long startNanos;
+        private final TimeProfiler profiler;
+        private long lastNanos;
+        private boolean stopped;
+
+        Timer(Operation operation) {
+            this.operation = operation;
+            this.profiler = TimeProfiler.isEnabled() ? new TimeProfiler(operation.getName()) : null;
+            this.operation.started.increment();
+            this.operation.active.increment();
+            this.lastNanos = this.startNanos = System.nanoTime();
+            this.stopped = false;
+        }
+
+        /**
+         * Record the time since the previous time-stamp, or the start of the operation, as the named phase of the operation.
+         */
+        public void stamp(String phase) {
+            this.lastNanos = this.operation.getPhase(phase).recordSince(this.lastNanos);
+            if (this.profiler != null) {
+                this.profiler.stamp(phase);
+            }
+        }
+
+        /**
+         * Record the total time of the operation.
+         * Only the first invocation of this method has any effect.
+         */
+        public void stop() {
+            if (this.stopped) {
+                return;
+            }
+            this.stopped = true;
+            this.operation.total.recordSince(this.startNanos);
+            this.operation.active.decrement();
+            if (this.profiler != null) {
+                this.profiler.printCSV(System.out);
+                this.profiler.print(System.out);
+            }
+        }
+    }
+
+    private final ObjectName jmxObjectNameRoot;
+    private final ConcurrentMap<String,Operation> operations;
+    private final ConcurrentMap<String,Counter> counters;
+    private final List<ObjectName> registered;
+
+    /**
+     * Create a new, empty, collection of metrics.
+     * If {@code jmxObjectNameRoot} is not {@code null} the histograms and counters are registered as MBeans beneath it.
+     */
+    public Metrics(ObjectName jmxObjectNameRoot) {
+        this.jmxObjectNameRoot = jmxObjectNameRoot;
+        this.operations = new ConcurrentHashMap<String,Operation>();
+        this.counters = new ConcurrentHashMap<String,Counter>();
+        this.registered = Collections.synchronizedList(new ArrayList<ObjectName>());
+    }
+
+    private <T> void register(T mbean, Class<T> mbeanInterface, Object... pathName) {
+        if (this.jmxObjectNameRoot != null) {
+            try {
+                ObjectName name = JMX.objectName(this.jmxObjectNameRoot, pathName);
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(mbean, mbeanInterface), name);
+                this.registered.add(name);
+            } catch (JMException e) {
+                // Metrics are still recorded, they are just not visible through JMX.
+            }
+        }
+    }
+
+    /**
+     * Get the named {@link Operation}, creating it if necessary.
+     */
+    public Operation getOperation(String name) {
+        Operation operation = this.operations.get(name);
+        if (operation == null) {
+            synchronized (this.operations) {
+                operation = this.operations.get(name);
+                if (operation == null) {
+                    operation = new Operation(name);
+                    this.operations.put(name, operation);
+                }
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * Start timing an execution of the named operation.
+     */
+    public Metrics.Timer start(String operation) {
+        return new Timer(this.getOperation(operation));
+    }
+
+    /**
+     * Get the named {@link Counter}, creating it if necessary.
+     */
+    public Counter getCounter(String name) {
+        Counter counter = this.counters.get(name);
+        if (counter == null) {
+            synchronized (this.counters) {
+                counter = this.counters.get(name);
+                if (counter == null) {
+                    counter = new Counter();
+                    this.register(counter, CounterMBean.class, name);
+                    this.counters.put(name, counter);
+                }
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Unregister all of the MBeans registered by this instance.
+     */
+    public void unregister() {
+        synchronized (this.registered) {
+            for (ObjectName name : this.registered) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                } catch (JMException ignore) {
+
+                }
+            }
+            this.registered.clear();
+        }
+    }
+
+    private static XHTML.Table.Row toXHTMLTableRow(String name, String started, String active, LatencyHistogram histogram) {
+        return new XHTML.Table.Row(new XHTML.Table.Data(name),
+                new XHTML.Table.Data(started),
+                new XHTML.Table.Data(active),
+                new XHTML.Table.Data(histogram.getCount()),
+                new XHTML.Table.Data("%.3f", histogram.getMean()),
+                new XHTML.Table.Data("%.3f", histogram.getMedian()),
+                new XHTML.Table.Data("%.3f", histogram.get90thPercentile()),
+                new XHTML.Table.Data("%.3f", histogram.get99thPercentile()),
+                new XHTML.Table.Data("%.3f", histogram.get999thPercentile()),
+                new XHTML.Table.Data("%.3f", histogram.getMax()));
+    }
+
+    /**
+     * Produce an XHTML table of the operations, their phases, and the counters.
+     */
+    public XHTML.Table toXHTML() {
+        XHTML.Table.Body tbody = new XHTML.Table.Body();
+
+        List<String> names = new ArrayList<String>(this.operations.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            Operation operation = this.operations.get(name);
+            tbody.add(Metrics.toXHTMLTableRow(name, String.valueOf(operation.getStarted()), String.valueOf(operation.getActive()), operation.getTotal()));
+
+            List<String> phases = new ArrayList<String>(operation.phases.keySet());
+            Collections.sort(phases);
+            for (String phase : phases) {
+                tbody.add(Metrics.toXHTMLTableRow("&nbsp;&nbsp;" + phase, "", "", operation.phases.get(phase)));
+            }
+        }
+
+        List<String> counterNames = new ArrayList<String>(this.counters.keySet());
+        Collections.sort(counterNames);
+        for (String name : counterNames) {
+            tbody.add(new XHTML.Table.Row(new XHTML.Table.Data(name), new XHTML.Table.Data(this.counters.get(name).getValue())));
+        }
+
+        return new XHTML.Table(new XHTML.Table.Caption("Operation Latency (milliseconds)"),
+                new XHTML.Table.Head(new XHTML.Table.Row(new XHTML.Table.Heading("Operation"),
+                        new XHTML.Table.Heading("Started"),
+                        new XHTML.Table.Heading("Active"),
+                        new XHTML.Table.Heading("Completed"),
+                        new XHTML.Table.Heading("Mean"),
+                        new XHTML.Table.Heading("50%"),
+                        new XHTML.Table.Heading("90%"),
+                        new XHTML.Table.Heading("99%"),
+                        new XHTML.Table.Heading("99.9%"),
+                        new XHTML.Table.Heading("Max"))),
+                tbody).addClass("striped");
+    }
+
+    /**
+     * Get a read-only view of the operations, keyed by name.
+     */
+    public Map<String,Operation> getOperations() {
+        return Collections.unmodifiableMap(this.operations);
+    }
+}
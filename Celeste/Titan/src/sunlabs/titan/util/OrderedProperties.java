@@ -301,6 +301,11 @@ public class OrderedProperties extends java.util.Properties implements XHTMLInsp
         return (v == null) ? defaultValue : Long.parseLong(v);
     }
 
+    public double getPropertyAsDouble(String name, double defaultValue) {
+        String v = this.getProperty(name);
+        return (v == null) ? defaultValue : Double.parseDouble(v);
+    }
+
     public TitanGuid getPropertyAsObjectId(String name, TitanGuid defaultValue) {
         String v = this.getProperty(name);
         return (v == null) ? defaultValue : new TitanGuidImpl(v);
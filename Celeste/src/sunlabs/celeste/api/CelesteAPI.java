@@ -28,13 +28,16 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Map;
 
 import sunlabs.celeste.CelesteException;
+import sunlabs.celeste.FileIdentifier;
 import sunlabs.celeste.ResponseMessage;
 import sunlabs.celeste.client.operation.CreateFileOperation;
 import sunlabs.celeste.client.operation.DeleteFileOperation;
 import sunlabs.celeste.client.operation.ExtensibleOperation;
 import sunlabs.celeste.client.operation.InspectFileOperation;
+import sunlabs.celeste.client.operation.InspectFilesOperation;
 import sunlabs.celeste.client.operation.InspectLockOperation;
 import sunlabs.celeste.client.operation.LockFileOperation;
 import sunlabs.celeste.client.operation.NewCredentialOperation;
@@ -256,7 +259,21 @@ public interface CelesteAPI extends Closeable {
     public ResponseMessage inspectFile(InspectFileOperation operation)
     throws IOException, ClassNotFoundException,
            CelesteException.NotFoundException, CelesteException.RuntimeException, CelesteException.DeletedException ;
-    
+
+    /**
+     * Get the metadata of the latest version of each of many Celeste files.
+     * <p>
+     * The reply for each file is the same as {@link #inspectFile(InspectFileOperation)} returns,
+     * but the current versions of all of the files are determined together, which takes far fewer messages.
+     * </p>
+     *
+     * @return a map of each file's {@link FileIdentifier} to its metadata.
+     *         Files that could not be inspected, such as files that do not exist, are absent,
+     *         and {@code inspectFile} will report the reason.
+     * @throws CelesteException.RuntimeException
+     */
+    public Map<FileIdentifier,ResponseMessage> inspectFiles(InspectFilesOperation operation)
+    throws IOException, ClassNotFoundException, CelesteException.RuntimeException;
 
     public ResponseMessage inspectLock(InspectLockOperation operation)
     throws IOException, ClassNotFoundException,
@@ -32,15 +32,18 @@ import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import sunlabs.celeste.CelesteException;
+import sunlabs.celeste.FileIdentifier;
 import sunlabs.celeste.ResponseMessage;
 import sunlabs.celeste.api.CelesteAPI;
 import sunlabs.celeste.client.operation.CreateFileOperation;
 import sunlabs.celeste.client.operation.DeleteFileOperation;
 import sunlabs.celeste.client.operation.ExtensibleOperation;
 import sunlabs.celeste.client.operation.InspectFileOperation;
+import sunlabs.celeste.client.operation.InspectFilesOperation;
 import sunlabs.celeste.client.operation.InspectLockOperation;
 import sunlabs.celeste.client.operation.LockFileOperation;
 import sunlabs.celeste.client.operation.NewCredentialOperation;
@@ -484,6 +487,25 @@ public class CelesteProxy implements CelesteAPI {
         return (ResponseMessage) reply;
     }
 
+    @SuppressWarnings("unchecked")
+    public Map<FileIdentifier,ResponseMessage> inspectFiles(InspectFilesOperation operation)
+    throws IOException, ClassNotFoundException, CelesteException.RuntimeException {
+
+        this.objectOutputStream.reset();
+        this.objectOutputStream.writeObject(operation);
+        this.objectOutputStream.flush();
+        Serializable reply = (Serializable) this.objectInputStream.readObject();
+        if (reply instanceof Exception) {
+            Exception reason = (Exception) reply;
+            if (reason instanceof CelesteException.RuntimeException)
+                throw (CelesteException.RuntimeException) reason;
+            System.err.printf("inspectFiles: Uncaught exception (developers take note): %s%n", reason.toString());
+            reason.printStackTrace();
+            return null;
+        }
+        return (Map<FileIdentifier,ResponseMessage>) reply;
+    }
+
     public ResponseMessage inspectLock(InspectLockOperation operation)
     throws IOException, ClassNotFoundException,
            CelesteException.NotFoundException, CelesteException.RuntimeException, CelesteException.DeletedException  {
@@ -28,15 +28,26 @@ import java.net.URI;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
 
 import sunlabs.asdf.web.XML.XHTML;
 import sunlabs.asdf.web.http.HTTP;
@@ -95,6 +106,266 @@ public class Profile_ extends AbstractTitanObject implements Credential {
     private final static PBEParameterSpec paramSpec = new PBEParameterSpec(salt, 20);
     private static final TitanGuid credentialBase = new TitanGuidImpl("credential".getBytes());
 
+    //
+    // The maximum number of initialized verifiers each thread retains.
+    //
+    private final static int VERIFIER_CACHE_SIZE = 32;
+
+    //
+    // Each thread's initialized verifiers, keyed by algorithm and public key.
+    // A java.security.Signature is reset to its initialized state by
+    // verify(), so it can be reused for the next verification with the same
+    // key without repeating getInstance() and initVerify().  Verifiers are
+    // not thread safe, hence one set per thread.
+    //
+    private final static ThreadLocal<Map<VerifierKey,java.security.Signature>> verifiers =
+        new ThreadLocal<Map<VerifierKey,java.security.Signature>>() {
+        @Override
+        protected Map<VerifierKey,java.security.Signature> initialValue() {
+            return new LinkedHashMap<VerifierKey,java.security.Signature>(Profile_.VERIFIER_CACHE_SIZE, 0.75F, true) {
+                private final static long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<VerifierKey,java.security.Signature> eldest) {
+                    return this.size() > Profile_.VERIFIER_CACHE_SIZE;
+                }
+            };
+        }
+    };
+
+    private static class VerifierKey {
+        private final String algorithm;
+        private final PublicKey publicKey;
+
+        VerifierKey(String algorithm, PublicKey publicKey) {
+            this.algorithm = algorithm;
+            this.publicKey = publicKey;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof VerifierKey))
+                return false;
+            VerifierKey o = (VerifierKey) other;
+            return this.algorithm.equals(o.algorithm) && this.publicKey.equals(o.publicKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.algorithm.hashCode() ^ this.publicKey.hashCode();
+        }
+    }
+
+    /**
+     * The lifetime, in milliseconds, of the signing session that {@link #sign(char[], TitanGuid...)}
+     * establishes implicitly.
+     */
+    public static long signingSessionLifetime = Long.getLong("sunlabs.celeste.client.Profile_.signingSessionLifetime", 5L * 60L * 1000L);
+
+    /**
+     * The number of signatures the signing session that {@link #sign(char[], TitanGuid...)}
+     * establishes implicitly may produce before it must be re-established.
+     */
+    public static int signingSessionUses = Integer.getInteger("sunlabs.celeste.client.Profile_.signingSessionUses", 10000);
+
+    //
+    // Wipes signing sessions when they expire.
+    //
+    private final static Timer signingSessionTimer = new Timer("Profile_ signing session expiry", true);
+
+    /**
+     * <p>
+     * A {@code SigningSession} holds the decrypted private key of a {@link Profile_}
+     * so that a sequence of signatures can be produced without decrypting the key for each one.
+     * </p><p>
+     * A session is bounded both in time and in the number of signatures it will produce.
+     * When either bound is reached, or {@link #close()} is called, the session discards
+     * (and where possible destroys) the private key, and further attempts to sign throw
+     * {@link Credential.Exception}.
+     * Sessions are safe for use by multiple threads.
+     * </p>
+     */
+    public static class SigningSession {
+        /**
+         * Thrown when a signature is requested from a {@code SigningSession} that has expired or been closed.
+         */
+        public static class ExpiredException extends Credential.Exception {
+            private static final long serialVersionUID = 1L;
+
+            public ExpiredException() {
+                super("signing session has expired");
+            }
+        }
+
+        private final TitanGuid credentialId;
+        private final long expirationTime;
+        private final AtomicInteger usesRemaining;
+        private final ConcurrentLinkedQueue<java.security.Signature> signers;
+        private final byte[] passwordSalt;
+        private final byte[] passwordDigest;
+        private volatile PrivateKey privateKey;
+        private final TimerTask expiry;
+
+        private SigningSession(TitanGuid credentialId, PrivateKey privateKey, char[] password, long lifetimeMillis, int maxUses) throws GeneralSecurityException {
+            this.credentialId = credentialId;
+            this.privateKey = privateKey;
+            this.expirationTime = System.currentTimeMillis() + lifetimeMillis;
+            this.usesRemaining = new AtomicInteger(maxUses);
+            this.signers = new ConcurrentLinkedQueue<java.security.Signature>();
+            this.passwordSalt = new byte[16];
+            new SecureRandom().nextBytes(this.passwordSalt);
+            this.passwordDigest = SigningSession.digest(this.passwordSalt, password);
+            this.expiry = new TimerTask() {
+                @Override
+                public void run() {
+                    SigningSession.this.close();
+                }
+            };
+            Profile_.signingSessionTimer.schedule(this.expiry, lifetimeMillis);
+        }
+
+        //
+        // A salted digest of the password, so that the session can recognise
+        // the password it was unlocked with without retaining it.
+        //
+        private static byte[] digest(byte[] salt, char[] password) throws GeneralSecurityException {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            for (char c : password) {
+                md.update((byte) (c >> 8));
+                md.update((byte) c);
+            }
+            return md.digest();
+        }
+
+        //
+        // Return true if this session was unlocked with password.
+        //
+        private boolean matches(char[] password) {
+            try {
+                return MessageDigest.isEqual(this.passwordDigest, SigningSession.digest(this.passwordSalt, password));
+            } catch (GeneralSecurityException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Return {@code true} if this session can still produce signatures.
+         */
+        public boolean isOpen() {
+            if (this.privateKey == null)
+                return false;
+            if (System.currentTimeMillis() >= this.expirationTime || this.usesRemaining.get() <= 0) {
+                this.close();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Sign the collection of {@link TitanGuid} instances.
+         *
+         * @param ids the list of object ids to sign
+         *
+         * @return a {@code Signature} object containing the digital signature
+         *
+         * @throws SigningSession.ExpiredException if the session has expired or been closed
+         * @throws Credential.Exception if signing fails
+         */
+        public Credential.Signature sign(TitanGuid... ids) throws Credential.Exception {
+            java.security.Signature signer = this.acquire(1);
+            try {
+                Credential.Signature result = this.sign(signer, ids);
+                this.signers.add(signer);
+                return result;
+            } catch (GeneralSecurityException e) {
+                throw new Credential.Exception(e);
+            }
+        }
+
+        /**
+         * Sign each of a batch of pending operations' collections of {@link TitanGuid} instances,
+         * producing one {@code Signature} per element of {@code batch}, in order.
+         *
+         * @param batch the collections of object ids to sign
+         *
+         * @throws SigningSession.ExpiredException if the session has expired or been closed
+         * @throws Credential.Exception if signing fails
+         */
+        public List<Credential.Signature> sign(List<TitanGuid[]> batch) throws Credential.Exception {
+            List<Credential.Signature> result = new ArrayList<Credential.Signature>(batch.size());
+            if (batch.size() == 0)
+                return result;
+            java.security.Signature signer = this.acquire(batch.size());
+            try {
+                for (TitanGuid[] ids : batch) {
+                    result.add(this.sign(signer, ids));
+                }
+                this.signers.add(signer);
+                return result;
+            } catch (GeneralSecurityException e) {
+                throw new Credential.Exception(e);
+            }
+        }
+
+        /**
+         * Discard this session's private key.
+         */
+        public void close() {
+            PrivateKey key = this.privateKey;
+            this.privateKey = null;
+            this.expiry.cancel();
+            this.signers.clear();
+            if (key instanceof Destroyable) {
+                try {
+                    ((Destroyable) key).destroy();
+                } catch (DestroyFailedException e) {
+                    // Not all key implementations can be destroyed.  The reference is gone regardless.
+                }
+            }
+        }
+
+        //
+        // Claim uses signatures from this session and return an initialized
+        // signer.
+        //
+        private java.security.Signature acquire(int uses) throws Credential.Exception {
+            if (!this.isOpen() || this.usesRemaining.addAndGet(-uses) < 0) {
+                throw new ExpiredException();
+            }
+            java.security.Signature signer = this.signers.poll();
+            if (signer == null) {
+                PrivateKey key = this.privateKey;
+                if (key == null)
+                    throw new ExpiredException();
+                try {
+                    signer = java.security.Signature.getInstance(Profile_.DIGITAL_SIGNATURE_ALGORITHM);
+                    signer.initSign(key);
+                } catch (GeneralSecurityException e) {
+                    throw new Credential.Exception(e);
+                }
+            }
+            return signer;
+        }
+
+        //
+        // sign() leaves the signer initialized with the same key, ready for
+        // reuse.
+        //
+        private Credential.Signature sign(java.security.Signature signer, TitanGuid[] ids) throws GeneralSecurityException {
+            for (TitanGuid id : ids) {
+                if (id != null)
+                    signer.update(id.getBytes());
+            }
+            return new Credential.Signature(this.credentialId, signer.getAlgorithm(), signer.sign());
+        }
+    }
+
+    //
+    // The session used by sign(char[], TitanGuid...).
+    //
+    private transient volatile SigningSession signingSession;
+
     private final String name;
     private final byte[] encryptedPrivateKey;
     private final PublicKey publicKey;
@@ -260,24 +531,67 @@ public class Profile_ extends AbstractTitanObject implements Credential {
      * instance thrown by the underlying {@link java.security.Signature} system.
      */
     public Credential.Signature sign(char[] password, TitanGuid... ids) throws Credential.Exception {
+        try {
+            return this.getSigningSession(password).sign(ids);
+        } catch (SigningSession.ExpiredException e) {
+            // The session ran out between being obtained and being used.
+            return this.getSigningSession(password).sign(ids);
+        }
+    }
 
+    /**
+     * Sign each of a batch of collections of {@link TitanGuid} instances using this
+     * profile's private key, producing one {@code Signature} per element of {@code batch}.
+     *
+     * @param password the password needed access the encrypted private key
+     * @param batch the collections of object ids to sign
+     *
+     * @throws Credential.Exception encapsulating a {@link GeneralSecurityException}
+     * instance thrown by the underlying {@link java.security.Signature} system.
+     */
+    public List<Credential.Signature> sign(char[] password, List<TitanGuid[]> batch) throws Credential.Exception {
         try {
-            String algorithm = Profile_.DIGITAL_SIGNATURE_ALGORITHM;
-            java.security.Signature sign =
-                java.security.Signature.getInstance(algorithm);
+            return this.getSigningSession(password).sign(batch);
+        } catch (SigningSession.ExpiredException e) {
+            // The session ran out between being obtained and being used.
+            return this.getSigningSession(password).sign(batch);
+        }
+    }
 
-            sign.initSign(this.getPrivateKey(password));
-            for (TitanGuid id : ids) {
-                if (id != null)
-                    sign.update(id.getBytes());
-            }
-            return new Credential.Signature(this.getObjectId(),
-                sign.getAlgorithm(), sign.sign());
+    /**
+     * Decrypt this profile's private key with {@code password} and return a new
+     * {@link SigningSession} that will produce at most {@code maxUses} signatures
+     * during the next {@code lifetimeMillis} milliseconds.
+     * The caller should {@link SigningSession#close() close} the session when it is no longer needed.
+     *
+     * @throws Credential.Exception if the private key cannot be decrypted
+     */
+    public SigningSession unlock(char[] password, long lifetimeMillis, int maxUses) throws Credential.Exception {
+        try {
+            return new SigningSession(this.getObjectId(), this.getPrivateKey(password), password, lifetimeMillis, maxUses);
         } catch (GeneralSecurityException e) {
             throw new Credential.Exception(e);
         }
     }
 
+    //
+    // Return the implicit signing session for password, establishing a new
+    // one if there is none, it has expired, or it was unlocked with a
+    // different password.
+    //
+    private SigningSession getSigningSession(char[] password) throws Credential.Exception {
+        SigningSession session = this.signingSession;
+        if (session != null && session.isOpen() && session.matches(password))
+            return session;
+
+        session = this.unlock(password, Profile_.signingSessionLifetime, Profile_.signingSessionUses);
+        SigningSession previous = this.signingSession;
+        this.signingSession = session;
+        if (previous != null)
+            previous.close();
+        return session;
+    }
+
     /**
      * Verify that a given {@code Signature} was signed by this
      * {@code Credential}.
@@ -295,15 +609,25 @@ public class Profile_ extends AbstractTitanObject implements Credential {
     public boolean verify(Credential.Signature signature,  TitanGuid... ids)
         throws Credential.Exception {
 
+        Map<VerifierKey,java.security.Signature> threadVerifiers = Profile_.verifiers.get();
+        VerifierKey key = new VerifierKey(signature.getAlgorithm(), this.publicKey);
+        java.security.Signature verifier = threadVerifiers.remove(key);
         try {
-            java.security.Signature verifier =
-                java.security.Signature.getInstance(signature.getAlgorithm());
-            verifier.initVerify(this.publicKey);
+            if (verifier == null) {
+                verifier = java.security.Signature.getInstance(signature.getAlgorithm());
+                verifier.initVerify(this.publicKey);
+            }
             for (TitanGuid id : ids) {
                 if (id != null)
                     verifier.update(id.getBytes());
             }
-            return verifier.verify(signature.getSignature());
+            boolean result = verifier.verify(signature.getSignature());
+            //
+            // Only a verifier that completed normally is known to be back in
+            // its initialized state and fit for reuse.
+            //
+            threadVerifiers.put(key, verifier);
+            return result;
         } catch (GeneralSecurityException e) {
             throw new Credential.Exception(e);
         }
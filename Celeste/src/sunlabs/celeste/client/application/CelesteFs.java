@@ -951,6 +951,93 @@ public class CelesteFs {
         return 0;
     }
 
+    /**
+     * Copies a directory tree between the local file system and Celeste.
+     * The specific command to execute is given by the contents of the
+     * {@code options} argument as follows:
+     *
+     * <pre>
+     * put-tree [--threads &lt;n&gt;] [--buffer-size &lt;n&gt;] [--range-size &lt;n&gt;] [--progress &lt;seconds&gt;] &lt;directory&gt; &lt;pathname&gt;
+     * get-tree [--threads &lt;n&gt;] [--buffer-size &lt;n&gt;] [--range-size &lt;n&gt;] [--progress &lt;seconds&gt;] &lt;pathname&gt; &lt;directory&gt;</pre>
+     *
+     * <p>
+     *
+     * Directories and file entries are created as the source tree is walked
+     * and file contents are transferred by a pool of {@code --threads}
+     * workers sharing this instance's proxy cache.  Files copied out of
+     * Celeste that are longer than {@code --range-size} bytes are read as
+     * concurrent ranges.  Progress is printed on {@code System.err} every
+     * {@code --progress} seconds, or never if that is zero.
+     *
+     * </p>
+     *
+     * @param put   {@code true} to copy into Celeste, {@code false} to copy out of it
+     *
+     * @return  {@code 0} on success and non-zero on failure
+     */
+    public int transferTree(String command, Stack<String> options, Stats stats, boolean put) {
+        boolean verbose = this.properties.getProperty("verbose", "false").equals("true");
+        try {
+            int threads = 4;
+            int bufferSize = CelesteFs.defaultBufferSize;
+            long rangeSize = 4L * CelesteFs.defaultBufferSize;
+            long progressSeconds = 10;
+            while (!options.empty() && options.peek().startsWith("--")) {
+                String option = options.pop();
+                if (option.equals("--threads")) {
+                    threads = Integer.parseInt(options.pop());
+                } else if (option.equals("--buffer-size")) {
+                    bufferSize = Integer.parseInt(options.pop());
+                } else if (option.equals("--range-size")) {
+                    rangeSize = Long.parseLong(options.pop());
+                } else if (option.equals("--progress")) {
+                    progressSeconds = Long.parseLong(options.pop());
+                } else {
+                    System.err.printf("unknown option %s%n", option);
+                    System.err.printf("%s [--threads <n>] [--buffer-size <n>] [--range-size <n>] [--progress <seconds>] %s%n",
+                            command, put ? "<directory> <pathname>" : "<pathname> <directory>");
+                    return -1;
+                }
+            }
+
+            String localPath = put ? options.pop() : null;
+            String fullPath = options.pop();
+            if (!put)
+                localPath = options.pop();
+            String[] tokens = fullPath.split("/", 3);
+            String fileSystemName = tokens[1];
+            fullPath = "/" + (tokens.length >= 3 ? tokens[2] : "");
+
+            HierarchicalFileSystem fileSystem = this.factory.mount(fileSystemName);
+
+            //
+            // Each worker holds a proxy for the duration of each Celeste
+            // operation.  Make room in the cache for all of them, so that
+            // connections are reused rather than opened and closed.
+            //
+            if (this.proxyCache.getCapacity() < threads + 1)
+                this.proxyCache.setCapacity(threads + 1);
+
+            TreeTransfer transfer = new TreeTransfer(fileSystem, threads, bufferSize, rangeSize,
+                    progressSeconds > 0 ? System.err : null, Time.secondsInMilliseconds(Math.max(1, progressSeconds)));
+            TreeTransfer.Progress progress = put ?
+                    transfer.putTree(new File(localPath), new PathName(fullPath)) :
+                    transfer.getTree(new PathName(fullPath), new File(localPath));
+
+            for (String failure : transfer.getFailures()) {
+                System.err.printf("%s%n", failure);
+            }
+            stats.addMessage("%s/%s %s", fileSystemName, fullPath, progress);
+            return progress.getFailed() == 0 ? 0 : 1;
+        } catch (Exception e) {
+            stats.addMessage("%s", e.toString());
+            if (verbose) {
+                e.printStackTrace();
+            }
+            return 1;
+        }
+    }
+
     public int runExtension(String command, Stack<String> options, Stats stats) throws IOException {
         try {
             String fullPath = options.pop();
@@ -1386,6 +1473,7 @@ public class CelesteFs {
                         System.out.println("celeste [<address>]");
                         System.out.println("create [--attr|--prop <name>=<value>]... <pathname>");
                         System.out.println("getAttributes [-attr name]... <pathname>");
+                        System.out.println("get-tree [--threads <n>] [--buffer-size <n>] [--range-size <n>] [--progress <seconds>] <pathname> <directory>");
                         System.out.println("getProperties [-prop name]... <pathname>");
                         System.out.println("ls [-ls1] <pathname>");
                         System.out.println("identity name");
@@ -1395,6 +1483,7 @@ public class CelesteFs {
                         System.out.println("password password");
                         System.out.println("pread <pathname> [<offset> [<length>]]");
                         System.out.println("pwrite [--buffer-size <n>] <pathname> [<offset> <fileToWrite>]");
+                        System.out.println("put-tree [--threads <n>] [--buffer-size <n>] [--range-size <n>] [--progress <seconds>] <directory> <pathname>");
                         System.out.println("write-file <pathname> <offset> <fileToWrite>");
                         System.out.println("write [--buffer-size <n>] <pathname>|- <offset> <fileToWrite>");
                         System.out.println("readdir [-l] <pathname>");
@@ -1429,6 +1518,10 @@ public class CelesteFs {
                         status = celestefs.writeFileChunked(command, options, stats);
                     } else if (command.equals("pwrite")) {
                         status = celestefs.pwriteFile(command, options, stats);
+                    } else if (command.equals("put-tree")) {
+                        status = celestefs.transferTree(command, options, stats, true);
+                    } else if (command.equals("get-tree")) {
+                        status = celestefs.transferTree(command, options, stats, false);
                     } else if (command.equals("create")) {
                         status = celestefs.createFile(command, options, stats);
                     } else if (command.equals("getAttributes")) {
@@ -1567,6 +1660,7 @@ public class CelesteFs {
 
                     System.out.println(" [create [--attr|--prop <name>=<value>]... <pathname>]");
                     System.out.println(" [getAttributes [-attr name]... <pathname>]");
+                    System.out.println(" [get-tree [--threads <n>] [--buffer-size <n>] [--range-size <n>] [--progress <seconds>] <pathname> <directory>]");
                     System.out.println(" [getProperties [-prop name]... <pathname>]");
                     System.out.println(" [ls [-ls] <pathname>]");
                     System.out.println(" [mkdir[-p] [--attr|--prop <name>=<value>]... <pathname>]");
@@ -1574,6 +1668,7 @@ public class CelesteFs {
                     System.out.println(" [mkid]");
                     System.out.println(" [pread <pathname> [<offset> [<length>]]]");
                     System.out.println(" [pwrite [--buffer-size <n>] <pathname> <offset> <fileToWrite>]");
+                    System.out.println(" [put-tree [--threads <n>] [--buffer-size <n>] [--range-size <n>] [--progress <seconds>] <directory> <pathname>]");
                     System.out.println(" [write-file <pathname> <offset> <fileToWrite>]");
                     System.out.println(" [write [--buffer-size <n>] <pathname>|- <offset> <fileToWrite>]");
                     System.out.println(" [readdir [-l] <pathname>]");
@@ -1620,6 +1715,10 @@ public class CelesteFs {
                     status = celestefs.writeFileChunked(command, options, stats);
                 } else if (command.equals("pwrite")) {
                     status = celestefs.pwriteFile(command, options, stats);
+                } else if (command.equals("put-tree")) {
+                    status = celestefs.transferTree(command, options, stats, true);
+                } else if (command.equals("get-tree")) {
+                    status = celestefs.transferTree(command, options, stats, false);
                 } else if (command.equals("create")) {
                     status = celestefs.createFile(command, options, stats);
                 } else if (command.equals("getAttributes")) {
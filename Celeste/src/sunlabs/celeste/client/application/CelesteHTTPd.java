@@ -941,6 +941,7 @@ public final class CelesteHTTPd implements CelesteHTTPdMBean {
                 CelesteFileSystem.Directory directory = (CelesteFileSystem.Directory) fileOrDirectory;
                 HierarchicalFileSystem.FileName dirPath = directory.getPathName();
                 StringBuilder result = new StringBuilder();
+                directory.inspectFiles();
                 for (String entryName : directory.list()) {
                     HierarchicalFileSystem.FileName entryPath = dirPath.append(entryName);
                     CelesteFileSystem.File file = directory.getFile(entryName);
@@ -1107,6 +1108,7 @@ public final class CelesteHTTPd implements CelesteHTTPdMBean {
                     CelesteFileSystem.Directory directory =
                         (CelesteFileSystem.Directory) file;
                     String[] fileList = directory.list();
+                    directory.inspectFiles();
 
                     for (String fileName : fileList) {
                         CelesteFileSystem.File f = null;
@@ -124,11 +124,10 @@ public class CelesteSh {
                 return;
             }
 
-            OutputStream fout = null;
+            FileOutputStream fout = null;
             try {
                 fout = new FileOutputStream(fileName);
-                data.streamExtentBufferMap(fout);
-                fout.flush();
+                data.streamExtentBufferMap(fout.getChannel());
             } catch (IOException e) {
                 throw e;
             } finally {
@@ -582,7 +581,11 @@ public class CelesteSh {
 
             	ExtentBufferStreamer eb = reply.get(ExtentBufferStreamer.class);
 
-            	eb.streamExtentBufferMap(fout);
+            	if (fout instanceof FileOutputStream) {
+            	    eb.streamExtentBufferMap(((FileOutputStream) fout).getChannel());
+            	} else {
+            	    eb.streamExtentBufferMap(fout);
+            	}
 
             	index += eb.getLength();
             }
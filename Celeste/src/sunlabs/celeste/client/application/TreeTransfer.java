@@ -0,0 +1,513 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.client.application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sunlabs.celeste.client.filesystem.FileException;
+import sunlabs.celeste.client.filesystem.FileSystem;
+import sunlabs.celeste.client.filesystem.HierarchicalFileSystem;
+import sunlabs.celeste.client.filesystem.PathName;
+import sunlabs.titan.util.OrderedProperties;
+
+/**
+ * Copy a directory tree between the local file system and a Celeste {@link HierarchicalFileSystem}.
+ * <p>
+ * The tree is walked by the calling thread, which creates each directory and each file entry at the destination
+ * and then hands the transfer of the file's content to a pool of worker threads.
+ * Creating the name space on a single thread keeps concurrent updates to the same Celeste directory from
+ * conflicting with each other, while the file transfers, which are independent, proceed in parallel
+ * and overlap the remainder of the walk.
+ * </p>
+ * <p>
+ * When copying out of Celeste, a file longer than the range size is split into ranges that are read concurrently
+ * and written at their offsets in the local file.
+ * Copying into Celeste writes each file sequentially, one buffer per write,
+ * because concurrent writes to a single Celeste file conflict on its version and are retried.
+ * </p>
+ */
+public class TreeTransfer {
+    /**
+     * Counters describing the progress of a transfer.
+     */
+    public static class Progress {
+        private final long startTime;
+        private final AtomicLong directories;
+        private final AtomicLong filesQueued;
+        private final AtomicLong filesDone;
+        private final AtomicLong failed;
+        private final AtomicLong bytes;
+
+        public Progress() {
+            this.startTime = System.currentTimeMillis();
+            this.directories = new AtomicLong();
+            this.filesQueued = new AtomicLong();
+            this.filesDone = new AtomicLong();
+            this.failed = new AtomicLong();
+            this.bytes = new AtomicLong();
+        }
+
+        public long getDirectories() {
+            return this.directories.get();
+        }
+
+        public long getFilesDone() {
+            return this.filesDone.get();
+        }
+
+        /**
+         * Get the number of files and directories that could not be copied.
+         */
+        public long getFailed() {
+            return this.failed.get();
+        }
+
+        public long getBytes() {
+            return this.bytes.get();
+        }
+
+        /**
+         * Get the average number of bytes per second transferred since this {@code Progress} was created.
+         */
+        public double getBytesPerSecond() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - this.startTime);
+            return this.bytes.get() * 1000.0 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d files %d directories %d bytes %.2f MB/s%s",
+                    this.filesDone.get(), this.filesQueued.get(), this.directories.get(), this.bytes.get(),
+                    this.getBytesPerSecond() / (1024 * 1024),
+                    this.failed.get() == 0 ? "" : String.format(" %d failed", this.failed.get()));
+        }
+    }
+
+    private final HierarchicalFileSystem fileSystem;
+    private final ExecutorService workers;
+    private final int bufferSize;
+    private final long rangeSize;
+    private final Progress progress;
+    private final Queue<String> failures;
+    private final PrintStream report;
+    private final long reportIntervalMillis;
+    private long nextReport;
+
+    /**
+     * Create a transfer between the local file system and {@code fileSystem}.
+     *
+     * @param fileSystem            the Celeste file system
+     * @param nThreads              the number of worker threads transferring file content
+     * @param bufferSize            the amount of data moved by each read or write
+     * @param rangeSize             the length beyond which a file copied out of Celeste is split into concurrently read ranges
+     * @param report                the stream on which to print progress, or {@code null}
+     * @param reportIntervalMillis  the interval between progress reports
+     */
+    public TreeTransfer(HierarchicalFileSystem fileSystem, int nThreads, int bufferSize, long rangeSize, PrintStream report, long reportIntervalMillis) {
+        if (nThreads <= 0)
+            throw new IllegalArgumentException("thread count must be positive");
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("buffer size must be positive");
+        if (rangeSize <= 0)
+            throw new IllegalArgumentException("range size must be positive");
+        this.fileSystem = fileSystem;
+        this.workers = Executors.newFixedThreadPool(nThreads);
+        this.bufferSize = bufferSize;
+        this.rangeSize = rangeSize;
+        this.progress = new Progress();
+        this.failures = new ConcurrentLinkedQueue<String>();
+        this.report = report;
+        this.reportIntervalMillis = reportIntervalMillis;
+        this.nextReport = System.currentTimeMillis() + reportIntervalMillis;
+    }
+
+    public Progress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Get a description of each directory or file that could not be copied.
+     */
+    public List<String> getFailures() {
+        return new ArrayList<String>(this.failures);
+    }
+
+    /**
+     * Copy the local directory tree rooted at {@code source} to the Celeste directory {@code destination},
+     * creating {@code destination} and any missing ancestors.
+     * Existing Celeste files are overwritten.
+     * <p>
+     * This method returns when every file has been transferred or has failed.
+     * </p>
+     */
+    public Progress putTree(File source, PathName destination) throws InterruptedException {
+        try {
+            if (!source.isDirectory())
+                throw new IOException(source + " is not a directory");
+            String accumulator = "";
+            for (String s : destination.getComponents()) {
+                accumulator = (accumulator + "/" + s).replaceAll("/+", "/");
+                if (accumulator.compareTo("/") != 0) {
+                    this.createDirectory(new PathName(accumulator));
+                }
+            }
+            this.putDirectory(source, destination);
+        } catch (Exception e) {
+            this.fail(source.getPath(), e);
+        }
+        return this.awaitCompletion();
+    }
+
+    private void createDirectory(PathName path) throws FileException {
+        try {
+            this.fileSystem.createDirectory(path, new OrderedProperties(), new OrderedProperties());
+        } catch (FileException.Exists ignore) {
+            // Re-importing into an existing directory is allowed.
+        }
+    }
+
+    private void putDirectory(File source, PathName destination) {
+        File[] entries = source.listFiles();
+        if (entries == null) {
+            this.fail(source.getPath(), new IOException("cannot list directory"));
+            return;
+        }
+        Arrays.sort(entries);
+
+        //
+        // Create and queue every file in this directory before descending,
+        // so the workers have something to do while the subdirectories are created.
+        //
+        List<File> subdirectories = new ArrayList<File>();
+        for (File entry : entries) {
+            if (entry.isDirectory()) {
+                subdirectories.add(entry);
+            } else if (entry.isFile()) {
+                PathName path = destination.append(entry.getName());
+                try {
+                    FileSystem.File file;
+                    try {
+                        file = this.fileSystem.createFile(path, new OrderedProperties(), new OrderedProperties());
+                    } catch (FileException.Exists e) {
+                        file = (FileSystem.File) this.fileSystem.getNode(path);
+                        file.truncate(0);
+                    }
+                    this.progress.filesQueued.incrementAndGet();
+                    this.workers.execute(new PutFile(entry, file, path));
+                } catch (Exception e) {
+                    this.fail(path.toString(), e);
+                }
+            }
+            this.maybeReport();
+        }
+
+        for (File subdirectory : subdirectories) {
+            PathName path = destination.append(subdirectory.getName());
+            try {
+                this.createDirectory(path);
+                this.progress.directories.incrementAndGet();
+                this.putDirectory(subdirectory, path);
+            } catch (Exception e) {
+                this.fail(path.toString(), e);
+            }
+        }
+    }
+
+    private class PutFile implements Runnable {
+        private final File source;
+        private final FileSystem.File file;
+        private final PathName path;
+
+        PutFile(File source, FileSystem.File file, PathName path) {
+            this.source = source;
+            this.file = file;
+            this.path = path;
+        }
+
+        public void run() {
+            InputStream input = null;
+            try {
+                //
+                // Write whole blocks where possible, so that Celeste need not copy a block to merge a partial write.
+                //
+                int blockSize = this.file.getBlockSize();
+                int size = TreeTransfer.this.bufferSize;
+                if (size > blockSize)
+                    size -= size % blockSize;
+                byte[] buffer = new byte[(int) Math.max(1, Math.min(size, this.source.length()))];
+
+                input = new FileInputStream(this.source);
+                long position = 0;
+                int nread;
+                while ((nread = CelesteSh.readBuffer(input, buffer)) > 0) {
+                    this.file.write(ByteBuffer.wrap(buffer, 0, nread), position);
+                    position += nread;
+                    TreeTransfer.this.progress.bytes.addAndGet(nread);
+                }
+                TreeTransfer.this.progress.filesDone.incrementAndGet();
+            } catch (Exception e) {
+                TreeTransfer.this.fail(this.path.toString(), e);
+            } finally {
+                if (input != null) try { input.close(); } catch (IOException ignore) { }
+            }
+        }
+    }
+
+    /**
+     * Copy the Celeste directory tree rooted at {@code source} to the local directory {@code destination},
+     * creating {@code destination} and any missing ancestors.
+     * Existing local files are overwritten.
+     * <p>
+     * This method returns when every file has been transferred or has failed.
+     * </p>
+     */
+    public Progress getTree(PathName source, File destination) throws InterruptedException {
+        try {
+            FileSystem.Node node = this.fileSystem.getNode(source);
+            if (!(node instanceof HierarchicalFileSystem.Directory))
+                throw new IOException(source + " is not a directory");
+            if (!destination.isDirectory() && !destination.mkdirs())
+                throw new IOException("cannot create " + destination);
+            this.getDirectory((HierarchicalFileSystem.Directory) node, source, destination);
+        } catch (Exception e) {
+            this.fail(source.toString(), e);
+        }
+        return this.awaitCompletion();
+    }
+
+    private void getDirectory(HierarchicalFileSystem.Directory directory, PathName source, File destination) {
+        String[] names;
+        try {
+            names = directory.list();
+        } catch (Exception e) {
+            this.fail(source.toString(), e);
+            return;
+        }
+        Arrays.sort(names);
+
+        List<String> subdirectories = new ArrayList<String>();
+        for (String name : names) {
+            if (name.equals(".") || name.equals(".."))
+                continue;
+            PathName path = source.append(name);
+            try {
+                FileSystem.Node node = this.fileSystem.getNode(path);
+                if (node instanceof HierarchicalFileSystem.Directory) {
+                    subdirectories.add(name);
+                } else if (node instanceof FileSystem.File) {
+                    this.getFile((FileSystem.File) node, path, new File(destination, name));
+                }
+            } catch (Exception e) {
+                this.fail(path.toString(), e);
+            }
+            this.maybeReport();
+        }
+
+        for (String name : subdirectories) {
+            PathName path = source.append(name);
+            File local = new File(destination, name);
+            try {
+                if (!local.isDirectory() && !local.mkdir())
+                    throw new IOException("cannot create " + local);
+                this.progress.directories.incrementAndGet();
+                this.getDirectory((HierarchicalFileSystem.Directory) this.fileSystem.getNode(path), path, local);
+            } catch (Exception e) {
+                this.fail(path.toString(), e);
+            }
+        }
+    }
+
+    private void getFile(FileSystem.File file, PathName path, File destination) throws Exception {
+        long length = file.length();
+        long[] ranges = TreeTransfer.ranges(length, this.rangeSize);
+        LocalFile local = new LocalFile(destination, length, path, ranges.length / 2);
+        this.progress.filesQueued.incrementAndGet();
+        for (int i = 0; i < ranges.length; i += 2) {
+            //
+            // The first range uses the node already in hand.
+            // The others look up their own, because a Celeste file serialises the reads made through one instance.
+            //
+            this.workers.execute(new GetRange(i == 0 ? file : null, path, local, ranges[i], ranges[i + 1]));
+        }
+    }
+
+    /**
+     * Split a file of {@code length} bytes into ranges no longer than {@code rangeSize}.
+     *
+     * @return the ranges as consecutive pairs of start offset and length.
+     *         An empty file yields a single empty range.
+     */
+    static long[] ranges(long length, long rangeSize) {
+        int count = (int) Math.max(1, (length + rangeSize - 1) / rangeSize);
+        long[] result = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            long start = i * rangeSize;
+            result[2*i] = start;
+            result[2*i + 1] = Math.min(rangeSize, length - start);
+        }
+        return result;
+    }
+
+    /**
+     * A local file being written by one or more {@link GetRange} tasks.
+     * The first task to start opens it and the last task to finish closes it and accounts for the file.
+     * <p>
+     * Opening the file only once one of its ranges is running, rather than when it is queued,
+     * keeps the number of open files near the number of workers however far the walk gets ahead of them.
+     * </p>
+     */
+    private class LocalFile {
+        private final File destination;
+        private final long length;
+        private final PathName path;
+        private final AtomicInteger remaining;
+        private RandomAccessFile output;
+        private volatile Exception failure;
+
+        LocalFile(File destination, long length, PathName path, int ranges) {
+            this.destination = destination;
+            this.length = length;
+            this.path = path;
+            this.remaining = new AtomicInteger(ranges);
+        }
+
+        synchronized FileChannel getChannel() throws IOException {
+            if (this.output == null) {
+                RandomAccessFile output = new RandomAccessFile(this.destination, "rw");
+                try {
+                    output.setLength(this.length);
+                } catch (IOException e) {
+                    output.close();
+                    throw e;
+                }
+                this.output = output;
+            }
+            return this.output.getChannel();
+        }
+
+        void rangeDone(Exception e) {
+            if (e != null)
+                this.failure = e;
+            if (this.remaining.decrementAndGet() == 0) {
+                synchronized (this) {
+                    try {
+                        if (this.output != null)
+                            this.output.close();
+                    } catch (IOException closeFailure) {
+                        if (this.failure == null)
+                            this.failure = closeFailure;
+                    }
+                }
+                if (this.failure == null) {
+                    TreeTransfer.this.progress.filesDone.incrementAndGet();
+                } else {
+                    TreeTransfer.this.fail(this.path.toString(), this.failure);
+                }
+            }
+        }
+    }
+
+    private class GetRange implements Runnable {
+        private FileSystem.File file;
+        private final PathName path;
+        private final LocalFile local;
+        private final long start;
+        private final long length;
+
+        GetRange(FileSystem.File file, PathName path, LocalFile local, long start, long length) {
+            this.file = file;
+            this.path = path;
+            this.local = local;
+            this.start = start;
+            this.length = length;
+        }
+
+        public void run() {
+            Exception failure = null;
+            try {
+                if (this.file == null) {
+                    this.file = (FileSystem.File) TreeTransfer.this.fileSystem.getNode(this.path);
+                }
+                FileChannel channel = this.local.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(TreeTransfer.this.bufferSize, this.length)));
+                long position = this.start;
+                long end = this.start + this.length;
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int nread = this.file.read(buffer, position);
+                    if (nread < 1)
+                        throw new IOException(String.format("unexpected end of file at %d", position));
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, position + buffer.position());
+                    }
+                    position += nread;
+                    TreeTransfer.this.progress.bytes.addAndGet(nread);
+                }
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                this.local.rangeDone(failure);
+            }
+        }
+    }
+
+    private void fail(String name, Exception e) {
+        this.progress.failed.incrementAndGet();
+        this.failures.add(String.format("%s: %s", name, e.toString()));
+    }
+
+    private void maybeReport() {
+        if (this.report != null && System.currentTimeMillis() >= this.nextReport) {
+            this.report.printf("%s%n", this.progress);
+            this.nextReport = System.currentTimeMillis() + this.reportIntervalMillis;
+        }
+    }
+
+    private Progress awaitCompletion() throws InterruptedException {
+        this.workers.shutdown();
+        while (!this.workers.awaitTermination(Math.max(1, this.reportIntervalMillis), TimeUnit.MILLISECONDS)) {
+            this.maybeReport();
+        }
+        return this.progress;
+    }
+}
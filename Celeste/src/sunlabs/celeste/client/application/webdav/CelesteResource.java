@@ -578,6 +578,8 @@ public class CelesteResource extends WebDAV.AbstractResource implements WebDAV.R
                 CelesteFileSystem.Directory dir = (CelesteFileSystem.Directory) f;
                 try {
                     String[] names = dir.list();
+                    // The members' properties follow, so inspect them together.
+                    dir.inspectFiles();
                     for (String name : names) {
                         if (!name.equals(".") && !name.equals("..")) {
                             URI uri = new URI(null, null, this.getURI().getRawPath() + "/" + name, null, null).normalize();
@@ -33,9 +33,13 @@ import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
 
 import sunlabs.asdf.util.Time;
@@ -44,6 +48,7 @@ import sunlabs.asdf.web.XML.XHTML;
 import sunlabs.asdf.web.http.InternetMediaType;
 import sunlabs.celeste.CelesteException;
 import sunlabs.celeste.FileIdentifier;
+import sunlabs.celeste.ResponseMessage;
 import sunlabs.celeste.api.CelesteAPI;
 import sunlabs.celeste.client.CelesteProxy;
 import sunlabs.celeste.client.CelesteProxy.Cache;
@@ -52,6 +57,7 @@ import sunlabs.celeste.client.ReplicationParameters;
 import sunlabs.celeste.client.filesystem.simple.DirectoryImpl;
 import sunlabs.celeste.client.filesystem.simple.DirectoryImpl.Dirent;
 import sunlabs.celeste.client.filesystem.simple.FileImpl;
+import sunlabs.celeste.client.operation.InspectFilesOperation;
 import sunlabs.celeste.client.operation.NewCredentialOperation;
 import sunlabs.celeste.client.operation.NewNameSpaceOperation;
 import sunlabs.celeste.node.CelesteACL;
@@ -259,6 +265,11 @@ public class CelesteFileSystem implements HierarchicalFileSystem {
     //
     private final InetSocketAddress celesteAddress;
 
+    //
+    // The cache of proxies to the Celeste node at celesteAddress.
+    //
+    private final CelesteProxy.Cache proxyCache;
+
     //
     // The address of the Celeste confederation to which this file system
     // instance belongs.
@@ -420,6 +431,7 @@ public class CelesteFileSystem implements HierarchicalFileSystem {
         }
 
         this.celesteAddress = celesteAddress;
+        this.proxyCache = proxyCache;
 
         //
         // We only need profileCache for as long as it takes to obtain the
@@ -2302,6 +2314,37 @@ public class CelesteFileSystem implements HierarchicalFileSystem {
             return dirents.toArray(new Dirent[dirents.size()]);
         }
 
+        /**
+         * Inspect all the files in this directory in a single request to
+         * Celeste.  For a short time afterwards (see {@link
+         * CelesteFileSystem#inspectionLifetimeMillis}) the attributes of
+         * these files are taken from this inspection rather than each file
+         * being inspected separately, so a caller that lists this directory
+         * along with the attributes of its files should call this method
+         * first.
+         *
+         * @throws FileException.CelesteInaccessible
+         * @throws FileException.IOException
+         * @throws FileException.Runtime
+         */
+        public void inspectFiles() throws
+                FileException.BadVersion,
+                FileException.CelesteFailed,
+                FileException.CelesteInaccessible,
+                FileException.CredentialProblem,
+                FileException.Deleted,
+                FileException.DirectoryCorrupted,
+                FileException.IOException,
+                FileException.NotFound,
+                FileException.PermissionDenied,
+                FileException.Runtime,
+                FileException.ValidationFailed {
+            final CelesteFileSystem fs = CelesteFileSystem.this;
+            SortedMap<String,FileIdentifier> fids = this.directoryImpl.getFileIdentifiers(
+                fs.invokerProfile, fs.invokerPassword);
+            fs.inspectFiles(fids.values());
+        }
+
         /**
          * Look up and return the file or directory whose entry in this
          * directory has key {@code leafName}.
@@ -4567,6 +4610,83 @@ public class CelesteFileSystem implements HierarchicalFileSystem {
     //
     private final FileImpl.Cache fileImplCache;
 
+    /**
+     * The number of milliseconds for which the reply to an inspection made by
+     * {@link Directory#inspectFiles()} is used in place of inspecting the
+     * file again.
+     */
+    public static final long inspectionLifetimeMillis =
+        Long.getLong("sunlabs.celeste.client.filesystem.InspectionLifetimeMillis", 2000);
+
+    private static final int maxInspections = 1024;
+
+    private static class Inspection {
+        final ResponseMessage reply;
+        final long expires;
+
+        Inspection(ResponseMessage reply, long expires) {
+            this.reply = reply;
+            this.expires = expires;
+        }
+    }
+
+    //
+    // Replies from Directory.inspectFiles(), each waiting to be handed to the
+    // FileImpl for its file when getAndRemove() next takes it from
+    // fileImplCache.  They are kept here rather than in the FileImpl
+    // instances because a directory may hold many more files than
+    // fileImplCache has room for.
+    //
+    private final Map<FileIdentifier,Inspection> inspections =
+        new LinkedHashMap<FileIdentifier,Inspection>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FileIdentifier,Inspection> eldest) {
+                return this.size() > CelesteFileSystem.maxInspections;
+            }
+        };
+
+    //
+    // Inspect the files named by fids in a single request and hold the
+    // replies for getAndRemove().  Files that Celeste could not inspect are
+    // left to be inspected one at a time as before.
+    //
+    private void inspectFiles(Collection<FileIdentifier> fids) throws
+            FileException.CelesteInaccessible,
+            FileException.IOException,
+            FileException.Runtime {
+        if (fids.isEmpty())
+            return;
+
+        CelesteAPI proxy = null;
+        try {
+            proxy = this.proxyCache.getAndRemove(this.celesteAddress);
+        } catch (java.lang.Exception e) {
+            throw new FileException.CelesteInaccessible(e);
+        }
+
+        Map<FileIdentifier,ResponseMessage> replies;
+        try {
+            replies = proxy.inspectFiles(new InspectFilesOperation(fids, TitanGuidImpl.ZERO));
+        } catch (IOException e) {
+            throw new FileException.IOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new FileException.Runtime(e);
+        } catch (CelesteException.RuntimeException e) {
+            throw new FileException.Runtime(e);
+        } finally {
+            this.proxyCache.addAndEvictOld(this.celesteAddress, proxy);
+        }
+
+        long expires = System.currentTimeMillis() + CelesteFileSystem.inspectionLifetimeMillis;
+        synchronized (this.inspections) {
+            for (Map.Entry<FileIdentifier,ResponseMessage> entry : replies.entrySet()) {
+                this.inspections.put(entry.getKey(), new Inspection(entry.getValue(), expires));
+            }
+        }
+    }
+
     //
     // A specialized version of the base class method that handles an
     // exception that FileImplFactory can't throw.  Pulled out from the
@@ -4579,6 +4699,13 @@ public class CelesteFileSystem implements HierarchicalFileSystem {
         } catch (java.lang.Exception e) {
             //
         }
+        Inspection inspection;
+        synchronized (this.inspections) {
+            inspection = this.inspections.remove(fid);
+        }
+        if (fileImpl != null && inspection != null) {
+            fileImpl.setInspection(inspection.reply, inspection.expires);
+        }
         return fileImpl;
     }
 
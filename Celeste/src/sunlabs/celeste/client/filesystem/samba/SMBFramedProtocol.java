@@ -0,0 +1,487 @@
+/*
+ * Copyright 2007-2010 Oracle. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Oracle Corporation, 500 Oracle Parkway, Redwood Shores, CA 94065
+ * or visit www.oracle.com if you need additional information or
+ * have any questions.
+ */
+
+package sunlabs.celeste.client.filesystem.samba;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import sunlabs.celeste.client.filesystem.samba.SambaOps.Result;
+import sunlabs.celeste.client.filesystem.samba.SambaOps.SambaSeek;
+
+/**
+ * <p>
+ *
+ * A length-prefixed, tagged binary framing of the requests that the
+ * <b>celstore</b> VFS plugin sends to {@link SMBServer}.
+ *
+ * </p><p>
+ *
+ * Each request is a frame consisting of a four byte length (of the remainder
+ * of the frame), a four byte tag chosen by the client, a two byte operation
+ * code, and the operation's arguments.  Each response is a frame consisting
+ * of a four byte length, the tag of the request it answers, a four byte
+ * status (zero for success), and either the operation's results or, on
+ * failure, a message describing the failure.  All integers are in network
+ * byte order.  Strings are encoded as a four byte length followed by that
+ * many bytes of UTF-8, and file data as a four byte length followed by the
+ * raw bytes.
+ *
+ * </p><p>
+ *
+ * Requests are executed concurrently on an {@link ExecutorService} and
+ * answered as they complete, so responses may arrive in a different order
+ * than their requests were sent.  As with any tagged protocol, a client that
+ * needs one operation to be ordered after another must wait for the first
+ * operation's response before sending the second.  At most {@code
+ * maxOutstanding} requests from one connection are in progress at once;
+ * further requests are not read until one completes.
+ *
+ * </p>
+ */
+public class SMBFramedProtocol {
+    //
+    // Operation codes.
+    //
+    public final static short CHDIR = 1;
+    public final static short CHMOD = 2;
+    public final static short CHOWN = 3;
+    public final static short CLOSEDIR = 4;
+    public final static short CLOSEFILE = 5;
+    public final static short FCHMOD = 6;
+    public final static short FCHOWN = 7;
+    public final static short FSTAT = 8;
+    public final static short FTRUNCATE = 9;
+    public final static short GETWD = 10;
+    public final static short LSEEK = 11;
+    public final static short MKDIR = 12;
+    public final static short OPENDIR = 13;
+    public final static short OPENFILE = 14;
+    public final static short PREAD = 15;
+    public final static short PWRITE = 16;
+    public final static short QUIT = 17;
+    public final static short READDIR = 18;
+    public final static short READFILE = 19;
+    public final static short RENAME = 20;
+    public final static short REWINDDIR = 21;
+    public final static short RMDIR = 22;
+    public final static short SEEKDIR = 23;
+    public final static short STAT = 24;
+    public final static short TELLDIR = 25;
+    public final static short UNLINK = 26;
+    public final static short WRITEFILE = 27;
+
+    //
+    // Response status codes.
+    //
+    public final static int STATUS_OK = 0;
+    public final static int STATUS_FAILED = -1;
+
+    //
+    // Frames larger than this are rejected as a protocol error, rather than
+    // risking an attempt to allocate an absurd buffer.
+    //
+    private final static int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    private final SambaOps samba;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ExecutorService executor;
+    private final Semaphore outstanding;
+    private final int maxOutstanding;
+
+    /**
+     * Create a protocol handler that reads requests from {@code in}, executes
+     * them against {@code samba} using {@code executor}, and writes the
+     * responses to {@code out}.
+     */
+    public SMBFramedProtocol(SambaOps samba, InputStream in, OutputStream out,
+            ExecutorService executor, int maxOutstanding) {
+        this.samba = samba;
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.executor = executor;
+        this.maxOutstanding = maxOutstanding;
+        this.outstanding = new Semaphore(maxOutstanding);
+    }
+
+    /**
+     * Read and dispatch requests until end of input or a {@code QUIT}
+     * request, then wait for the outstanding requests to be answered.
+     */
+    public void serve() throws IOException, InterruptedException {
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = this.in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 6 || length > SMBFramedProtocol.MAX_FRAME_LENGTH)
+                    throw new IOException(String.format("bad frame length %d", length));
+                final int tag = this.in.readInt();
+                final short op = this.in.readShort();
+                final byte[] args = new byte[length - 6];
+                this.in.readFully(args);
+
+                if (op == SMBFramedProtocol.QUIT) {
+                    this.outstanding.acquire(this.maxOutstanding);
+                    this.outstanding.release(this.maxOutstanding);
+                    this.respond(tag, SMBFramedProtocol.STATUS_OK, new byte[0]);
+                    break;
+                }
+
+                this.outstanding.acquire();
+                this.executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            SMBFramedProtocol.this.execute(tag, op, args);
+                        } finally {
+                            SMBFramedProtocol.this.outstanding.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            //
+            // Wait for in-progress requests to send their responses.
+            //
+            this.outstanding.acquire(this.maxOutstanding);
+            this.outstanding.release(this.maxOutstanding);
+            synchronized (this.out) {
+                this.out.flush();
+            }
+        }
+    }
+
+    //
+    // Execute a single request and send its response.
+    //
+    private void execute(int tag, short op, byte[] argBytes) {
+        DataInputStream args = new DataInputStream(new ByteArrayInputStream(argBytes));
+        ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+        DataOutputStream result = new DataOutputStream(resultBytes);
+        Result res;
+
+        try {
+            switch (op) {
+            case CHDIR:
+                res = this.samba.chdir(readString(args));
+                break;
+
+            case CHMOD: {
+                String path = readString(args);
+                res = this.samba.chmod(path, args.readInt());
+                break;
+            }
+
+            case CHOWN: {
+                String path = readString(args);
+                long uid = args.readLong();
+                res = this.samba.chown(path, uid, args.readLong());
+                break;
+            }
+
+            case CLOSEDIR:
+                res = this.samba.closedir(args.readInt());
+                break;
+
+            case CLOSEFILE:
+                res = this.samba.close(args.readInt());
+                break;
+
+            case FCHMOD: {
+                int fd = args.readInt();
+                res = this.samba.fchmod(fd, args.readInt());
+                break;
+            }
+
+            case FCHOWN: {
+                int fd = args.readInt();
+                long uid = args.readLong();
+                res = this.samba.fchown(fd, uid, args.readLong());
+                break;
+            }
+
+            case FSTAT: {
+                Result.Attrs attrs = this.samba.fstat(args.readInt());
+                if (attrs.isSuccessful())
+                    writeAttrs(result, attrs);
+                res = attrs;
+                break;
+            }
+
+            case FTRUNCATE: {
+                int fd = args.readInt();
+                res = this.samba.ftruncate(fd, args.readInt());
+                break;
+            }
+
+            case GETWD: {
+                Result.Path path = this.samba.getwd();
+                if (path.isSuccessful())
+                    writeString(result, path.getPath());
+                res = path;
+                break;
+            }
+
+            case LSEEK: {
+                int fd = args.readInt();
+                int offset = args.readInt();
+                int whence = args.readInt();
+                SambaSeek sWhence = (whence == 0) ? SambaSeek.SEEK_SET :
+                    (whence == 1) ? SambaSeek.SEEK_CUR : SambaSeek.SEEK_END;
+                Result.Offset offsetResult = this.samba.lseek(fd, offset, sWhence);
+                if (offsetResult.isSuccessful())
+                    result.writeLong(offsetResult.getOffset());
+                res = offsetResult;
+                break;
+            }
+
+            case MKDIR: {
+                long uid = args.readLong();
+                long gid = args.readLong();
+                int mode = args.readInt();
+                res = this.samba.mkdir(readString(args), uid, gid, mode);
+                break;
+            }
+
+            case OPENDIR: {
+                Result.FD fd = this.samba.opendir(readString(args));
+                if (fd.isSuccessful())
+                    result.writeInt(fd.getFd());
+                res = fd;
+                break;
+            }
+
+            case OPENFILE: {
+                long uid = args.readLong();
+                long gid = args.readLong();
+                int flags = args.readInt();
+                int mode = args.readInt();
+                Result.FD fd = this.samba.open(readString(args), uid, gid, flags, mode);
+                if (fd.isSuccessful())
+                    result.writeInt(fd.getFd());
+                res = fd;
+                break;
+            }
+
+            case PREAD: {
+                int fd = args.readInt();
+                int length = args.readInt();
+                int offset = args.readInt();
+                Result.Bytes bytes = this.samba.pread(fd, length, offset);
+                if (bytes.isSuccessful())
+                    writeBytes(result, bytes.getBytes(), Math.max(bytes.getLength(), 0));
+                res = bytes;
+                break;
+            }
+
+            case PWRITE: {
+                int fd = args.readInt();
+                int offset = args.readInt();
+                Result.Length length = this.samba.pwrite(fd, offset, readBytes(args));
+                if (length.isSuccessful())
+                    result.writeInt(length.getLength());
+                res = length;
+                break;
+            }
+
+            case READDIR: {
+                Result.DirentAndOffset dirent = this.samba.readdir(args.readInt());
+                if (dirent.isSuccessful()) {
+                    result.writeLong(dirent.getOffset());
+                    result.writeLong(dirent.getComponentSerialNumber());
+                    writeString(result, dirent.getComponentName());
+                    res = dirent;
+                } else if (dirent.getFailure() instanceof EOFException) {
+                    //
+                    // End of directory is signalled by an offset of -1.
+                    //
+                    result.writeLong(-1);
+                    result.writeLong(0);
+                    writeString(result, "");
+                    res = new Result.Void();
+                } else {
+                    res = dirent;
+                }
+                break;
+            }
+
+            case READFILE: {
+                int fd = args.readInt();
+                Result.Bytes bytes = this.samba.read(fd, args.readInt());
+                if (bytes.isSuccessful())
+                    writeBytes(result, bytes.getBytes(), Math.max(bytes.getLength(), 0));
+                res = bytes;
+                break;
+            }
+
+            case RENAME: {
+                String oldPath = readString(args);
+                res = this.samba.rename(oldPath, readString(args));
+                break;
+            }
+
+            case REWINDDIR:
+                res = this.samba.rewinddir(args.readInt());
+                break;
+
+            case RMDIR:
+                res = this.samba.rmdir(readString(args));
+                break;
+
+            case SEEKDIR: {
+                int fd = args.readInt();
+                res = this.samba.seekdir(fd, args.readLong());
+                break;
+            }
+
+            case STAT: {
+                Result.Attrs attrs = this.samba.stat(readString(args));
+                if (attrs.isSuccessful())
+                    writeAttrs(result, attrs);
+                res = attrs;
+                break;
+            }
+
+            case TELLDIR: {
+                Result.Offset offset = this.samba.telldir(args.readInt());
+                if (offset.isSuccessful())
+                    result.writeLong(offset.getOffset());
+                res = offset;
+                break;
+            }
+
+            case UNLINK:
+                res = this.samba.unlink(readString(args));
+                break;
+
+            case WRITEFILE: {
+                int fd = args.readInt();
+                Result.Length length = this.samba.write(fd, readBytes(args));
+                if (length.isSuccessful())
+                    result.writeInt(length.getLength());
+                res = length;
+                break;
+            }
+
+            default:
+                this.fail(tag, String.format("Unknown operation %d", op));
+                return;
+            }
+        } catch (IOException e) {
+            //
+            // The only source of IOExceptions above is a malformed argument
+            // list.
+            //
+            this.fail(tag, "Malformed arguments: " + e.toString());
+            return;
+        }
+
+        if (res.isSuccessful()) {
+            this.respond(tag, SMBFramedProtocol.STATUS_OK, resultBytes.toByteArray());
+        } else {
+            this.fail(tag, String.valueOf(res.getFailure().getLocalizedMessage()));
+        }
+    }
+
+    private void fail(int tag, String reason) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeString(new DataOutputStream(bytes), reason);
+        } catch (IOException cantHappen) {
+            throw new RuntimeException(cantHappen);
+        }
+        this.respond(tag, SMBFramedProtocol.STATUS_FAILED, bytes.toByteArray());
+    }
+
+    //
+    // Write one response frame.  Frames from concurrently executing requests
+    // are serialized on the output stream, and the stream is flushed after
+    // each frame so that no response waits behind a slower one.
+    //
+    private void respond(int tag, int status, byte[] body) {
+        synchronized (this.out) {
+            try {
+                this.out.writeInt(8 + body.length);
+                this.out.writeInt(tag);
+                this.out.writeInt(status);
+                this.out.write(body);
+                this.out.flush();
+            } catch (IOException e) {
+                //
+                // The peer has gone away.  The reader will notice the
+                // resulting end of input.
+                //
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), "UTF-8");
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available())
+            throw new IOException(String.format("bad length %d", length));
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        writeBytes(out, bytes, bytes.length);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes, int length) throws IOException {
+        out.writeInt(length);
+        if (length > 0)
+            out.write(bytes, 0, length);
+    }
+
+    private static void writeAttrs(DataOutputStream out, Result.Attrs attrs) throws IOException {
+        out.writeLong(attrs.getSerialNumber());
+        out.writeLong(attrs.getSize());
+        out.writeLong(attrs.getUid());
+        out.writeLong(attrs.getGid());
+        out.writeLong(attrs.getModTime());
+        out.writeLong(attrs.getCTime());
+        out.writeInt(attrs.getMode());
+    }
+}
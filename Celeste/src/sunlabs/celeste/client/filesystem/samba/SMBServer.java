@@ -27,8 +27,19 @@ package sunlabs.celeste.client.filesystem.samba;
 import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import sunlabs.asdf.util.Time;
 import sunlabs.celeste.client.filesystem.CelesteFileSystem;
@@ -69,6 +80,24 @@ import sunlabs.celeste.client.filesystem.samba.SambaOps.SambaSeek;
  * and with responses starting with a three digit status code followed by
  * ASCII strings encoding the results (again, except for raw file data).
  *
+ * </p><p>
+ *
+ * A plugin that opens the conversation with {@code CEL2 Server} rather than
+ * {@code CEL1 Server} selects the binary protocol described in {@link
+ * SMBFramedProtocol} instead.  That protocol carries a tag with each request,
+ * which allows the plugin to have several requests outstanding at once and
+ * lets this class execute them concurrently.
+ *
+ * </p><p>
+ *
+ * When started with {@code --listen} <i>port</i> following the Celeste
+ * address, this class instead runs as a single long-lived server accepting
+ * plugin connections on the loopback interface.  Each connection performs
+ * the same handshake as above.  Connections naming the same profile share a
+ * single {@code CelesteFileSystem} instance (and thus its caches), so that
+ * many smbd processes no longer each pay the cost of a JVM and a file system
+ * instance of their own.
+ *
  * </p>
  */
 public class SMBServer {
@@ -95,6 +124,10 @@ public class SMBServer {
     // necessary.)
     //
     private static String getLine() {
+        return SMBServer.getLine(SMBServer.stdin);
+    }
+
+    private static String getLine(InputStream stdin) {
         StringBuilder result = new StringBuilder();
         boolean done = false;
         try {
@@ -167,6 +200,104 @@ public class SMBServer {
         String[] tokens = addr.split(":");
         return new InetSocketAddress(tokens[0], Integer.parseInt(tokens[1]));
     }
+
+    //
+    // The number of threads executing framed protocol requests, shared by
+    // all connections, and the number of requests any one connection may
+    // have in progress.
+    //
+    private static int workerThreads = Integer.getInteger(
+        "sunlabs.celeste.client.filesystem.samba.SMBServer.workerThreads", 16);
+    private static int maxOutstanding = Integer.getInteger(
+        "sunlabs.celeste.client.filesystem.samba.SMBServer.maxOutstanding", 32);
+
+    //
+    // Complete the CEL2 handshake by obtaining the profile name and
+    // producing a SambaOps instance for it.  If fileSystems is non-null, it
+    // maps profile names to CelesteFileSystem instances shared by all
+    // connections.  Returns null (after reporting the failure to the peer)
+    // if the handshake fails.
+    //
+    private static SambaOps framedHandshake(InetSocketAddress celesteAddress,
+            InputStream in, PrintStream out,
+            Map<String, CelesteFileSystem> fileSystems) throws Exception {
+        String profileName = SMBServer.getLine(in);
+        if (profileName == null) {
+            System.err.println("Expected profile, but got EOF.");
+            return null;
+        }
+        if (!profileName.startsWith("profile=")) {
+            out.println("500 No profile name");
+            out.flush();
+            return null;
+        }
+        profileName = profileName.substring("profile=".length());
+
+        CelesteFileSystem cfs;
+        if (fileSystems == null) {
+            cfs = new CelesteFileSystem(celesteAddress, null, profileName, profileName, profileName);
+        } else {
+            synchronized (fileSystems) {
+                cfs = fileSystems.get(profileName);
+                if (cfs == null) {
+                    cfs = new CelesteFileSystem(celesteAddress, null, profileName, profileName, profileName);
+                    fileSystems.put(profileName, cfs);
+                }
+            }
+        }
+        SambaOps samba = new SambaOps(cfs);
+        out.println("200");
+        out.flush();
+        return samba;
+    }
+
+    //
+    // Accept plugin connections on the loopback interface, serving each with
+    // the framed protocol on its own thread.
+    //
+    private static void listen(final InetSocketAddress celesteAddress, int port) throws IOException {
+        final Map<String, CelesteFileSystem> fileSystems = new HashMap<String, CelesteFileSystem>();
+        final ExecutorService executor = Executors.newFixedThreadPool(SMBServer.workerThreads);
+        ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+
+        while (true) {
+            final Socket socket = serverSocket.accept();
+            Thread connection = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        socket.setTcpNoDelay(true);
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        OutputStream out = socket.getOutputStream();
+                        PrintStream printOut = new PrintStream(out, false);
+
+                        String serverVersion = SMBServer.getLine(in);
+                        if (serverVersion == null || !serverVersion.startsWith("CEL2 Server")) {
+                            printOut.println("500 Unsupported protocol version");
+                            printOut.flush();
+                            return;
+                        }
+                        printOut.println("CEL2 Ready.");
+                        printOut.flush();
+
+                        SambaOps samba = SMBServer.framedHandshake(celesteAddress, in, printOut, fileSystems);
+                        if (samba == null)
+                            return;
+                        new SMBFramedProtocol(samba, in, out, executor, SMBServer.maxOutstanding).serve();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignore) {
+                            // nothing to do
+                        }
+                    }
+                }
+            }, "SMBServer " + socket.getRemoteSocketAddress());
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
     
     //
     // XXX: Might want to pass more setup info via args, as opposed to reading
@@ -179,6 +310,20 @@ public class SMBServer {
         }
         String celesteAddress = args[0];
 
+        if (args.length > 1) {
+            if (args.length != 3 || !args[1].equals("--listen")) {
+                System.err.println("Usage: SMBServer <address:port> [--listen <port>]");
+                System.exit(1);
+            }
+            try {
+                SMBServer.listen(makeAddress(celesteAddress), Integer.parseInt(args[2]));
+            } catch (Throwable t) {
+                t.printStackTrace();
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
         //
         // Get and verify server version info.
         //
@@ -187,6 +332,23 @@ public class SMBServer {
             System.err.println("Expected server version, but got EOF.");
             System.exit(1);
         }
+        if (serverVersion.startsWith("CEL2 Server")) {
+            System.out.println("CEL2 Ready.");
+            try {
+                SambaOps samba = SMBServer.framedHandshake(
+                    makeAddress(celesteAddress), SMBServer.stdin, System.out, null);
+                if (samba == null)
+                    System.exit(1);
+                ExecutorService executor = Executors.newFixedThreadPool(SMBServer.workerThreads);
+                new SMBFramedProtocol(samba, SMBServer.stdin, System.out, executor,
+                    SMBServer.maxOutstanding).serve();
+                executor.shutdown();
+            } catch (Throwable t) {
+                t.printStackTrace();
+                System.exit(1);
+            }
+            System.exit(0);
+        }
         if (!serverVersion.startsWith("CEL1 Server")) {
             System.err.printf("Unexpected version string: %s%n", serverVersion);
             System.exit(1);
@@ -1093,7 +1093,14 @@ public class SambaOps {
         //
         // XXX: Ought to factor this code!
         //
+        // Since a positional read neither consults nor updates the seek
+        // pointer, the lock on this is held only while validating the
+        // descriptor.  The read itself proceeds without it (the file
+        // provides its own synchronization), so that several outstanding
+        // preads can be in progress at once.
+        //
         try {
+            HierarchicalFileSystem.File file;
             synchronized (this) {
                 checkFileDescriptor(fd);
                 OpenFileOrDir ofd = this.openFilesOrDirectories.get(fd);
@@ -1111,11 +1118,11 @@ public class SambaOps {
                 if (!canRead)
                     throw new IOException("reads disallowed");
 
-                HierarchicalFileSystem.File file = ofd.getFile();
-                ByteBuffer buffer = ByteBuffer.wrap(new byte[length]);
-                int bytesRead = file.read(buffer, (long)offset);
-                return new Result.Bytes(buffer.array(), bytesRead);
+                file = ofd.getFile();
             }
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[length]);
+            int bytesRead = file.read(buffer, (long)offset);
+            return new Result.Bytes(buffer.array(), bytesRead);
         } catch (Throwable t) {
             result = new Result.Bytes((byte[])null, -1);
             result.setFailure(t);
@@ -1480,6 +1487,7 @@ public class SambaOps {
         Result.Length result = null;
 
         try {
+            HierarchicalFileSystem.File positionalFile = null;
             synchronized (this) {
                 checkFileDescriptor(fd);
                 OpenFileOrDir ofd = this.openFilesOrDirectories.get(fd);
@@ -1507,19 +1515,33 @@ public class SambaOps {
                 ByteBuffer buffer = ByteBuffer.wrap(data);
 
                 //
-                // If not explicitly given, the write offset is the current
-                // seek pointer.  However, if the the file is append only, the
-                // write must be forced to the current end of file.
+                // A positional write to a file that is not append only
+                // depends on no state kept here, so perform it after
+                // releasing the lock (see pread()).
                 //
-                if (updatePosition)
-                    offset = (int)ofd.getOffset();
-                if (appendOnly)
-                    offset = (int)file.length();
-
-                int bytesWritten = file.write(buffer, offset);
-
-                if (updatePosition)
-                    ofd.setOffset(offset + bytesWritten);
+                if (!updatePosition && !appendOnly) {
+                    positionalFile = file;
+                } else {
+                    //
+                    // If not explicitly given, the write offset is the
+                    // current seek pointer.  However, if the the file is
+                    // append only, the write must be forced to the current
+                    // end of file.
+                    //
+                    if (updatePosition)
+                        offset = (int)ofd.getOffset();
+                    if (appendOnly)
+                        offset = (int)file.length();
+
+                    int bytesWritten = file.write(buffer, offset);
+
+                    if (updatePosition)
+                        ofd.setOffset(offset + bytesWritten);
+                    result = new Result.Length(bytesWritten);
+                }
+            }
+            if (positionalFile != null) {
+                int bytesWritten = positionalFile.write(ByteBuffer.wrap(data), offset);
                 result = new Result.Length(bytesWritten);
             }
         } catch (Throwable t) {
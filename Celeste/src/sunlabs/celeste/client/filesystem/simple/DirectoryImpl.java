@@ -33,7 +33,9 @@ import java.io.Serializable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import sunlabs.celeste.FileIdentifier;
@@ -765,6 +767,46 @@ public class DirectoryImpl {
         return dirents;
     }
 
+    /**
+     * Return a map from the name of each file contained in this directory,
+     * other than {@code "."} and {@code ".."}, to its file identifier.
+     *
+     * @return  a sorted map from the names of the files contained in this
+     *          directory to their file identifiers
+     */
+    public SortedMap<String,FileIdentifier> getFileIdentifiers(Credential accessorProfile, String accessorPassword)
+        throws
+            FileException.BadVersion,
+            FileException.CelesteFailed,
+            FileException.CelesteInaccessible,
+            FileException.CredentialProblem,
+            FileException.Deleted,
+            FileException.DirectoryCorrupted,
+            FileException.IOException,
+            FileException.NotFound,
+            FileException.PermissionDenied,
+            FileException.Runtime,
+            FileException.ValidationFailed {
+        OrderedProperties dir = readDir(accessorProfile, accessorPassword.toCharArray());
+        SortedMap<String,FileIdentifier> fids = new TreeMap<String,FileIdentifier>();
+
+        for (Map.Entry<Object, Object> entry : dir.entrySet()) {
+            Object keyObj = entry.getKey();
+            if (!(keyObj instanceof String))
+                continue;
+            String key = (String)keyObj;
+            if (key.contains("/") || key.equals(".") || key.equals(".."))
+                continue;
+            Object valueObj = entry.getValue();
+            if (!(valueObj instanceof String))
+                continue;
+            String[] objectIds = ((String)valueObj).split(":");
+            fids.put(key, new FileIdentifier(
+                new TitanGuidImpl(objectIds[0]), new TitanGuidImpl(objectIds[1])));
+        }
+        return fids;
+    }
+
     public void purgeForever(Credential accessorProfile, char[] password) throws
             FileException.BadVersion,
             FileException.CelesteFailed,
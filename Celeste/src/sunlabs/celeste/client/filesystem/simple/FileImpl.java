@@ -77,6 +77,7 @@ import sunlabs.celeste.client.operation.CreateFileOperation;
 import sunlabs.celeste.client.operation.DeleteFileOperation;
 import sunlabs.celeste.client.operation.ExtensibleOperation;
 import sunlabs.celeste.client.operation.InspectFileOperation;
+import sunlabs.celeste.client.operation.InspectFilesOperation;
 import sunlabs.celeste.client.operation.InspectLockOperation;
 import sunlabs.celeste.client.operation.LockFileOperation;
 import sunlabs.celeste.client.operation.NewCredentialOperation;
@@ -648,6 +649,14 @@ public class FileImpl {
         Collections.synchronizedMap(
             new HashMap<TitanGuid, VersionMetadata>());
 
+    //
+    // A reply to an inspection of this file made together with others (see
+    // setInspection()), which stands in for fetching fresh information about
+    // the latest version until inspectionExpires.
+    //
+    private ResponseMessage inspection;
+    private long inspectionExpires;
+
     //
     // The repository of cached data for this file.
     //
@@ -4688,24 +4697,26 @@ public class FileImpl {
             FileException.Runtime,
             FileException.ValidationFailed{
 
-        InspectFileOperation operation = new InspectFileOperation(this.getFileIdentifier(), TitanGuidImpl.ZERO);
-        ResponseMessage msg = null;
-        CelesteAPI proxy = null;
-        try {
-            proxy = this.proxyCacheGetAndRemove(this.socketAddr);
-            msg = proxy.inspectFile(operation);
-        } catch (IOException e) {
-            throw new FileException.IOException(e);
-        } catch (CelesteException.NotFoundException e) {
-            throw new FileException.NotFound(e);
-        } catch (CelesteException.RuntimeException e) {
-            throw new FileException.Runtime(e);
-        } catch (CelesteException.DeletedException e) {
-            throw new FileException.Runtime(e);
-        } catch (ClassNotFoundException e) {
-            throw new FileException.Runtime(e);
-        } finally {
-            this.proxyCacheAddAndEvictOld(this.socketAddr, proxy);
+        ResponseMessage msg = (vObjectId == null) ? this.getInspection() : null;
+        if (msg == null) {
+            InspectFileOperation operation = new InspectFileOperation(this.getFileIdentifier(), TitanGuidImpl.ZERO);
+            CelesteAPI proxy = null;
+            try {
+                proxy = this.proxyCacheGetAndRemove(this.socketAddr);
+                msg = proxy.inspectFile(operation);
+            } catch (IOException e) {
+                throw new FileException.IOException(e);
+            } catch (CelesteException.NotFoundException e) {
+                throw new FileException.NotFound(e);
+            } catch (CelesteException.RuntimeException e) {
+                throw new FileException.Runtime(e);
+            } catch (CelesteException.DeletedException e) {
+                throw new FileException.Runtime(e);
+            } catch (ClassNotFoundException e) {
+                throw new FileException.Runtime(e);
+            } finally {
+                this.proxyCacheAddAndEvictOld(this.socketAddr, proxy);
+            }
         }
 
         OrderedProperties metadata = msg.getMetadata();
@@ -4753,6 +4764,34 @@ public class FileImpl {
         }
     }
 
+    /**
+     * Supply {@code reply}, the reply for this file to an {@link
+     * InspectFilesOperation} that inspected it together with other files.
+     * Until the time {@code expires} (in milliseconds since the epoch),
+     * requests for up to date information about the latest version of this
+     * file use {@code reply} instead of inspecting the file again.  Any
+     * modification of the file made through this {@code FileImpl} discards
+     * {@code reply}.
+     *
+     * @param reply     the metadata of the latest version of this file
+     * @param expires   the time after which {@code reply} is no longer used
+     */
+    public synchronized void setInspection(ResponseMessage reply, long expires) {
+        this.inspection = reply;
+        this.inspectionExpires = expires;
+    }
+
+    //
+    // Return the reply supplied by setInspection(), or null if there is none
+    // or it has expired.
+    //
+    private synchronized ResponseMessage getInspection() {
+        if (this.inspection != null && System.currentTimeMillis() >= this.inspectionExpires) {
+            this.inspection = null;
+        }
+        return this.inspection;
+    }
+
     //
     // We've obtained new metadata in a reply message.  Unpack and process it,
     // returning the file version to which it applies.
@@ -4765,6 +4804,7 @@ public class FileImpl {
 
         TitanGuid versionId = new TitanGuidImpl(metadata.getProperty(CelesteAPI.VOBJECTID_NAME));
         synchronized (this) {
+            this.inspection = null;
             if (!versionId.equals(this.latestVersionId)) {
                 //
                 // The file has been modified in some way and thus has a new
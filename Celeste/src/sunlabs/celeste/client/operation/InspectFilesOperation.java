@@ -0,0 +1,94 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.client.operation;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import sunlabs.celeste.CelesteException;
+import sunlabs.celeste.FileIdentifier;
+import sunlabs.celeste.node.CelesteACL;
+import sunlabs.celeste.node.services.CelesteClientDaemon;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.Credential;
+import sunlabs.titan.api.TitanGuid;
+
+/**
+ * Obtain the metadata of the latest versions of many Celeste files at once.
+ * <p>
+ * This is equivalent to an {@link InspectFileOperation} for each file,
+ * but the current versions of the files are read together (see {@link sunlabs.celeste.node.services.api.AObjectVersionMapAPI#getValues AObjectVersionMapAPI.getValues}),
+ * which takes far fewer messages than reading them one at a time.
+ * </p>
+ */
+public class InspectFilesOperation extends AbstractCelesteOperation {
+    private static final long serialVersionUID = 1L;
+
+    public static final String name = "inspectFiles";
+
+    private final List<FileIdentifier> fileIdentifiers;
+
+    /**
+     * Obtain the metadata for many Celeste files.
+     *
+     * @param fileIdentifiers the {@link FileIdentifier}s of the files.
+     * @param authorisationId the {@link TitanGuid} of the {@link Credential} authorising this operation
+     */
+    public InspectFilesOperation(Collection<FileIdentifier> fileIdentifiers, TitanGuid authorisationId) {
+        super(InspectFilesOperation.name, null, authorisationId, null);
+        this.fileIdentifiers = new ArrayList<FileIdentifier>(fileIdentifiers);
+    }
+
+    public List<FileIdentifier> getFileIdentifiers() {
+        return this.fileIdentifiers;
+    }
+
+    @Override
+    public TitanGuid getId() {
+        TitanGuid id = new TitanGuidImpl(this.operationName.getBytes()).add(this.clientId);
+        for (FileIdentifier fileIdentifier : this.fileIdentifiers) {
+            id = id.add(fileIdentifier.getNameSpaceId()).add(fileIdentifier.getFileId());
+        }
+        return id;
+    }
+
+    @Override
+    public CelesteACL.CelesteOps getRequiredPrivilege() {
+        return CelesteACL.CelesteOps.inspectFile;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: {%d files} clientId=%s version=%d", this.operationName, this.fileIdentifiers.size(), this.clientId, InspectFilesOperation.serialVersionUID);
+    }
+
+    public Serializable dispatch(CelesteClientDaemon celeste, ObjectInputStream ois)
+    throws IOException, ClassNotFoundException, CelesteException.RuntimeException {
+        return celeste.performOperation(this, ois);
+    }
+}
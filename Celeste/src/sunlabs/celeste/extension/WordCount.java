@@ -32,7 +32,6 @@ import java.util.Map;
 import java.util.SortedMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import sunlabs.asdf.functional.AbstractMapFunction;
 import sunlabs.asdf.functional.AbstractReduceFunction;
@@ -155,9 +154,7 @@ public class WordCount implements ExtensibleObject.Extension<HashMap<String,Long
             this.handler = handler;
             this.objectId = objectId;
             this.operation = operation;
-            // XXX We create the thread pool here, but really this should be
-            // handed in as a parameter to the constructor from the object handler.
-            this.threadPool = Executors.newFixedThreadPool(3);
+            this.threadPool = classLoader.getExecutorService();
         }
 
         public HashMap<String,Long> call() throws TitanObjectStoreImpl.ObjectExistenceException, TitanObjectStoreImpl.NotFoundException, ClassCastException {
@@ -165,7 +162,7 @@ public class WordCount implements ExtensibleObject.Extension<HashMap<String,Long
             // asking each one for its word count.
             
             // Get the VersionObject locally.
-            VersionObject.Object vObject = this.handler.getNode().getObjectStore().get(VersionObject.Object.class, this.objectId);
+            VersionObject.Object vObject = this.handler.attachManifest(this.handler.getNode().getObjectStore().get(VersionObject.Object.class, this.objectId));
 
             // Perform access control check.
             boolean accessPermitted = vObject.checkAccess(this.operation.getClientId(), CelesteOps.readFile);
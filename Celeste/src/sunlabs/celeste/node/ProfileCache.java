@@ -26,7 +26,14 @@ package sunlabs.celeste.node;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import sunlabs.asdf.util.Time;
 import sunlabs.celeste.CelesteException;
@@ -45,6 +52,11 @@ import sunlabs.titan.api.TitanNode;
  * timeout period determined by the argument given to the cache's constructor;
  * expired entries are lazily discarded and are replaced on demand by freshly
  * constructed profiles.
+ * <p>
+ * The cache holds at most a fixed number of entries.  When that number is
+ * exceeded, expired entries and then the oldest entries are discarded.
+ * Lookups do not lock the cache.
+ * </p>
  */
 //
 // XXX: This class needs to evolve radically.  The notion of a cache with
@@ -58,10 +70,11 @@ import sunlabs.titan.api.TitanNode;
 //
 public class ProfileCache {
     private static final long defaultCacheTimeout = 60L * 1000L; // 60 seconds
+    private static final int defaultCapacity = 1024;
 
-    private class CacheEntry {
-        long time;
-        Credential credential;
+    private static class CacheEntry {
+        final long time;
+        final Credential credential;
 
         CacheEntry(long time, Credential credential) {
             this.time = time;
@@ -70,10 +83,14 @@ public class ProfileCache {
     }
 
     private final long cacheTimeout;
+    private final int capacity;
     private final InetSocketAddress address;
     private final CelesteProxy.Cache proxyCache;
 
-    private Hashtable<TitanGuid,CacheEntry> profileCache;
+    private final ConcurrentMap<TitanGuid,CacheEntry> profileCache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
     public ProfileCache(CelesteAPI node) {
         this(node.getInetSocketAddress(), null, ((int) ProfileCache.defaultCacheTimeout)/1000);
@@ -104,6 +121,21 @@ public class ProfileCache {
         this(new InetSocketAddress(node.getNodeAddress().getMessageURL().getHost(), node.getNodeAddress().getMessageURL().getPort()), null, timeout);
     }
 
+    /**
+     * Create a new profile cache that communicates with Celeste via the given
+     * proxy, whose entries time out after {@code timeout} seconds, and
+     * that holds at most {@code capacity} entries.
+     *
+     * @param celesteNode  the proxy to be used for communicating with
+     *                      Celeste
+     * @param timeout       the lifetime in seconds during which a cache entry
+     *                      is valid
+     * @param capacity      the maximum number of entries in the cache
+     */
+    public ProfileCache(TitanNode node, int timeout, int capacity) {
+        this(new InetSocketAddress(node.getNodeAddress().getMessageURL().getHost(), node.getNodeAddress().getMessageURL().getPort()), null, timeout, capacity);
+    }
+
     /**
      * Create a new profile cache that communicates with the Celeste node with
      * the given {@code address} via the given proxy cache and whose entries
@@ -119,6 +151,15 @@ public class ProfileCache {
      *                      is valid
      */
     public ProfileCache(InetSocketAddress address, CelesteProxy.Cache proxyCache, int timeout) {
+        this(address, proxyCache, timeout, ProfileCache.defaultCapacity);
+    }
+
+    /**
+     * Create a new profile cache as with
+     * {@link #ProfileCache(InetSocketAddress, CelesteProxy.Cache, int)},
+     * holding at most {@code capacity} entries.
+     */
+    public ProfileCache(InetSocketAddress address, CelesteProxy.Cache proxyCache, int timeout, int capacity) {
         if (proxyCache == null) {
             //
             // Set up a cache with default parameters that might or might not
@@ -130,24 +171,84 @@ public class ProfileCache {
 
         this.address = address;
         this.cacheTimeout = timeout * 1000L;
-        this.profileCache = new Hashtable<TitanGuid,CacheEntry>();
+        this.capacity = capacity;
+        this.profileCache = new ConcurrentHashMap<TitanGuid,CacheEntry>();
     }
 
     public void put(Credential p) {
-        TitanGuid guid = p.getObjectId();
-        CacheEntry e = this.profileCache.get(guid);
-        if (e == null) {
-            e = new CacheEntry(System.currentTimeMillis(), p);
-        } else {
-            e.credential = p;
-        }
-        this.profileCache.put(guid, e);
+        this.profileCache.put(p.getObjectId(), new CacheEntry(System.currentTimeMillis(), p));
+        if (this.profileCache.size() > this.capacity)
+            this.trim();
     }
 
+    /**
+     * Discard the cache entry (if any) for the profile denoted by {@code profileGUID}.
+     * Use this when the profile is known to have been replaced.
+     */
     public void remove(TitanGuid profileGUID) {
         this.profileCache.remove(profileGUID);
     }
 
+    /**
+     * Discard all of the cache's entries.
+     */
+    public void clear() {
+        this.profileCache.clear();
+    }
+
+    /**
+     * Return the number of entries in the cache.
+     */
+    public int size() {
+        return this.profileCache.size();
+    }
+
+    /**
+     * Return the number of times {@link #getCachedOnly(TitanGuid)} found a current entry.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Return the number of times {@link #getCachedOnly(TitanGuid)} found no current entry.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    //
+    // Reduce the cache to three quarters of its capacity, discarding expired
+    // entries first and then the oldest ones.  Concurrent callers may each
+    // trim; the result is merely a smaller cache.
+    //
+    private void trim() {
+        long expiry = System.currentTimeMillis() - this.cacheTimeout;
+        List<Map.Entry<TitanGuid,CacheEntry>> entries = new ArrayList<Map.Entry<TitanGuid,CacheEntry>>();
+        for (Map.Entry<TitanGuid,CacheEntry> entry : this.profileCache.entrySet()) {
+            if (entry.getValue().time < expiry) {
+                this.profileCache.remove(entry.getKey(), entry.getValue());
+            } else {
+                entries.add(entry);
+            }
+        }
+
+        int excess = entries.size() - (this.capacity * 3 / 4);
+        if (excess <= 0)
+            return;
+        Collections.sort(entries, new Comparator<Map.Entry<TitanGuid,CacheEntry>>() {
+            public int compare(Map.Entry<TitanGuid,CacheEntry> a, Map.Entry<TitanGuid,CacheEntry> b) {
+                long ta = a.getValue().time;
+                long tb = b.getValue().time;
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < excess; i++) {
+            Map.Entry<TitanGuid,CacheEntry> entry = entries.get(i);
+            this.profileCache.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
     public Credential get(String profileName) throws
             ClassNotFoundException,
             CelesteException.CredentialException {
@@ -195,10 +296,9 @@ public class ProfileCache {
             //
             // The profile validated successfully.  Cache and return it.
             //
-            CacheEntry entry = new CacheEntry(System.currentTimeMillis(), p);
-            this.profileCache.put(profileId, entry);
+            this.put(p);
 
-            return entry.credential;
+            return p;
         } catch (CelesteException.NotFoundException e) {
             return null;
         } catch (CelesteException.AccessControlException e) {
@@ -210,7 +310,8 @@ public class ProfileCache {
         } catch (Exception e) {
             return null;
         } finally {
-            this.proxyCache.addAndEvictOld(this.address, proxy);
+            if (proxy != null)
+                this.proxyCache.addAndEvictOld(this.address, proxy);
         }
     }
 
@@ -250,7 +351,8 @@ public class ProfileCache {
         } catch (Exception e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
-            this.proxyCache.addAndEvictOld(this.address, proxy);
+            if (proxy != null)
+                this.proxyCache.addAndEvictOld(this.address, proxy);
         }
     }
 
@@ -266,12 +368,15 @@ public class ProfileCache {
         CacheEntry entry = this.profileCache.get(profileGUID);
 
         if (entry != null && System.currentTimeMillis() - this.cacheTimeout > entry.time) {
-            remove(profileGUID);
+            this.profileCache.remove(profileGUID, entry);
             entry = null;
         }
-        if (entry != null)
+        if (entry != null) {
+            this.hits.incrementAndGet();
             return entry.credential;
+        }
 
+        this.misses.incrementAndGet();
         return null;
     }
 }
@@ -31,6 +31,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.jar.Attributes;
 import java.util.zip.ZipException;
 
@@ -111,6 +113,7 @@ public class ExtensibleObject {
      */
     public static class JarClassLoader extends URLClassLoader {
         private JarURLConnection jarConnection;
+        private Executor executor;
 
         /**
          * Construct a new {@code JarClassLoader} which will load classes from the given array of {@link URL} instances.
@@ -124,7 +127,29 @@ public class ExtensibleObject {
          * @see URLClassLoader
          */
         public JarClassLoader(URL[] urls) {
+            this(urls, null);
+        }
+
+        /**
+         * Construct a new {@code JarClassLoader} as {@link #JarClassLoader(URL[])} does,
+         * whose extensions run their tasks on the given {@link Executor}.
+         */
+        JarClassLoader(URL[] urls, Executor executor) {
             super(urls, JarClassLoader.class.getClassLoader());
+            this.executor = executor;
+        }
+
+        /**
+         * Get an {@link ExecutorService} for an extension loaded by this class loader to run its tasks.
+         * <p>
+         * The threads are shared with other extensions, and shutting down the returned {@code ExecutorService}
+         * only stops it accepting tasks.
+         * </p>
+         *
+         * @see ExtensionCache
+         */
+        public ExecutorService getExecutorService() {
+            return new ExtensionCache.ExtensionExecutorService(this.executor != null ? this.executor : ExtensionCache.getSharedExecutor());
         }
 
         /**
@@ -255,15 +280,20 @@ public class ExtensibleObject {
              * Get the {@link JarClassLoader} that will be used to resolve classes used by the extension specified by this {@code Request}.
              *
              */
-            public JarClassLoader getClassLoader() {
+            public JarClassLoader getClassLoader() throws ClassNotFoundException {
                 // If this Request came from off-node, then it will be serialized and the transient field "classLoader" will be null.
                 // Otherwise, the message is from on-node then it was not serialized and therefore the "classLoader" field will have a matching classLoader.
                 // The problem is that if we generate a new class loader and then the reply payload is a class loaded from the new class loader and the
                 // corresponding BeehiveMessage.get() for the reply will be using the other ClassLoader and will throw ClassNotFoundException because it
                 // is technically not the same class (different class loader).
+                //
+                // The class loader is taken from the ExtensionCache, so every Request for the same Jar files on this node uses the same one.
                 if (this.classLoader == null) {
-                    System.out.printf("%s creating missing class loader for %s%n", Thread.currentThread().getName(), this.operation.toString());
-                    this.classLoader = new JarClassLoader(operation.getJarFileURLs());
+                    try {
+                        this.classLoader = ExtensionCache.getClassLoader(operation.getJarFileURLs());
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(this.classToUse, e);
+                    }
                 }
                 return this.classLoader;
             }
@@ -300,7 +330,6 @@ public class ExtensibleObject {
      * @throws SecurityException
      */
     public static Serializable extensibleOperation(TitanObjectHandler handler, ExtensibleObject.Operation.Request request, TitanGuid objectId) throws ClassNotFoundException, SecurityException, IllegalArgumentException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
-        // XXX Could this make a memory leak?  A different class loaded for every request?
         JarClassLoader classLoader = request.getClassLoader();
         Callable<Serializable> extension = classLoader.construct(request.getClassToUse(), request.operation, objectId, handler);
         try {
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.object;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+
+/**
+ * The {@link ExtensibleObject.JarClassLoader}s and threads shared by all of the extensions run in this JVM.
+ * <p>
+ * Class loaders are cached by the content of the Jar files they load from, rather than by the URLs naming the Jar files.
+ * Running an extension fetches its Jar files once to identify them, but an extension run before is not loaded, linked and compiled again,
+ * and a changed Jar file at an old URL is never confused with the original.
+ * A local copy of each Jar file is kept so the class loader does not fetch it again as classes are loaded.
+ * The least recently used class loaders are discarded when the cache is full.
+ * </p>
+ * <p>
+ * Extensions run their tasks on one bounded pool of threads, obtained through {@link ExtensibleObject.JarClassLoader#getExecutorService()},
+ * and the tasks of any one extension (that is, of one set of Jar files) are limited to {@link #EXTENSION_CONCURRENCY} running at once.
+ * </p>
+ */
+public class ExtensionCache {
+    /** The maximum number of class loaders retained. */
+    public final static int CAPACITY = 32;
+    /** The number of threads shared by all extensions. */
+    public final static int THREADS = 32;
+    /** The maximum number of tasks of one extension running at once. */
+    public final static int EXTENSION_CONCURRENCY = 8;
+
+    private static class Cache extends LinkedHashMap<TitanGuid,ExtensibleObject.JarClassLoader> {
+        private final static long serialVersionUID = 1L;
+
+        Cache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TitanGuid,ExtensibleObject.JarClassLoader> eldest) {
+            return this.size() > ExtensionCache.CAPACITY;
+        }
+    }
+
+    private static class ExtensionThreadFactory implements ThreadFactory {
+        private int count;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Extension-" + this.count++);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * An {@link Executor} that runs no more than a fixed number of tasks at once on another {@code Executor},
+     * holding the remainder until a running task completes.
+     */
+    static class LimitedExecutor implements Executor {
+        private final Executor executor;
+        private final int limit;
+        private final Queue<Runnable> waiting;
+        private int running;
+
+        LimitedExecutor(Executor executor, int limit) {
+            this.executor = executor;
+            this.limit = limit;
+            this.waiting = new LinkedList<Runnable>();
+            this.running = 0;
+        }
+
+        public void execute(Runnable task) {
+            synchronized (this) {
+                if (this.running >= this.limit) {
+                    this.waiting.add(task);
+                    return;
+                }
+                this.running++;
+            }
+            this.submit(task);
+        }
+
+        private void submit(final Runnable task) {
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        Runnable next;
+                        synchronized (LimitedExecutor.this) {
+                            next = LimitedExecutor.this.waiting.poll();
+                            if (next == null) {
+                                LimitedExecutor.this.running--;
+                            }
+                        }
+                        if (next != null) {
+                            LimitedExecutor.this.submit(next);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * An {@link java.util.concurrent.ExecutorService} for one invocation of an extension.
+     * Shutting it down stops it accepting tasks, but does not affect the shared threads running them.
+     */
+    static class ExtensionExecutorService extends AbstractExecutorService {
+        private final Executor executor;
+        private boolean shutdown;
+        private int outstanding;
+
+        ExtensionExecutorService(Executor executor) {
+            this.executor = executor;
+            this.shutdown = false;
+            this.outstanding = 0;
+        }
+
+        public void execute(final Runnable task) {
+            synchronized (this) {
+                if (this.shutdown) {
+                    throw new RejectedExecutionException("ExecutorService is shut down");
+                }
+                this.outstanding++;
+            }
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        synchronized (ExtensionExecutorService.this) {
+                            ExtensionExecutorService.this.outstanding--;
+                            ExtensionExecutorService.this.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+
+        public synchronized void shutdown() {
+            this.shutdown = true;
+            this.notifyAll();
+        }
+
+        public List<Runnable> shutdownNow() {
+            // Tasks already handed to the shared threads cannot be recalled.
+            this.shutdown();
+            return Collections.emptyList();
+        }
+
+        public synchronized boolean isShutdown() {
+            return this.shutdown;
+        }
+
+        public synchronized boolean isTerminated() {
+            return this.shutdown && this.outstanding == 0;
+        }
+
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            while (!this.isTerminated()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private final static Cache cache = new Cache();
+    private static ThreadPoolExecutor executor;
+    private static File directory;
+
+    /**
+     * Get the {@link Executor} of the threads shared by all extensions.
+     */
+    static synchronized Executor getSharedExecutor() {
+        if (ExtensionCache.executor == null) {
+            ExtensionCache.executor = new ThreadPoolExecutor(ExtensionCache.THREADS, ExtensionCache.THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ExtensionThreadFactory());
+            ExtensionCache.executor.allowCoreThreadTimeOut(true);
+        }
+        return ExtensionCache.executor;
+    }
+
+    private static synchronized File getDirectory() throws IOException {
+        if (ExtensionCache.directory == null) {
+            File file = File.createTempFile("celeste-extensions", "");
+            if (!file.delete() || !file.mkdir()) {
+                throw new IOException("Cannot create directory " + file);
+            }
+            file.deleteOnExit();
+            ExtensionCache.directory = file;
+        }
+        return ExtensionCache.directory;
+    }
+
+    private static byte[] fetch(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    //
+    // Get the local copy of the Jar file with the given content, making it if necessary.
+    //
+    private static File localCopy(byte[] content) throws IOException {
+        File directory = ExtensionCache.getDirectory();
+        File file = new File(directory, new TitanGuidImpl(content).toString() + ".jar");
+        if (!file.exists()) {
+            File temporary = File.createTempFile("jar", ".tmp", directory);
+            FileOutputStream out = new FileOutputStream(temporary);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            // Another thread may have made the same copy first, in which case this one is superfluous.
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+                if (!file.exists()) {
+                    throw new IOException("Cannot create " + file);
+                }
+            }
+            file.deleteOnExit();
+        }
+        return file;
+    }
+
+    /**
+     * Get a {@link ExtensibleObject.JarClassLoader} for the Jar files named by the given URLs.
+     * <p>
+     * If a class loader for Jar files with the same content, in the same order, is cached it is returned,
+     * otherwise a new class loader is created and cached.
+     * </p>
+     *
+     * @throws IOException if a Jar file cannot be fetched or copied.
+     */
+    public static ExtensibleObject.JarClassLoader getClassLoader(URL[] urls) throws IOException {
+        byte[][] contents = new byte[urls.length][];
+        TitanGuid contentId = null;
+        for (int i = 0; i < urls.length; i++) {
+            contents[i] = ExtensionCache.fetch(urls[i]);
+            contentId = (contentId == null) ? new TitanGuidImpl(contents[i]) : contentId.add(contents[i]);
+        }
+        if (contentId == null) {
+            throw new IOException("No Jar file URLs");
+        }
+
+        synchronized (ExtensionCache.cache) {
+            ExtensibleObject.JarClassLoader classLoader = ExtensionCache.cache.get(contentId);
+            if (classLoader != null) {
+                return classLoader;
+            }
+        }
+
+        URL[] localURLs = new URL[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            localURLs[i] = ExtensionCache.localCopy(contents[i]).toURI().toURL();
+        }
+        ExtensibleObject.JarClassLoader classLoader = new ExtensibleObject.JarClassLoader(localURLs,
+                new LimitedExecutor(ExtensionCache.getSharedExecutor(), ExtensionCache.EXTENSION_CONCURRENCY));
+
+        synchronized (ExtensionCache.cache) {
+            // Another thread may have created a class loader for the same Jar files meanwhile, and all must use the same one.
+            ExtensibleObject.JarClassLoader existing = ExtensionCache.cache.get(contentId);
+            if (existing != null) {
+                return existing;
+            }
+            ExtensionCache.cache.put(contentId, classLoader);
+        }
+        return classLoader;
+    }
+}
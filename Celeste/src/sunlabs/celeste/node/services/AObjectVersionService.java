@@ -29,12 +29,18 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
 import javax.management.JMException;
 
+import sunlabs.asdf.util.Attributes;
 import sunlabs.asdf.util.Time;
 import sunlabs.asdf.web.XML.XHTML;
 import sunlabs.asdf.web.XML.XHTML.EFlow;
@@ -346,8 +352,21 @@ public class AObjectVersionService extends AbstractObjectHandler implements AObj
         }
     }
 
+    /**
+     * The number of replica locations remembered for {@link #getValues(Collection, AObjectVersionMapAPI.Parameters)}.
+     */
+    public final static Attributes.Prototype ReplicaLocationCapacity = new Attributes.Prototype(AObjectVersionService.class,
+            "ReplicaLocationCapacity",
+            64 * 1024,
+            "The maximum number of object history replica locations this node remembers for batched reads.");
+
+    private final MutableObject.ReplicaLocations replicaLocations;
+
     public AObjectVersionService(TitanNode node) throws JMException {
         super(node, AObjectVersionService.name, "AObject Version Service");
+
+        node.getConfiguration().add(AObjectVersionService.ReplicaLocationCapacity);
+        this.replicaLocations = new MutableObject.ReplicaLocations(node.getConfiguration().asInt(AObjectVersionService.ReplicaLocationCapacity));
     }
 
     public AObjectVersionMapAPI.Parameters createAObjectVersionMapParams(String parameterSpec) {
@@ -454,6 +473,28 @@ public class AObjectVersionService extends AbstractObjectHandler implements AObj
         return response;
     }
 
+    /**
+     * Get each of the specified {@link MutableObject.ObjectHistory} replicas that are held by this node.
+     * <p>
+     * Replicas not available from this node are omitted from the response,
+     * and the caller must find them by routing to each replica's objectId as for {@link #getObjectHistory(TitanMessage, MutableObject.GetOperation.Request)}.
+     * </p>
+     */
+    public MutableObject.GetOperation.BatchResponse getObjectHistories(TitanMessage message, MutableObject.GetOperation.BatchRequest request) {
+        Map<TitanGuid,MutableObject.ObjectHistory> histories = new HashMap<TitanGuid,MutableObject.ObjectHistory>();
+        for (TitanGuid replicaId : request.getReplicaIds()) {
+            try {
+                AObjectVersionService.FSBFTObject linearizerObject = this.node.getObjectStore().get(AObjectVersionService.FSBFTObject.class, replicaId);
+                histories.put(replicaId, linearizerObject.getObjectHistory());
+            } catch (TitanObjectStoreImpl.NotFoundException e) {
+                // Not here.
+            } catch (ClassCastException e) {
+                this.log.warning("%s: %s", replicaId, e);
+            }
+        }
+        return new MutableObject.GetOperation.BatchResponse(histories);
+    }
+
     private void removeLocalObjectHistory(TitanGuid objectId) {
 //        this.linearizedObjects.remove(objectId.toString());
     }
@@ -502,6 +543,20 @@ public class AObjectVersionService extends AbstractObjectHandler implements AObj
         return (AObjectVersionMapAPI.Value) MutableObject.getValue(this, new MutableObject.ObjectId(objectId), params);
     }
 
+    public Map<TitanGuid,AObjectVersionMapAPI.Value> getValues(Collection<TitanGuid> objectIds, AObjectVersionMapAPI.Parameters params)
+    throws MutableObject.ProtocolException {
+        List<MutableObject.ObjectId> ids = new ArrayList<MutableObject.ObjectId>(objectIds.size());
+        for (TitanGuid objectId : objectIds) {
+            ids.add(new MutableObject.ObjectId(objectId));
+        }
+
+        Map<TitanGuid,AObjectVersionMapAPI.Value> result = new LinkedHashMap<TitanGuid,AObjectVersionMapAPI.Value>();
+        for (Map.Entry<MutableObject.ObjectId,MutableObject.Value> entry : MutableObject.getValues(this, ids, params, this.replicaLocations).entrySet()) {
+            result.put(entry.getKey(), (AObjectVersionMapAPI.Value) entry.getValue());
+        }
+        return result;
+    }
+
     /**
      * Set the value of the map of the given {@code objectId} to {@code value}.
      *  
@@ -625,10 +680,34 @@ public class AObjectVersionService extends AbstractObjectHandler implements AObj
                     TitanGuid objectId = new TitanGuidImpl(HttpMessage.asString(props.get("key"), defaultKey));
                     MutableObject.createValue(this, new MutableObject.ObjectId(objectId), new TitanGuidImpl("deleteMe".getBytes()), new Parameters("1,1"), Time.minutesInSeconds(5));
                 } else if (action.equals("get")) {
-                    TitanGuid objectId = new TitanGuidImpl(HttpMessage.asString(props.get("key"), defaultKey));
+                    // The key may be a list of keys, separated by white space or commas, whose values are all fetched at once.
+                    List<MutableObject.ObjectId> objectIds = new ArrayList<MutableObject.ObjectId>();
+                    for (String key : HttpMessage.asString(props.get("key"), defaultKey).split("[\\s,]+")) {
+                        if (key.length() > 0) {
+                            objectIds.add(new MutableObject.ObjectId(new TitanGuidImpl(key)));
+                        }
+                    }
 
-                    MutableObject.Value s = MutableObject.getValue(this, new MutableObject.ObjectId(objectId), new Parameters("1,1"));
-                    XHTML.EFlow flow = new XHTML.Para(s.format());
+                    XHTML.EFlow flow;
+                    if (objectIds.size() == 1) {
+                        MutableObject.Value s = MutableObject.getValue(this, objectIds.get(0), new Parameters("1,1"));
+                        flow = new XHTML.Para(s.format());
+                    } else {
+                        Map<MutableObject.ObjectId,MutableObject.Value> values = MutableObject.getValues(this, objectIds, new Parameters("1,1"), this.replicaLocations);
+                        XHTML.Table.Body tbody = new XHTML.Table.Body();
+                        for (MutableObject.ObjectId objectId : objectIds) {
+                            String value;
+                            if (!values.containsKey(objectId)) {
+                                value = "undetermined";
+                            } else if (values.get(objectId) == null) {
+                                value = "none";
+                            } else {
+                                value = values.get(objectId).format();
+                            }
+                            tbody.add(new XHTML.Table.Row(new XHTML.Table.Data(objectId), new XHTML.Table.Data(value)));
+                        }
+                        flow = new XHTML.Table(new XHTML.Table.Head(new XHTML.Table.Row(new XHTML.Table.Heading("Key"), new XHTML.Table.Heading("Value"))), tbody);
+                    }
 
                     XHTML.Div body = new XHTML.Div(new XHTML.Heading.H1("%s&nbsp;%s", AObjectVersionService.name, this.getNode().getNodeId()), flow);
                     return body;
@@ -662,7 +741,7 @@ public class AObjectVersionService extends AbstractObjectHandler implements AObj
         XHTML.Input testGet = Xxhtml.InputSubmit(
                 nameAction,
                 new XML.Attr("value", "get"),
-                new XML.Attr("title", "Get"));
+                new XML.Attr("title", "Get the values of one or more keys"));
 
         XHTML.Input testOHS = Xxhtml.InputSubmit(
                 nameAction,
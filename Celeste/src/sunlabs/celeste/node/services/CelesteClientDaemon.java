@@ -38,6 +38,9 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -53,12 +56,13 @@ import java.util.logging.Level;
 import javax.management.JMException;
 
 import sunlabs.asdf.functional.MapFunction;
+import sunlabs.asdf.jmx.JMX;
 import sunlabs.asdf.util.Attributes;
-import sunlabs.asdf.util.TimeProfiler;
 import sunlabs.asdf.web.XML.XHTML;
 import sunlabs.asdf.web.http.HTTP;
 import sunlabs.celeste.CelesteException;
 import sunlabs.celeste.CelesteException.AccessControlException;
+import sunlabs.celeste.FileIdentifier;
 import sunlabs.celeste.ResponseMessage;
 import sunlabs.celeste.api.CelesteAPI;
 import sunlabs.celeste.client.ClientMetaData;
@@ -70,6 +74,7 @@ import sunlabs.celeste.client.operation.CreateFileOperation;
 import sunlabs.celeste.client.operation.DeleteFileOperation;
 import sunlabs.celeste.client.operation.ExtensibleOperation;
 import sunlabs.celeste.client.operation.InspectFileOperation;
+import sunlabs.celeste.client.operation.InspectFilesOperation;
 import sunlabs.celeste.client.operation.InspectLockOperation;
 import sunlabs.celeste.client.operation.LockFileOperation;
 import sunlabs.celeste.client.operation.NewCredentialOperation;
@@ -86,11 +91,15 @@ import sunlabs.celeste.client.operation.WriteFileOperation;
 import sunlabs.celeste.node.CelesteACL;
 import sunlabs.celeste.node.ProfileCache;
 import sunlabs.celeste.node.object.ExtensibleObject.JarClassLoader;
+import sunlabs.celeste.node.object.ExtensionCache;
 import sunlabs.celeste.node.services.api.AObjectVersionMapAPI;
 import sunlabs.celeste.node.services.object.AnchorObject;
 import sunlabs.celeste.node.services.object.AnchorObjectHandler;
+import sunlabs.celeste.node.services.object.BlockCodecs;
 import sunlabs.celeste.node.services.object.BlockObject;
 import sunlabs.celeste.node.services.object.BlockObjectHandler;
+import sunlabs.celeste.node.services.object.ContentDefinedChunker;
+import sunlabs.celeste.node.services.object.ContentDefinedWriter;
 import sunlabs.celeste.node.services.object.VersionObject;
 import sunlabs.celeste.node.services.object.VersionObjectHandler;
 import sunlabs.celeste.util.ACL;
@@ -118,6 +127,8 @@ import sunlabs.titan.util.DOLRStatus;
 import sunlabs.titan.util.ExtentBuffer;
 import sunlabs.titan.util.ExtentBufferMap;
 import sunlabs.titan.util.ExtentBufferStreamer;
+import sunlabs.titan.util.LatencyHistogram;
+import sunlabs.titan.util.Metrics;
 import sunlabs.titan.util.OrderedProperties;
 
 /**
@@ -155,6 +166,9 @@ public class CelesteClientDaemon extends AbstractTitanService {
 
     private Thread clientDaemon;
 
+    /** Latency histograms and counters of the client operations, and their phases, performed by this node. */
+    private final Metrics metrics;
+
     public CelesteClientDaemon(final TitanNode node) throws JMException {
         super(node, CelesteClientDaemon.name, "Celeste Client Handler");
         node.getConfiguration().add(CelesteClientDaemon.Port);
@@ -163,6 +177,11 @@ public class CelesteClientDaemon extends AbstractTitanService {
 
         this.credentialCache = new ProfileCache(node);
 
+        this.metrics = new Metrics(this.jmxObjectNameRoot == null ? null : JMX.objectName(this.jmxObjectNameRoot, "metrics"));
+        this.credentialFetchTime = this.metrics.getOperation("fetchCredential").getTotal();
+        this.signatureCheckTime = this.metrics.getOperation("verifySignature").getTotal();
+        this.staleCredentialRefetches = this.metrics.getCounter("staleCredentialRefetches");
+
         if (this.log.isLoggable(Level.CONFIG)) {
             this.log.config("%s", node.getConfiguration().get(CelesteClientDaemon.Port));
             this.log.config("%s", node.getConfiguration().get(CelesteClientDaemon.MaximumClients));
@@ -419,6 +438,12 @@ public class CelesteClientDaemon extends AbstractTitanService {
         return this.inspectFile(operation);
     }
 
+    public Serializable performOperation(InspectFilesOperation operation, ObjectInputStream ois)  throws IOException, ClassNotFoundException,
+        CelesteException.RuntimeException {
+        // The map is a LinkedHashMap.
+        return (Serializable) this.inspectFiles(operation);
+    }
+
     public ResponseMessage performOperation(InspectLockOperation operation, ObjectInputStream ois) throws IOException, ClassNotFoundException,
         CelesteException.CredentialException, CelesteException.AccessControlException, CelesteException.NotFoundException, CelesteException.DeletedException,
         CelesteException.RuntimeException, CelesteException.VerificationException, CelesteException.IllegalParameterException,
@@ -542,11 +567,31 @@ public class CelesteClientDaemon extends AbstractTitanService {
 
     @Override
     public void stop() {
+        this.metrics.unregister();
         super.stop();
     }
 
     public XHTML.EFlow toXHTML(URI uri, Map<String,HTTP.Message> props) {
-        return new XHTML.Div("nothing here");
+        long credentialFetches = this.credentialFetchTime.getCount();
+        long signatureChecks = this.signatureCheckTime.getCount();
+
+        XHTML.Table signatureTable = new XHTML.Table(new XHTML.Table.Caption("Operation Signature Verification"),
+                new XHTML.Table.Body(
+                        new XHTML.Table.Row(new XHTML.Table.Data("Credential Cache Size"), new XHTML.Table.Data(this.credentialCache.size())),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Credential Cache Hits"), new XHTML.Table.Data(this.credentialCache.getHits())),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Credential Cache Misses"), new XHTML.Table.Data(this.credentialCache.getMisses())),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Credential Fetches"), new XHTML.Table.Data(credentialFetches)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Mean Credential Fetch Time (microseconds)"),
+                                new XHTML.Table.Data(credentialFetches == 0 ? 0 : this.credentialFetchTime.getTotalNanoseconds() / credentialFetches / 1000)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Signature Checks"), new XHTML.Table.Data(signatureChecks)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Mean Signature Check Time (microseconds)"),
+                                new XHTML.Table.Data(signatureChecks == 0 ? 0 : this.signatureCheckTime.getTotalNanoseconds() / signatureChecks / 1000)),
+                        new XHTML.Table.Row(new XHTML.Table.Data("Stale Credential Refetches"), new XHTML.Table.Data(this.staleCredentialRefetches.getValue()))
+                )).setClass("CelesteClientDaemon");
+
+        XHTML.Div div = new XHTML.Div(signatureTable).setClass("CelesteClientDaemon");
+        div.add(new XHTML.Div(this.metrics.toXHTML()).setClass("section"));
+        return div;
     }
 
 
@@ -741,7 +786,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
     CelesteException.AlreadyExistsException, CelesteException.DeletedException, CelesteException.RuntimeException,
     CelesteException.NoSpaceException, CelesteException.IllegalParameterException, ClassCastException, ClassNotFoundException {
 
-        TimeProfiler timingProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
 
         try {
             VersionObjectHandler versionObjectHandler =  this.node.getService(VersionObjectHandler.class);
@@ -749,6 +794,12 @@ public class CelesteClientDaemon extends AbstractTitanService {
             String lineariserName = operation.getReplicationParams().getAsString("Linearizer", AObjectVersionService.class.getName());
             AObjectVersionMapAPI lineariser = (AObjectVersionMapAPI) this.node.getService(lineariserName);
 
+            // Reject a file whose BlockObjects could never be encoded, before anything is created.
+            try {
+                BlockCodecs.getInstance(operation.getReplicationParams());
+            } catch (IllegalArgumentException e) {
+                throw new CelesteException.IllegalParameterException(e.getMessage());
+            }
 
             // Try to induce an early failure to see if the AObject already exists.
             // If it does, but it is deleted, retrieve() will throw DeletedObjectException.
@@ -845,8 +896,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
             throw new CelesteException.RuntimeException(e);
         } finally {
             timingProfiler.stamp("remainder");
-            timingProfiler.printCSV(System.out);
-            timingProfiler.print(System.out);
+            timingProfiler.stop();
         }
     }
     
@@ -855,9 +905,10 @@ public class CelesteClientDaemon extends AbstractTitanService {
         CelesteException.CredentialException, CelesteException.AccessControlException, CelesteException.NotFoundException,
         CelesteException.RuntimeException, CelesteException.DeletedException, CelesteException.VerificationException, CelesteException.NoSpaceException, CelesteException.IllegalParameterException {
 
-        TimeProfiler timingProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
         try {
             this.checkOperationSignature(signature, operation);
+            timingProfiler.stamp("checkSignature");
 
             //
             // XXX: Additional checking before performing the operation?
@@ -885,8 +936,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
             throw new CelesteException.RuntimeException(e);
         } finally {
             timingProfiler.stamp("remainder");
-            timingProfiler.printCSV(System.out);
-            timingProfiler.print(System.out);
+            timingProfiler.stop();
         }
     }
     
@@ -896,7 +946,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
     public ResponseMessage inspectLock(InspectLockOperation operation) throws IOException, ClassNotFoundException,
     CelesteException.NotFoundException, CelesteException.RuntimeException, CelesteException.DeletedException {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
         try {
 //            this.checkOperationSignature(signature, operation);
 
@@ -937,7 +987,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (CelesteException.OutOfDateException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
@@ -945,7 +995,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
     throws IOException, ClassNotFoundException,
     CelesteException.NotFoundException, CelesteException.RuntimeException, CelesteException.DeletedException {
 
-        TimeProfiler timingProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
         try {
             AnchorObject.Handler anchorObjectHandler = this.node.getService(AnchorObjectHandler.class);
             VersionObject versionObjectHandler = this.node.getService(VersionObjectHandler.class);
@@ -1010,8 +1060,81 @@ public class CelesteClientDaemon extends AbstractTitanService {
             throw new CelesteException.NotFoundException("Cannot determine current version for File %s", operation.getFileIdentifier());
         } finally {
             timingProfiler.stamp("remainder");
-            timingProfiler.printCSV(System.out);
-            timingProfiler.print(System.out);
+            timingProfiler.stop();
+        }
+    }
+
+    public Map<FileIdentifier,ResponseMessage> inspectFiles(InspectFilesOperation operation)
+    throws IOException, ClassNotFoundException, CelesteException.RuntimeException {
+
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
+        try {
+            AnchorObject.Handler anchorObjectHandler = this.node.getService(AnchorObjectHandler.class);
+            VersionObject versionObjectHandler = this.node.getService(VersionObjectHandler.class);
+            AObjectVersionMapAPI lineariser = this.node.getService(AObjectVersionService.class);
+
+            //
+            // getValues() takes one set of parameters for all of its objects,
+            // so the AnchorObjects are grouped by the parameters of their version maps.
+            // Files that cannot be inspected here are left out of the reply, for inspectFile() to report.
+            //
+            Map<FileIdentifier,AnchorObject.Object> aObjects = new LinkedHashMap<FileIdentifier,AnchorObject.Object>();
+            Map<String,AObjectVersionMapAPI.Parameters> parameters = new HashMap<String,AObjectVersionMapAPI.Parameters>();
+            Map<String,List<TitanGuid>> aObjectIds = new HashMap<String,List<TitanGuid>>();
+            for (FileIdentifier fileIdentifier : operation.getFileIdentifiers()) {
+                try {
+                    AnchorObject.Object aObject = anchorObjectHandler.retrieve(fileIdentifier);
+                    aObjects.put(fileIdentifier, aObject);
+                    AObjectVersionMapAPI.Parameters params = aObject.getAObjectVersionMapParams();
+                    List<TitanGuid> group = aObjectIds.get(params.format());
+                    if (group == null) {
+                        group = new ArrayList<TitanGuid>();
+                        aObjectIds.put(params.format(), group);
+                        parameters.put(params.format(), params);
+                    }
+                    group.add(aObject.getObjectId());
+                } catch (TitanObjectStoreImpl.DeletedObjectException e) {
+                    //
+                } catch (TitanObjectStoreImpl.NotFoundException e) {
+                    //
+                }
+            }
+            timingProfiler.stamp("retrieveAObjects");
+
+            Map<TitanGuid,AObjectVersionMapAPI.Value> values = new HashMap<TitanGuid,AObjectVersionMapAPI.Value>();
+            for (Map.Entry<String,List<TitanGuid>> group : aObjectIds.entrySet()) {
+                values.putAll(lineariser.getValues(group.getValue(), parameters.get(group.getKey())));
+            }
+            timingProfiler.stamp("getValues");
+
+            Map<FileIdentifier,ResponseMessage> result = new LinkedHashMap<FileIdentifier,ResponseMessage>();
+            for (Map.Entry<FileIdentifier,AnchorObject.Object> entry : aObjects.entrySet()) {
+                AnchorObject.Object aObject = entry.getValue();
+                AObjectVersionMapAPI.Value currentValue = values.get(aObject.getObjectId());
+                if (currentValue == null) {
+                    continue;
+                }
+                try {
+                    VersionObject.Object vObject = versionObjectHandler.retrieve(currentValue.getReference().getObjectId());
+                    OrderedProperties metaData = this.fillMetadata(aObject, vObject, currentValue.getLock());
+                    result.put(entry.getKey(), new ResponseMessage(metaData, vObject.getClientMetaData()));
+                } catch (TitanObjectStoreImpl.DeletedObjectException e) {
+                    //
+                } catch (TitanObjectStoreImpl.NotFoundException e) {
+                    //
+                }
+            }
+            timingProfiler.stamp("retrieveVObjects");
+
+            if (this.log.isLoggable(Level.FINE)) {
+                this.log.fine("%d of %d files", result.size(), operation.getFileIdentifiers().size());
+            }
+            return result;
+        } catch (MutableObject.ProtocolException e) {
+            throw new CelesteException.RuntimeException(e);
+        } finally {
+            timingProfiler.stamp("remainder");
+            timingProfiler.stop();
         }
     }
 
@@ -1021,9 +1144,10 @@ public class CelesteClientDaemon extends AbstractTitanService {
     CelesteException.RuntimeException, CelesteException.VerificationException, CelesteException.IllegalParameterException, CelesteException.OutOfDateException,
     CelesteException.FileLocked {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
         try {
             this.checkOperationSignature(signature, operation);
+            timing.stamp("checkSignature");
 
             AnchorObject.Handler anchorObjectHandler = this.node.getService(AnchorObjectHandler.class);
             AObjectVersionMapAPI lineariser = this.node.getService(AObjectVersionService.class);
@@ -1091,7 +1215,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (MutableObject.DeletedException e) {
             throw new CelesteException.DeletedException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
     public OrderedProperties writeFile(WriteFileOperation operation, Credential.Signature signature, ByteBuffer buffer)
@@ -1118,7 +1242,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         CelesteException.NoSpaceException, CelesteException.RuntimeException, CelesteException.VerificationException, CelesteException.DeletedException,
         CelesteException.OutOfDateException, CelesteException.FileLocked {
 
-        TimeProfiler timingProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
         try {
             if (operation.getLength() != buffer.remaining()) {
                 throw new CelesteException.VerificationException("Data lengths do not match.  %d vs %d", operation.getLength(), buffer.remaining());
@@ -1138,6 +1262,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
             if (this.log.isLoggable(Level.FINE)) {
                 this.log.fine("%s", aObject);
             }
+            timingProfiler.stamp("retrieveAObject");
 
             if (aObject.getSignWrites()) {
                 if (this.log.isLoggable(Level.FINEST)) {
@@ -1145,6 +1270,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
                 }
                 TitanGuid dataId = new TitanGuidImpl(buffer);
                 this.checkOperationSignature(signature, operation, dataId);
+                timingProfiler.stamp("checkSignature");
             } else {
                 if (this.log.isLoggable(Level.FINEST)) {
                     this.log.finest("Skipping data signature check");
@@ -1174,10 +1300,12 @@ public class CelesteClientDaemon extends AbstractTitanService {
             // object-id, since it's much less bulky.
 
             AObjectVersionMapAPI.Value currentValue = lineariser.getValue(aObject.getObjectId(), aObject.getAObjectVersionMapParams());
+            timingProfiler.stamp("getValue");
 
             VersionObject.Object.Reference vObjectReference = currentValue.getReference();
 
             VersionObject.Object vObject = versionObjectHandler.retrieve(vObjectReference.getObjectId());
+            timingProfiler.stamp("retrieveVObject");
 
             this.checkUpToDate(operation, aObject, vObject);
             //
@@ -1192,6 +1320,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
             this.checkACL(operation, aObject, vObject);
 
             this.checkFileLock(operation, currentValue, aObject, vObject);
+            timingProfiler.stamp("checkAccess");
 
             //
             // Set up the metadata properties for the yet-to-be-built BlockObjects.
@@ -1217,97 +1346,112 @@ public class CelesteClientDaemon extends AbstractTitanService {
             //    source.asString(false), dataLength);
 
             //
-            // Break the write up into a sequence of BObject updates/creates.
-            // At each iteration, get the starting offset of the as yet
-            // unprocessed suffix of the overall data sequence and calculate
-            // the BObject offset that should hold that offset.  Then look up
-            // that BObject and prepare to either update or create it.  Merge
-            // the part of the data that overlaps it into the BObject, write
-            // the BObject, and repeat until done.
-            //
-            // This code seems really complicated compared to what it's
-            // actually doing.
+            // A file with content-defined BObjects is written by dividing the changed region of the file again.
             //
-            while (source.remaining() > 0) {
-                assert source.position() == 0 : "source should have position 0 but is at " + source.position();
-                long writeOffset = source.getStartOffset();
-                //
-                // Get the starting offset of the BObject that will hold the
-                // write from this loop iteration and use that offset to look
-                // up the BObject (which may not exist).
-                //
-                long bObjectOffset = (writeOffset / bObjectSize) * bObjectSize;
-                BlockObject.Object.Reference bObjectReference = vObject.getBObjectReference(bObjectOffset);
-                //
-                // Find the portion of the source buffer that falls within
-                // the confines of the BObject we'll write.
+            ContentDefinedChunker chunker = ContentDefinedChunker.getInstance(aObject.getReplicationParameters(), bObjectSize);
+            if (chunker != null) {
+                ContentDefinedWriter writer = new ContentDefinedWriter(chunker, vObject, blockObjectHandler,
+                        bObjectMetaData, deleteTokenHash, timeToLive, aObject.getReplicationParameters());
+                writer.write(source);
+                if (this.log.isLoggable(Level.FINE)) {
+                    this.log.fine("BObjects stored %d shared %d", writer.getBlocksStored(), writer.getBlocksShared());
+                }
+            } else {
                 //
-                BufferableExtent maximalBounds = new BufferableExtentImpl(bObjectOffset, bObjectSize);
-                ExtentBuffer sourcePortion = source.intersect(maximalBounds);
+                // Break the write up into a sequence of BObject updates/creates.
+                // At each iteration, get the starting offset of the as yet
+                // unprocessed suffix of the overall data sequence and calculate
+                // the BObject offset that should hold that offset.  Then look up
+                // that BObject and prepare to either update or create it.  Merge
+                // the part of the data that overlaps it into the BObject, write
+                // the BObject, and repeat until done.
                 //
-                // Now set the new BObject's bounds to cover both existing
-                // data and the new data to be written.  sourcePortion's
-                // length is relative to its starting offset, so it has to be
-                // converted to be relative to the BObject's starting offset
-                // instead.
+                // This code seems really complicated compared to what it's
+                // actually doing.
                 //
-                int existingBobjectLength = (bObjectReference == null) ? 0 : bObjectReference.getBounds().getLength();
-                int convertedSourceLength = sourcePortion.getLength() + ((int) (writeOffset - bObjectOffset));
-                BufferableExtent bounds = new BufferableExtentImpl(bObjectOffset, Math.max(existingBobjectLength, convertedSourceLength));
-                //this.log.info(
-                //    "BObject bounds: %s, source bounds: %s, intersection bounds %s",
-                //        bounds, source, sourcePortion);
+                while (source.remaining() > 0) {
+                    assert source.position() == 0 : "source should have position 0 but is at " + source.position();
+                    long writeOffset = source.getStartOffset();
+                    //
+                    // Get the starting offset of the BObject that will hold the
+                    // write from this loop iteration and use that offset to look
+                    // up the BObject (which may not exist).
+                    //
+                    long bObjectOffset = (writeOffset / bObjectSize) * bObjectSize;
+                    BlockObject.Object.Reference bObjectReference = vObject.getBObjectReference(bObjectOffset);
+                    //
+                    // Find the portion of the source buffer that falls within
+                    // the confines of the BObject we'll write.
+                    //
+                    BufferableExtent maximalBounds = new BufferableExtentImpl(bObjectOffset, bObjectSize);
+                    ExtentBuffer sourcePortion = source.intersect(maximalBounds);
+                    //
+                    // Now set the new BObject's bounds to cover both existing
+                    // data and the new data to be written.  sourcePortion's
+                    // length is relative to its starting offset, so it has to be
+                    // converted to be relative to the BObject's starting offset
+                    // instead.
+                    //
+                    int existingBobjectLength = (bObjectReference == null) ? 0 : bObjectReference.getBounds().getLength();
+                    int convertedSourceLength = sourcePortion.getLength() + ((int) (writeOffset - bObjectOffset));
+                    BufferableExtent bounds = new BufferableExtentImpl(bObjectOffset, Math.max(existingBobjectLength, convertedSourceLength));
+                    //this.log.info(
+                    //    "BObject bounds: %s, source bounds: %s, intersection bounds %s",
+                    //        bounds, source, sourcePortion);
 
-                //
-                // Get existing data for this portion of the file.  That is,
-                // fetch the BObject and get its data (in the form of an
-                // ExtentBufferMap) if it exists, or create an empty map if it
-                // doesn't.
-                //
-                ExtentBufferMap data = null;
-                if (bObjectReference != null) {
-                    BlockObject.Object bObject = blockObjectHandler.
-                    retrieve(bObjectReference.getObjectId());
-                    assert bObject != null;
-                    data = bObject.getDataAsExtentBufferMap();
-                    //BufferableExtent boBounds = bObject.getBounds();
-                    //assert boBounds.contains(data) : String.format(
-                    //    "boBounds: %s, data: %s", boBounds, data.asString());
-                    //assert bounds.intersects(boBounds) : String.format(
-                    //    "bounds: %s, boBounds: %s", bounds, boBounds);
-                } else {
-                    //this.log.info("no pre-existent extent");
-                    data = new ExtentBufferMap();
-                }
+                    //
+                    // Get existing data for this portion of the file.  That is,
+                    // fetch the BObject and get its data (in the form of an
+                    // ExtentBufferMap) if it exists, or create an empty map if it
+                    // doesn't.
+                    //
+                    ExtentBufferMap data = null;
+                    if (bObjectReference != null) {
+                        BlockObject.Object bObject = blockObjectHandler.
+                        retrieve(bObjectReference.getObjectId());
+                        assert bObject != null;
+                        data = bObject.getDataAsExtentBufferMap();
+                        //BufferableExtent boBounds = bObject.getBounds();
+                        //assert boBounds.contains(data) : String.format(
+                        //    "boBounds: %s, data: %s", boBounds, data.asString());
+                        //assert bounds.intersects(boBounds) : String.format(
+                        //    "bounds: %s, boBounds: %s", bounds, boBounds);
+                    } else {
+                        //this.log.info("no pre-existent extent");
+                        data = new ExtentBufferMap();
+                    }
 
-                //
-                // Drop the data from the write into place.
-                //
-                data.replaceExtents(sourcePortion);
+                    //
+                    // Drop the data from the write into place.
+                    //
+                    data.replaceExtents(sourcePortion);
 
-                //
-                // Create and record the new BlockObject.
-                //
-                BlockObject.Object newBObject = blockObjectHandler.create(bounds, data, bObjectMetaData, deleteTokenHash, timeToLive, aObject.getReplicationParameters());
-                newBObject = blockObjectHandler.storeObject(newBObject);
-                assert newBObject.getBounds().contains(data) : String.format("newBObject Bounds: %s, data: %s", newBObject.getBounds(), data.asString(false));
-                //
-                // Since the new BObject contains data from this write, its
-                // bounds should encompass those of the data that this write
-                // contributed.
-                //
-                assert newBObject.getBounds().contains(bounds);
-                if (this.log.isLoggable(Level.FINE)) {
-                    this.log.fine("BObject{%d+%d} %s", bObjectOffset, newBObject.getBounds().getLength(), newBObject.getObjectId().toString());
-                }
-                vObject.addBObject(newBObject.makeReference(bObjectOffset, newBObject.getObjectId()));
+                    //
+                    // Create and record the new BlockObject.
+                    //
+                    BlockObject.Object newBObject = blockObjectHandler.create(bounds, data, bObjectMetaData, deleteTokenHash, timeToLive, aObject.getReplicationParameters());
+                    newBObject = blockObjectHandler.storeObject(newBObject);
+                    assert newBObject.getBounds().contains(data) : String.format("newBObject Bounds: %s, data: %s", newBObject.getBounds(), data.asString(false));
+                    //
+                    // Since the new BObject contains data from this write, its
+                    // bounds should encompass those of the data that this write
+                    // contributed.
+                    //
+                    assert newBObject.getBounds().contains(bounds);
+                    if (this.log.isLoggable(Level.FINE)) {
+                        this.log.fine("BObject{%d+%d} %s", bObjectOffset, newBObject.getBounds().getLength(), newBObject.getObjectId().toString());
+                    }
+                    vObject.addBObject(newBObject.makeReference(bObjectOffset, newBObject.getObjectId()));
 
-                //
-                // Advance source for the next iteration.
-                //
-                source = source.position(sourcePortion.capacity()).slice();
+                    //
+                    // Advance source for the next iteration.
+                    //
+                    source = source.position(sourcePortion.capacity()).slice();
+                }
             }
 
+            timingProfiler.stamp("storeBObjects");
+
             vObject.setFileSize(Math.max(vObject.getFileSize(), (start + dataLength)));
             vObject.setSignature(signature);
             vObject.setCelesteOperation(operation);
@@ -1325,11 +1469,13 @@ public class CelesteClientDaemon extends AbstractTitanService {
             if (this.log.isLoggable(Level.FINEST)) {
                 this.log.finest("Stored %s", vObject);
             }
+            timingProfiler.stamp("storeVObject");
             VersionObject.Object.Reference newVObjectReference = vObject.makeReference();
 
             lineariser.setValue(aObject.getObjectId(),
                     currentValue,
                     lineariser.newValue(newVObjectReference, currentValue.getLock()), aObject.getAObjectVersionMapParams());
+            timingProfiler.stamp("setValue");
 
             OrderedProperties result = this.fillMetadata(aObject, vObject, currentValue.getLock());
             if (this.log.isLoggable(Level.FINE)) {
@@ -1360,14 +1506,15 @@ public class CelesteClientDaemon extends AbstractTitanService {
             throw new CelesteException.RuntimeException(e);
         } catch (BeehiveObjectPool.Exception e) {
             throw new CelesteException.RuntimeException(e);
+        } catch (VersionObject.BadManifestException e) {
+            throw new CelesteException.RuntimeException(e);
         } catch (ClassCastException e) {
             throw new CelesteException.RuntimeException(e);
         } catch (ClassNotFoundException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
             timingProfiler.stamp("remainder");
-            timingProfiler.printCSV(System.out);
-            timingProfiler.print(System.out);
+            timingProfiler.stop();
         }
     }
 
@@ -1376,9 +1523,10 @@ public class CelesteClientDaemon extends AbstractTitanService {
            CelesteException.CredentialException, CelesteException.AccessControlException, CelesteException.NotFoundException,
            CelesteException.DeletedException, CelesteException.RuntimeException, CelesteException.VerificationException, CelesteException.IllegalParameterException {
 
-        TimeProfiler timeProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timeProfiler = this.metrics.start(operation.getOperationName());
         try {
             this.checkOperationSignature(signature, operation);
+            timeProfiler.stamp("checkSignature");
 
             //
             // XXX: Ought to use a BufferableExtent in place of these two
@@ -1524,14 +1672,15 @@ public class CelesteClientDaemon extends AbstractTitanService {
             return new ResponseMessage(deleted);
         } catch (TitanObjectStoreImpl.NotFoundException e) {
             return new ResponseMessage(e);
+        } catch (VersionObject.BadManifestException e) {
+            throw new CelesteException.RuntimeException(e);
         } catch (ClassCastException e) {
             throw new CelesteException.RuntimeException(e);
         } catch (ClassNotFoundException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
             timeProfiler.stamp("remainder");
-            timeProfiler.printCSV(System.out);
-            timeProfiler.print(System.out);
+            timeProfiler.stop();
         }
     }
     
@@ -1541,14 +1690,20 @@ public class CelesteClientDaemon extends AbstractTitanService {
            CelesteException.VerificationException, CelesteException.AccessControlException, CelesteException.CredentialException, CelesteException.NotFoundException,
            CelesteException.RuntimeException, CelesteException.NoSpaceException, CelesteException.IllegalParameterException {
 
-        TimeProfiler timingProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
         try {
             this.checkOperationSignature(signature, operation);
+            timingProfiler.stamp("checkSignature");
 
             URL[] jarFileURLs = operation.getJarFileURLs();
             if (jarFileURLs != null) {
                 if (jarFileURLs.length > 0) {
-                    JarClassLoader classLoader = new JarClassLoader(jarFileURLs);
+                    JarClassLoader classLoader;
+                    try {
+                        classLoader = ExtensionCache.getClassLoader(jarFileURLs);
+                    } catch (IOException e) {
+                        throw new CelesteException.RuntimeException(e);
+                    }
                     try {
                         String mainClassName = classLoader.getMainClassName();
 
@@ -1596,8 +1751,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
             }
         } finally {
             timingProfiler.stamp("remainder");
-            timingProfiler.printCSV(System.out);
-            timingProfiler.print(System.out);
+            timingProfiler.stop();
         }
     }
 
@@ -1607,9 +1761,10 @@ public class CelesteClientDaemon extends AbstractTitanService {
            CelesteException.RuntimeException, CelesteException.DeletedException, CelesteException.NoSpaceException,
            CelesteException.VerificationException, CelesteException.OutOfDateException, CelesteException.FileLocked {
 
-        TimeProfiler timingProfiler = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timingProfiler = this.metrics.start(operation.getOperationName());
         try {
             this.checkOperationSignature(signature, operation);
+            timingProfiler.stamp("checkSignature");
 
             long stop = operation.getLength();
 
@@ -1659,10 +1814,18 @@ public class CelesteClientDaemon extends AbstractTitanService {
                 // translates to "get the original BObject's map and intersect
                 // it with the new bounds".
                 //
-                BlockObject.Object.Reference lastBObjectReference = vObject.getBObjectReference(stop);
+                ContentDefinedChunker chunker = ContentDefinedChunker.getInstance(aObject.getReplicationParameters(), aObject.getBObjectSize());
+                BlockObject.Object.Reference lastBObjectReference = ContentDefinedWriter.blockContaining(vObject, stop);
 
                 long deleteAllBObjectsAfterOffset = stop;
-                if (lastBObjectReference != null) {
+                if (chunker != null) {
+                    ContentDefinedWriter writer = new ContentDefinedWriter(chunker, vObject, blockObjectHandler,
+                            new AbstractTitanObject.Metadata(), deleteTokenId, aObject.getTimeToLive(), aObject.getReplicationParameters());
+                    writer.truncate(stop);
+                } else if (lastBObjectReference == null) {
+                    // The new end of the file is in a hole, or at the end of a BObject.
+                    vObject.truncate(Long.valueOf(stop));
+                } else {
                     deleteAllBObjectsAfterOffset = lastBObjectReference.getFileOffset() + lastBObjectReference.getLength();
                     vObject.truncate(Long.valueOf(deleteAllBObjectsAfterOffset));
 
@@ -1741,14 +1904,15 @@ public class CelesteClientDaemon extends AbstractTitanService {
             throw new CelesteException.RuntimeException(e);
         } catch (BeehiveObjectPool.Exception e) {
             throw new CelesteException.RuntimeException(e);
+        } catch (VersionObject.BadManifestException e) {
+            throw new CelesteException.RuntimeException(e);
         } catch (ClassCastException e) {
             throw new CelesteException.RuntimeException(e);
         } catch (ClassNotFoundException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
             timingProfiler.stamp("remainder");
-            timingProfiler.printCSV(System.out);
-            timingProfiler.print(System.out);
+            timingProfiler.stop();
         }
     }
 
@@ -1761,7 +1925,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         // XXX It must be an error to create a credential more than once because a second credential would have the same name but a different key pair.
         //
         
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
         try {
             //
             // Check that the credential can sign things and that it properly
@@ -1793,6 +1957,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
                 assert handler != null;
 
                 handler.storeObject(credential);
+                this.credentialCache.remove(credential.getObjectId());
                 return credential.getMetadata();
             } else {
                 throw new CelesteException.VerificationException("Signature failed.");
@@ -1812,7 +1977,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (ClassNotFoundException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
@@ -1821,7 +1986,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
             CelesteException.RuntimeException, CelesteException.AlreadyExistsException,
             CelesteException.NoSpaceException, CelesteException.VerificationException, CelesteException.CredentialException {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
         try {
             //
             // Check that the credential can sign things and that it properly
@@ -1857,6 +2022,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
                 //
                 CredentialObject handler = (CredentialObject)this.node.getService(CredentialObjectHandler.class);
                 handler.storeObject(credential);
+                this.credentialCache.remove(credential.getObjectId());
                 return credential.getMetadata();
             } else {
                 throw new CelesteException.VerificationException("Signature failed.");
@@ -1878,14 +2044,14 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (ClassNotFoundException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
     // XXX Return the value, not a ResponseMessage.  ResponseMessage occludes exceptions and makes the client unwrap it, instead of the client-side API.
     public Credential readCredential(ReadProfileOperation operation) throws IOException, CelesteException.NotFoundException, CelesteException.RuntimeException {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
 
         final TitanGuid credentialId = operation.getCredentialId();
 
@@ -1910,7 +2076,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (ClassNotFoundException e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
@@ -1920,9 +2086,10 @@ public class CelesteClientDaemon extends AbstractTitanService {
     CelesteException.DeletedException, CelesteException.NoSpaceException, CelesteException.VerificationException, CelesteException.OutOfDateException,
     CelesteException.FileLocked {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
         try {
             this.checkOperationSignature(signature, operation);
+            timing.stamp("checkSignature");
 
             AnchorObject.Handler anchorObjectHandler = this.node.getService(AnchorObjectHandler.class);
             AObjectVersionMapAPI lineariser = (AObjectVersionMapAPI) this.node.getService(AObjectVersionService.class);
@@ -2022,7 +2189,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
                 throw new CelesteException.RuntimeException(e);
             }
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
@@ -2032,11 +2199,12 @@ public class CelesteClientDaemon extends AbstractTitanService {
            CelesteException.RuntimeException, CelesteException.VerificationException, CelesteException.IllegalParameterException,
            CelesteException.OutOfDateException, CelesteException.FileNotLocked, CelesteException.FileLocked {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
 
         AnchorObject.Object aObject = null;
         try {
             this.checkOperationSignature(signature, operation);
+            timing.stamp("checkSignature");
 
             AnchorObject.Handler anchorObjectHandler = this.node.getService(AnchorObjectHandler.class);
             AObjectVersionMapAPI lineariser = (AObjectVersionMapAPI) this.node.getService(AObjectVersionService.class);
@@ -2151,7 +2319,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (MutableObject.DeletedException e) {
             throw new CelesteException.DeletedException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
@@ -2161,12 +2329,13 @@ public class CelesteClientDaemon extends AbstractTitanService {
     CelesteException.NoSpaceException, CelesteException.DeletedException, CelesteException.VerificationException, CelesteException.OutOfDateException,
     CelesteException.FileLocked {
 
-        TimeProfiler timing = new TimeProfiler(operation.getOperationName());
+        Metrics.Timer timing = this.metrics.start(operation.getOperationName());
         try {
             //
             // Validate the provided signature.
             //
             this.checkOperationSignature(signature, operation);
+            timing.stamp("checkSignature");
 
             AnchorObject.Handler anchorObjectHandler = this.node.getService(AnchorObjectHandler.class);
             AObjectVersionMapAPI lineariser = (AObjectVersionMapAPI) this.node.getService(AObjectVersionService.class);
@@ -2244,7 +2413,7 @@ public class CelesteClientDaemon extends AbstractTitanService {
         } catch (BeehiveObjectPool.Exception e) {
             throw new CelesteException.RuntimeException(e);
         } finally {
-            timing.print(System.out);
+            timing.stop();
         }
     }
 
@@ -2260,6 +2429,15 @@ public class CelesteClientDaemon extends AbstractTitanService {
 
     private ProfileCache credentialCache;
 
+    //
+    // Signature verification statistics.  Credential retrieval and the
+    // cryptographic check itself are timed separately, so that the effect of
+    // the credential cache can be seen.
+    //
+    private final LatencyHistogram credentialFetchTime;
+    private final LatencyHistogram signatureCheckTime;
+    private final Metrics.Counter staleCredentialRefetches;
+
     public Credential getProfile(TitanGuid credentialId)
         throws IOException, CelesteException.AccessControlException, CelesteException.NotFoundException, CelesteException.RuntimeException {
 
@@ -2267,14 +2445,29 @@ public class CelesteClientDaemon extends AbstractTitanService {
         // it avoids doubly performing verification that is present both in get()
         // and in readProfile(). It does exist in get() because that is mostly
         // relevant on the client side.
-//        Credential credential = this.credentialCache.getCachedOnly(credentialId);
-//        if (credential == null) {
+        Credential credential = this.credentialCache.getCachedOnly(credentialId);
+        if (credential == null) {
+            credential = this.fetchProfile(credentialId);
+        }
+        return credential;
+    }
+
+    //
+    // Retrieve the credential from the object store, bypassing and then
+    // refreshing the credential cache.
+    //
+    private Credential fetchProfile(TitanGuid credentialId)
+        throws IOException, CelesteException.NotFoundException, CelesteException.RuntimeException {
+        Metrics.Timer timing = this.metrics.start("fetchCredential");
+        try {
             ReadProfileOperation readCredential = new ReadProfileOperation(credentialId);
             Credential credential = this.readCredential(readCredential);
-//            if (credential != null)
-//                this.credentialCache.put(credential);
-//        }
-        return credential;
+            if (credential != null)
+                this.credentialCache.put(credential);
+            return credential;
+        } finally {
+            timing.stop();
+        }
     }
 
     /**
@@ -2297,20 +2490,35 @@ public class CelesteClientDaemon extends AbstractTitanService {
     throws CelesteException.VerificationException, CelesteException.CredentialException, CelesteException.RuntimeException,
     CelesteException.AccessControlException, CelesteException.NotFoundException, IOException {
 
-        TimeProfiler time = new TimeProfiler("verifyOperationSignature");
+        Metrics.Timer time = this.metrics.start("verifyOperationSignature");
         try {
             if (signature != null) {
                 try {
                     if (operation.getClientId() == null) {
                         throw new CelesteException.CredentialException("Credential object-id is null.");
                     }
-                    Credential clientCredential = this.getProfile(operation.getClientId());
+                    Credential clientCredential = this.credentialCache.getCachedOnly(operation.getClientId());
+                    boolean cached = clientCredential != null;
+                    if (!cached) {
+                        clientCredential = this.fetchProfile(operation.getClientId());
+                    }
                     TitanGuid[] ids = new TitanGuid[objectIds.length + 1];
                     ids[0] = operation.getId();
                     for (int i = 0; i < objectIds.length; i++) {
                         ids[i+1] = objectIds[i];
                     }
-                    if (clientCredential.verify(signature, ids) == false) {
+                    boolean verified = this.verifySignature(clientCredential, signature, ids);
+                    if (!verified && cached) {
+                        //
+                        // The cached credential may have been superseded.
+                        // Discard it and try once more with a fresh copy.
+                        //
+                        this.staleCredentialRefetches.increment();
+                        this.credentialCache.remove(operation.getClientId());
+                        clientCredential = this.fetchProfile(operation.getClientId());
+                        verified = this.verifySignature(clientCredential, signature, ids);
+                    }
+                    if (verified == false) {
                         StringBuilder s = new StringBuilder("Bad signature: clientId=")
                         .append(clientCredential.getObjectId())
                         .append(" signatureId=")
@@ -2325,7 +2533,19 @@ public class CelesteClientDaemon extends AbstractTitanService {
                 }
             }
         } finally {
-            time.print(System.out);
+            time.stop();
+        }
+    }
+
+    //
+    // Verify signature with credential, accumulating the verification time.
+    //
+    private boolean verifySignature(Credential credential, Credential.Signature signature, TitanGuid[] ids) throws Credential.Exception {
+        Metrics.Timer timing = this.metrics.start("verifySignature");
+        try {
+            return credential.verify(signature, ids);
+        } finally {
+            timing.stop();
         }
     }
 }
@@ -24,6 +24,8 @@
 package sunlabs.celeste.node.services.api;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
 
 import sunlabs.celeste.client.operation.LockFileOperation;
 import sunlabs.celeste.node.services.object.AnchorObject;
@@ -184,4 +186,20 @@ public interface AObjectVersionMapAPI extends MutableObject.Handler<MutableObjec
      */
     public AObjectVersionMapAPI.Value getValue(TitanGuid objectId, AObjectVersionMapAPI.Parameters params)
     throws MutableObject.InsufficientResourcesException, MutableObject.NotFoundException, MutableObject.ProtocolException;
+
+    /**
+     * Get the current values of many variables at once.
+     * <p>
+     * The value of each variable is determined with the same safety as {@link #getValue(TitanGuid, AObjectVersionMapAPI.Parameters)},
+     * but the requests for replicas held by the same node are combined into one message.
+     * </p>
+     *
+     * @param objectIds the {@link TitanGuid}s of the variables to get
+     * @param params the parameters controlling the backing store for the variables.
+     *
+     * @return a map of each variable's objectId to its value, which is {@code null} if the variable has no value.
+     *         Variables whose value could not be determined are absent, and {@code getValue} will report the reason.
+     */
+    public Map<TitanGuid,AObjectVersionMapAPI.Value> getValues(Collection<TitanGuid> objectIds, AObjectVersionMapAPI.Parameters params)
+    throws MutableObject.ProtocolException;
 }
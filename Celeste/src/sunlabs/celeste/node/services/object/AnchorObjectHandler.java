@@ -49,6 +49,7 @@ import sunlabs.titan.api.TitanNodeId;
 import sunlabs.titan.api.TitanObject;
 import sunlabs.titan.node.AbstractTitanObject;
 import sunlabs.titan.node.BeehiveObjectPool;
+import sunlabs.titan.node.TitanNodeImpl;
 import sunlabs.titan.node.TitanObjectStoreImpl;
 import sunlabs.titan.node.TitanObjectStoreImpl.NotFoundException;
 import sunlabs.titan.node.TitanMessage;
@@ -251,6 +252,8 @@ public final class AnchorObjectHandler extends AbstractObjectHandler implements
         super(node, AnchorObjectHandler.name, "Celeste Anchor Object Handler");
         this.publishObjectDeleteLocks = new ObjectLock<TitanGuid>();
         this.deleteLocalObjectLocks = new ObjectLock<TitanGuid>();
+
+        node.getObjectStore().setCacheAdmission(AObject.class, node.getConfiguration().asLong(TitanNodeImpl.ObjectStoreCacheMaximumObjectSize));
     }
 
     /**
@@ -314,7 +317,7 @@ public final class AnchorObjectHandler extends AbstractObjectHandler implements
     }
 
     public TitanObject retrieveLocalObject(TitanMessage message, TitanGuid objectId) throws TitanObjectStoreImpl.NotFoundException {
-        return node.getObjectStore().get(TitanObject.class, message.subjectId);
+        return RetrievableObject.retrieveLocalObjectHelper(this, message);
     }
 
     public AObject retrieve(TitanGuid objectId) throws ClassCastException, ClassNotFoundException, TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, ClassCastException {
@@ -447,6 +450,10 @@ public final class AnchorObjectHandler extends AbstractObjectHandler implements
         return publishObjectDeleteLocks;
     }
 
+    public ReplicatableObject.Replicate.BatchResponse replicateObjects(TitanMessage message, ReplicatableObject.Replicate.BatchRequest request) throws ClassNotFoundException, ClassCastException {
+        return ReplicatableObject.replicateObjectsHelper(this, request);
+    }
+
     public ReplicatableObject.Replicate.Response replicateObject(TitanMessage message) throws ClassNotFoundException, ClassCastException,
     TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception {
         try {
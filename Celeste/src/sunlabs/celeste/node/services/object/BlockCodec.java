@@ -0,0 +1,135 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An encoding of the data in a {@link BlockObject}, typically a compression.
+ * <p>
+ * A file's {@code BlockObject}s are encoded with the {@code BlockCodec} named by the file parameter
+ * {@link BlockObject.Object#COMPRESSION_NAME}, when the {@code BlockObject} is created,
+ * and are stored and transmitted encoded. They are decoded only when their data is read.
+ * Implementations are registered with {@link BlockCodecs#register(BlockCodec)} and must be thread-safe.
+ * </p>
+ */
+public interface BlockCodec {
+    /**
+     * Get the name of this {@code BlockCodec}, which is recorded with each {@code BlockObject} it encodes.
+     * The name, and the decoding of data it names, must never change.
+     */
+    public String getName();
+
+    /**
+     * Encode the remaining bytes of {@code data}, leaving its position unchanged.
+     *
+     * @return a {@link ByteBuffer} containing the encoded bytes between its position and limit.
+     */
+    public ByteBuffer encode(ByteBuffer data);
+
+    /**
+     * Decode the remaining bytes of {@code encoded}, leaving its position unchanged.
+     *
+     * @param length the number of bytes that were encoded.
+     * @return a {@link ByteBuffer} containing the {@code length} decoded bytes between its position and limit.
+     * @throws DataFormatException if {@code encoded} is not a valid encoding of {@code length} bytes.
+     */
+    public ByteBuffer decode(ByteBuffer encoded, int length) throws DataFormatException;
+
+    /**
+     * The "deflate" compression of {@link java.util.zip}.
+     */
+    public static class Deflate implements BlockCodec {
+        public final static String NAME = "Deflate";
+
+        private final int level;
+
+        public Deflate() {
+            this(Deflater.DEFAULT_COMPRESSION);
+        }
+
+        public Deflate(int level) {
+            this.level = level;
+        }
+
+        public String getName() {
+            return Deflate.NAME;
+        }
+
+        private static byte[] toArray(ByteBuffer buffer) {
+            byte[] array = new byte[buffer.remaining()];
+            buffer.duplicate().get(array);
+            return array;
+        }
+
+        public ByteBuffer encode(ByteBuffer data) {
+            Deflater deflater = new Deflater(this.level, true);
+            try {
+                deflater.setInput(Deflate.toArray(data));
+                deflater.finish();
+                byte[] output = new byte[Math.max(64, data.remaining() + data.remaining() / 1000 + 64)];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length) {
+                        byte[] larger = new byte[output.length * 2];
+                        System.arraycopy(output, 0, larger, 0, length);
+                        output = larger;
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+                return ByteBuffer.wrap(output, 0, length).slice();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        public ByteBuffer decode(ByteBuffer encoded, int length) throws DataFormatException {
+            Inflater inflater = new Inflater(true);
+            try {
+                // The "nowrap" inflater needs an extra byte following the input.
+                byte[] input = new byte[encoded.remaining() + 1];
+                encoded.duplicate().get(input, 0, encoded.remaining());
+                inflater.setInput(input);
+                byte[] output = new byte[length];
+                int n = 0;
+                while (n < length && !inflater.finished()) {
+                    int count = inflater.inflate(output, n, length - n);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += count;
+                }
+                if (n != length) {
+                    throw new DataFormatException(String.format("decoded %d bytes, expected %d", n, length));
+                }
+                return ByteBuffer.wrap(output);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
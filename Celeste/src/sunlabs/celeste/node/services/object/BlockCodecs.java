@@ -0,0 +1,84 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import sunlabs.celeste.client.ReplicationParameters;
+
+/**
+ * The registry of {@link BlockCodec}s, by name.
+ * <p>
+ * {@link BlockCodec.Deflate} is always registered.
+ * Every node that may read a file must register the {@code BlockCodec} named in the file's parameters.
+ * </p>
+ */
+public final class BlockCodecs {
+    /** The value of {@link BlockObject.Object#COMPRESSION_NAME} selecting no encoding. */
+    public final static String NONE = "None";
+
+    private final static Map<String,BlockCodec> codecs = new HashMap<String,BlockCodec>();
+    static {
+        BlockCodecs.register(new BlockCodec.Deflate());
+    }
+
+    private BlockCodecs() {
+    }
+
+    /**
+     * Register the given {@link BlockCodec}, replacing any registered with the same name.
+     */
+    public static void register(BlockCodec codec) {
+        synchronized (BlockCodecs.codecs) {
+            BlockCodecs.codecs.put(codec.getName(), codec);
+        }
+    }
+
+    /**
+     * Get the {@link BlockCodec} registered with the given name.
+     *
+     * @throws IllegalArgumentException if there is no {@code BlockCodec} with the given name.
+     */
+    public static BlockCodec get(String name) {
+        synchronized (BlockCodecs.codecs) {
+            BlockCodec codec = BlockCodecs.codecs.get(name);
+            if (codec == null) {
+                throw new IllegalArgumentException(String.format("No BlockCodec named \"%s\"", name));
+            }
+            return codec;
+        }
+    }
+
+    /**
+     * Get the {@link BlockCodec} for a file with the given {@link ReplicationParameters},
+     * or {@code null} if the file's {@link BlockObject}s are not encoded.
+     *
+     * @throws IllegalArgumentException if there is no {@code BlockCodec} with the name given in the parameters.
+     */
+    public static BlockCodec getInstance(ReplicationParameters parameters) {
+        String name = (parameters == null) ? BlockCodecs.NONE : parameters.getAsString(BlockObject.Object.COMPRESSION_NAME, BlockCodecs.NONE);
+        return name.equals(BlockCodecs.NONE) ? null : BlockCodecs.get(name);
+    }
+}
@@ -68,6 +68,18 @@ public interface BlockObject extends
         public final static String REPLICATIONPARAM_MIN_NAME = "BObject.Replication.Store";
         public final static String REPLICATIONPARAM_LOWWATER_NAME = "BObject.Replication.LowWater";
 
+        /**
+         * The name of the file parameter selecting how a file's data is divided into {@code BlockObject}s.
+         * @see ContentDefinedChunker
+         */
+        public final static String CHUNKING_NAME = "BObject.Chunking";
+
+        /**
+         * The name of the file parameter naming the {@link BlockCodec} that encodes the file's {@code BlockObject}s.
+         * @see BlockCodecs
+         */
+        public final static String COMPRESSION_NAME = "BObject.Compression";
+
         public static interface Reference extends Serializable {
             public TitanGuid getObjectId();
 
@@ -99,6 +111,16 @@ public interface BlockObject extends
 
         public ExtentBufferMap getDataAsExtentBufferMap();
 
+        /**
+         * Get this {@code BlockObject}'s data positioned at the given offset in the file.
+         * <p>
+         * A {@code BlockObject} with content-defined bounds holds its data starting at offset zero,
+         * so that identical data at different places in a file is one {@code BlockObject}.
+         * The {@link BlockObject.Object.Reference} in the manifest supplies the data's offset in the file.
+         * </p>
+         */
+        public ExtentBufferMap getDataAsExtentBufferMap(long fileOffset);
+
         /**
          * Return the minimum number of copies of this object that must
          * be stored when creating this object.
@@ -115,6 +137,12 @@ public interface BlockObject extends
     public BlockObject.Object create(BufferableExtent bounds,
             ExtentBufferMap data, TitanObject.Metadata metadata, TitanGuid deleteTokenId, long timeToLive, ReplicationParameters replicationParams);
 
+    /**
+     * Return {@code true} if the {@code BlockObject} with the given object-id is already stored in the object pool.
+     * This is far less costly than storing the object again.
+     */
+    public boolean containsObject(TitanGuid objectId) throws ClassNotFoundException;
+
     /**
      * Construct a {@link FutureTask} instance that will fetch and return the {@code BlockObject}
      * specified in the given {@link BlockObject.Object.Reference}.
@@ -38,6 +38,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
+import java.util.zip.DataFormatException;
 
 import javax.management.JMException;
 
@@ -52,6 +53,7 @@ import sunlabs.asdf.web.http.HTTP;
 import sunlabs.asdf.web.http.HttpMessage;
 import sunlabs.celeste.client.ReplicationParameters;
 import sunlabs.celeste.node.object.ExtensibleObject;
+import sunlabs.titan.GuidHasher;
 import sunlabs.titan.TitanGuidImpl;
 import sunlabs.titan.api.TitanObjectStore;
 import sunlabs.titan.api.TitanGuid;
@@ -216,9 +218,19 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
             //
             public final BufferableExtent bounds;
             //
-            // A collection of ExtentBuffers holding the BObject's data.
+            // A collection of ExtentBuffers holding the BObject's data, or
+            // null if the data is encoded.
             //
-            public final ExtentBufferMap data;
+            private final ExtentBufferMap data;
+            //
+            // The name of the BlockCodec that encoded the data and the
+            // encoded ExtentBuffers, or null if the data is not encoded.
+            // The decoded data is kept once it has been read, but is not
+            // itself serialized.
+            //
+            private final String codec;
+            private final EncodedExtent[] encoded;
+            private transient ExtentBufferMap decoded;
 
             public BObjectContents(BufferableExtent bounds,
                     ExtentBufferMap data) {
@@ -243,6 +255,106 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
 
                 this.bounds = bounds;
                 this.data = data;
+                this.codec = null;
+                this.encoded = null;
+            }
+
+            private BObjectContents(BufferableExtent bounds, String codec, EncodedExtent[] encoded) {
+                this.bounds = bounds;
+                this.data = null;
+                this.codec = codec;
+                this.encoded = encoded;
+            }
+
+            /**
+             * Create a {@code BObjectContents} with the given data encoded by {@code codec},
+             * unless encoding does not make the data smaller.
+             */
+            public static BObjectContents encode(BufferableExtent bounds, ExtentBufferMap data, BlockCodec codec) {
+                BObjectContents plain = new BObjectContents(bounds, data);
+                if (data.isEmpty()) {
+                    return plain;
+                }
+                EncodedExtent[] encoded = new EncodedExtent[data.size()];
+                long plainLength = 0;
+                long encodedLength = 0;
+                int i = 0;
+                for (ExtentBuffer extentBuffer : data.values()) {
+                    ByteBuffer buffer = extentBuffer.getByteBuffer().duplicate();
+                    buffer.clear();
+                    ByteBuffer bytes = codec.encode(buffer);
+                    encoded[i++] = new EncodedExtent(extentBuffer.getStartOffset(), buffer.remaining(), new ExtentBuffer(0, bytes));
+                    plainLength += buffer.remaining();
+                    encodedLength += bytes.remaining();
+                }
+                return (encodedLength < plainLength) ? new BObjectContents(bounds, codec.getName(), encoded) : plain;
+            }
+
+            public ExtentBufferMap getData() {
+                if (this.data != null) {
+                    return this.data;
+                }
+                synchronized (this) {
+                    if (this.decoded == null) {
+                        BlockCodec codec = BlockCodecs.get(this.codec);
+                        ExtentBufferMap decoded = new ExtentBufferMap();
+                        for (EncodedExtent e : this.encoded) {
+                            ByteBuffer bytes = e.encoded.getByteBuffer().duplicate();
+                            bytes.clear();
+                            try {
+                                decoded.put(new ExtentBuffer(e.startOffset, codec.decode(bytes, e.length)));
+                            } catch (DataFormatException exception) {
+                                throw new IllegalStateException(exception);
+                            }
+                        }
+                        this.decoded = decoded;
+                    }
+                    return this.decoded;
+                }
+            }
+
+            /**
+             * Get the name of the {@link BlockCodec} that encoded the data, or {@code null} if the data is not encoded.
+             */
+            public String getCodec() {
+                return this.codec;
+            }
+
+            /**
+             * Get the number of bytes of data as stored, that is after encoding.
+             */
+            public long getStoredLength() {
+                long length = 0;
+                if (this.encoded != null) {
+                    for (EncodedExtent e : this.encoded) {
+                        length += e.encoded.capacity();
+                    }
+                } else {
+                    for (ExtentBuffer extentBuffer : this.data.values()) {
+                        length += extentBuffer.capacity();
+                    }
+                }
+                return length;
+            }
+        }
+
+        //
+        // One encoded ExtentBuffer of a BObject's data: its offset and length
+        // before encoding, and the encoded bytes.  The encoded bytes are
+        // themselves held in an ExtentBuffer so that they are written to the
+        // object store as bulk data rather than in the serialized object.
+        //
+        private static class EncodedExtent implements Serializable {
+            private final static long serialVersionUID = 1L;
+
+            public final long startOffset;
+            public final int length;
+            public final ExtentBuffer encoded;
+
+            public EncodedExtent(long startOffset, int length, ExtentBuffer encoded) {
+                this.startOffset = startOffset;
+                this.length = length;
+                this.encoded = encoded;
             }
         }
 
@@ -256,13 +368,18 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
         // Package visibility, so that unit tests can access it.
         //
         BObject(BufferableExtent bounds, ExtentBufferMap data, TitanObject.Metadata metadata, TitanGuid deleteTokenId, long timeToLive, ReplicationParameters replicationParams) {
-            this(new BObject.BObjectContents(bounds, data), metadata, deleteTokenId, timeToLive);
+            this(BObject.newContents(bounds, data, replicationParams), metadata, deleteTokenId, timeToLive);
             this.replicationMinimum = replicationParams.getAsInteger(BlockObject.Object.REPLICATIONPARAM_MIN_NAME, BlockObjectHandler.replicationStore);
             this.replicationCache = replicationParams.getAsInteger(BlockObject.Object.REPLICATIONPARAM_LOWWATER_NAME, BlockObjectHandler.replicationCache);
             this.setProperty(TitanObjectStore.METADATA_REPLICATION_STORE, this.replicationMinimum);
             this.setProperty(TitanObjectStore.METADATA_REPLICATION_LOWWATER, this.replicationCache);
         }
 
+        private static BObjectContents newContents(BufferableExtent bounds, ExtentBufferMap data, ReplicationParameters replicationParams) {
+            BlockCodec codec = BlockCodecs.getInstance(replicationParams);
+            return (codec == null) ? new BObject.BObjectContents(bounds, data) : BObject.BObjectContents.encode(bounds, data, codec);
+        }
+
         private BObject(BObjectContents contents, TitanObject.Metadata metadata, TitanGuid deleteTokenId, long timeToLive) {
             super(BlockObjectHandler.class, deleteTokenId, timeToLive);
             this.contents = contents;
@@ -277,7 +394,19 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
         }
 
         public ExtentBufferMap getDataAsExtentBufferMap() {
-            return this.contents.data;
+            return this.contents.getData();
+        }
+
+        public ExtentBufferMap getDataAsExtentBufferMap(long fileOffset) {
+            long shift = fileOffset - this.contents.bounds.getStartOffset();
+            if (shift == 0) {
+                return this.contents.getData();
+            }
+            ExtentBufferMap result = new ExtentBufferMap();
+            for (ExtentBuffer extentBuffer : this.contents.getData().values()) {
+                result.put(new ExtentBuffer(extentBuffer.getStartOffset() + shift, extentBuffer.getByteBuffer().duplicate()));
+            }
+            return result;
         }
 
         @Override
@@ -286,14 +415,27 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
             // To avoid confusing two block objects for the same file that
             // have identical contents, but that appear in different places
             // within the file, the id generated here must include the
-            // starting offset.
+            // starting offset.  Content-defined block objects all start at
+            // offset zero, so their ids depend only upon their contents.
             //
-            TitanGuid id = new TitanGuidImpl("".getBytes());
-            id = id.add(this.getBounds().getStartOffset());
-            for (ByteBuffer c : this.contents.data.getBuffers()) {
-                id = id.add(c);
+            // Encoded block objects are identified by their encoded data,
+            // so that the nodes storing them need not decode them.
+            //
+            GuidHasher id = new GuidHasher().update(new byte[0]);
+            id.update(this.getBounds().getStartOffset());
+            if (this.contents.encoded != null) {
+                id.update(this.contents.codec);
+                for (EncodedExtent e : this.contents.encoded) {
+                    ByteBuffer c = e.encoded.getByteBuffer().duplicate();
+                    c.clear();
+                    id.update(e.startOffset).update(e.length).update(c);
+                }
+            } else {
+                for (ByteBuffer c : this.contents.data.getBuffers()) {
+                    id.update(c);
+                }
             }
-            return id;
+            return id.getGuid();
         }
 
         public int getReplicationMinimum() {
@@ -308,6 +450,8 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
         	XHTML.Table.Body tbody = new XHTML.Table.Body();
         	tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Data Start"), new XHTML.Table.Data(this.getBounds().getStartOffset())));
         	tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Data Length"), new XHTML.Table.Data(this.getBounds().getLength())));
+        	tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Encoding"), new XHTML.Table.Data(this.contents.getCodec() == null ? BlockCodecs.NONE : this.contents.getCodec())));
+        	tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Stored Length"), new XHTML.Table.Data(this.contents.getStoredLength())));
         	XHTML.Table table = new XHTML.Table(tbody);
 
             XHTML.Div result = (XHTML.Div) super.toXHTML(uri, props);
@@ -435,6 +579,24 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
         return new BObject(bounds, data, metadata, deleteTokenId, timeToLive, replicationParams);
     }
 
+    public boolean containsObject(TitanGuid objectId) throws ClassNotFoundException {
+        TitanMessage reply = this.node.sendToObject(objectId, this.getName(), "containsLocalObject", objectId);
+        try {
+            Boolean result = reply.getPayload(Boolean.class, this.node);
+            return result != null && result.booleanValue();
+        } catch (TitanMessage.RemoteException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reply {@code true} if this node, which is either a node storing the object named by {@code objectId} or the root of that object-id,
+     * stores that object.
+     */
+    public Boolean containsLocalObject(TitanMessage message, TitanGuid objectId) {
+        return Boolean.valueOf(this.node.getObjectStore().containsObject(message.subjectId));
+    }
+
     public FutureTask<BlockObject.Object> retrieveTask(BlockObject.Object.Reference bObjectRef, CountDownLatch countDown, ExtentBufferMap map, BufferableExtent desiredSpan) {
         return new FutureTask<BlockObject.Object>(new RetrieveFutureExecution(bObjectRef, countDown, map, desiredSpan));
     }
@@ -469,7 +631,7 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
                     // only the portion contained within the span that's to be
                     // read.
                     //
-                    ExtentBufferMap data = bObject.getDataAsExtentBufferMap();
+                    ExtentBufferMap data = bObject.getDataAsExtentBufferMap(item.getFileOffset());
                     ExtentBufferMap trimmedData = data.intersect(desiredSpan);
 
                     //
@@ -525,7 +687,7 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
                     // only the portion contained within the span that's to be
                     // read.
                     //
-                    ExtentBufferMap data = bObject.getDataAsExtentBufferMap();
+                    ExtentBufferMap data = bObject.getDataAsExtentBufferMap(this.reference.getFileOffset());
                     ExtentBufferMap trimmedData = data.intersect(desiredSpan);
                     // BlockObjectHandler.this.log.info("%s %s {%d+%d}", this.reference.getObjectId().toString(), data.asString(false), data.getStartOffset(), data.getRemaining());
                     //this.log.info("trimmedData bounds: %s, size: %d",
@@ -579,6 +741,10 @@ public final class BlockObjectHandler extends AbstractObjectHandler implements B
     }
     
 
+    public ReplicatableObject.Replicate.BatchResponse replicateObjects(TitanMessage message, ReplicatableObject.Replicate.BatchRequest request) throws ClassNotFoundException, ClassCastException {
+        return ReplicatableObject.replicateObjectsHelper(this, request);
+    }
+
     public ReplicatableObject.Replicate.Response replicateObject(TitanMessage message) throws ClassNotFoundException, ClassCastException,
     TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception {
         try {
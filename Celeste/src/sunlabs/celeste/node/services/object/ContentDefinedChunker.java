@@ -0,0 +1,150 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.util.Random;
+
+import sunlabs.celeste.client.ReplicationParameters;
+
+/**
+ * Divide a byte sequence into {@link BlockObject}s at boundaries determined by the content of the sequence.
+ * <p>
+ * A boundary is placed after a byte when a rolling hash of the bytes preceding it has a particular form.
+ * Because the hash depends only on a small window of preceding bytes, inserting or removing bytes in a file
+ * moves only the boundaries near the change, and the blocks after it are the same blocks, at different offsets, as before.
+ * Together with block object-ids derived only from block content, unchanged data in successive versions of a file shares storage.
+ * </p>
+ * <p>
+ * The rolling hash is the "gear" hash: {@code h = (h << 1) + GEAR[b]}, so each bit of {@code h}
+ * depends on no more than 64 of the most recent bytes.
+ * Blocks are no shorter than a quarter and no longer than the maximum block size,
+ * and average about half of the maximum block size.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class ContentDefinedChunker {
+    /** The chunking value of {@link BlockObject.Object#CHUNKING_NAME} selecting fixed size, aligned {@link BlockObject}s. */
+    public final static String FIXED = "Fixed";
+    /** The chunking value of {@link BlockObject.Object#CHUNKING_NAME} selecting content-defined {@link BlockObject}s. */
+    public final static String CONTENT_DEFINED = "ContentDefined";
+
+    private final static int WINDOW = 64;
+
+    // The table must never change, otherwise identical data written before and after the change would be divided differently.
+    private final static long[] GEAR = new long[256];
+    static {
+        Random random = new Random(0x43656c65737465L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minimumSize;
+    private final int maximumSize;
+    private final long mask;
+
+    private long hash;
+    private int length;
+
+    /**
+     * Construct a {@code ContentDefinedChunker} producing blocks no longer than {@code maximumSize} bytes.
+     */
+    public ContentDefinedChunker(int maximumSize) {
+        if (maximumSize < 4 * ContentDefinedChunker.WINDOW) {
+            throw new IllegalArgumentException(String.format("maximum block size %d is too small", maximumSize));
+        }
+        this.maximumSize = maximumSize;
+        this.minimumSize = maximumSize / 4;
+        // The low bits of a gear hash depend on only the last few bytes, so test the high bits.
+        int bits = Integer.numberOfTrailingZeros(Integer.highestOneBit(maximumSize / 4));
+        this.mask = ((1L << bits) - 1) << (Long.SIZE - bits);
+        this.reset();
+    }
+
+    /**
+     * Get the {@code ContentDefinedChunker} for a file with the given {@link ReplicationParameters} and block size,
+     * or {@code null} if the file's data is divided into fixed size blocks.
+     * Files with a block size too small for content-defined blocks always use fixed size blocks.
+     */
+    public static ContentDefinedChunker getInstance(ReplicationParameters parameters, int blockSize) {
+        if (blockSize < 4 * ContentDefinedChunker.WINDOW) {
+            return null;
+        }
+        if (parameters != null && parameters.getAsString(BlockObject.Object.CHUNKING_NAME, ContentDefinedChunker.FIXED).equals(ContentDefinedChunker.CONTENT_DEFINED)) {
+            return new ContentDefinedChunker(blockSize);
+        }
+        return null;
+    }
+
+    public int getMinimumSize() {
+        return this.minimumSize;
+    }
+
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Begin a new block.
+     */
+    public void reset() {
+        this.hash = 0;
+        this.length = 0;
+    }
+
+    /**
+     * Scan the bytes {@code data[from]} to {@code data[to - 1]} as the continuation of the current block.
+     * <p>
+     * If the current block ends within the scanned bytes, return the index in {@code data} of the first byte after the block,
+     * and begin a new block with that byte.
+     * Otherwise return {@code -1}, and the next invocation continues the current block.
+     * </p>
+     */
+    public int next(byte[] data, int from, int to) {
+        int i = from;
+
+        // The bytes that cannot end the block and cannot affect the hash at the first place it could end need not be hashed.
+        int skip = this.minimumSize - ContentDefinedChunker.WINDOW - this.length;
+        if (skip > 0) {
+            skip = Math.min(skip, to - i);
+            i += skip;
+            this.length += skip;
+        }
+
+        long h = this.hash;
+        while (i < to) {
+            h = (h << 1) + ContentDefinedChunker.GEAR[data[i] & 0xff];
+            i++;
+            this.length++;
+            if (this.length >= this.minimumSize && ((h & this.mask) == 0 || this.length >= this.maximumSize)) {
+                this.reset();
+                return i;
+            }
+        }
+        this.hash = h;
+        return -1;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+
+import sunlabs.celeste.client.ReplicationParameters;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.node.BeehiveObjectPool;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+import sunlabs.titan.util.BufferableExtentImpl;
+import sunlabs.titan.util.ExtentBuffer;
+import sunlabs.titan.util.ExtentBufferMap;
+
+/**
+ * Write data into a {@link VersionObject} whose {@link BlockObject}s have content-defined bounds.
+ * <p>
+ * A write divides the file again starting at the beginning of the {@code BlockObject} containing the first byte written
+ * (or the last {@code BlockObject}, when appending, because its end was set by the end of the file rather than by its content).
+ * Dividing continues past the end of the written data until a new boundary coincides with an existing one,
+ * after which the existing {@code BlockObject}s are unchanged, or until the end of the file.
+ * </p>
+ * <p>
+ * Each new {@code BlockObject} holds its data starting at offset zero, so its object-id depends only on its content
+ * (and on the file's delete-token).
+ * A {@code BlockObject} already stored, such as one holding data moved by an insertion earlier in the file, is referenced rather than stored again.
+ * Because the object-id includes the file's delete-token, {@code BlockObject}s are shared only among the versions of one file,
+ * and deleting the file deletes them all, just as for fixed size {@code BlockObject}s.
+ * </p>
+ */
+public class ContentDefinedWriter {
+    // Old data following the write is examined this many maximum size blocks at a time.
+    private final static int READ_BLOCKS = 16;
+    private final static byte[] ZEROS = new byte[8192];
+
+    private final ContentDefinedChunker chunker;
+    private final VersionObject.Object vObject;
+    private final BlockObject handler;
+    private final TitanObject.Metadata metadata;
+    private final TitanGuid deleteTokenId;
+    private final long timeToLive;
+    private final ReplicationParameters replicationParams;
+
+    // The data of the block being accumulated, which starts at blockOffset in the file.
+    private final byte[] block;
+    private int blockLength;
+    private int scanned;
+    private long blockOffset;
+
+    private long fileSize;
+    private long writeEnd;
+    // The end of the region of the file divided again, or -1 while still dividing.
+    private long stopOffset;
+
+    private final List<BlockObject.Object.Reference> newBlocks;
+    private final Set<TitanGuid> storedBlocks;
+    private int blocksStored;
+    private int blocksShared;
+
+    public ContentDefinedWriter(ContentDefinedChunker chunker, VersionObject.Object vObject, BlockObject handler,
+            TitanObject.Metadata metadata, TitanGuid deleteTokenId, long timeToLive, ReplicationParameters replicationParams) {
+        this.chunker = chunker;
+        this.vObject = vObject;
+        this.handler = handler;
+        this.metadata = metadata;
+        this.deleteTokenId = deleteTokenId;
+        this.timeToLive = timeToLive;
+        this.replicationParams = replicationParams;
+        this.block = new byte[chunker.getMaximumSize()];
+        this.newBlocks = new LinkedList<BlockObject.Object.Reference>();
+        this.storedBlocks = new HashSet<TitanGuid>();
+    }
+
+    /**
+     * Get the {@link BlockObject.Object.Reference} of the {@link BlockObject} in {@code vObject} containing the given offset,
+     * or {@code null} if there is none.
+     */
+    public static BlockObject.Object.Reference blockContaining(VersionObject.Object vObject, long offset) throws VersionObject.BadManifestException {
+        SortedMap<Long,BlockObject.Object.Reference> extent = vObject.getExtent(offset, offset + 1);
+        if (extent.isEmpty()) {
+            return null;
+        }
+        BlockObject.Object.Reference reference = extent.get(extent.firstKey());
+        if (reference.getFileOffset() <= offset && offset < reference.getFileOffset() + reference.getLength()) {
+            return reference;
+        }
+        return null;
+    }
+
+    /**
+     * Write the data in {@code source}, at the offset in the file given by its start offset, into the {@link VersionObject}.
+     * The {@code VersionObject}'s file size is not changed.
+     */
+    public void write(ExtentBuffer source) throws VersionObject.BadManifestException, IOException, ClassCastException, ClassNotFoundException,
+    TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception {
+        long writeStart = source.getStartOffset();
+        this.writeEnd = writeStart + source.remaining();
+        this.fileSize = this.vObject.getFileSize();
+        this.stopOffset = -1;
+
+        long regionStart = Math.min(writeStart, this.fileSize);
+        if (regionStart > 0) {
+            BlockObject.Object.Reference first = ContentDefinedWriter.blockContaining(this.vObject, (writeStart < this.fileSize) ? writeStart : this.fileSize - 1);
+            if (first != null) {
+                regionStart = first.getFileOffset();
+            }
+        }
+
+        this.chunker.reset();
+        this.blockOffset = regionStart;
+        this.blockLength = 0;
+        this.scanned = 0;
+
+        this.copy(regionStart, Math.min(writeStart, this.fileSize));
+        this.zeros(writeStart - Math.min(writeStart, this.fileSize));
+        ByteBuffer data = source.getByteBuffer().duplicate();
+        this.append(data);
+
+        long readLength = (long) ContentDefinedWriter.READ_BLOCKS * this.chunker.getMaximumSize();
+        for (long offset = this.writeEnd; offset < this.fileSize && this.stopOffset < 0; offset += readLength) {
+            this.copy(offset, Math.min(this.fileSize, offset + readLength));
+        }
+        if (this.stopOffset < 0) {
+            if (this.blockLength > 0) {
+                this.emit(this.blockLength);
+            }
+            this.stopOffset = Math.max(this.fileSize, this.writeEnd);
+        }
+
+        this.vObject.removeBObjects(regionStart, this.stopOffset);
+        for (BlockObject.Object.Reference reference : this.newBlocks) {
+            this.vObject.addBObject(reference);
+        }
+        this.newBlocks.clear();
+    }
+
+    /**
+     * Truncate the data of the {@link VersionObject} to {@code length} bytes.
+     * <p>
+     * Every {@link BlockObject} after {@code length} is removed, and the {@code BlockObject} containing the new end of the file,
+     * if there is one, is replaced by one holding only its data before {@code length}.
+     * The {@code VersionObject}'s file size is not changed.
+     * </p>
+     */
+    public void truncate(long length) throws VersionObject.BadManifestException, IOException, ClassCastException, ClassNotFoundException,
+    TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception {
+        this.writeEnd = length;
+        this.fileSize = length;
+        this.stopOffset = -1;
+
+        // A content-defined BlockObject does not, in general, start at an aligned offset.
+        BlockObject.Object.Reference last = ContentDefinedWriter.blockContaining(this.vObject, length);
+        long regionStart = (last == null) ? length : last.getFileOffset();
+
+        this.chunker.reset();
+        this.blockOffset = regionStart;
+        this.blockLength = 0;
+        this.scanned = 0;
+
+        this.copy(regionStart, length);
+        if (this.blockLength > 0) {
+            this.emit(this.blockLength);
+        }
+
+        this.vObject.truncate(Long.valueOf(regionStart));
+        for (BlockObject.Object.Reference reference : this.newBlocks) {
+            this.vObject.addBObject(reference);
+        }
+        this.newBlocks.clear();
+    }
+
+    /**
+     * Get the number of {@link BlockObject}s stored by this writer.
+     */
+    public int getBlocksStored() {
+        return this.blocksStored;
+    }
+
+    /**
+     * Get the number of {@link BlockObject}s that this writer found already stored and did not store again.
+     */
+    public int getBlocksShared() {
+        return this.blocksShared;
+    }
+
+    //
+    // Append the existing data of the file from fromOffset to toOffset.  Holes are zeros.
+    //
+    private void copy(long fromOffset, long toOffset) throws VersionObject.BadManifestException, ClassCastException, ClassNotFoundException,
+    TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, IOException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception {
+        if (fromOffset >= toOffset) {
+            return;
+        }
+        long position = fromOffset;
+        for (BlockObject.Object.Reference reference : this.vObject.getExtent(fromOffset, toOffset).values()) {
+            long start = Math.max(reference.getFileOffset(), position);
+            long end = Math.min(reference.getFileOffset() + reference.getLength(), toOffset);
+            if (start >= end) {
+                continue;
+            }
+            this.zeros(start - position);
+            if (this.stopOffset >= 0) {
+                return;
+            }
+
+            BlockObject.Object bObject = this.handler.retrieve(reference.getObjectId());
+            this.storedBlocks.add(reference.getObjectId());
+            ExtentBufferMap data = bObject.getDataAsExtentBufferMap(reference.getFileOffset()).intersect(new BufferableExtentImpl(start, (int) (end - start)));
+            long offset = start;
+            for (ExtentBuffer extentBuffer : data.values()) {
+                this.zeros(extentBuffer.getStartOffset() - offset);
+                ByteBuffer buffer = extentBuffer.getByteBuffer().duplicate();
+                buffer.clear();
+                this.append(buffer);
+                offset = extentBuffer.getEndOffset();
+            }
+            this.zeros(end - offset);
+            if (this.stopOffset >= 0) {
+                return;
+            }
+            position = end;
+        }
+        this.zeros(toOffset - position);
+    }
+
+    private void zeros(long length) throws ClassNotFoundException, IOException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, VersionObject.BadManifestException {
+        while (length > 0 && this.stopOffset < 0) {
+            int n = (int) Math.min(length, ContentDefinedWriter.ZEROS.length);
+            this.append(ByteBuffer.wrap(ContentDefinedWriter.ZEROS, 0, n));
+            length -= n;
+        }
+    }
+
+    private void append(ByteBuffer data) throws ClassNotFoundException, IOException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, VersionObject.BadManifestException {
+        while (data.hasRemaining() && this.stopOffset < 0) {
+            int n = Math.min(data.remaining(), this.block.length - this.blockLength);
+            data.get(this.block, this.blockLength, n);
+            this.blockLength += n;
+
+            while (this.stopOffset < 0) {
+                int boundary = this.chunker.next(this.block, this.scanned, this.blockLength);
+                if (boundary < 0) {
+                    this.scanned = this.blockLength;
+                    break;
+                }
+                this.emit(boundary);
+            }
+        }
+    }
+
+    //
+    // Make the first length bytes of the accumulated data a BlockObject.
+    //
+    private void emit(int length) throws ClassNotFoundException, IOException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, VersionObject.BadManifestException {
+        ExtentBufferMap data = new ExtentBufferMap();
+        data.put(new ExtentBuffer(0, ByteBuffer.wrap(Arrays.copyOf(this.block, length))));
+        BlockObject.Object bObject = this.handler.create(new BufferableExtentImpl(0, length), data, this.metadata, this.deleteTokenId, this.timeToLive, this.replicationParams);
+
+        TitanGuid objectId = null;
+        try {
+            objectId = TitanObjectStoreImpl.ObjectId(bObject);
+        } catch (TitanObjectStoreImpl.InvalidObjectIdException e) {
+            // Store it and let the object store decide.
+        }
+        if (objectId != null && (this.storedBlocks.contains(objectId) || this.handler.containsObject(objectId))) {
+            this.blocksShared++;
+        } else {
+            bObject = this.handler.storeObject(bObject);
+            objectId = bObject.getObjectId();
+            this.blocksStored++;
+        }
+        this.storedBlocks.add(objectId);
+        this.newBlocks.add(bObject.makeReference(this.blockOffset, objectId));
+
+        System.arraycopy(this.block, length, this.block, 0, this.blockLength - length);
+        this.blockLength -= length;
+        this.scanned = 0;
+        this.blockOffset += length;
+
+        // Once past the written data, a boundary that is also an existing boundary means the rest of the file is unchanged.
+        if (this.blockOffset >= this.writeEnd && this.blockOffset < this.fileSize) {
+            BlockObject.Object.Reference next = ContentDefinedWriter.blockContaining(this.vObject, this.blockOffset);
+            if (next != null && next.getFileOffset() == this.blockOffset) {
+                this.stopOffset = this.blockOffset;
+            }
+        }
+    }
+}
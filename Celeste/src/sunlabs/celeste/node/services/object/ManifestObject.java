@@ -0,0 +1,77 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import sunlabs.celeste.client.ReplicationParameters;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+import sunlabs.titan.node.object.DeleteableObject;
+import sunlabs.titan.node.object.InspectableObject;
+import sunlabs.titan.node.object.ReplicatableObject;
+import sunlabs.titan.node.object.RetrievableObject;
+import sunlabs.titan.node.object.StorableObject;
+
+/**
+ * <p>
+ * A ManifestObject (MObject) is a BeehiveObject that contains one immutable {@link PagedManifest.Page}
+ * of a {@link VersionObject}'s manifest.
+ * </p>
+ * <p>
+ * The object-id of a ManifestObject is derived from its contents,
+ * so unchanged pages are shared by the successive versions of a file.
+ * </p>
+ * @see VersionObject
+ * @see PagedManifest
+ */
+public interface ManifestObject extends
+        StorableObject.Handler<ManifestObject.Object>,
+        RetrievableObject.Handler<ManifestObject.Object>,
+        InspectableObject.Handler<ManifestObject.Object>,
+        DeleteableObject.Handler<ManifestObject.Object>,
+        ReplicatableObject.Handler<ManifestObject.Object> {
+
+    public static interface Object extends StorableObject.Handler.Object,
+    RetrievableObject.Handler.Object,
+    DeleteableObject.Handler.Object,
+    InspectableObject.Handler.Object,
+    ReplicatableObject.Handler.Object {
+
+        /**
+         * Get the {@link PagedManifest.Page} contained in this {@code ManifestObject}.
+         */
+        public PagedManifest.Page getPage();
+    }
+
+    /**
+     * Create a new {@code ManifestObject} containing the given {@link PagedManifest.Page}.
+     * The replication of the new object is the same as that of the {@link VersionObject} it belongs to.
+     */
+    public ManifestObject.Object create(PagedManifest.Page page, TitanGuid deleteTokenId, long timeToLive, ReplicationParameters replicationParams);
+
+    /**
+     * Get the {@link PagedManifest.Page} contained in the {@code ManifestObject} with the given object-id.
+     */
+    public PagedManifest.Page getPage(TitanGuid objectId) throws ClassCastException, ClassNotFoundException,
+        TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException;
+}
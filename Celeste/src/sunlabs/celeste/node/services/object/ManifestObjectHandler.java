@@ -0,0 +1,318 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+
+import sunlabs.asdf.util.Attributes;
+import sunlabs.asdf.util.ObjectLock;
+import sunlabs.asdf.util.Time;
+import sunlabs.asdf.web.XML.XHTML;
+import sunlabs.asdf.web.http.HTTP;
+import sunlabs.celeste.client.ReplicationParameters;
+import sunlabs.titan.GuidHasher;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanNode;
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.api.TitanObjectStore;
+import sunlabs.titan.node.AbstractTitanObject;
+import sunlabs.titan.node.BeehiveObjectPool;
+import sunlabs.titan.node.TitanMessage;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+import sunlabs.titan.node.object.AbstractObjectHandler;
+import sunlabs.titan.node.object.DeleteableObject;
+import sunlabs.titan.node.object.ReplicatableObject;
+import sunlabs.titan.node.object.RetrievableObject;
+import sunlabs.titan.node.object.StorableObject;
+import sunlabs.titan.node.services.AbstractTitanService;
+import sunlabs.titan.node.services.HTTPMessageService;
+import sunlabs.titan.node.services.api.Publish;
+import sunlabs.titan.node.services.objectstore.PublishDaemon;
+import sunlabs.titan.util.DOLRStatus;
+
+/**
+ * This class embodies all operations involving ManifestObjects.
+ */
+public final class ManifestObjectHandler extends AbstractObjectHandler implements ManifestObject {
+    private final static long serialVersionUID = 1L;
+    private final static String name = AbstractTitanService.makeName(ManifestObjectHandler.class, ManifestObjectHandler.serialVersionUID);
+
+    private final static int replicationStore = 2;
+    private final static int replicationCache = 2;
+
+    /** The maximum number of {@link PagedManifest.Page}s retained in memory by this node. */
+    public final static Attributes.Prototype PageCacheCapacity = new Attributes.Prototype(ManifestObjectHandler.class, "PageCacheCapacity", 1024,
+            "The maximum number of manifest pages retained in memory.");
+
+    /**
+     * A MObject is one page of the manifest of a Celeste file version.
+     */
+    public static class MObject extends AbstractTitanObject implements ManifestObject.Object {
+        private static final long serialVersionUID = 1L;
+
+        private PagedManifest.Page page;
+
+        MObject(PagedManifest.Page page, TitanGuid deleteTokenId, long timeToLive, ReplicationParameters replicationParams) {
+            super(ManifestObjectHandler.class, deleteTokenId, timeToLive);
+            this.page = page;
+            // A manifest page is as necessary to reading the file as the VersionObject that refers to it, so it is replicated in the same way.
+            this.setProperty(TitanObjectStore.METADATA_REPLICATION_STORE,
+                    replicationParams.getAsInteger(VersionObject.Object.REPLICATIONPARAM_STORE, ManifestObjectHandler.replicationStore));
+            this.setProperty(TitanObjectStore.METADATA_REPLICATION_LOWWATER,
+                    replicationParams.getAsInteger(VersionObject.Object.REPLICATIONPARAM_LOWWATER, ManifestObjectHandler.replicationCache));
+        }
+
+        public PagedManifest.Page getPage() {
+            return this.page;
+        }
+
+        @Override
+        public TitanGuid getDataId() {
+            GuidHasher id = new GuidHasher().update(new byte[0]);
+            if (this.page.isLeaf()) {
+                id.update("leaf");
+                for (BlockObject.Object.Reference reference : this.page.getBlocks().values()) {
+                    id.update(reference.getFileOffset()).update(reference.getLength()).update(reference.getObjectId());
+                }
+            } else {
+                id.update("interior");
+                for (Map.Entry<Long,TitanGuid> entry : this.page.getPages().entrySet()) {
+                    id.update(entry.getKey().longValue()).update(entry.getValue());
+                }
+            }
+            return id.getGuid();
+        }
+
+        public XHTML.EFlow inspectAsXHTML(URI uri, Map<String,HTTP.Message> props) {
+            XHTML.Table.Body tbody = new XHTML.Table.Body();
+            if (this.page.isLeaf()) {
+                for (BlockObject.Object.Reference reference : this.page.getBlocks().values()) {
+                    tbody.add(new XHTML.Table.Row(new XHTML.Table.Data(reference.getFileOffset()),
+                            new XHTML.Table.Data(reference.getLength()),
+                            new XHTML.Table.Data(HTTPMessageService.inspectObjectXHTML(reference.getObjectId()))));
+                }
+            } else {
+                for (Map.Entry<Long,TitanGuid> entry : this.page.getPages().entrySet()) {
+                    tbody.add(new XHTML.Table.Row(new XHTML.Table.Data(entry.getKey()),
+                            new XHTML.Table.Data(HTTPMessageService.inspectObjectXHTML(entry.getValue()))));
+                }
+            }
+            XHTML.Table table = new XHTML.Table(new XHTML.Table.Caption(this.page.isLeaf() ? "Block Object Manifest" : "Manifest Pages"), tbody).setClass("Manifest");
+
+            XHTML.Div result = (XHTML.Div) super.toXHTML(uri, props);
+            result.add(new XHTML.Div(table).setClass("section").addClass("ManifestObject"));
+
+            return result;
+        }
+
+        public void delete(TitanGuid profferedDeleteToken, long timeToLive) throws TitanObjectStoreImpl.DeleteTokenException {
+            this.page = PagedManifest.Page.leaf(new TreeMap<Long,BlockObject.Object.Reference>());
+
+            DeleteableObject.ObjectDeleteHelper(this, profferedDeleteToken, timeToLive);
+
+            TitanObjectStoreImpl.CreateSignatureVerifiedObject(this.getObjectId(), this);
+        }
+    }
+
+    //
+    // Pages are immutable and named by their content, so a page fetched once never needs to be fetched again.
+    //
+    private static class PageCache extends LinkedHashMap<TitanGuid,PagedManifest.Page> {
+        private final static long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        PageCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TitanGuid,PagedManifest.Page> eldest) {
+            return this.size() > this.capacity;
+        }
+    }
+
+    // This is a lock signaling that a published object is undergoing the delete process.
+    private final ObjectLock<TitanGuid> publishObjectDeleteLocks;
+
+    // This is a lock signaling that the deleteLocalObject() method is already deleting the specified object.
+    private final ObjectLock<TitanGuid> deleteLocalObjectLocks;
+
+    private final PageCache pageCache;
+
+    public ManifestObjectHandler(TitanNode node) throws JMException {
+        super(node, ManifestObjectHandler.name, "Celeste Manifest Object Handler");
+        this.publishObjectDeleteLocks = new ObjectLock<TitanGuid>();
+        this.deleteLocalObjectLocks = new ObjectLock<TitanGuid>();
+
+        node.getConfiguration().add(ManifestObjectHandler.PageCacheCapacity);
+        this.pageCache = new PageCache(node.getConfiguration().asInt(ManifestObjectHandler.PageCacheCapacity));
+    }
+
+    public ManifestObject.Object create(PagedManifest.Page page, TitanGuid deleteTokenId, long timeToLive, ReplicationParameters replicationParams) {
+        return new MObject(page, deleteTokenId, timeToLive, replicationParams);
+    }
+
+    public PagedManifest.Page getPage(TitanGuid objectId) throws ClassCastException, ClassNotFoundException,
+    TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException {
+        PagedManifest.Page page;
+        synchronized (this.pageCache) {
+            page = this.pageCache.get(objectId);
+        }
+        if (page == null) {
+            page = this.retrieve(objectId).getPage();
+            synchronized (this.pageCache) {
+                this.pageCache.put(objectId, page);
+            }
+        }
+        return page;
+    }
+
+    public Publish.PublishUnpublishResponse storeLocalObject(TitanMessage message, ManifestObject.Object mObject) throws ClassNotFoundException, ClassCastException,
+    TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception,
+    TitanObjectStoreImpl.InvalidObjectIdException, TitanObjectStoreImpl.InvalidObjectException, TitanObjectStoreImpl.Exception {
+        return StorableObject.storeLocalObject(this, mObject, message);
+    }
+
+    public Publish.PublishUnpublishResponse publishObject(TitanMessage message, Publish.PublishUnpublishRequest request) throws ClassNotFoundException, ClassCastException {
+        //
+        // Handle deleted objects.
+        //
+        DeleteableObject.publishObjectHelper(this, request);
+        AbstractObjectHandler.publishObjectBackup(this, request);
+
+        return new PublishDaemon.PublishObject.PublishUnpublishResponseImpl(this.node.getNodeAddress(), new HashSet<TitanGuid>(request.getObjects().keySet()));
+    }
+
+    public Publish.PublishUnpublishResponse unpublishObject(TitanMessage message, Publish.PublishUnpublishRequest request) throws ClassCastException, ClassNotFoundException {
+        if (this.log.isLoggable(Level.FINE)) {
+            this.log.fine("%s", request);
+        }
+        ReplicatableObject.unpublishObjectRootHelper(this, request);
+
+        return new PublishDaemon.PublishObject.PublishUnpublishResponseImpl(this.node.getNodeAddress());
+    }
+
+    public XHTML.EFlow toXHTML(URI uri, Map<String,HTTP.Message> props) {
+        XHTML.Table.Body tbody = new XHTML.Table.Body();
+        synchronized (this.pageCache) {
+            tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Cached Pages"), new XHTML.Table.Data(this.pageCache.size())));
+        }
+        tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Cache Capacity"), new XHTML.Table.Data(this.pageCache.capacity)));
+
+        return new XHTML.Div(new XHTML.Heading.H1(ManifestObjectHandler.name + " " + this.node.getNodeId()),
+                new XHTML.Div(new XHTML.Table(new XHTML.Table.Caption("Page Cache"), tbody)).setClass("section"));
+    }
+
+    public ManifestObject.Object storeObject(ManifestObject.Object mObject) throws IOException, TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassCastException, ClassNotFoundException {
+        StorableObject.storeObject(this, mObject);
+        return mObject;
+    }
+
+    public TitanObject retrieveLocalObject(TitanMessage message, TitanGuid objectId) throws TitanObjectStoreImpl.NotFoundException {
+        return this.node.getObjectStore().get(TitanObject.class, message.subjectId);
+    }
+
+    public ManifestObject.Object retrieve(TitanGuid objectId) throws ClassCastException, ClassNotFoundException, TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException {
+        return RetrievableObject.retrieve(this, ManifestObject.Object.class, objectId);
+    }
+
+    public ReplicatableObject.Replicate.BatchResponse replicateObjects(TitanMessage message, ReplicatableObject.Replicate.BatchRequest request) throws ClassNotFoundException, ClassCastException {
+        return ReplicatableObject.replicateObjectsHelper(this, request);
+    }
+
+    public ReplicatableObject.Replicate.Response replicateObject(TitanMessage message) throws ClassNotFoundException, ClassCastException,
+    TitanObjectStoreImpl.NotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception {
+        try {
+            ReplicatableObject.Replicate.Request request = message.getPayload(ReplicatableObject.Replicate.Request.class, this.node);
+            if (this.log.isLoggable(Level.FINE)) {
+                this.log.fine("replicate %s", request.getObjectId());
+            }
+            ManifestObject.Object mObject = this.retrieve(request.getObjectId());
+
+            Set<TitanNodeId> excludeNodes = new HashSet<TitanNodeId>(request.getExcludedNodes());
+
+            mObject.setProperty(TitanObjectStore.METADATA_SECONDSTOLIVE, mObject.getRemainingSecondsToLive(Time.currentTimeInSeconds()));
+
+            StorableObject.storeObject(this, mObject, 1, excludeNodes, null);
+
+            return new ReplicatableObject.Replicate.Response();
+        } catch (TitanMessage.RemoteException e) {
+            throw new IllegalArgumentException(e.getCause());
+        }
+    }
+
+    public DeleteableObject.Response deleteLocalObject(TitanMessage message, DeleteableObject.Request request) throws ClassNotFoundException,
+    TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.InvalidObjectException,
+    TitanObjectStoreImpl.ObjectExistenceException, TitanObjectStoreImpl.UnacceptableObjectException, TitanObjectStoreImpl.NotFoundException {
+        // If the object is locked here, then we are already in the process of deleting it, so just return.
+        if (this.deleteLocalObjectLocks.trylock(message.subjectId)) {
+            try {
+                if (this.log.isLoggable(Level.FINE)) {
+                    this.log.fine("%s", message.subjectId);
+                }
+                return DeleteableObject.deleteLocalObject(this, request, message);
+            } finally {
+                this.deleteLocalObjectLocks.unlock(message.subjectId);
+            }
+        }
+
+        return new DeleteableObject.Response();
+    }
+
+    public ObjectLock<TitanGuid> getPublishObjectDeleteLocks() {
+        return this.publishObjectDeleteLocks;
+    }
+
+    public DOLRStatus deleteObject(TitanGuid objectId, TitanGuid profferedDeletionToken, long timeToLive) throws TitanObjectStoreImpl.NoSpaceException {
+        synchronized (this.pageCache) {
+            this.pageCache.remove(objectId);
+        }
+        DeleteableObject.Request request = new DeleteableObject.Request(objectId, profferedDeletionToken, timeToLive);
+        TitanMessage reply = this.node.sendToObject(objectId, this.getName(), "deleteLocalObject", request);
+        return reply.getStatus();
+    }
+
+    public TitanObject createAntiObject(DeleteableObject.Handler.Object object, TitanGuid profferedDeleteToken, long timeToLive) throws TitanObjectStoreImpl.NoSpaceException,
+    TitanObjectStoreImpl.DeleteTokenException {
+        ManifestObject.Object mObject = ManifestObject.Object.class.cast(object);
+        synchronized (this.pageCache) {
+            this.pageCache.remove(mObject.getObjectId());
+        }
+        mObject.delete(profferedDeleteToken, timeToLive);
+        return object;
+    }
+}
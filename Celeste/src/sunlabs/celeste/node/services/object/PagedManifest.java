@@ -0,0 +1,590 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.node.BeehiveObjectPool;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+
+/**
+ * A {@link VersionObject} manifest held as a tree of immutable, content-addressed pages.
+ * <p>
+ * Leaf pages map file offsets to {@link BlockObject.Object.Reference}s,
+ * and each interior page maps the least offset in each of its subtrees to the object-id of the subtree's root page.
+ * Changing the manifest loads the pages on the path from the root to the affected leaf and modifies them in memory.
+ * {@link #flush()} then stores each modified page as a new page.
+ * The cost of a change is proportional to the height of the tree rather than to the size of the file,
+ * and the unchanged subtrees are shared with the manifests of earlier versions of the file.
+ * </p>
+ * <p>
+ * Only the object-id of the root page is serialized, and a {@code PagedManifest} with unstored changes cannot be serialized.
+ * Pages are loaded as they are needed from the {@link Pages} set by {@link #setPages(Pages)}.
+ * </p>
+ */
+public class PagedManifest implements Serializable {
+    private final static long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of entries in a page.
+     */
+    public final static int PAGE_CAPACITY = 256;
+
+    /**
+     * A page of a {@code PagedManifest}.
+     * A leaf page contains {@link BlockObject.Object.Reference}s and an interior page contains the object-ids of other pages,
+     * each keyed by the least file offset they cover.
+     */
+    public static class Page implements Serializable {
+        private final static long serialVersionUID = 1L;
+
+        private final SortedMap<Long,BlockObject.Object.Reference> blocks;
+        private final SortedMap<Long,TitanGuid> pages;
+
+        private Page(SortedMap<Long,BlockObject.Object.Reference> blocks, SortedMap<Long,TitanGuid> pages) {
+            this.blocks = blocks;
+            this.pages = pages;
+        }
+
+        public static Page leaf(SortedMap<Long,BlockObject.Object.Reference> blocks) {
+            return new Page(blocks, null);
+        }
+
+        public static Page interior(SortedMap<Long,TitanGuid> pages) {
+            return new Page(null, pages);
+        }
+
+        public boolean isLeaf() {
+            return this.blocks != null;
+        }
+
+        /**
+         * Get the {@link BlockObject.Object.Reference}s of a leaf page, or {@code null} if this is an interior page.
+         */
+        public SortedMap<Long,BlockObject.Object.Reference> getBlocks() {
+            return this.blocks;
+        }
+
+        /**
+         * Get the object-ids of the pages referenced by an interior page, or {@code null} if this is a leaf page.
+         */
+        public SortedMap<Long,TitanGuid> getPages() {
+            return this.pages;
+        }
+
+        public int size() {
+            return this.isLeaf() ? this.blocks.size() : this.pages.size();
+        }
+    }
+
+    /**
+     * The storage for the pages of a {@code PagedManifest}.
+     */
+    public interface Pages {
+        /**
+         * Get the page with the given object-id.
+         *
+         * @throws VersionObject.BadManifestException if the page cannot be retrieved.
+         */
+        public Page get(TitanGuid pageId) throws VersionObject.BadManifestException;
+
+        /**
+         * Store the given page, returning its object-id.
+         */
+        public TitanGuid put(Page page) throws IOException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.DeleteTokenException,
+            TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassNotFoundException;
+    }
+
+    //
+    // A page in memory.  A node that has not been loaded has only its pageId,
+    // and a node that has been modified since it was loaded has no pageId.
+    //
+    // The key of each child of an interior node is less than or equal to every key in the child's subtree,
+    // and greater than every key in the subtrees of the preceding children.
+    //
+    private static class Node {
+        private TitanGuid pageId;
+        private TreeMap<Long,BlockObject.Object.Reference> blocks;
+        private TreeMap<Long,Node> children;
+
+        Node(TitanGuid pageId) {
+            this.pageId = pageId;
+        }
+
+        Node(TreeMap<Long,BlockObject.Object.Reference> blocks, TreeMap<Long,Node> children) {
+            this.pageId = null;
+            this.blocks = blocks;
+            this.children = children;
+        }
+
+        boolean isLoaded() {
+            return this.blocks != null || this.children != null;
+        }
+
+        boolean isLeaf() {
+            return this.blocks != null;
+        }
+
+        int size() {
+            return this.isLeaf() ? this.blocks.size() : this.children.size();
+        }
+
+        Long firstKey() {
+            return this.isLeaf() ? this.blocks.firstKey() : this.children.firstKey();
+        }
+
+        Long lastKey() {
+            return this.isLeaf() ? this.blocks.lastKey() : this.children.lastKey();
+        }
+    }
+
+    private TitanGuid rootId;
+    private transient Node root;
+    private transient Pages pages;
+
+    /**
+     * Construct a new {@code PagedManifest} containing the given {@link BlockObject.Object.Reference}s.
+     * None of its pages are stored until {@link #flush()} is invoked.
+     */
+    public PagedManifest(SortedMap<Long,BlockObject.Object.Reference> blocks) {
+        this.rootId = null;
+        this.root = null;
+
+        List<Node> level = new LinkedList<Node>();
+        TreeMap<Long,BlockObject.Object.Reference> leaf = new TreeMap<Long,BlockObject.Object.Reference>();
+        for (Map.Entry<Long,BlockObject.Object.Reference> entry : blocks.entrySet()) {
+            leaf.put(entry.getKey(), entry.getValue());
+            if (leaf.size() == PagedManifest.PAGE_CAPACITY) {
+                level.add(new Node(leaf, null));
+                leaf = new TreeMap<Long,BlockObject.Object.Reference>();
+            }
+        }
+        if (!leaf.isEmpty()) {
+            level.add(new Node(leaf, null));
+        }
+
+        while (level.size() > 1) {
+            List<Node> parents = new LinkedList<Node>();
+            TreeMap<Long,Node> children = new TreeMap<Long,Node>();
+            for (Node node : level) {
+                children.put(node.firstKey(), node);
+                if (children.size() == PagedManifest.PAGE_CAPACITY) {
+                    parents.add(new Node(null, children));
+                    children = new TreeMap<Long,Node>();
+                }
+            }
+            if (!children.isEmpty()) {
+                parents.add(new Node(null, children));
+            }
+            level = parents;
+        }
+        if (!level.isEmpty()) {
+            this.root = level.get(0);
+        }
+    }
+
+    /**
+     * Set the {@link Pages} from which this manifest loads, and into which it stores, its pages.
+     */
+    public void setPages(Pages pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * Get the object-id of the root page, or {@code null} if the manifest is empty or has changes that have not been stored.
+     */
+    public TitanGuid getRootId() {
+        if (this.root != null) {
+            return this.root.pageId;
+        }
+        return this.rootId;
+    }
+
+    private Node getRoot() {
+        if (this.root == null && this.rootId != null) {
+            this.root = new Node(this.rootId);
+        }
+        return this.root;
+    }
+
+    private void load(Node node) throws VersionObject.BadManifestException {
+        if (node.isLoaded()) {
+            return;
+        }
+        if (this.pages == null) {
+            throw new VersionObject.BadManifestException("No page storage for manifest page %s", node.pageId);
+        }
+        Page page = this.pages.get(node.pageId);
+        if (page.isLeaf()) {
+            node.blocks = new TreeMap<Long,BlockObject.Object.Reference>(page.getBlocks());
+        } else {
+            node.children = new TreeMap<Long,Node>();
+            for (Map.Entry<Long,TitanGuid> entry : page.getPages().entrySet()) {
+                node.children.put(entry.getKey(), new Node(entry.getValue()));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.getRoot() == null;
+    }
+
+    /**
+     * Get the {@link BlockObject.Object.Reference} at exactly the given offset, or {@code null} if there is none.
+     */
+    public BlockObject.Object.Reference get(long offset) throws VersionObject.BadManifestException {
+        Node node = this.getRoot();
+        while (node != null) {
+            this.load(node);
+            if (node.isLeaf()) {
+                return node.blocks.get(offset);
+            }
+            Map.Entry<Long,Node> entry = node.children.floorEntry(offset);
+            node = (entry == null) ? null : entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Get the {@link BlockObject.Object.Reference} with the greatest offset, or {@code null} if the manifest is empty.
+     */
+    public BlockObject.Object.Reference last() throws VersionObject.BadManifestException {
+        Node node = this.getRoot();
+        while (node != null) {
+            this.load(node);
+            if (node.isLeaf()) {
+                return node.blocks.isEmpty() ? null : node.blocks.lastEntry().getValue();
+            }
+            node = node.children.lastEntry().getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Get the {@link BlockObject.Object.Reference} with the greatest offset strictly less than {@code offset},
+     * or {@code null} if there is none.
+     */
+    public BlockObject.Object.Reference lower(long offset) throws VersionObject.BadManifestException {
+        Node node = this.getRoot();
+        return (node == null) ? null : this.lower(node, offset);
+    }
+
+    private BlockObject.Object.Reference lower(Node node, long offset) throws VersionObject.BadManifestException {
+        this.load(node);
+        if (node.isLeaf()) {
+            Map.Entry<Long,BlockObject.Object.Reference> entry = node.blocks.lowerEntry(offset);
+            return (entry == null) ? null : entry.getValue();
+        }
+        // A subtree whose entries have been removed from its beginning can have no entries below offset even though its key is.
+        for (Node child : node.children.headMap(offset, false).descendingMap().values()) {
+            BlockObject.Object.Reference result = this.lower(child, offset);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the {@link BlockObject.Object.Reference}s with offsets from {@code fromOffset}, inclusive, to {@code toOffset}, exclusive.
+     * Only the pages covering that range are loaded.
+     */
+    public SortedMap<Long,BlockObject.Object.Reference> range(long fromOffset, long toOffset) throws VersionObject.BadManifestException {
+        TreeMap<Long,BlockObject.Object.Reference> result = new TreeMap<Long,BlockObject.Object.Reference>();
+        Node node = this.getRoot();
+        if (node != null && fromOffset < toOffset) {
+            this.range(node, fromOffset, toOffset, result);
+        }
+        return result;
+    }
+
+    private void range(Node node, long fromOffset, long toOffset, SortedMap<Long,BlockObject.Object.Reference> result) throws VersionObject.BadManifestException {
+        this.load(node);
+        if (node.isLeaf()) {
+            result.putAll(node.blocks.subMap(fromOffset, toOffset));
+            return;
+        }
+        Long start = node.children.floorKey(fromOffset);
+        if (start == null) {
+            start = node.children.firstKey();
+            if (start >= toOffset) {
+                return;
+            }
+        }
+        for (Node child : node.children.subMap(start, true, toOffset, false).values()) {
+            this.range(child, fromOffset, toOffset, result);
+        }
+    }
+
+    /**
+     * Get all of the {@link BlockObject.Object.Reference}s in this manifest, loading every page.
+     */
+    public SortedMap<Long,BlockObject.Object.Reference> getAll() throws VersionObject.BadManifestException {
+        return this.range(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Get the object-ids of all of the stored pages of this manifest, loading every page.
+     */
+    public List<TitanGuid> getPageIds() throws VersionObject.BadManifestException {
+        List<TitanGuid> result = new LinkedList<TitanGuid>();
+        Node node = this.getRoot();
+        if (node != null) {
+            this.getPageIds(node, result);
+        }
+        return result;
+    }
+
+    private void getPageIds(Node node, List<TitanGuid> result) throws VersionObject.BadManifestException {
+        this.load(node);
+        if (node.pageId != null) {
+            result.add(node.pageId);
+        }
+        if (!node.isLeaf()) {
+            for (Node child : node.children.values()) {
+                this.getPageIds(child, result);
+            }
+        }
+    }
+
+    /**
+     * Add the given {@link BlockObject.Object.Reference}, keyed by its file offset,
+     * replacing any reference already at that offset.
+     */
+    public void put(BlockObject.Object.Reference reference) throws VersionObject.BadManifestException {
+        Long offset = Long.valueOf(reference.getFileOffset());
+        Node node = this.getRoot();
+        if (node == null) {
+            TreeMap<Long,BlockObject.Object.Reference> blocks = new TreeMap<Long,BlockObject.Object.Reference>();
+            blocks.put(offset, reference);
+            this.root = new Node(blocks, null);
+            return;
+        }
+
+        Node sibling = this.put(node, offset, reference);
+        if (sibling != null) {
+            TreeMap<Long,Node> children = new TreeMap<Long,Node>();
+            children.put(node.firstKey(), node);
+            children.put(sibling.firstKey(), sibling);
+            this.root = new Node(null, children);
+        }
+    }
+
+    //
+    // Put the reference into the subtree rooted at node, returning the new
+    // right sibling of node if node had to be split, or null.
+    //
+    private Node put(Node node, Long offset, BlockObject.Object.Reference reference) throws VersionObject.BadManifestException {
+        this.load(node);
+        node.pageId = null;
+        if (node.isLeaf()) {
+            node.blocks.put(offset, reference);
+        } else {
+            Map.Entry<Long,Node> entry = node.children.floorEntry(offset);
+            if (entry == null) {
+                // The offset precedes everything in this subtree, so the first child's key becomes the offset.
+                entry = node.children.firstEntry();
+                node.children.remove(entry.getKey());
+                node.children.put(offset, entry.getValue());
+            }
+            Node sibling = this.put(entry.getValue(), offset, reference);
+            if (sibling != null) {
+                node.children.put(sibling.firstKey(), sibling);
+            }
+        }
+
+        if (node.size() <= PagedManifest.PAGE_CAPACITY) {
+            return null;
+        }
+
+        // Appending to the end of the file leaves full pages behind, otherwise split the page in half.
+        int keep = offset.equals(node.lastKey()) ? PagedManifest.PAGE_CAPACITY : node.size() / 2;
+        Iterator<Long> keys = node.isLeaf() ? node.blocks.keySet().iterator() : node.children.keySet().iterator();
+        for (int i = 0; i < keep; i++) {
+            keys.next();
+        }
+        Long splitKey = keys.next();
+        if (node.isLeaf()) {
+            SortedMap<Long,BlockObject.Object.Reference> tail = node.blocks.tailMap(splitKey);
+            Node sibling = new Node(new TreeMap<Long,BlockObject.Object.Reference>(tail), null);
+            tail.clear();
+            return sibling;
+        }
+        SortedMap<Long,Node> tail = node.children.tailMap(splitKey);
+        Node sibling = new Node(null, new TreeMap<Long,Node>(tail));
+        tail.clear();
+        return sibling;
+    }
+
+    /**
+     * Remove the {@link BlockObject.Object.Reference}s with offsets from {@code fromOffset}, inclusive, to {@code toOffset}, exclusive.
+     */
+    public void remove(long fromOffset, long toOffset) throws VersionObject.BadManifestException {
+        Node node = this.getRoot();
+        if (node == null || fromOffset >= toOffset) {
+            return;
+        }
+        this.remove(node, fromOffset, toOffset);
+        this.setRoot(node);
+    }
+
+    private void remove(Node node, long fromOffset, long toOffset) throws VersionObject.BadManifestException {
+        this.load(node);
+        if (node.isLeaf()) {
+            SortedMap<Long,BlockObject.Object.Reference> range = node.blocks.subMap(fromOffset, toOffset);
+            if (!range.isEmpty()) {
+                range.clear();
+                node.pageId = null;
+            }
+            return;
+        }
+
+        Long start = node.children.floorKey(fromOffset);
+        if (start == null) {
+            start = node.children.firstKey();
+        }
+        // The keys of the children are left as they are, because each remains less than or equal to the keys in its subtree.
+        List<Long> empty = new LinkedList<Long>();
+        for (Map.Entry<Long,Node> entry : node.children.subMap(start, true, toOffset, false).entrySet()) {
+            Node child = entry.getValue();
+            this.remove(child, fromOffset, toOffset);
+            if (child.pageId == null) {
+                node.pageId = null;
+            }
+            if (child.size() == 0) {
+                empty.add(entry.getKey());
+            }
+        }
+        for (Long key : empty) {
+            node.children.remove(key);
+        }
+    }
+
+    /**
+     * Remove all of the {@link BlockObject.Object.Reference}s with offsets greater than or equal to {@code offset}.
+     */
+    public void truncate(long offset) throws VersionObject.BadManifestException {
+        Node node = this.getRoot();
+        if (node == null) {
+            return;
+        }
+        this.truncate(node, offset);
+        this.setRoot(node);
+    }
+
+    private void setRoot(Node node) throws VersionObject.BadManifestException {
+        // Drop the levels of the tree that no longer branch.
+        while (node.size() == 1 && !node.isLeaf()) {
+            node = node.children.firstEntry().getValue();
+            this.load(node);
+        }
+        if (node.size() == 0) {
+            this.root = null;
+            this.rootId = null;
+        } else {
+            this.root = node;
+        }
+    }
+
+    private void truncate(Node node, long offset) throws VersionObject.BadManifestException {
+        this.load(node);
+        if (node.isLeaf()) {
+            SortedMap<Long,BlockObject.Object.Reference> tail = node.blocks.tailMap(offset);
+            if (!tail.isEmpty()) {
+                tail.clear();
+                node.pageId = null;
+            }
+            return;
+        }
+
+        // The subtrees keyed at or beyond the offset are entirely removed, and only the last remaining one can straddle it.
+        SortedMap<Long,Node> tail = node.children.tailMap(offset);
+        if (!tail.isEmpty()) {
+            tail.clear();
+            node.pageId = null;
+        }
+        if (!node.children.isEmpty()) {
+            Map.Entry<Long,Node> last = node.children.lastEntry();
+            Node child = last.getValue();
+            this.truncate(child, offset);
+            if (child.pageId == null) {
+                node.pageId = null;
+            }
+            if (child.size() == 0) {
+                node.children.remove(last.getKey());
+            }
+        }
+    }
+
+    /**
+     * Store every page that has been changed, returning the object-id of the root page,
+     * or {@code null} if the manifest is empty.
+     */
+    public TitanGuid flush() throws IOException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.DeleteTokenException,
+    TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassNotFoundException {
+        if (this.root != null) {
+            this.rootId = this.flush(this.root);
+        }
+        return this.rootId;
+    }
+
+    private TitanGuid flush(Node node) throws IOException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.DeleteTokenException,
+    TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassNotFoundException {
+        if (node.pageId != null) {
+            return node.pageId;
+        }
+        Page page;
+        if (node.isLeaf()) {
+            page = Page.leaf(new TreeMap<Long,BlockObject.Object.Reference>(node.blocks));
+        } else {
+            TreeMap<Long,TitanGuid> children = new TreeMap<Long,TitanGuid>();
+            for (Map.Entry<Long,Node> entry : node.children.entrySet()) {
+                children.put(entry.getKey(), this.flush(entry.getValue()));
+            }
+            page = Page.interior(children);
+        }
+        node.pageId = this.pages.put(page);
+        return node.pageId;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this.root != null) {
+            if (this.root.pageId == null) {
+                throw new NotSerializableException("PagedManifest has changes that have not been stored");
+            }
+            this.rootId = this.root.pageId;
+        }
+        out.defaultWriteObject();
+    }
+}
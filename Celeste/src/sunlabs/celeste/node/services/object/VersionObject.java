@@ -158,9 +158,21 @@ public interface VersionObject extends
          *
          * @param offset
          */
-        public void truncate(Long offset);
+        public void truncate(Long offset) throws VersionObject.BadManifestException;
 
-        public SortedMap<Long,BlockObject.Object.Reference> getBObjectList();
+        /**
+         * Remove the BlockObjects with offsets from {@code fromOffset}, inclusive, to {@code toOffset}, exclusive,
+         * from this VersionObject's list of BlockObjects.
+         */
+        public void removeBObjects(long fromOffset, long toOffset) throws VersionObject.BadManifestException;
+
+        public SortedMap<Long,BlockObject.Object.Reference> getBObjectList() throws VersionObject.BadManifestException;
+
+        /**
+         * Get the object-ids of the {@link ManifestObject}s holding this VersionObject's manifest.
+         * The result is empty if the manifest is small enough to be held in the VersionObject itself.
+         */
+        public List<TitanGuid> getManifestPageIds() throws VersionObject.BadManifestException;
 
         /**
          * Get a {@link SortedMap} containing the set of {@link BlockObject.Object.Reference} keyed by their offset in the file.
@@ -168,7 +180,7 @@ public interface VersionObject extends
          * @param fileStart the starting position in the file
          * @param fileStop the ending position in the file.
          */
-        public SortedMap<Long,BlockObject.Object.Reference> getExtent(long fileStart, long fileStop);
+        public SortedMap<Long,BlockObject.Object.Reference> getExtent(long fileStart, long fileStop) throws VersionObject.BadManifestException;
 
         /**
          * Get a Map of all the BlockObject references the contain data starting at
@@ -187,7 +199,7 @@ public interface VersionObject extends
          * If the added BlockObject extends the file's length beyond the value
          * of fileSize, the fileSize is updated.
          */
-        public void addBObject(BlockObject.Object.Reference newBObject);
+        public void addBObject(BlockObject.Object.Reference newBObject) throws VersionObject.BadManifestException;
 
         /**
          * Get the {@link BlockObject.Object.Reference} to the {@link BlockObject} that contains the specified offset
@@ -195,7 +207,7 @@ public interface VersionObject extends
          *
          * @param offset
          */
-        public BlockObject.Object.Reference getBObjectReference(long offset);
+        public BlockObject.Object.Reference getBObjectReference(long offset) throws VersionObject.BadManifestException;
 
         /**
          * Get the {@link AnchorObject.Object.Version} for this {@link VersionObject}.
@@ -29,6 +29,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +61,7 @@ import sunlabs.titan.api.TitanNodeId;
 import sunlabs.titan.api.TitanObject;
 import sunlabs.titan.node.AbstractTitanObject;
 import sunlabs.titan.node.BeehiveObjectPool;
+import sunlabs.titan.node.TitanNodeImpl;
 import sunlabs.titan.node.TitanObjectStoreImpl;
 import sunlabs.titan.node.TitanObjectStoreImpl.DeletedObjectException;
 import sunlabs.titan.node.TitanMessage;
@@ -113,8 +115,12 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
         private long fileSize;
 
         // Stuff for maintaining the BObjects for this version.
+        // A small manifest is kept in bObjectList.  Once it outgrows a single page it is moved
+        // into pagedManifest, bObjectList is set to null, and the pages are stored as ManifestObjects.
         private TreeMap<Long,BlockObject.Object.Reference> bObjectList;
+        private PagedManifest pagedManifest;
         private BlockObject.Object.Reference lastBObject;
+        private transient PagedManifest.Pages manifestPages;
 
 //        private StorableFragmentedObject.Handler.FragmentMap fragmentHead;
 
@@ -290,12 +296,53 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             return new VersionObjectHandler.VObject.Reference(this.getVersion(), this.getObjectId());
         }
 
-        public SortedMap<Long,BlockObject.Object.Reference> getBObjectList() {
+        /**
+         * Set the {@link PagedManifest.Pages} used to load and store the pages of this VObject's manifest.
+         */
+        public void setManifestPages(PagedManifest.Pages pages) {
+            this.manifestPages = pages;
+            if (this.pagedManifest != null) {
+                this.pagedManifest.setPages(pages);
+            }
+        }
+
+        /**
+         * Store the pages of this VObject's manifest that have changed since it was last stored.
+         */
+        public void flushManifest() throws IOException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.DeleteTokenException,
+        TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassNotFoundException {
+            if (this.pagedManifest != null) {
+                this.pagedManifest.flush();
+            }
+        }
+
+        public SortedMap<Long,BlockObject.Object.Reference> getBObjectList() throws VersionObject.BadManifestException {
+            if (this.pagedManifest != null) {
+                return this.pagedManifest.getAll();
+            }
             return this.bObjectList;
         }
 
-        public SortedMap<Long,BlockObject.Object.Reference> getExtent(long fileStart, long fileStop) {
+        public List<TitanGuid> getManifestPageIds() throws VersionObject.BadManifestException {
+            if (this.pagedManifest != null) {
+                return this.pagedManifest.getPageIds();
+            }
+            return new LinkedList<TitanGuid>();
+        }
+
+        public SortedMap<Long,BlockObject.Object.Reference> getExtent(long fileStart, long fileStop) throws VersionObject.BadManifestException {
             Long startKey = Long.valueOf(fileStart);
+
+            if (this.pagedManifest != null) {
+                BlockObject.Object.Reference reference = this.pagedManifest.lower(fileStart);
+                if (reference != null) {
+                    if (fileStart > reference.getFileOffset() && fileStart < (reference.getFileOffset() + reference.getLength())) {
+                        startKey = reference.getFileOffset();
+                    }
+                }
+                return this.pagedManifest.range(startKey, fileStop);
+            }
+
             SortedMap<Long,BlockObject.Object.Reference> map = this.bObjectList.headMap(startKey);
             if (map == null) {
                 return null;
@@ -352,29 +399,24 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
                 length = (int) (this.getFileSize() - offset);
             }
 
-            Long startKey = Long.valueOf(offset);
-            SortedMap<Long,BlockObject.Object.Reference> map = this.bObjectList.headMap(startKey);
-            if (map == null) {
-                return new Manifest(null, offset, length);
-            }
-
-            if (!map.isEmpty()) {
-                Long lastKey = map.lastKey();
-                BlockObject.Object.Reference reference = map.get(lastKey);
-                if (offset > reference.getFileOffset() && offset < (reference.getFileOffset() + reference.getLength())) {
-                    startKey = lastKey;
-                }
-            }
-
-            long fileStop = offset + length;
-            SortedMap<Long, BlockObject.Object.Reference> result = this.bObjectList.subMap(startKey, Long.valueOf(fileStop));
+            // Only the manifest pages covering the requested range are fetched.
+            SortedMap<Long, BlockObject.Object.Reference> result = this.getExtent(offset, offset + length);
 
             return new Manifest(result, offset, length);
         }
 
-        public synchronized void addBObject(BlockObject.Object.Reference newBObject) {
-            Long fileOffset = Long.valueOf(newBObject.getFileOffset());
-            this.bObjectList.put(fileOffset, newBObject);
+        public synchronized void addBObject(BlockObject.Object.Reference newBObject) throws VersionObject.BadManifestException {
+            if (this.pagedManifest != null) {
+                this.pagedManifest.put(newBObject);
+            } else {
+                Long fileOffset = Long.valueOf(newBObject.getFileOffset());
+                this.bObjectList.put(fileOffset, newBObject);
+                if (this.bObjectList.size() > PagedManifest.PAGE_CAPACITY) {
+                    this.pagedManifest = new PagedManifest(this.bObjectList);
+                    this.pagedManifest.setPages(this.manifestPages);
+                    this.bObjectList = null;
+                }
+            }
 
             if (this.lastBObject == null) {
                 this.lastBObject = newBObject;
@@ -389,9 +431,9 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             }
         }
 
-        public BlockObject.Object.Reference getBObjectReference(long offset) {
+        public BlockObject.Object.Reference getBObjectReference(long offset) throws VersionObject.BadManifestException {
             // If the BlockObject list is empty, then there is obviously no BObject at this offset.
-            if (this.bObjectList == null || this.bObjectList.size() == 0) {
+            if (this.lastBObject == null) {
                 return null;
             }
 
@@ -404,7 +446,7 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             // The BObject list is keyed by the offset in the file of each BlockObject.
             // First, attempt to use the offset as the key.
 
-            BlockObject.Object.Reference reference = this.bObjectList.get(offsetAsLong);
+            BlockObject.Object.Reference reference = this.getBObject(offsetAsLong);
             if (reference != null) {
                 return reference;
             }
@@ -421,7 +463,7 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
 
 //            if (true) {
                 long desiredBObjectOffset = (offset / this.bObjectSize) * this.bObjectSize;
-                reference = this.bObjectList.get(Long.valueOf(desiredBObjectOffset));
+                reference = this.getBObject(Long.valueOf(desiredBObjectOffset));
                 return reference;
 //            } else {
 //
@@ -450,10 +492,17 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
 //            }
         }
 
+        private BlockObject.Object.Reference getBObject(Long offset) throws VersionObject.BadManifestException {
+            if (this.pagedManifest != null) {
+                return this.pagedManifest.get(offset);
+            }
+            return this.bObjectList.get(offset);
+        }
+
         private final static class BObjectIterator implements Iterator<BlockObject.Object.Reference> {
             private Iterator<BlockObject.Object.Reference> iterator;
 
-            public BObjectIterator(TreeMap<Long,BlockObject.Object.Reference> map) {
+            public BObjectIterator(SortedMap<Long,BlockObject.Object.Reference> map) {
                 super();
                 this.iterator = map.values().iterator();
             }
@@ -472,7 +521,11 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
         }
 
         public Iterator<BlockObject.Object.Reference> iterator() {
-            return new VObject.BObjectIterator(this.bObjectList);
+            try {
+                return new VObject.BObjectIterator(this.getBObjectList());
+            } catch (VersionObject.BadManifestException e) {
+                throw new IllegalStateException(e);
+            }
         }
 
         /**
@@ -493,7 +546,22 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             }
         }
 
-        public void truncate(Long offset) {
+        public synchronized void removeBObjects(long fromOffset, long toOffset) throws VersionObject.BadManifestException {
+            if (this.pagedManifest != null) {
+                this.pagedManifest.remove(fromOffset, toOffset);
+                this.lastBObject = this.pagedManifest.last();
+                return;
+            }
+            this.bObjectList.subMap(fromOffset, toOffset).clear();
+            this.lastBObject = this.bObjectList.isEmpty() ? null : this.bObjectList.lastEntry().getValue();
+        }
+
+        public void truncate(Long offset) throws VersionObject.BadManifestException {
+            if (this.pagedManifest != null) {
+                this.pagedManifest.truncate(offset);
+                this.lastBObject = this.pagedManifest.last();
+                return;
+            }
             /*
              * Iterate through
              * XXX This is terrible.  Advance to the first BObject that contains the offset and delete from there.
@@ -651,6 +719,10 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             String nl = "\n";
             StringBuilder result = new StringBuilder("VObject[id=" + this.getObjectId() + ",size=" + this.fileSize + "]").append(nl);
 
+            if (this.pagedManifest != null) {
+                result.append(" manifest ").append(this.pagedManifest.getRootId()).append(nl);
+                return result.toString();
+            }
             for (Long offset : this.bObjectList.keySet()) {
                 BlockObject.Object.Reference bObjectReference = this.bObjectList.get(offset);
                 result.append(" ");
@@ -681,6 +753,10 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             if (this.acl != null) {
             	tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("File Access Control"), new XHTML.Table.Data(this.acl)));            	
             }
+            if (this.pagedManifest != null) {
+                tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Manifest Root Page"),
+                        new XHTML.Table.Data(HTTPMessageService.inspectObjectXHTML(this.pagedManifest.getRootId()))));
+            }
             if (this.previousVObject != null) {
                 tbody.add(new XHTML.Table.Row(new XHTML.Table.Data("Previous Version Object Identifier"),
                         new XHTML.Table.Data(this.previousVObject.toXHTML(uri, props))));            	
@@ -688,7 +764,7 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             XHTML.Table versionObjectProperties = new XHTML.Table(new XHTML.Table.Caption("Parameters"), tbody).setClass("Parameters");
 
             XHTML.Table manifestTable = null;
-            if (!this.bObjectList.isEmpty()) {
+            if (this.bObjectList != null && !this.bObjectList.isEmpty()) {
             	XHTML.Table.Head bObjectTHead = new XHTML.Table.Head(new XHTML.Table.Row(new XHTML.Table.Heading("Offset"),
                         new XHTML.Table.Heading("Length"),
                         new XHTML.Table.Heading("Block Object Identifier")));
@@ -747,11 +823,47 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
     // This is a lock signaling that the deleteLocalObject() method is already deleting the specified object.
     private ObjectLock<TitanGuid> deleteLocalObjectLocks;
 
+    /**
+     * Loads and stores the pages of a {@link VObject}'s manifest as {@link ManifestObject}s
+     * with the same delete-token, time-to-live, and replication parameters as the VObject itself.
+     */
+    private class ManifestPages implements PagedManifest.Pages {
+        private final VersionObject.Object vObject;
+
+        public ManifestPages(VersionObject.Object vObject) {
+            this.vObject = vObject;
+        }
+
+        public PagedManifest.Page get(TitanGuid pageId) throws VersionObject.BadManifestException {
+            ManifestObject mObjectHandler = VersionObjectHandler.this.node.getService(ManifestObjectHandler.class);
+            try {
+                return mObjectHandler.getPage(pageId);
+            } catch (ClassNotFoundException e) {
+                throw new VersionObject.BadManifestException(e);
+            } catch (TitanObjectStoreImpl.NotFoundException e) {
+                throw new VersionObject.BadManifestException(e);
+            } catch (TitanObjectStoreImpl.DeletedObjectException e) {
+                throw new VersionObject.BadManifestException(e);
+            }
+        }
+
+        public TitanGuid put(PagedManifest.Page page) throws IOException, TitanObjectStoreImpl.NoSpaceException, TitanObjectStoreImpl.DeleteTokenException,
+        TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassNotFoundException {
+            ManifestObject mObjectHandler = VersionObjectHandler.this.node.getService(ManifestObjectHandler.class);
+            ManifestObject.Object mObject = mObjectHandler.create(page,
+                    this.vObject.getDeleteTokenId(), this.vObject.getTimeToLive(), this.vObject.getReplicationParameters());
+            mObject = mObjectHandler.storeObject(mObject);
+            return mObject.getObjectId();
+        }
+    }
+
     public VersionObjectHandler(TitanNode node) throws JMException {
         super(node, VersionObjectHandler.name, "Celeste Version Object Handler");
 
         this.publishObjectDeleteLocks = new ObjectLock<TitanGuid>();
         this.deleteLocalObjectLocks = new ObjectLock<TitanGuid>();
+
+        node.getObjectStore().setCacheAdmission(VObject.class, node.getConfiguration().asLong(TitanNodeImpl.ObjectStoreCacheMaximumObjectSize));
     }
 
     public VersionObject.Object create(TitanGuid anchorObjectId,
@@ -759,7 +871,19 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             CreateFileOperation createOperation,
             ClientMetaData clientMetaData,
             Credential.Signature signature) {
-        return new VObject(anchorObjectId, replicationParams, createOperation, clientMetaData, signature);
+        return this.attachManifest(new VObject(anchorObjectId, replicationParams, createOperation, clientMetaData, signature));
+    }
+
+    /**
+     * Arrange for the given {@link VersionObject.Object} to load and store the pages of its manifest through this node.
+     * Every VersionObject obtained other than through {@link #create} or {@link #retrieve} must be passed through this method
+     * before its manifest is used.
+     */
+    public VersionObject.Object attachManifest(VersionObject.Object vObject) {
+        if (vObject instanceof VObject) {
+            ((VObject) vObject).setManifestPages(new ManifestPages(vObject));
+        }
+        return vObject;
     }
 
     public Publish.PublishUnpublishResponse publishObject(TitanMessage message, Publish.PublishUnpublishRequest request) throws ClassCastException, ClassNotFoundException {
@@ -803,12 +927,20 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
 
     public VersionObject.Object storeObject(VersionObject.Object vObject) throws IOException, TitanObjectStoreImpl.NoSpaceException,
       TitanObjectStoreImpl.DeleteTokenException, TitanObjectStoreImpl.UnacceptableObjectException, BeehiveObjectPool.Exception, ClassCastException, ClassNotFoundException {
+        // The changed manifest pages must be stored before the VObject that refers to them.
+        if (vObject instanceof VObject) {
+            ((VObject) vObject).flushManifest();
+        }
         StorableObject.storeObject(this, vObject);
         return vObject;
     }
 
     public TitanObject retrieveLocalObject(TitanMessage message, TitanGuid objectId) throws TitanObjectStoreImpl.NotFoundException {
-        return this.node.getObjectStore().get(TitanObject.class, message.subjectId);
+        return RetrievableObject.retrieveLocalObjectHelper(this, message);
+    }
+
+    public ReplicatableObject.Replicate.BatchResponse replicateObjects(TitanMessage message, ReplicatableObject.Replicate.BatchRequest request) throws ClassNotFoundException, ClassCastException {
+        return ReplicatableObject.replicateObjectsHelper(this, request);
     }
 
     public ReplicatableObject.Replicate.Response replicateObject(TitanMessage message) throws ClassNotFoundException, ClassCastException,
@@ -848,7 +980,7 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
      * @throws RemoteException 
      */
     public VersionObject.Object retrieve(TitanGuid objectId) throws ClassCastException, ClassNotFoundException, TitanObjectStoreImpl.DeletedObjectException, TitanObjectStoreImpl.NotFoundException {
-        return RetrievableObject.retrieve(this, VersionObject.Object.class, objectId);
+        return this.attachManifest(RetrievableObject.retrieve(this, VersionObject.Object.class, objectId));
     }
 
     public Manifest getManifest(TitanGuid objectId, long offset, long length)
@@ -906,18 +1038,27 @@ public final class VersionObjectHandler extends AbstractObjectHandler implements
             this.deleteObject(previousVObjectId, profferedDeleteToken, timeToLive);
         }
 
-        BlockObject bObjectHandler = this.node.getService(BlockObjectHandler.class);
-        for (Long offset : vObject.getBObjectList().keySet()) {
-            BlockObject.Object.Reference reference = vObject.getBObjectReference(offset);
-            try {
-                bObjectHandler.deleteObject(reference.getObjectId(), profferedDeleteToken, timeToLive);
-            } catch (RemoteException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            } catch (ClassNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+        this.attachManifest(vObject);
+        try {
+            BlockObject bObjectHandler = this.node.getService(BlockObjectHandler.class);
+            for (BlockObject.Object.Reference reference : vObject.getBObjectList().values()) {
+                try {
+                    bObjectHandler.deleteObject(reference.getObjectId(), profferedDeleteToken, timeToLive);
+                } catch (RemoteException e) {
+                    // TODO Auto-generated catch block
+                    e.printStackTrace();
+                } catch (ClassNotFoundException e) {
+                    // TODO Auto-generated catch block
+                    e.printStackTrace();
+                }
+            }
+
+            ManifestObjectHandler mObjectHandler = this.node.getService(ManifestObjectHandler.class);
+            for (TitanGuid pageId : vObject.getManifestPageIds()) {
+                mObjectHandler.deleteObject(pageId, profferedDeleteToken, timeToLive);
             }
+        } catch (VersionObject.BadManifestException e) {
+            this.log.warning("%s: incomplete manifest, some objects not deleted: %s", vObject.getObjectId(), e);
         }
 
         // Convert the given object to the deleted form.
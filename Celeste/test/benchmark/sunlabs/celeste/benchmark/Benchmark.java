@@ -0,0 +1,249 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.benchmark;
+
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sunlabs.titan.util.LatencyHistogram;
+
+/**
+ * A single benchmark: an operation repeatedly performed by one or more threads and timed.
+ * <p>
+ * A {@code Benchmark} is run by a {@link Benchmark.Runner} which first performs the operation for a warm-up period,
+ * to give the JIT compiler an opportunity to compile the hot paths, and then for a measurement period during which
+ * the latency of every operation is recorded in a {@link LatencyHistogram}.
+ * The result of each operation is folded into a value that is published at the end of the run,
+ * so that the work done by the operation cannot be discarded as dead code.
+ * </p>
+ * <p>
+ * Timing each operation costs two calls to {@link System#nanoTime()},
+ * which is noticeable only for operations that take less than a microsecond or so.
+ * For such operations the throughput is the more meaningful figure.
+ * </p>
+ */
+public abstract class Benchmark {
+    private final String name;
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Prepare this benchmark to be run.  Invoked once, before the warm-up period.
+     */
+    public void setUp() throws Exception {
+
+    }
+
+    /**
+     * Release anything acquired by {@link #setUp()}.  Invoked once, after the measurement period.
+     */
+    public void tearDown() throws Exception {
+
+    }
+
+    /**
+     * Perform one operation.
+     * <p>
+     * Operations are performed concurrently when the {@link Runner} is configured with more than one thread.
+     * The {@code iteration} number is unique across all of the threads of a run.
+     * </p>
+     * @return a value derived from the work performed, or {@code null}.
+     */
+    public abstract Object operation(long iteration) throws Exception;
+
+    /**
+     * The result of running a {@link Benchmark}.
+     */
+    public static class Result {
+        private final String name;
+        private final int threads;
+        private final long elapsedNanoseconds;
+        private final LatencyHistogram latency;
+        private final long errors;
+        private final Throwable firstError;
+
+        public Result(String name, int threads, long elapsedNanoseconds, LatencyHistogram latency, long errors, Throwable firstError) {
+            this.name = name;
+            this.threads = threads;
+            this.elapsedNanoseconds = elapsedNanoseconds;
+            this.latency = latency;
+            this.errors = errors;
+            this.firstError = firstError;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getThreads() {
+            return this.threads;
+        }
+
+        public long getOperations() {
+            return this.latency.getCount();
+        }
+
+        /**
+         * Get the number of operations completed per second during the measurement period.
+         */
+        public double getThroughput() {
+            return this.elapsedNanoseconds == 0 ? 0 : this.latency.getCount() * 1000000000.0 / this.elapsedNanoseconds;
+        }
+
+        public LatencyHistogram getLatency() {
+            return this.latency;
+        }
+
+        public long getErrors() {
+            return this.errors;
+        }
+
+        public Throwable getFirstError() {
+            return this.firstError;
+        }
+
+        public static void printHeader(PrintStream out) {
+            out.printf("%-40s %7s %12s %14s %10s %10s %10s %10s %10s %7s%n",
+                    "Benchmark", "Threads", "Operations", "ops/s", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)", "Errors");
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%-40s %7d %12d %14.1f %10.2f %10.2f %10.2f %10.2f %10.2f %7d%n",
+                    this.name, this.threads, this.getOperations(), this.getThroughput(),
+                    this.latency.getMean() * 1000, this.latency.getMedian() * 1000, this.latency.get90thPercentile() * 1000,
+                    this.latency.get99thPercentile() * 1000, this.latency.getMax() * 1000, this.errors);
+            if (this.firstError != null) {
+                out.printf("    first error: %s%n", this.firstError);
+            }
+        }
+    }
+
+    /**
+     * Run {@link Benchmark}s for a fixed warm-up and measurement period with a fixed number of threads.
+     */
+    public static class Runner {
+        private final long warmupMillis;
+        private final long measureMillis;
+        private final int threads;
+
+        /** Published so that the results of the operations are not optimised away. */
+        public volatile int sink;
+
+        public Runner(long warmupMillis, long measureMillis, int threads) {
+            this.warmupMillis = warmupMillis;
+            this.measureMillis = measureMillis;
+            this.threads = threads;
+        }
+
+        private class Worker implements Runnable {
+            private final Benchmark benchmark;
+            private final AtomicLong iterations;
+            private final CountDownLatch start;
+            private final CountDownLatch done;
+            private final long measureStart;
+            private final long measureEnd;
+            private final LatencyHistogram latency;
+            private final AtomicLong errors;
+            private final AtomicReference<Throwable> firstError;
+
+            Worker(Benchmark benchmark, AtomicLong iterations, CountDownLatch start, CountDownLatch done, long measureStart, long measureEnd,
+                    LatencyHistogram latency, AtomicLong errors, AtomicReference<Throwable> firstError) {
+                this.benchmark = benchmark;
+                this.iterations = iterations;
+                this.start = start;
+                this.done = done;
+                this.measureStart = measureStart;
+                this.measureEnd = measureEnd;
+                this.latency = latency;
+                this.errors = errors;
+                this.firstError = firstError;
+            }
+
+            public void run() {
+                int fold = 0;
+                try {
+                    this.start.await();
+                    long now = System.nanoTime();
+                    while (now < this.measureEnd) {
+                        boolean measuring = now >= this.measureStart;
+                        try {
+                            Object result = this.benchmark.operation(this.iterations.getAndIncrement());
+                            if (result != null) {
+                                fold ^= result.hashCode();
+                            }
+                            now = measuring ? this.latency.recordSince(now) : System.nanoTime();
+                        } catch (Exception e) {
+                            now = System.nanoTime();
+                            if (measuring) {
+                                this.errors.incrementAndGet();
+                                this.firstError.compareAndSet(null, e);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    Runner.this.sink ^= fold;
+                    this.done.countDown();
+                }
+            }
+        }
+
+        public Result run(Benchmark benchmark) throws Exception {
+            benchmark.setUp();
+            try {
+                LatencyHistogram latency = new LatencyHistogram(benchmark.getName());
+                AtomicLong iterations = new AtomicLong();
+                AtomicLong errors = new AtomicLong();
+                AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(this.threads);
+
+                long measureStart = System.nanoTime() + this.warmupMillis * 1000000L;
+                long measureEnd = measureStart + this.measureMillis * 1000000L;
+
+                for (int i = 0; i < this.threads; i++) {
+                    Thread thread = new Thread(new Worker(benchmark, iterations, start, done, measureStart, measureEnd, latency, errors, firstError));
+                    thread.setName(String.format("%s-%d", benchmark.getName(), i));
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                start.countDown();
+                done.await();
+
+                return new Result(benchmark.getName(), this.threads, measureEnd - measureStart, latency, errors.get(), firstError.get());
+            } finally {
+                benchmark.tearDown();
+            }
+        }
+    }
+}
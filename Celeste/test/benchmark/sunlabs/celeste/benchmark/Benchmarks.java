@@ -0,0 +1,141 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import sunlabs.asdf.util.Time;
+import sunlabs.titan.util.OrderedProperties;
+
+/**
+ * Start a {@link LocalCluster} and run the {@link GuidBenchmarks}, {@link NodeBenchmarks} and {@link CelesteBenchmarks} against it.
+ * <p>
+ * Command line options are:
+ * </p>
+ * <table>
+ * <tr><td>--nodes &lt;number&gt;</td><td>The number of nodes in the cluster.</td><td>(3)</td></tr>
+ * <tr><td>--threads &lt;number&gt;[,&lt;number&gt;...]</td><td>The number of threads to run each benchmark with.</td><td>(1)</td></tr>
+ * <tr><td>--warmup &lt;seconds&gt;</td><td>The warm-up period of each benchmark.</td><td>(5)</td></tr>
+ * <tr><td>--time &lt;seconds&gt;</td><td>The measurement period of each benchmark.</td><td>(10)</td></tr>
+ * <tr><td>--size &lt;bytes&gt;</td><td>The size of payloads, writes, and objects.</td><td>(4096)</td></tr>
+ * <tr><td>--replication &lt;parameters&gt;</td><td>The replication parameters of the files created.</td><td>(see {@link #defaultReplicationParams(int)})</td></tr>
+ * <tr><td>-D&lt;name&gt;=&lt;value&gt;</td><td>A configuration property for every node.</td><td></td></tr>
+ * <tr><td>&lt;regular expression&gt;</td><td>Run only the benchmarks whose names match.</td><td>(all)</td></tr>
+ * </table>
+ */
+public class Benchmarks {
+
+    /**
+     * Get replication parameters that a cluster of {@code nNodes} nodes can satisfy.
+     * An {@code AObjectVersionMap} with parameters {@code f,b} requires {@code 3f + 2b + 1} nodes.
+     */
+    public static String defaultReplicationParams(int nNodes) {
+        int store = Math.min(2, nNodes);
+        String versionMap = nNodes >= 6 ? "1,1" : (nNodes >= 4 ? "1,0" : "0,0");
+        return String.format("AObject.Replication.Store=%d;VObject.Replication.Store=%d;BObject.Replication.Store=%d;Credential.Replication.Store=%d;AObjectVersionMap.Params=%s",
+                store, store, store, store, versionMap);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nNodes = 3;
+        int[] threads = { 1 };
+        long warmupSeconds = 5;
+        long measureSeconds = 10;
+        int size = 4096;
+        String replicationParams = null;
+        OrderedProperties properties = new OrderedProperties();
+        Pattern pattern = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--nodes")) {
+                nNodes = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                String[] tokens = args[++i].split(",");
+                threads = new int[tokens.length];
+                for (int t = 0; t < tokens.length; t++) {
+                    threads[t] = Integer.parseInt(tokens[t]);
+                }
+            } else if (args[i].equals("--warmup")) {
+                warmupSeconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--time")) {
+                measureSeconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--size")) {
+                size = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--replication")) {
+                replicationParams = args[++i];
+            } else if (args[i].startsWith("-D")) {
+                String[] tokens = args[i].substring(2).split("=", 2);
+                if (tokens.length == 2) {
+                    properties.setProperty(tokens[0], tokens[1]);
+                }
+            } else if (args[i].equals("--help")) {
+                System.out.println("Usage: defaults are in parenthesis.");
+                System.out.printf(" [--nodes <integer>] (%d)%n", nNodes);
+                System.out.printf(" [--threads <integer>[,<integer>...]] (1)%n");
+                System.out.printf(" [--warmup <seconds>] (%d)%n", warmupSeconds);
+                System.out.printf(" [--time <seconds>] (%d)%n", measureSeconds);
+                System.out.printf(" [--size <bytes>] (%d)%n", size);
+                System.out.printf(" [--replication <parameters>] (%s)%n", Benchmarks.defaultReplicationParams(nNodes));
+                System.out.printf(" [-D<name>=<value>]%n");
+                System.out.printf(" [<regular expression>]%n");
+                System.exit(0);
+            } else {
+                pattern = Pattern.compile(args[i]);
+            }
+        }
+
+        if (replicationParams == null) {
+            replicationParams = Benchmarks.defaultReplicationParams(nNodes);
+        }
+
+        LocalCluster cluster = new LocalCluster(nNodes, properties);
+        try {
+            long startTime = System.currentTimeMillis();
+            cluster.start(Time.secondsInMilliseconds(30));
+            System.out.printf("%s %d nodes started in %d ms in %s%n",
+                    Time.ISO8601(System.currentTimeMillis()), cluster.size(), System.currentTimeMillis() - startTime, cluster.getRootDirectory());
+
+            List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+            benchmarks.addAll(GuidBenchmarks.all());
+            benchmarks.addAll(NodeBenchmarks.all(cluster.getNode(0), size));
+            benchmarks.addAll(new CelesteBenchmarks(cluster, replicationParams, Time.secondsInMilliseconds(60)).all(size));
+
+            Benchmark.Result.printHeader(System.out);
+            for (Benchmark benchmark : benchmarks) {
+                if (pattern != null && !pattern.matcher(benchmark.getName()).find()) {
+                    continue;
+                }
+                for (int t : threads) {
+                    Benchmark.Runner runner = new Benchmark.Runner(Time.secondsInMilliseconds(warmupSeconds), Time.secondsInMilliseconds(measureSeconds), t);
+                    runner.run(benchmark).print(System.out);
+                }
+            }
+        } finally {
+            cluster.stop();
+        }
+        System.exit(0);
+    }
+}
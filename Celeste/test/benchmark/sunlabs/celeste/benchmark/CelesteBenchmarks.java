@@ -0,0 +1,320 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sunlabs.asdf.util.Time;
+import sunlabs.celeste.FileIdentifier;
+import sunlabs.celeste.api.CelesteAPI;
+import sunlabs.celeste.client.CelesteProxy;
+import sunlabs.celeste.client.ClientMetaData;
+import sunlabs.celeste.client.Profile_;
+import sunlabs.celeste.client.operation.CreateFileOperation;
+import sunlabs.celeste.client.operation.NewCredentialOperation;
+import sunlabs.celeste.client.operation.NewNameSpaceOperation;
+import sunlabs.celeste.client.operation.ReadFileOperation;
+import sunlabs.celeste.client.operation.WriteFileOperation;
+import sunlabs.celeste.node.CelesteNode;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.Credential;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+import sunlabs.titan.node.services.census.CensusService;
+
+/**
+ * Benchmarks of the {@link CelesteAPI} operations performed by clients of a {@link LocalCluster}.
+ * <p>
+ * Each thread of a benchmark uses its own {@link CelesteProxy}, and the threads are spread across the nodes of the cluster.
+ * All of the benchmarks share a single credential and name space, created by {@link #CelesteBenchmarks(LocalCluster, String, long)}.
+ * </p>
+ */
+public class CelesteBenchmarks {
+    private final static char[] PASSWORD = "passphrase".toCharArray();
+    private final static int BLOCK_OBJECT_SIZE = 8*1024*1024;
+
+    private final LocalCluster cluster;
+    private final String replicationParams;
+    private final long timeoutMillis;
+    private final Profile_ credential;
+    private final TitanGuid nameSpaceId;
+    /** Distinguishes the files created by this instance from those created by any other. */
+    private final String nonce;
+
+    /**
+     * Create the credential and name space used by the benchmarks.
+     *
+     * @param cluster the cluster to use.
+     * @param replicationParams the replication parameters of the credential, name space, and files.
+     * @param timeoutMillis the time-out of each operation.
+     */
+    public CelesteBenchmarks(LocalCluster cluster, String replicationParams, long timeoutMillis) throws Exception {
+        this.cluster = cluster;
+        this.replicationParams = replicationParams;
+        this.timeoutMillis = timeoutMillis;
+        this.nonce = Long.toHexString(System.currentTimeMillis());
+
+        CelesteProxy proxy = cluster.newProxy(0, timeoutMillis);
+        try {
+            this.credential = new Profile_("benchmark-" + this.nonce, PASSWORD);
+            NewCredentialOperation newCredential = new NewCredentialOperation(this.credential.getObjectId(), TitanGuidImpl.ZERO, replicationParams);
+            proxy.newCredential(newCredential, this.credential.sign(PASSWORD, newCredential.getId()), this.credential);
+
+            Profile_ nameSpace = new Profile_("benchmark-ns-" + this.nonce, PASSWORD);
+            NewNameSpaceOperation newNameSpace = new NewNameSpaceOperation(nameSpace.getObjectId(), TitanGuidImpl.ZERO, replicationParams);
+            proxy.newNameSpace(newNameSpace, nameSpace.sign(PASSWORD, newNameSpace.getId()), nameSpace);
+            this.nameSpaceId = nameSpace.getObjectId();
+        } finally {
+            proxy.close();
+        }
+    }
+
+    /**
+     * A {@link Benchmark} that gives each of its threads its own {@link CelesteProxy}.
+     */
+    private abstract class ClientBenchmark extends Benchmark {
+        private final AtomicInteger nextNode;
+        private final List<CelesteProxy> proxies;
+        private final ThreadLocal<CelesteProxy> proxy;
+
+        protected ClientBenchmark(String name) {
+            super(name);
+            this.nextNode = new AtomicInteger();
+            this.proxies = new ArrayList<CelesteProxy>();
+            this.proxy = new ThreadLocal<CelesteProxy>();
+        }
+
+        protected CelesteAPI getProxy() throws Exception {
+            CelesteProxy proxy = this.proxy.get();
+            if (proxy == null) {
+                int index = this.nextNode.getAndIncrement() % CelesteBenchmarks.this.cluster.size();
+                proxy = CelesteBenchmarks.this.cluster.newProxy(index, CelesteBenchmarks.this.timeoutMillis);
+                synchronized (this.proxies) {
+                    this.proxies.add(proxy);
+                }
+                this.proxy.set(proxy);
+            }
+            return proxy;
+        }
+
+        @Override
+        public void tearDown() {
+            synchronized (this.proxies) {
+                for (CelesteProxy proxy : this.proxies) {
+                    proxy.close();
+                }
+                this.proxies.clear();
+            }
+        }
+    }
+
+    private FileIdentifier fileIdentifier(String name, long index) {
+        return new FileIdentifier(this.nameSpaceId, new TitanGuidImpl((this.nonce + "/" + name + "/" + index).getBytes()));
+    }
+
+    private void createFile(CelesteAPI proxy, FileIdentifier file) throws Exception {
+        ClientMetaData clientMetaData = new ClientMetaData();
+        CreateFileOperation operation = new CreateFileOperation(this.credential.getObjectId(),
+                file,
+                this.credential.getObjectId().add(file.getFileId()),
+                Time.minutesInSeconds(60),
+                BLOCK_OBJECT_SIZE,
+                this.replicationParams,
+                clientMetaData,
+                this.credential.getObjectId(),
+                CreateFileOperation.defaultGroupId,
+                CreateFileOperation.defaultAccessControl,
+                false);
+        proxy.createFile(operation, this.credential.sign(PASSWORD, operation.getId(), clientMetaData.getId()));
+    }
+
+    private Object writeFile(CelesteAPI proxy, FileIdentifier file, ByteBuffer data) throws Exception {
+        ClientMetaData clientMetaData = new ClientMetaData();
+        WriteFileOperation operation = new WriteFileOperation(file, this.credential.getObjectId(), null, clientMetaData, 0L, data.remaining());
+        return proxy.writeFile(operation, this.credential.sign(PASSWORD, operation.getId(), clientMetaData.getId()), data);
+    }
+
+    /**
+     * Create a new, empty file.
+     */
+    public class CreateFile extends ClientBenchmark {
+        /** The number of times this benchmark has been run, to keep the files created by each run distinct. */
+        private int runs;
+
+        public CreateFile() {
+            super("CelesteAPI.createFile");
+            this.runs = 0;
+        }
+
+        @Override
+        public void setUp() {
+            this.runs++;
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            CelesteBenchmarks.this.createFile(this.getProxy(), CelesteBenchmarks.this.fileIdentifier(this.getName() + "/" + this.runs, iteration));
+            return null;
+        }
+    }
+
+    /**
+     * Write the first {@code size} bytes of one of a fixed set of files.
+     */
+    public class WriteFile extends ClientBenchmark {
+        private final int size;
+        private final int nFiles;
+        private boolean created;
+
+        public WriteFile(int size, int nFiles) {
+            this("CelesteAPI.writeFile", size, nFiles);
+        }
+
+        protected WriteFile(String name, int size, int nFiles) {
+            super(name);
+            this.size = size;
+            this.nFiles = nFiles;
+            this.created = false;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            if (this.created) {
+                return;
+            }
+            this.created = true;
+            CelesteAPI proxy = this.getProxy();
+            for (int i = 0; i < this.nFiles; i++) {
+                CelesteBenchmarks.this.createFile(proxy, CelesteBenchmarks.this.fileIdentifier(this.getName(), i));
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            FileIdentifier file = CelesteBenchmarks.this.fileIdentifier(this.getName(), iteration % this.nFiles);
+            return CelesteBenchmarks.this.writeFile(this.getProxy(), file, ByteBuffer.allocate(this.size));
+        }
+    }
+
+    /**
+     * {@link WriteFile} while the object store of the last node of the cluster is slowed by a {@link TitanObjectStoreImpl.PutHook} that delays each put.
+     * <p>
+     * When the {@link CensusService#SelectPolicy} is {@code Load}, the latency of this benchmark should be close to that of {@link WriteFile}
+     * once the Census reports from the slow node reflect the delay, which takes a few Census report intervals.
+     * So run it with a warm-up period of several {@link CensusService#ReportRateSeconds}, or with a shorter report rate,
+     * and compare the result with that of running it with the {@code Random} policy.
+     * </p>
+     */
+    public class WriteFileSlowNode extends WriteFile {
+        private final long delayMillis;
+
+        public WriteFileSlowNode(int size, int nFiles, long delayMillis) {
+            super("CelesteAPI.writeFile.slowNode", size, nFiles);
+            this.delayMillis = delayMillis;
+        }
+
+        private TitanObjectStoreImpl getSlowObjectStore() {
+            CelesteNode node = CelesteBenchmarks.this.cluster.getNode(CelesteBenchmarks.this.cluster.size() - 1);
+            return (TitanObjectStoreImpl) node.getObjectStore();
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            super.setUp();
+            final long delayMillis = this.delayMillis;
+            this.getSlowObjectStore().setPutHook(new TitanObjectStoreImpl.PutHook() {
+                public void afterPut(TitanGuid objectId) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void tearDown() {
+            this.getSlowObjectStore().setPutHook(null);
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Read the whole of one of a fixed set of files, each {@code size} bytes long.
+     */
+    public class ReadFile extends ClientBenchmark {
+        private final int size;
+        private final int nFiles;
+        private boolean created;
+
+        public ReadFile(int size, int nFiles) {
+            super("CelesteAPI.readFile");
+            this.size = size;
+            this.nFiles = nFiles;
+            this.created = false;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            if (this.created) {
+                return;
+            }
+            this.created = true;
+            CelesteAPI proxy = this.getProxy();
+            for (int i = 0; i < this.nFiles; i++) {
+                FileIdentifier file = CelesteBenchmarks.this.fileIdentifier(this.getName(), i);
+                CelesteBenchmarks.this.createFile(proxy, file);
+                CelesteBenchmarks.this.writeFile(proxy, file, ByteBuffer.allocate(this.size));
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            FileIdentifier file = CelesteBenchmarks.this.fileIdentifier(this.getName(), iteration % this.nFiles);
+            ReadFileOperation operation = new ReadFileOperation(file, CelesteBenchmarks.this.credential.getObjectId(), 0L, -1);
+            return this.getProxy().readFile(operation, CelesteBenchmarks.this.credential.sign(PASSWORD, operation.getId()));
+        }
+    }
+
+    /**
+     * Get every {@link CelesteAPI} benchmark.
+     *
+     * @param size the number of bytes written or read by each operation.
+     */
+    public List<Benchmark> all(int size) {
+        List<Benchmark> result = new ArrayList<Benchmark>();
+        result.add(new CreateFile());
+        result.add(new WriteFile(size, 64));
+        // Slowing one node makes a difference only if there are other nodes to choose from.
+        if (this.cluster.size() > 2) {
+            result.add(new WriteFileSlowNode(size, 64, 100));
+        }
+        result.add(new ReadFile(size, 64));
+        return result;
+    }
+}
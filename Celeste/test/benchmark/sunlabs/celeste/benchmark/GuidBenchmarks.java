@@ -0,0 +1,219 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import sunlabs.titan.GuidHasher;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+
+/**
+ * Benchmarks of the {@link TitanGuid} operations performed for every message and routing decision.
+ * <p>
+ * The identifiers compared share prefixes of varying length, as the identifiers compared while routing do.
+ * </p>
+ */
+public class GuidBenchmarks {
+    private final static long SEED = 0x5EEDL;
+    private final static int N = 1024;
+
+    private abstract static class GuidBenchmark extends Benchmark {
+        protected final TitanGuid[] a;
+        protected final TitanGuid[] b;
+
+        protected GuidBenchmark(String name) {
+            super(name);
+            this.a = new TitanGuid[N];
+            this.b = new TitanGuid[N];
+            Random random = new Random(SEED);
+            for (int i = 0; i < N; i++) {
+                byte[] bytes = new byte[32];
+                random.nextBytes(bytes);
+                this.a[i] = new TitanGuidImpl(bytes);
+                random.nextBytes(bytes);
+                String other = new TitanGuidImpl(bytes).toString();
+                int shared = random.nextInt(8);
+                this.b[i] = new TitanGuidImpl(this.a[i].toString().substring(0, shared) + other.substring(shared));
+            }
+        }
+    }
+
+    public static class Distance extends GuidBenchmark {
+        public Distance() {
+            super("TitanGuid.distance");
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            int i = (int) (iteration % N);
+            return this.a[i].distance(this.b[i]);
+        }
+    }
+
+    public static class SharedPrefix extends GuidBenchmark {
+        public SharedPrefix() {
+            super("TitanGuid.sharedPrefix");
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            int i = (int) (iteration % N);
+            return this.a[i].sharedPrefix(this.b[i]);
+        }
+    }
+
+    public static class CompareTo extends GuidBenchmark {
+        public CompareTo() {
+            super("TitanGuid.compareTo");
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            int i = (int) (iteration % N);
+            return this.a[i].compareTo(this.b[i]);
+        }
+    }
+
+    /**
+     * Look up a copy of an identifier in a {@link HashMap}, exercising {@code hashCode} and {@code equals}.
+     */
+    public static class MapGet extends GuidBenchmark {
+        private final Map<TitanGuid,TitanGuid> map;
+        private final TitanGuid[] keys;
+
+        public MapGet() {
+            super("TitanGuid.hashMapGet");
+            this.map = new HashMap<TitanGuid,TitanGuid>();
+            this.keys = new TitanGuid[N];
+            for (int i = 0; i < N; i++) {
+                this.map.put(this.a[i], this.b[i]);
+                this.keys[i] = new TitanGuidImpl(this.a[i]);
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            return this.map.get(this.keys[(int) (iteration % N)]);
+        }
+    }
+
+    public static class ToString extends GuidBenchmark {
+        public ToString() {
+            super("TitanGuid.toString");
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            return this.a[(int) (iteration % N)].toString();
+        }
+    }
+
+    public static class Parse extends GuidBenchmark {
+        private final String[] strings;
+
+        public Parse() {
+            super("TitanGuid.parse");
+            this.strings = new String[N];
+            for (int i = 0; i < N; i++) {
+                this.strings[i] = this.a[i].toString();
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            return new TitanGuidImpl(this.strings[(int) (iteration % N)]);
+        }
+    }
+
+    /**
+     * Hash a short name, as is done to make the object-id of a profile or a service.
+     */
+    public static class Hash extends Benchmark {
+        private final byte[] data;
+
+        public Hash() {
+            super("TitanGuid.hash");
+            this.data = "sunlabs.celeste.node.services.object.BlockObjectHandler".getBytes();
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            return new TitanGuidImpl(this.data);
+        }
+    }
+
+    /**
+     * Compute an identifier from a sequence of small values by a chain of {@link TitanGuid#add(long)} invocations, or with a {@link GuidHasher}.
+     */
+    public static class Combine extends Benchmark {
+        private final static int VALUES = 64;
+        private final boolean useHasher;
+        private final ByteBuffer data;
+
+        public Combine(boolean useHasher) {
+            super(useHasher ? "GuidHasher.update" : "TitanGuid.add");
+            this.useHasher = useHasher;
+            this.data = ByteBuffer.wrap(new byte[16]);
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            if (this.useHasher) {
+                GuidHasher hasher = new GuidHasher().update(new byte[0]);
+                for (int i = 0; i < VALUES; i++) {
+                    hasher.update(iteration + i).update(this.data);
+                }
+                return hasher.getGuid();
+            }
+            TitanGuid id = new TitanGuidImpl(new byte[0]);
+            for (int i = 0; i < VALUES; i++) {
+                id = id.add(iteration + i).add(this.data.duplicate());
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Get every {@link TitanGuid} benchmark.
+     */
+    public static List<Benchmark> all() {
+        List<Benchmark> result = new ArrayList<Benchmark>();
+        result.add(new Distance());
+        result.add(new SharedPrefix());
+        result.add(new CompareTo());
+        result.add(new MapGet());
+        result.add(new ToString());
+        result.add(new Parse());
+        result.add(new Hash());
+        result.add(new Combine(false));
+        result.add(new Combine(true));
+        return result;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import sunlabs.asdf.util.AbstractStoredMap;
+import sunlabs.asdf.util.Time;
+import sunlabs.celeste.client.CelesteProxy;
+import sunlabs.celeste.node.CelesteNode;
+import sunlabs.celeste.node.services.CelesteClientDaemon;
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.node.TitanMessage;
+import sunlabs.titan.node.TitanNodeImpl;
+import sunlabs.titan.node.TitanNodeImpl.ConfigurationException;
+import sunlabs.titan.node.services.Census;
+import sunlabs.titan.node.services.HTTPMessageService;
+import sunlabs.titan.node.services.census.CensusService;
+import sunlabs.titan.util.OrderedProperties;
+
+/**
+ * A Celeste system of one or more {@link CelesteNode} instances running in this JVM.
+ * <p>
+ * Every node listens only on the loopback interface on ports chosen by the operating system,
+ * and keeps its spool directory beneath a temporary directory that is removed when the cluster is stopped.
+ * The first node is the gateway for the others.
+ * Consequently a cluster can be started and measured repeatedly on a single machine without any configuration
+ * and without interfering with any other Celeste nodes running on the same machine.
+ * </p>
+ * <p>
+ * Configuration properties given to the constructor are applied to every node and override the defaults set here.
+ * </p>
+ */
+public class LocalCluster {
+    private final static String LOOPBACK = "127.0.0.1";
+
+    private final int nNodes;
+    private final OrderedProperties properties;
+    private final File rootDirectory;
+    private final List<CelesteNode> nodes;
+    private final List<Thread> threads;
+
+    /**
+     * Create, but do not start, a cluster of {@code nNodes} nodes.
+     *
+     * @param nNodes the number of nodes in the cluster.
+     * @param properties configuration properties applied to every node, or {@code null}.
+     */
+    public LocalCluster(int nNodes, Map<Object,Object> properties) throws IOException {
+        if (nNodes < 1) {
+            throw new IllegalArgumentException("A cluster must have at least one node");
+        }
+        this.nNodes = nNodes;
+
+        this.rootDirectory = File.createTempFile("celeste-cluster-", "");
+        if (!this.rootDirectory.delete() || !this.rootDirectory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + this.rootDirectory);
+        }
+
+        this.properties = new OrderedProperties();
+        this.properties.setProperty(TitanNodeImpl.InterNetworkAddress.getName(), LOOPBACK);
+        this.properties.setProperty(TitanNodeImpl.ObjectStoreCapacity.getName(), "unlimited");
+        this.properties.setProperty(TitanNodeImpl.GatewayRetryDelaySeconds.getName(), 1);
+        this.properties.setProperty(TitanNodeImpl.LocalFileSystemRoot.getName(), this.rootDirectory.getAbsolutePath() + File.separator);
+        if (properties != null) {
+            this.properties.putAll(properties);
+        }
+
+        this.nodes = new ArrayList<CelesteNode>(nNodes);
+        this.threads = new ArrayList<Thread>(nNodes);
+    }
+
+    /**
+     * Get a TCP port on the loopback interface that is not in use at the moment.
+     */
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(LOOPBACK));
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Start each node in turn, each joining the system through the first node,
+     * and wait up to {@code settleMillis} milliseconds for the nodes to learn of each other and to appear in the {@link Census}.
+     * The nodes are left running if they do not settle in time, so the caller must still {@link #stop()} the cluster.
+     *
+     * @throws IOException if the nodes do not settle within {@code settleMillis} milliseconds.
+     */
+    public void start(long settleMillis) throws IOException, ConfigurationException, AbstractStoredMap.OutOfSpace {
+        for (int i = 0; i < this.nNodes; i++) {
+            OrderedProperties configuration = new OrderedProperties();
+            configuration.putAll(this.properties);
+            configuration.setProperty(TitanNodeImpl.Port.getName(), LocalCluster.freePort());
+            configuration.setProperty(HTTPMessageService.ServerSocketPort.getName(), LocalCluster.freePort());
+            configuration.setProperty(CelesteClientDaemon.Port.getName(), LocalCluster.freePort());
+            if (i > 0) {
+                configuration.setProperty(TitanNodeImpl.GatewayURL.getName(), this.nodes.get(0).getNodeAddress().getInspectorInterface());
+            }
+
+            CelesteNode node = new CelesteNode(configuration);
+            this.threads.add(node.start());
+            this.nodes.add(node);
+        }
+
+        long deadline = System.currentTimeMillis() + settleMillis;
+        if (!this.awaitNeighbours(settleMillis)) {
+            throw new IOException(String.format("%d nodes did not learn of each other within %d ms", this.nodes.size(), settleMillis));
+        }
+        if (!this.awaitCensus(Math.max(0, deadline - System.currentTimeMillis()))) {
+            throw new IOException(String.format("%d nodes did not all appear in the Census within %d ms", this.nodes.size(), settleMillis));
+        }
+    }
+
+    /**
+     * Wait until every node has every other node in its neighbour map, or until {@code timeoutMillis} milliseconds have elapsed.
+     *
+     * @return {@code true} if every node has every other node in its neighbour map.
+     */
+    public boolean awaitNeighbours(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            boolean complete = true;
+            for (CelesteNode node : this.nodes) {
+                if (node.getNeighbourMap().keySet().size() < this.nodes.size()) {
+                    complete = false;
+                    break;
+                }
+            }
+            if (complete) {
+                return true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Wait until the {@link Census} reports every node, or until {@code timeoutMillis} milliseconds have elapsed.
+     * Operations that select nodes from the {@code Census}, such as the creation of a file, fail until then.
+     *
+     * @return {@code true} if the {@code Census} reports every node.
+     */
+    public boolean awaitCensus(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Census census = this.nodes.get(0).getService(CensusService.class);
+        while (true) {
+            try {
+                Map<TitanNodeId,OrderedProperties> selected = census.select(this.nodes.size());
+                if (selected != null && selected.size() >= this.nodes.size()) {
+                    return true;
+                }
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            } catch (TitanMessage.RemoteException e) {
+                // The Census keeper is not yet ready.  Try again.
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stop every node and remove the spool directories.
+     */
+    public void stop() {
+        for (int i = this.nodes.size() - 1; i >= 0; i--) {
+            this.nodes.get(i).stop();
+        }
+        for (Thread thread : this.threads) {
+            try {
+                thread.join(Time.secondsInMilliseconds(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.nodes.clear();
+        this.threads.clear();
+        LocalCluster.delete(this.rootDirectory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                LocalCluster.delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public List<CelesteNode> getNodes() {
+        return Collections.unmodifiableList(this.nodes);
+    }
+
+    public CelesteNode getNode(int index) {
+        return this.nodes.get(index);
+    }
+
+    public int size() {
+        return this.nodes.size();
+    }
+
+    public File getRootDirectory() {
+        return this.rootDirectory;
+    }
+
+    /**
+     * Get the address of the {@link CelesteClientDaemon} of the node {@code index}.
+     */
+    public InetSocketAddress getClientAddress(int index) {
+        CelesteNode node = this.nodes.get(index);
+        return new InetSocketAddress(LOOPBACK, Integer.parseInt(node.getProperty(CelesteClientDaemon.Port.getName())));
+    }
+
+    /**
+     * Create a new {@link CelesteProxy} connected to the node {@code index}.
+     * The caller is responsible for closing it.
+     */
+    public CelesteProxy newProxy(int index, long timeoutMillis) throws IOException {
+        return new CelesteProxy(this.getClientAddress(index), timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import sunlabs.celeste.client.ReplicationParameters;
+import sunlabs.celeste.node.CelesteNode;
+import sunlabs.celeste.node.services.object.BlockObject;
+import sunlabs.celeste.node.services.object.BlockObjectHandler;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.api.TitanObjectStore;
+import sunlabs.titan.node.AbstractTitanObject;
+import sunlabs.titan.node.NeighbourMap;
+import sunlabs.titan.node.NodeAddress;
+import sunlabs.titan.node.TitanMessage;
+import sunlabs.titan.node.TitanNodeIdImpl;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+import sunlabs.titan.node.services.RoutingDaemon;
+import sunlabs.titan.util.BufferableExtentImpl;
+import sunlabs.titan.util.ExtentBuffer;
+import sunlabs.titan.util.ExtentBufferMap;
+
+/**
+ * Benchmarks of the hot paths within a single node.
+ * <p>
+ * Each benchmark uses the node it is given, but leaves the node as it found it (apart from the contents of its object store)
+ * so the node can subsequently be used for other benchmarks.
+ * </p>
+ */
+public class NodeBenchmarks {
+    private final static long SEED = 0x5EEDL;
+
+    /**
+     * Look up the route for an object-id in a {@link NeighbourMap} populated with synthetic neighbours.
+     * The synthetic neighbours are removed from the map when the benchmark is torn down.
+     */
+    public static class RouteLookup extends Benchmark {
+        private final CelesteNode node;
+        private final int nNeighbours;
+        private final List<NodeAddress> neighbours;
+        private final TitanNodeId[] destinations;
+
+        public RouteLookup(CelesteNode node, int nNeighbours) {
+            super("NeighbourMap.getRoute");
+            this.node = node;
+            this.nNeighbours = nNeighbours;
+            this.neighbours = new ArrayList<NodeAddress>(nNeighbours);
+            this.destinations = new TitanNodeId[1024];
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            Random random = new Random(SEED);
+            URL inspector = new URL("http", "127.0.0.1", 1, "");
+            for (int i = 0; i < this.nNeighbours; i++) {
+                NodeAddress address = new NodeAddress(new TitanNodeIdImpl(NodeBenchmarks.randomBytes(random, 32)), "127.0.0.1", 1, inspector);
+                this.neighbours.add(address);
+                this.node.getNeighbourMap().add(address);
+            }
+            for (int i = 0; i < this.destinations.length; i++) {
+                this.destinations[i] = new TitanNodeIdImpl(NodeBenchmarks.randomBytes(random, 32));
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            for (NodeAddress address : this.neighbours) {
+                this.node.getNeighbourMap().remove(address);
+            }
+            this.neighbours.clear();
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            return this.node.getNeighbourMap().getRoute(this.destinations[(int) (iteration % this.destinations.length)]);
+        }
+    }
+
+    /**
+     * Compose a {@link TitanMessage} and write it in its wire format.
+     */
+    public static class MessageWrite extends Benchmark {
+        private final CelesteNode node;
+        private final byte[] data;
+
+        public MessageWrite(CelesteNode node, int payloadSize) {
+            super("TitanMessage.write");
+            this.node = node;
+            this.data = new byte[payloadSize];
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            TitanMessage message = NodeBenchmarks.newPingMessage(this.node, this.data);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.data.length + 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            message.writeObject(out);
+            out.flush();
+            return bytes.size();
+        }
+    }
+
+    /**
+     * Read a {@link TitanMessage} from its wire format and deserialize its payload.
+     */
+    public static class MessageRead extends Benchmark {
+        private final CelesteNode node;
+        private final int payloadSize;
+        private byte[] wire;
+
+        public MessageRead(CelesteNode node, int payloadSize) {
+            super("TitanMessage.read");
+            this.node = node;
+            this.payloadSize = payloadSize;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            NodeBenchmarks.newPingMessage(this.node, new byte[this.payloadSize]).writeObject(out);
+            out.flush();
+            this.wire = bytes.toByteArray();
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            TitanMessage message = TitanMessage.newInstance(new ByteArrayInputStream(this.wire));
+            return message.getPayload(RoutingDaemon.PingOperation.Request.class, this.node);
+        }
+    }
+
+    /**
+     * Dispatch a {@link TitanMessage} to a service method via {@link sunlabs.titan.node.services.AbstractTitanService#invokeMethod(String, TitanMessage)}.
+     * The method invoked is {@link RoutingDaemon#ping(TitanMessage, RoutingDaemon.PingOperation.Request)} which does very little work,
+     * so this measures mostly the cost of the reflective dispatch and the composition of the reply.
+     */
+    public static class InvokeMethod extends Benchmark {
+        private final CelesteNode node;
+        private RoutingDaemon routingDaemon;
+
+        public InvokeMethod(CelesteNode node) {
+            super("AbstractTitanService.invokeMethod");
+            this.node = node;
+        }
+
+        @Override
+        public void setUp() {
+            this.routingDaemon = this.node.getService(RoutingDaemon.class);
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            TitanMessage request = NodeBenchmarks.newPingMessage(this.node, new byte[0]);
+            return this.routingDaemon.invokeMethod("ping", request);
+        }
+    }
+
+    /**
+     * Drop a sequence of overlapping writes into an {@link ExtentBufferMap} and take the intersection of the result with a range,
+     * as {@code writeFile} and {@code readFile} do with the contents of a {@code BlockObject}.
+     */
+    public static class ExtentBufferMapReplace extends Benchmark {
+        private final static int SPAN = 1024 * 1024;
+        private final static int WRITES = 16;
+        private final byte[] data;
+        private final long[] offsets;
+
+        public ExtentBufferMapReplace(int writeSize) {
+            super("ExtentBufferMap.replaceExtents");
+            this.data = new byte[writeSize];
+            this.offsets = new long[1024];
+            Random random = new Random(SEED);
+            for (int i = 0; i < this.offsets.length; i++) {
+                this.offsets[i] = random.nextInt(Math.max(1, SPAN - writeSize));
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) {
+            ExtentBufferMap map = new ExtentBufferMap();
+            int base = (int) (iteration % this.offsets.length);
+            for (int i = 0; i < WRITES; i++) {
+                map.replaceExtents(ExtentBuffer.wrap(this.offsets[(base + i) % this.offsets.length], this.data));
+            }
+            return map.intersect(new BufferableExtentImpl(SPAN / 4, SPAN / 2)).getRemaining();
+        }
+    }
+
+    /**
+     * Store {@code BlockObject}s in the local object store.
+     * The objects are drawn from a fixed set so that the size of the object store does not grow without bound.
+     */
+    public static class ObjectStorePut extends Benchmark {
+        protected final CelesteNode node;
+        private final int objectSize;
+        protected final BlockObject.Object[] objects;
+        protected final TitanGuid[] objectIds;
+
+        public ObjectStorePut(CelesteNode node, int objectSize, int nObjects) {
+            this("TitanObjectStore.store", node, objectSize, nObjects);
+        }
+
+        protected ObjectStorePut(String name, CelesteNode node, int objectSize, int nObjects) {
+            super(name);
+            this.node = node;
+            this.objectSize = objectSize;
+            this.objects = new BlockObject.Object[nObjects];
+            this.objectIds = new TitanGuid[nObjects];
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            BlockObjectHandler handler = this.node.getService(BlockObjectHandler.class);
+            ReplicationParameters replication = new ReplicationParameters("BObject.Replication.Store=1");
+            Random random = new Random(SEED);
+            for (int i = 0; i < this.objects.length; i++) {
+                ExtentBufferMap data = new ExtentBufferMap();
+                data.replaceExtents(ExtentBuffer.wrap(0, NodeBenchmarks.randomBytes(random, this.objectSize)));
+                this.objects[i] = handler.create(new BufferableExtentImpl(0, this.objectSize), data,
+                        new AbstractTitanObject.Metadata(), TitanGuidImpl.ZERO, TitanObject.INFINITE_TIME_TO_LIVE, replication);
+                this.objectIds[i] = TitanObjectStoreImpl.ObjectId(this.objects[i]);
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            TitanObjectStore store = this.node.getObjectStore();
+            for (TitanGuid objectId : this.objectIds) {
+                if (objectId != null) {
+                    store.lock(objectId);
+                    try {
+                        store.remove(objectId);
+                    } finally {
+                        store.unlock(objectId);
+                    }
+                }
+            }
+        }
+
+        protected TitanGuid store(int index) throws Exception {
+            TitanObjectStore store = this.node.getObjectStore();
+            store.lock(this.objectIds[index]);
+            try {
+                return store.store(this.objects[index]);
+            } finally {
+                store.unlock(this.objectIds[index]);
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            return this.store((int) (iteration % this.objects.length));
+        }
+    }
+
+    /**
+     * Get {@code BlockObject}s from the local object store.
+     */
+    public static class ObjectStoreGet extends ObjectStorePut {
+        public ObjectStoreGet(CelesteNode node, int objectSize, int nObjects) {
+            super("TitanObjectStore.get", node, objectSize, nObjects);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            super.setUp();
+            for (int i = 0; i < this.objects.length; i++) {
+                this.store(i);
+            }
+        }
+
+        @Override
+        public Object operation(long iteration) throws Exception {
+            return this.node.getObjectStore().get(BlockObject.Object.class, this.objectIds[(int) (iteration % this.objectIds.length)]);
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static TitanMessage newPingMessage(CelesteNode node, byte[] data) {
+        return new TitanMessage(TitanMessage.Type.RouteToNode,
+                node.getNodeAddress(),
+                node.getNodeId(),
+                node.getNodeId(),
+                node.getService(RoutingDaemon.class).getName(),
+                "ping",
+                TitanMessage.Transmission.UNICAST,
+                TitanMessage.Route.EXACTLY,
+                new RoutingDaemon.PingOperation.Request(data));
+    }
+
+    /**
+     * Get every node benchmark, configured to use the given node.
+     *
+     * @param node the node to use.
+     * @param size the size, in bytes, of message payloads, writes and objects.
+     */
+    public static List<Benchmark> all(CelesteNode node, int size) {
+        List<Benchmark> result = new ArrayList<Benchmark>();
+        result.add(new RouteLookup(node, 256));
+        result.add(new MessageWrite(node, size));
+        result.add(new MessageRead(node, size));
+        result.add(new InvokeMethod(node));
+        result.add(new ExtentBufferMapReplace(size));
+        result.add(new ObjectStorePut(node, size, 256));
+        result.add(new ObjectStoreGet(node, size, 256));
+        return result;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.util;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sunlabs.titan.util.ExtentBuffer;
+
+import static org.junit.Assert.*;
+
+public class AbstractStoredMapTest {
+    private static class StringMap extends AbstractStoredMap<String,ArrayList<ExtentBuffer>> {
+        StringMap(File root) throws IOException {
+            super(root, AbstractStoredMap.CAPACITY_UNLIMITED);
+        }
+
+        @Override
+        public File keyToFile(File root, String key) {
+            return new File(new File(root, key.substring(0, 2)), key);
+        }
+
+        @Override
+        public String fileToKey(File file) {
+            return file.getName();
+        }
+    }
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        this.root = File.createTempFile("storedmap", "");
+        this.root.delete();
+    }
+
+    @After
+    public void tearDown() {
+        this.delete(this.root);
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                this.delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Produce a list of extents, one of them larger than a single bulk read and one over a direct buffer.
+     */
+    private static ArrayList<ExtentBuffer> extents() {
+        ArrayList<ExtentBuffer> result = new ArrayList<ExtentBuffer>();
+
+        result.add(new ExtentBuffer(0L, ByteBuffer.wrap("0123456789".getBytes())));
+
+        byte[] large = new byte[3 * 64 * 1024 + 11];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i * 7);
+        }
+        ExtentBuffer partial = new ExtentBuffer(100L, ByteBuffer.wrap(large));
+        partial.position(5).limit(large.length - 3);
+        result.add(partial);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+        for (int i = 0; i < direct.capacity(); i++) {
+            direct.put(i, (byte) (255 - i));
+        }
+        result.add(new ExtentBuffer(1000000L, direct));
+
+        return result;
+    }
+
+    private static void assertExtentsEqual(ArrayList<ExtentBuffer> expected, ArrayList<ExtentBuffer> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ExtentBuffer e = expected.get(i);
+            ExtentBuffer a = actual.get(i);
+            assertEquals(e.getStartOffset(), a.getStartOffset());
+            assertEquals(e.position(), a.position());
+            assertEquals(e.limit(), a.limit());
+            assertEquals(e.capacity(), a.capacity());
+            assertEquals(e.getByteBuffer(), a.getByteBuffer());
+            assertTrue(a.getByteBuffer().hasArray());
+        }
+    }
+
+    private static int magic(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testBulkRoundTrip() throws Exception {
+        StringMap map = new StringMap(this.root);
+        ArrayList<ExtentBuffer> extents = AbstractStoredMapTest.extents();
+        map.put("abcdef", extents);
+
+        File file = map.keyToFile(this.root, "abcdef");
+        assertEquals(AbstractStoredMap.BULK_FORMAT_MAGIC, magic(file));
+        assertEquals(file.length(), map.getCurrentSpoolSize());
+        assertEquals(file.length(), map.sizeOf("abcdef"));
+
+        assertExtentsEqual(extents, map.get("abcdef"));
+        // Reading does not consume the file.
+        assertExtentsEqual(extents, map.get("abcdef"));
+
+        map.remove("abcdef");
+        assertFalse(map.contains("abcdef"));
+        assertEquals(0, map.getCurrentSpoolSize());
+    }
+
+    @Test
+    public void testCachedRoundTrip() throws Exception {
+        StringMap map = new StringMap(this.root);
+        map.setCacheSize(4);
+        ArrayList<ExtentBuffer> extents = AbstractStoredMapTest.extents();
+        map.putCache("abcdef", extents);
+
+        assertEquals(AbstractStoredMap.BULK_FORMAT_MAGIC, magic(map.keyToFile(this.root, "abcdef")));
+        assertExtentsEqual(extents, map.get("abcdef"));
+        assertEquals(1, map.getCacheHit);
+
+        // The file itself is the same as that written without the cache.
+        StringMap uncached = new StringMap(this.root);
+        assertExtentsEqual(extents, uncached.get("abcdef"));
+    }
+
+    @Test
+    public void testLegacyFormat() throws Exception {
+        StringMap map = new StringMap(this.root);
+        ArrayList<ExtentBuffer> extents = AbstractStoredMapTest.extents();
+
+        // A file written before bulk data was stored out-of-line is a plain serialized object, beginning with 0xACED.
+        File file = map.keyToFile(this.root, "legacy");
+        file.getParentFile().mkdirs();
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+        out.writeObject(extents);
+        out.close();
+        assertEquals(0xACED, magic(file) >>> 16);
+
+        assertExtentsEqual(extents, map.get("legacy"));
+
+        // Storing it again converts it to the bulk format.
+        map.put("legacy", map.get("legacy"));
+        assertEquals(AbstractStoredMap.BULK_FORMAT_MAGIC, magic(file));
+        assertExtentsEqual(extents, map.get("legacy"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+    private final static long LEVEL1 = 1L << TimerWheel.SLOT_BITS;
+    private final static long LEVEL2 = 1L << (TimerWheel.SLOT_BITS * 2);
+    private final static long LEVEL3 = 1L << (TimerWheel.SLOT_BITS * 3);
+    private final static long SPAN = 1L << (TimerWheel.SLOT_BITS * TimerWheel.LEVELS);
+
+    /**
+     * Advance {@code wheel} one tick at a time to {@code until} and return the time at which {@code item} expired, or -1.
+     */
+    private static long expiresAt(TimerWheel<String> wheel, String item, long until) {
+        for (long t = wheel.getCurrentTime() + 1; t <= until; t++) {
+            if (wheel.advance(t).contains(item)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testExpiryOnEachLevel() {
+        // Start at a time that is not aligned to any level, so that items cross slot and level boundaries.
+        long start = 1000003;
+        long[] deltas = { 1, LEVEL1 - 1, LEVEL1, LEVEL1 + 1, LEVEL2 - 1, LEVEL2 + 17, LEVEL3 - 1, LEVEL3 + 5, 3 * LEVEL3 + 11 };
+
+        for (long delta : deltas) {
+            TimerWheel<String> wheel = new TimerWheel<String>(start);
+            wheel.schedule("item", start + delta);
+            assertEquals(1, wheel.size());
+            assertEquals("delta " + delta, start + delta, expiresAt(wheel, "item", start + delta + 1));
+            assertEquals(0, wheel.size());
+        }
+    }
+
+    @Test
+    public void testOverflow() {
+        long start = 7;
+        TimerWheel<String> wheel = new TimerWheel<String>(start);
+        wheel.schedule("far", start + SPAN + 100);
+        wheel.schedule("near", start + 100);
+
+        assertEquals(Collections.singletonList("near"), wheel.advance(start + 100));
+        assertEquals(start + SPAN + 100, expiresAt(wheel, "far", start + SPAN + 101));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testDueAndLargeAdvance() {
+        TimerWheel<String> wheel = new TimerWheel<String>(500);
+
+        // Items already due are returned by the next advance, even one that does not move the time.
+        wheel.schedule("past", 400);
+        assertEquals(Collections.singletonList("past"), wheel.advance(500));
+
+        wheel.schedule("a", 600);
+        wheel.schedule("b", 500 + LEVEL3 + 1);
+        wheel.schedule("c", 500 + 3 * SPAN);
+
+        // Advancing by more than the span of the wheel expires everything due at once and keeps the rest.
+        List<String> expired = wheel.advance(500 + 2 * SPAN);
+        Collections.sort(expired);
+        assertEquals(2, expired.size());
+        assertEquals("a", expired.get(0));
+        assertEquals("b", expired.get(1));
+        assertEquals(1, wheel.size());
+
+        assertEquals(Collections.singletonList("c"), wheel.advance(500 + 3 * SPAN));
+
+        wheel.schedule("d", 500 + 3 * SPAN + 10);
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(500 + 3 * SPAN + 10).isEmpty());
+    }
+
+    @Test
+    public void testRandomSchedule() {
+        Random random = new Random(1);
+        long start = random.nextInt(1 << 20);
+        long end = start + 4 * LEVEL2;
+        TimerWheel<Long> wheel = new TimerWheel<Long>(start);
+
+        List<Long> times = new ArrayList<Long>();
+        for (int i = 0; i < 10000; i++) {
+            long expireTime = start + 1 + random.nextInt((int) (end - start));
+            times.add(expireTime);
+            wheel.schedule(expireTime, expireTime);
+        }
+
+        // Advance in uneven steps; each item must be returned by exactly the advance that reaches its time.
+        long now = start;
+        int count = 0;
+        while (now < end) {
+            long previous = now;
+            now = Math.min(end, now + 1 + random.nextInt(200));
+            for (Long expireTime : wheel.advance(now)) {
+                assertTrue(expireTime.longValue() > previous);
+                assertTrue(expireTime.longValue() <= now);
+                count++;
+            }
+        }
+        assertEquals(times.size(), count);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.web.http;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsynchronousHTTPServerTest {
+
+    //
+    // Connect to the server, optionally send a request asking for the
+    // connection to be closed and read the response to the end, then close.
+    //
+    private static void client(InetSocketAddress address, boolean request) throws Exception {
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            if (request) {
+                OutputStream out = socket.getOutputStream();
+                out.write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes());
+                out.flush();
+                InputStream in = socket.getInputStream();
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) >= 0)
+                    ;
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    //
+    // Connections closed by the client and by the server, concurrently, are
+    // each counted out exactly once.
+    //
+    @Test
+    public void testConnectionCount() throws Exception {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        final InetSocketAddress address = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+        AsynchronousHTTPServer server = new AsynchronousHTTPServer(channel, 2, 4, 64, 100000, 64 * 1024);
+        Thread serverThread = new Thread(server, "AsynchronousHTTPServerTest");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            final int nClients = 60;
+            final AtomicInteger failures = new AtomicInteger();
+            List<Thread> clients = new ArrayList<Thread>();
+            for (int i = 0; i < nClients; i++) {
+                final boolean request = (i % 3 != 0);
+                Thread t = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            client(address, request);
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                };
+                clients.add(t);
+                t.start();
+            }
+            for (Thread t : clients) {
+                t.join();
+            }
+            assertEquals("client failures", 0, failures.get());
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while ((server.getJMXConnectionsAccepted() < nClients || server.getJMXConnectionCount() != 0) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(nClients, server.getJMXConnectionsAccepted());
+            assertEquals(0, server.getJMXConnectionCount());
+
+            // Nothing is counted out a second time later.
+            Thread.sleep(200);
+            assertEquals(0, server.getJMXConnectionCount());
+        } finally {
+            server.close();
+        }
+    }
+}
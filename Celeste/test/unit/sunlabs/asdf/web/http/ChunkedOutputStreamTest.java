@@ -0,0 +1,75 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.asdf.web.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkedOutputStreamTest {
+
+    @Test
+    public void testEncoding() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        HttpUtil.ChunkedOutputStream out = new HttpUtil.ChunkedOutputStream(bytes, 4);
+
+        // Small writes are buffered into one chunk; a write as large as the buffer is sent as its own chunk.
+        out.write('a');
+        out.write("bc".getBytes(), 0, 2);
+        out.flush();
+        out.write("0123456789".getBytes(), 0, 10);
+        out.write('z');
+        out.close();
+
+        assertEquals("3\r\nabc\r\na\r\n0123456789\r\n1\r\nz\r\n0\r\n\r\n", bytes.toString());
+    }
+
+    @Test
+    public void testWriteAfterFinish() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        HttpUtil.ChunkedOutputStream out = new HttpUtil.ChunkedOutputStream(bytes, 4);
+        out.write('a');
+        out.finish();
+        out.finish();
+        assertEquals("1\r\na\r\n0\r\n\r\n", bytes.toString());
+
+        try {
+            out.write('b');
+            fail("write(int) after finish");
+        } catch (IOException expected) {
+            // expected
+        }
+        try {
+            out.write("b".getBytes(), 0, 1);
+            fail("write(byte[], int, int) after finish");
+        } catch (IOException expected) {
+            // expected
+        }
+        out.flush();
+        assertEquals("nothing written after the last chunk", "1\r\na\r\n0\r\n\r\n", bytes.toString());
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.client.application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import sunlabs.celeste.client.filesystem.FileException;
+import sunlabs.celeste.client.filesystem.FileSystem;
+import sunlabs.celeste.client.filesystem.HierarchicalFileSystem;
+import sunlabs.celeste.client.filesystem.PathName;
+
+public class TreeTransferTest {
+    //
+    // An in-memory HierarchicalFileSystem supporting the methods that
+    // TreeTransfer uses.  Directories and files are keyed by path name.
+    //
+    private static class Store implements InvocationHandler {
+        private final SortedSet<String> directories = new TreeSet<String>(Arrays.asList("/"));
+        private final Map<String,byte[]> files = new HashMap<String,byte[]>();
+
+        HierarchicalFileSystem fileSystem() {
+            return (HierarchicalFileSystem) Proxy.newProxyInstance(HierarchicalFileSystem.class.getClassLoader(),
+                    new Class<?>[] { HierarchicalFileSystem.class }, this);
+        }
+
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("createDirectory")) {
+                String path = args[0].toString();
+                if (this.directories.contains(path) || this.files.containsKey(path))
+                    throw new FileException.Exists();
+                this.directories.add(path);
+                return this.directory(path);
+            } else if (name.equals("createFile")) {
+                String path = args[0].toString();
+                if (this.directories.contains(path) || this.files.containsKey(path))
+                    throw new FileException.Exists();
+                this.files.put(path, new byte[0]);
+                return this.file(path);
+            } else if (name.equals("getNode")) {
+                String path = args[0].toString();
+                if (this.directories.contains(path))
+                    return this.directory(path);
+                if (this.files.containsKey(path))
+                    return this.file(path);
+                throw new FileException.NotFound();
+            }
+            throw new UnsupportedOperationException(name);
+        }
+
+        private HierarchicalFileSystem.Directory directory(final String path) {
+            return (HierarchicalFileSystem.Directory) Proxy.newProxyInstance(HierarchicalFileSystem.class.getClassLoader(),
+                    new Class<?>[] { HierarchicalFileSystem.Directory.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (!method.getName().equals("list"))
+                                throw new UnsupportedOperationException(method.getName());
+                            synchronized (Store.this) {
+                                SortedSet<String> names = new TreeSet<String>(Arrays.asList(".", ".."));
+                                for (String entry : Store.this.directories)
+                                    addChild(names, path, entry);
+                                for (String entry : Store.this.files.keySet())
+                                    addChild(names, path, entry);
+                                return names.toArray(new String[names.size()]);
+                            }
+                        }
+                    });
+        }
+
+        private static void addChild(SortedSet<String> names, String directory, String entry) {
+            if (!entry.equals(directory) && new PathName(entry).getDirName().toString().equals(directory))
+                names.add(new PathName(entry).getBaseName());
+        }
+
+        private FileSystem.File file(final String path) {
+            return (FileSystem.File) Proxy.newProxyInstance(FileSystem.File.class.getClassLoader(),
+                    new Class<?>[] { FileSystem.File.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            String name = method.getName();
+                            synchronized (Store.this) {
+                                byte[] data = Store.this.files.get(path);
+                                if (name.equals("length")) {
+                                    return Long.valueOf(data.length);
+                                } else if (name.equals("getBlockSize")) {
+                                    return Integer.valueOf(1000);
+                                } else if (name.equals("truncate")) {
+                                    Store.this.files.put(path, Arrays.copyOf(data, (int) ((Long) args[0]).longValue()));
+                                    return proxy;
+                                } else if (name.equals("write") && args.length == 2) {
+                                    ByteBuffer src = (ByteBuffer) args[0];
+                                    int position = (int) ((Long) args[1]).longValue();
+                                    int n = src.remaining();
+                                    if (position + n > data.length) {
+                                        data = Arrays.copyOf(data, position + n);
+                                        Store.this.files.put(path, data);
+                                    }
+                                    src.get(data, position, n);
+                                    return Integer.valueOf(n);
+                                } else if (name.equals("read") && args.length == 2) {
+                                    ByteBuffer dst = (ByteBuffer) args[0];
+                                    int position = (int) ((Long) args[1]).longValue();
+                                    if (position >= data.length)
+                                        return Integer.valueOf(-1);
+                                    int n = Math.min(dst.remaining(), data.length - position);
+                                    dst.put(data, position, n);
+                                    return Integer.valueOf(n);
+                                }
+                            }
+                            throw new UnsupportedOperationException(name);
+                        }
+                    });
+        }
+    }
+
+    private static File temporaryDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir())
+            throw new IOException("cannot create " + directory);
+        return directory;
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < data.length)
+                n += input.read(data, n, data.length - n);
+        } finally {
+            input.close();
+        }
+        return data;
+    }
+
+    private static void assertSameTree(File expected, File actual) throws IOException {
+        String[] expectedNames = expected.list();
+        String[] actualNames = actual.list();
+        Arrays.sort(expectedNames);
+        Arrays.sort(actualNames);
+        assertArrayEquals(actual.getPath(), expectedNames, actualNames);
+        for (String name : expectedNames) {
+            File e = new File(expected, name);
+            File a = new File(actual, name);
+            if (e.isDirectory()) {
+                assertTrue(a.getPath(), a.isDirectory());
+                assertSameTree(e, a);
+            } else {
+                assertArrayEquals(a.getPath(), readFile(e), readFile(a));
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] entries = file.listFiles();
+        if (entries != null) {
+            for (File entry : entries)
+                delete(entry);
+        }
+        file.delete();
+    }
+
+    //
+    // Copy a small tree into the file system and back out again, and verify
+    // that the copy matches the original.  The files include an empty file,
+    // files split into several ranges, and more files than there are
+    // workers.
+    //
+    @Test
+    public final void testRoundTrip() throws Exception {
+        File source = temporaryDirectory("source");
+        File destination = temporaryDirectory("destination");
+        try {
+            Random random = new Random(1);
+            File subdirectory = new File(source, "sub");
+            assertTrue(subdirectory.mkdir());
+            assertTrue(new File(subdirectory, "empty").mkdir());
+            writeFile(new File(source, "zero"), new byte[0]);
+            for (int i = 0; i < 20; i++) {
+                byte[] data = new byte[random.nextInt(3500)];
+                random.nextBytes(data);
+                writeFile(new File(i % 2 == 0 ? source : subdirectory, "file" + i), data);
+            }
+
+            HierarchicalFileSystem fileSystem = new Store().fileSystem();
+            TreeTransfer put = new TreeTransfer(fileSystem, 3, 256, 1000, null, 100);
+            put.putTree(source, new PathName("/tree"));
+            assertEquals(put.getFailures().toString(), 0, put.getProgress().getFailed());
+            assertEquals(21, put.getProgress().getFilesDone());
+
+            TreeTransfer get = new TreeTransfer(fileSystem, 3, 256, 1000, null, 100);
+            get.getTree(new PathName("/tree"), destination);
+            assertEquals(get.getFailures().toString(), 0, get.getProgress().getFailed());
+            assertEquals(21, get.getProgress().getFilesDone());
+
+            assertSameTree(source, destination);
+        } finally {
+            delete(source);
+            delete(destination);
+        }
+    }
+    //
+    // Verify that the ranges of a file cover it exactly, in order, without
+    // any range exceeding the range size.
+    //
+    @Test
+    public final void testRangesCoverFile() {
+        long[] ranges = TreeTransfer.ranges(250, 100);
+        assertEquals("three ranges", 6, ranges.length);
+        assertEquals(0, ranges[0]);
+        assertEquals(100, ranges[1]);
+        assertEquals(100, ranges[2]);
+        assertEquals(100, ranges[3]);
+        assertEquals(200, ranges[4]);
+        assertEquals(50, ranges[5]);
+
+        ranges = TreeTransfer.ranges(200, 100);
+        assertEquals("an exact multiple has no trailing empty range", 4, ranges.length);
+        assertEquals(100, ranges[3]);
+    }
+
+    //
+    // Verify that an empty file is still transferred, as a single empty range.
+    //
+    @Test
+    public final void testRangesEmptyFile() {
+        long[] ranges = TreeTransfer.ranges(0, 100);
+        assertEquals(2, ranges.length);
+        assertEquals(0, ranges[0]);
+        assertEquals(0, ranges[1]);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.client.filesystem.simple;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import sunlabs.celeste.FileIdentifier;
+import sunlabs.celeste.ResponseMessage;
+import sunlabs.celeste.api.CelesteAPI;
+import sunlabs.celeste.client.ClientMetaData;
+import sunlabs.celeste.client.CelesteProxy;
+import sunlabs.celeste.client.filesystem.FileException;
+import sunlabs.celeste.node.CelesteACL;
+import sunlabs.celeste.util.CelesteEncoderDecoder;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.util.OrderedProperties;
+
+import static sunlabs.celeste.client.filesystem.FileAttributes.Names.CREATED_TIME_NAME;
+
+//
+// Verify that a FileImpl answers from an inspection supplied through
+// setInspection() while it is current, and goes back to Celeste once it has
+// expired.  The FileImpl's proxy cache counts and refuses every attempt to
+// contact Celeste.
+//
+public class FileImplInspectionTest {
+    private final AtomicInteger contacts = new AtomicInteger();
+
+    private static ResponseMessage inspection(long fileSize) {
+        OrderedProperties props = new OrderedProperties();
+        props.setProperty("Version", "1");
+        props.setProperty(CREATED_TIME_NAME, "1000");
+        props.setProperty("EncDeleteToken", "00");
+
+        OrderedProperties metadata = new OrderedProperties();
+        metadata.setProperty(CelesteAPI.VOBJECTID_NAME, new TitanGuidImpl().toString());
+        metadata.setProperty(CelesteAPI.FILE_SIZE_NAME, Long.toString(fileSize));
+        metadata.setProperty(CelesteAPI.VOBJECT_ACL_NAME,
+            CelesteEncoderDecoder.toHexString(new CelesteACL().toByteArray()));
+        return new ResponseMessage(metadata, new ClientMetaData(props.toByteBuffer()));
+    }
+
+    private FileImpl newFileImpl() {
+        CelesteProxy.Cache proxyCache = new CelesteProxy.Cache(4, 0) {
+            private final static long serialVersionUID = 1L;
+
+            @Override
+            public CelesteAPI getAndRemove(InetSocketAddress address) throws Exception {
+                FileImplInspectionTest.this.contacts.incrementAndGet();
+                throw new IOException("no Celeste node at " + address);
+            }
+
+            @Override
+            public void addAndEvictOld(InetSocketAddress address, CelesteAPI proxy) {
+            }
+        };
+        return new FileImpl(new FileIdentifier(new TitanGuidImpl(), new TitanGuidImpl()),
+            new InetSocketAddress("127.0.0.1", 0), proxyCache);
+    }
+
+    @Test
+    public final void testCurrentInspection() throws Exception {
+        FileImpl file = newFileImpl();
+        file.setInspection(inspection(12345), System.currentTimeMillis() + 60000);
+        assertEquals(12345, file.getFileLength());
+        assertEquals(1000, file.getCreationTime());
+        assertEquals(0, this.contacts.get());
+    }
+
+    @Test
+    public final void testExpiredInspection() throws Exception {
+        FileImpl file = newFileImpl();
+        file.setInspection(inspection(12345), System.currentTimeMillis() - 1);
+        try {
+            file.getFileLength();
+            fail("expired inspection was used");
+        } catch (FileException.CelesteInaccessible expected) {
+            // The FileImpl tried to inspect the file itself.
+        }
+        assertEquals(1, this.contacts.get());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.client.operation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import sunlabs.celeste.FileIdentifier;
+import sunlabs.titan.TitanGuidImpl;
+
+public class InspectFilesOperationTest {
+
+    private static FileIdentifier newFileIdentifier() {
+        return new FileIdentifier(new TitanGuidImpl(), new TitanGuidImpl());
+    }
+
+    //
+    // The operation reaches the node with its files intact and in order.
+    //
+    @Test
+    public final void testSerialization() throws Exception {
+        List<FileIdentifier> fids = Arrays.asList(newFileIdentifier(), newFileIdentifier(), newFileIdentifier());
+        InspectFilesOperation operation = new InspectFilesOperation(fids, TitanGuidImpl.ZERO);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(operation);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        InspectFilesOperation copy = (InspectFilesOperation) ois.readObject();
+
+        assertEquals(fids, copy.getFileIdentifiers());
+        assertEquals(operation.getId(), copy.getId());
+    }
+
+    //
+    // Operations inspecting different files have different identifiers.
+    //
+    @Test
+    public final void testId() {
+        FileIdentifier a = newFileIdentifier();
+        FileIdentifier b = newFileIdentifier();
+        InspectFilesOperation ab = new InspectFilesOperation(Arrays.asList(a, b), TitanGuidImpl.ZERO);
+        InspectFilesOperation ab2 = new InspectFilesOperation(Arrays.asList(a, b), TitanGuidImpl.ZERO);
+        InspectFilesOperation a1 = new InspectFilesOperation(Arrays.asList(a), TitanGuidImpl.ZERO);
+
+        assertEquals(ab.getId(), ab2.getId());
+        assertFalse(ab.getId().equals(a1.getId()));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.object;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExtensionCacheTest {
+
+    private static URL makeJar(String mainClass) throws IOException {
+        File file = File.createTempFile("extension", ".jar");
+        file.deleteOnExit();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest);
+        out.close();
+        return file.toURI().toURL();
+    }
+
+    @Test
+    public void testCachedByContent() throws Exception {
+        URL a = makeJar("a.Main");
+        URL copyOfA = makeJar("a.Main");
+        URL b = makeJar("b.Main");
+
+        ExtensibleObject.JarClassLoader loader = ExtensionCache.getClassLoader(new URL[] { a });
+        assertSame(loader, ExtensionCache.getClassLoader(new URL[] { a }));
+        assertSame(loader, ExtensionCache.getClassLoader(new URL[] { copyOfA }));
+        assertNotSame(loader, ExtensionCache.getClassLoader(new URL[] { b }));
+        assertNotSame(loader, ExtensionCache.getClassLoader(new URL[] { a, b }));
+        assertNotSame(ExtensionCache.getClassLoader(new URL[] { a, b }), ExtensionCache.getClassLoader(new URL[] { b, a }));
+
+        assertEquals("a.Main", loader.getMainClassName());
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        ExtensibleObject.JarClassLoader loader = ExtensionCache.getClassLoader(new URL[] { makeJar("limit.Main") });
+        ExecutorService first = loader.getExecutorService();
+        ExecutorService second = loader.getExecutorService();
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximum = new AtomicInteger();
+        int tasks = 4 * ExtensionCache.EXTENSION_CONCURRENCY;
+        final CountDownLatch done = new CountDownLatch(tasks);
+        Runnable task = new Runnable() {
+            public void run() {
+                int n = running.incrementAndGet();
+                synchronized (maximum) {
+                    maximum.set(Math.max(maximum.get(), n));
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                running.decrementAndGet();
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < tasks; i++) {
+            (i % 2 == 0 ? first : second).execute(task);
+        }
+
+        // Shutting down one invocation's ExecutorService leaves the other, and the shared threads, running.
+        first.shutdown();
+        assertTrue(first.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(second.isShutdown());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maximum.get() + " running at once", maximum.get() <= ExtensionCache.EXTENSION_CONCURRENCY);
+        assertTrue(maximum.get() > 1);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sunlabs.celeste.client.ReplicationParameters;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.node.AbstractTitanObject;
+import sunlabs.titan.util.BufferableExtentImpl;
+import sunlabs.titan.util.ExtentBuffer;
+import sunlabs.titan.util.ExtentBufferMap;
+
+import static org.junit.Assert.*;
+
+public class BlockCodecTest {
+    private final static ReplicationParameters DEFLATE = new ReplicationParameters(BlockObject.Object.COMPRESSION_NAME + "=" + BlockCodec.Deflate.NAME);
+    private final static ReplicationParameters NONE = new ReplicationParameters("");
+
+    private static byte[] text(int length) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; s.length() < length; i++) {
+            s.append("{\"line\": ").append(i).append(", \"message\": \"the quick brown fox\"}\n");
+        }
+        return s.substring(0, length).getBytes();
+    }
+
+    private static byte[] contents(ExtentBufferMap map, long offset, int length) {
+        byte[] result = new byte[length];
+        for (ExtentBuffer extentBuffer : map.values()) {
+            ByteBuffer buffer = extentBuffer.getByteBuffer().duplicate();
+            buffer.clear();
+            buffer.get(result, (int) (extentBuffer.getStartOffset() - offset), buffer.remaining());
+        }
+        return result;
+    }
+
+    private static BlockObjectHandler.BObject newBObject(long offset, byte[] data, ReplicationParameters parameters) {
+        ExtentBufferMap map = new ExtentBufferMap();
+        map.put(new ExtentBuffer(offset, ByteBuffer.wrap(data)));
+        return new BlockObjectHandler.BObject(new BufferableExtentImpl(offset, data.length), map,
+                new AbstractTitanObject.Metadata(), new TitanGuidImpl("delete".getBytes()), 1000, parameters);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return (T) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        BlockCodec codec = new BlockCodec.Deflate();
+        byte[] random = new byte[10000];
+        new Random(1).nextBytes(random);
+        for (byte[] data : new byte[][] { new byte[0], text(100000), random }) {
+            ByteBuffer encoded = codec.encode(ByteBuffer.wrap(data));
+            ByteBuffer decoded = codec.decode(encoded, data.length);
+            byte[] result = new byte[decoded.remaining()];
+            decoded.get(result);
+            assertArrayEquals(data, result);
+        }
+        assertTrue(codec.encode(ByteBuffer.wrap(text(100000))).remaining() < 10000);
+    }
+
+    @Test
+    public void testEncodedBlockObject() throws Exception {
+        byte[] data = text(65536);
+        BlockObjectHandler.BObject plain = newBObject(4096, data, NONE);
+        BlockObjectHandler.BObject compressed = newBObject(4096, data, DEFLATE);
+
+        assertEquals(plain.getBounds().getLength(), compressed.getBounds().getLength());
+        assertArrayEquals(data, contents(compressed.getDataAsExtentBufferMap(), 4096, data.length));
+        assertArrayEquals(data, contents(compressed.getDataAsExtentBufferMap(0), 0, data.length));
+        assertFalse(plain.getDataId().equals(compressed.getDataId()));
+
+        // The object is stored and sent encoded, and is decoded only when its data is read.
+        BlockObjectHandler.BObject received = copy(compressed);
+        assertEquals(compressed.getDataId(), received.getDataId());
+        assertArrayEquals(data, contents(received.getDataAsExtentBufferMap(), 4096, data.length));
+
+        ByteArrayOutputStream plainBytes = new ByteArrayOutputStream();
+        new ObjectOutputStream(plainBytes).writeObject(plain);
+        ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+        new ObjectOutputStream(compressedBytes).writeObject(received);
+        assertTrue(compressedBytes.size() < plainBytes.size() / 4);
+    }
+
+    @Test
+    public void testIncompressibleBlockObject() throws Exception {
+        byte[] data = new byte[8192];
+        new Random(2).nextBytes(data);
+        TitanGuid plainId = newBObject(0, data, NONE).getDataId();
+        BlockObjectHandler.BObject bObject = newBObject(0, data, DEFLATE);
+        assertEquals(plainId, bObject.getDataId());
+        assertArrayEquals(data, contents(bObject.getDataAsExtentBufferMap(), 0, data.length));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        BlockCodecs.getInstance(new ReplicationParameters(BlockObject.Object.COMPRESSION_NAME + "=Bogus"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sunlabs.celeste.client.ReplicationParameters;
+
+import static org.junit.Assert.*;
+
+public class ContentDefinedChunkerTest {
+    private final static int MAXIMUM = 8192;
+
+    //
+    // Divide the data, presented in pieces of the given size, and return the lengths of the blocks.
+    //
+    private static List<Integer> divide(byte[] data, int piece) {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(MAXIMUM);
+        List<Integer> lengths = new ArrayList<Integer>();
+        int blockStart = 0;
+        int from = 0;
+        while (from < data.length) {
+            int to = Math.min(data.length, from + piece);
+            int boundary = chunker.next(data, from, to);
+            if (boundary < 0) {
+                from = to;
+            } else {
+                lengths.add(boundary - blockStart);
+                blockStart = boundary;
+                from = boundary;
+            }
+        }
+        if (blockStart < data.length) {
+            lengths.add(data.length - blockStart);
+        }
+        return lengths;
+    }
+
+    private static Set<String> blocks(byte[] data, List<Integer> lengths) {
+        Set<String> result = new HashSet<String>();
+        int offset = 0;
+        for (int length : lengths) {
+            result.add(new String(data, offset, length, Charset.forName("ISO-8859-1")));
+            offset += length;
+        }
+        return result;
+    }
+
+    @Test
+    public void testBounds() {
+        byte[] data = new byte[1000000];
+        new Random(1).nextBytes(data);
+        List<Integer> lengths = divide(data, data.length);
+        long total = 0;
+        for (int i = 0; i < lengths.size(); i++) {
+            int length = lengths.get(i);
+            assertTrue(length <= MAXIMUM);
+            if (i < lengths.size() - 1) {
+                assertTrue(length >= MAXIMUM / 4);
+            }
+            total += length;
+        }
+        assertEquals(data.length, total);
+        // Random data is not divided only at the maximum size.
+        assertTrue(lengths.size() > data.length / MAXIMUM);
+
+        // Data without boundaries is divided at the maximum size.
+        List<Integer> zeros = divide(new byte[10 * MAXIMUM], 10 * MAXIMUM);
+        assertEquals(10, zeros.size());
+    }
+
+    @Test
+    public void testIndependentOfPieces() {
+        byte[] data = new byte[300000];
+        new Random(2).nextBytes(data);
+        assertEquals(divide(data, data.length), divide(data, 1000));
+        assertEquals(divide(data, data.length), divide(data, 1));
+    }
+
+    @Test
+    public void testInsertionChangesFewBlocks() {
+        byte[] data = new byte[1000000];
+        new Random(3).nextBytes(data);
+        byte[] inserted = new byte[data.length + 100];
+        System.arraycopy(data, 0, inserted, 0, 5000);
+        System.arraycopy(data, 5000, inserted, 5100, data.length - 5000);
+
+        Set<String> before = blocks(data, divide(data, data.length));
+        List<Integer> lengths = divide(inserted, inserted.length);
+        Set<String> after = blocks(inserted, lengths);
+        after.removeAll(before);
+        assertTrue(after.size() + " new blocks", after.size() <= 3);
+    }
+
+    @Test
+    public void testGetInstance() {
+        assertNull(ContentDefinedChunker.getInstance(new ReplicationParameters(""), MAXIMUM));
+        assertNotNull(ContentDefinedChunker.getInstance(new ReplicationParameters(BlockObject.Object.CHUNKING_NAME + "=" + ContentDefinedChunker.CONTENT_DEFINED), MAXIMUM));
+        assertNull(ContentDefinedChunker.getInstance(new ReplicationParameters(BlockObject.Object.CHUNKING_NAME + "=" + ContentDefinedChunker.CONTENT_DEFINED), 100));
+    }
+}
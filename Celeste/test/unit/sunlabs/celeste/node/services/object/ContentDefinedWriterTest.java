@@ -0,0 +1,216 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sunlabs.celeste.client.ReplicationParameters;
+import sunlabs.celeste.client.operation.CreateFileOperation;
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.node.TitanObjectStoreImpl;
+import sunlabs.titan.util.BufferableExtent;
+import sunlabs.titan.util.ExtentBuffer;
+import sunlabs.titan.util.ExtentBufferMap;
+
+import static org.junit.Assert.*;
+
+public class ContentDefinedWriterTest {
+    private final static int MAXIMUM = 8192;
+
+    //
+    // A BlockObject handler keeping its objects in a Map, in place of the object pool.
+    //
+    private static class Store implements InvocationHandler {
+        private final Map<TitanGuid,BlockObject.Object> objects = new HashMap<TitanGuid,BlockObject.Object>();
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("create")) {
+                return new BlockObjectHandler.BObject((BufferableExtent) args[0], (ExtentBufferMap) args[1], (TitanObject.Metadata) args[2],
+                        (TitanGuid) args[3], (Long) args[4], (ReplicationParameters) args[5]);
+            } else if (name.equals("containsObject")) {
+                return Boolean.valueOf(this.objects.containsKey(args[0]));
+            } else if (name.equals("storeObject")) {
+                BlockObject.Object bObject = (BlockObject.Object) args[0];
+                bObject.setObjectId(TitanObjectStoreImpl.ObjectId(bObject));
+                this.objects.put(bObject.getObjectId(), bObject);
+                return bObject;
+            } else if (name.equals("retrieve")) {
+                BlockObject.Object bObject = this.objects.get(args[0]);
+                if (bObject == null) {
+                    throw new TitanObjectStoreImpl.NotFoundException("%s", args[0]);
+                }
+                return bObject;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+    private Store store;
+    private BlockObject handler;
+    private TitanGuid deleteTokenId;
+    private ReplicationParameters replicationParams;
+    private VersionObject.Object vObject;
+
+    @Before
+    public void setUp() {
+        this.store = new Store();
+        this.handler = (BlockObject) Proxy.newProxyInstance(BlockObject.class.getClassLoader(), new Class<?>[] { BlockObject.class }, this.store);
+        this.deleteTokenId = new TitanGuidImpl();
+        this.replicationParams = new ReplicationParameters(BlockObject.Object.CHUNKING_NAME + "=" + ContentDefinedChunker.CONTENT_DEFINED);
+        CreateFileOperation create = new CreateFileOperation(new TitanGuidImpl(), null, this.deleteTokenId, 3600, MAXIMUM, this.replicationParams,
+                null, new TitanGuidImpl(), new TitanGuidImpl(), null, false);
+        this.vObject = new VersionObjectHandler.VObject(new TitanGuidImpl(), this.replicationParams, create, null, null);
+    }
+
+    private ContentDefinedWriter writer() {
+        return new ContentDefinedWriter(new ContentDefinedChunker(MAXIMUM), this.vObject, this.handler, null, this.deleteTokenId, 3600, this.replicationParams);
+    }
+
+    //
+    // Write the data at the given offset, extending the file as the client daemon does.
+    //
+    private ContentDefinedWriter write(long offset, byte[] data, int from, int to) throws Exception {
+        ContentDefinedWriter writer = this.writer();
+        writer.write(new ExtentBuffer(offset, ByteBuffer.wrap(data, from, to - from).slice()));
+        this.vObject.setFileSize(Math.max(this.vObject.getFileSize(), offset + to - from));
+        return writer;
+    }
+
+    //
+    // Read the whole file, checking that no BlockObject lies beyond its end.
+    //
+    private byte[] read() throws Exception {
+        byte[] result = new byte[(int) this.vObject.getFileSize()];
+        for (BlockObject.Object.Reference reference : this.vObject.getExtent(0, this.vObject.getFileSize()).values()) {
+            assertTrue(reference.getFileOffset() + reference.getLength() <= result.length);
+            BlockObject.Object bObject = this.handler.retrieve(reference.getObjectId());
+            for (ExtentBuffer extentBuffer : bObject.getDataAsExtentBufferMap(reference.getFileOffset()).values()) {
+                ByteBuffer buffer = extentBuffer.getByteBuffer().duplicate();
+                buffer.clear();
+                buffer.get(result, (int) extentBuffer.getStartOffset(), buffer.remaining());
+            }
+        }
+        return result;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testInsert() throws Exception {
+        byte[] data = random(200000, 1);
+        this.write(0, data, 0, data.length);
+        assertArrayEquals(data, this.read());
+        int stored = this.store.objects.size();
+
+        // Insert 100 bytes in the middle of the file by writing the rest of the file shifted along.
+        byte[] inserted = new byte[data.length + 100];
+        System.arraycopy(data, 0, inserted, 0, 100000);
+        System.arraycopy(random(100, 2), 0, inserted, 100000, 100);
+        System.arraycopy(data, 100000, inserted, 100100, data.length - 100000);
+        ContentDefinedWriter writer = this.write(100000, inserted, 100000, inserted.length);
+        assertArrayEquals(inserted, this.read());
+
+        // Only the BlockObjects around the insertion are new, the ones after it are found already stored.
+        assertTrue(writer.getBlocksStored() + " stored", writer.getBlocksStored() <= 3);
+        assertTrue(writer.getBlocksShared() + " shared", writer.getBlocksShared() > 5);
+        assertEquals(stored + writer.getBlocksStored(), this.store.objects.size());
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        byte[] data = random(200000, 3);
+        this.write(0, data, 0, data.length);
+        Map<Long,BlockObject.Object.Reference> before = new HashMap<Long,BlockObject.Object.Reference>(this.vObject.getBObjectList());
+
+        // Dividing stops once a new boundary meets an existing one, leaving the rest of the manifest as it was.
+        System.arraycopy(random(50, 4), 0, data, 60000, 50);
+        ContentDefinedWriter writer = this.write(60000, data, 60000, 60050);
+        assertArrayEquals(data, this.read());
+        assertTrue(writer.getBlocksStored() + " stored", writer.getBlocksStored() <= 3);
+
+        int unchanged = 0;
+        for (BlockObject.Object.Reference reference : this.vObject.getExtent(80000, data.length).values()) {
+            if (reference.getFileOffset() >= 80000) {
+                assertEquals(before.get(reference.getFileOffset()).getObjectId(), reference.getObjectId());
+                unchanged++;
+            }
+        }
+        assertTrue(unchanged > 5);
+    }
+
+    @Test
+    public void testHole() throws Exception {
+        byte[] data = random(10000, 5);
+        this.write(0, data, 0, data.length);
+        byte[] tail = random(5000, 6);
+        this.write(50000, tail, 0, tail.length);
+
+        byte[] expected = new byte[55000];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        System.arraycopy(tail, 0, expected, 50000, tail.length);
+        assertArrayEquals(expected, this.read());
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        byte[] data = random(200000, 7);
+        this.write(0, data, 0, data.length);
+
+        // Truncate inside a BlockObject which does not start at the aligned offset a fixed size BlockObject would.
+        long length = 123457;
+        BlockObject.Object.Reference containing = ContentDefinedWriter.blockContaining(this.vObject, length);
+        assertNotNull(containing);
+        assertTrue(containing.getFileOffset() < length);
+        assertTrue(containing.getFileOffset() != (length / MAXIMUM) * MAXIMUM);
+
+        this.writer().truncate(length);
+        this.vObject.setFileSize(length);
+        assertArrayEquals(Arrays.copyOf(data, (int) length), this.read());
+
+        // Extending the file again must expose zeros, not the data that was truncated.
+        byte[] tail = random(10, 8);
+        this.write(150000, tail, 0, tail.length);
+        byte[] expected = new byte[150010];
+        System.arraycopy(data, 0, expected, 0, (int) length);
+        System.arraycopy(tail, 0, expected, 150000, tail.length);
+        assertArrayEquals(expected, this.read());
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.celeste.node.services.object;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+
+import static org.junit.Assert.*;
+
+public class PagedManifestTest {
+    private final static int BLOCK = 1000;
+
+    //
+    // Pages held in memory, copied through serialization just as they would be by the object store.
+    //
+    private static class MemoryPages implements PagedManifest.Pages {
+        Map<TitanGuid,byte[]> pages = new HashMap<TitanGuid,byte[]>();
+        int gets;
+        int puts;
+
+        public PagedManifest.Page get(TitanGuid pageId) throws VersionObject.BadManifestException {
+            this.gets++;
+            byte[] bytes = this.pages.get(pageId);
+            if (bytes == null) {
+                throw new VersionObject.BadManifestException("No page %s", pageId);
+            }
+            try {
+                return (PagedManifest.Page) PagedManifestTest.deserialize(bytes);
+            } catch (Exception e) {
+                throw new VersionObject.BadManifestException(e);
+            }
+        }
+
+        public TitanGuid put(PagedManifest.Page page) throws IOException {
+            this.puts++;
+            TitanGuid pageId = new TitanGuidImpl(String.valueOf(this.pages.size()).getBytes());
+            this.pages.put(pageId, PagedManifestTest.serialize(page));
+            return pageId;
+        }
+    }
+
+    private MemoryPages pages;
+
+    @Before
+    public void setUp() {
+        this.pages = new MemoryPages();
+    }
+
+    private static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+
+    private static BlockObject.Object.Reference reference(long offset, int version) {
+        TitanGuid objectId = new TitanGuidImpl((offset + ":" + version).getBytes());
+        return new BlockObjectHandler.BObject.Reference(offset + "/" + BLOCK + "/" + objectId);
+    }
+
+    private PagedManifest newManifest() {
+        PagedManifest manifest = new PagedManifest(new TreeMap<Long,BlockObject.Object.Reference>());
+        manifest.setPages(this.pages);
+        return manifest;
+    }
+
+    private static void assertSameEntries(SortedMap<Long,BlockObject.Object.Reference> expected, SortedMap<Long,BlockObject.Object.Reference> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Long,BlockObject.Object.Reference> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().toString(), actual.get(entry.getKey()).toString());
+        }
+    }
+
+    @Test
+    public void testMatchesTreeMap() throws Exception {
+        Random random = new Random(1);
+        PagedManifest manifest = this.newManifest();
+        TreeMap<Long,BlockObject.Object.Reference> expected = new TreeMap<Long,BlockObject.Object.Reference>();
+
+        for (int i = 0; i < 5000; i++) {
+            long offset = random.nextInt(3000) * (long) BLOCK;
+            BlockObject.Object.Reference reference = reference(offset, i);
+            manifest.put(reference);
+            expected.put(offset, reference);
+            if (i % 500 == 0) {
+                manifest.flush();
+            }
+        }
+        manifest.flush();
+
+        assertSameEntries(expected, manifest.getAll());
+        assertEquals(expected.lastEntry().getValue().toString(), manifest.last().toString());
+        for (int i = 0; i < 200; i++) {
+            long offset = random.nextInt(3100 * BLOCK);
+            BlockObject.Object.Reference exact = manifest.get(offset);
+            assertEquals(String.valueOf(expected.get(offset)), String.valueOf(exact));
+            Map.Entry<Long,BlockObject.Object.Reference> lower = expected.lowerEntry(offset);
+            assertEquals(lower == null ? "null" : lower.getValue().toString(), String.valueOf(manifest.lower(offset)));
+
+            long stop = offset + random.nextInt(300 * BLOCK);
+            assertSameEntries(expected.subMap(offset, stop), manifest.range(offset, stop));
+        }
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        Random random = new Random(2);
+        PagedManifest manifest = this.newManifest();
+        TreeMap<Long,BlockObject.Object.Reference> expected = new TreeMap<Long,BlockObject.Object.Reference>();
+        for (long offset = 0; offset < 2000L * BLOCK; offset += BLOCK) {
+            manifest.put(reference(offset, 0));
+            expected.put(offset, reference(offset, 0));
+        }
+        manifest.flush();
+
+        for (int i = 0; i < 10; i++) {
+            long offset = random.nextInt((int) (expected.isEmpty() ? 1 : expected.lastKey() + 1));
+            manifest.truncate(offset);
+            expected.tailMap(offset).clear();
+            assertSameEntries(expected, manifest.getAll());
+            assertEquals(String.valueOf(expected.isEmpty() ? null : expected.lastEntry().getValue()), String.valueOf(manifest.last()));
+            manifest.flush();
+        }
+
+        manifest.truncate(0);
+        assertTrue(manifest.isEmpty());
+        assertNull(manifest.last());
+        assertNull(manifest.flush());
+
+        manifest.put(reference(0, 1));
+        assertEquals(reference(0, 1).toString(), manifest.get(0).toString());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        Random random = new Random(3);
+        PagedManifest manifest = this.newManifest();
+        TreeMap<Long,BlockObject.Object.Reference> expected = new TreeMap<Long,BlockObject.Object.Reference>();
+        for (long offset = 0; offset < 2000L * BLOCK; offset += BLOCK) {
+            manifest.put(reference(offset, 0));
+            expected.put(offset, reference(offset, 0));
+        }
+        manifest.flush();
+
+        for (int i = 0; i < 20; i++) {
+            long from = random.nextInt(2000 * BLOCK);
+            long to = from + random.nextInt(400 * BLOCK);
+            manifest.remove(from, to);
+            expected.subMap(from, to).clear();
+            // Replace some of the removed entries, at different offsets, as a content-defined write does.
+            for (long offset = from + BLOCK / 2; offset < to; offset += 3 * BLOCK) {
+                manifest.put(reference(offset, i + 1));
+                expected.put(offset, reference(offset, i + 1));
+            }
+            assertSameEntries(expected, manifest.getAll());
+            assertEquals(expected.lastEntry().getValue().toString(), manifest.last().toString());
+            long offset = random.nextInt(2000 * BLOCK);
+            Map.Entry<Long,BlockObject.Object.Reference> lower = expected.lowerEntry(offset);
+            assertEquals(lower == null ? "null" : lower.getValue().toString(), String.valueOf(manifest.lower(offset)));
+            manifest.flush();
+        }
+
+        manifest.remove(0, Long.MAX_VALUE);
+        assertTrue(manifest.isEmpty());
+        assertNull(manifest.last());
+    }
+
+    @Test
+    public void testUpdateStoresOnlyThePath() throws Exception {
+        PagedManifest manifest = this.newManifest();
+        long blocks = 100000;
+        for (long offset = 0; offset < blocks * BLOCK; offset += BLOCK) {
+            manifest.put(reference(offset, 0));
+        }
+        manifest.flush();
+        int height = 0;
+        for (long n = blocks; n > 1; n = (n + PagedManifest.PAGE_CAPACITY - 1) / PagedManifest.PAGE_CAPACITY) {
+            height++;
+        }
+
+        // Appending to the file leaves the earlier pages full, so the pages stored are close to the minimum.
+        int minimumPages = 0;
+        for (long n = blocks; n > 1; n = (n + PagedManifest.PAGE_CAPACITY - 1) / PagedManifest.PAGE_CAPACITY) {
+            minimumPages += (int) ((n + PagedManifest.PAGE_CAPACITY - 1) / PagedManifest.PAGE_CAPACITY);
+        }
+        assertTrue(this.pages.puts + " pages", this.pages.puts <= minimumPages + height);
+
+        int puts = this.pages.puts;
+        manifest.put(reference(54321L * BLOCK, 1));
+        manifest.flush();
+        assertEquals(height, this.pages.puts - puts);
+
+        puts = this.pages.puts;
+        manifest.put(reference(blocks * BLOCK, 1));
+        manifest.flush();
+        assertTrue(this.pages.puts - puts <= height + 1);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        PagedManifest manifest = this.newManifest();
+        TreeMap<Long,BlockObject.Object.Reference> expected = new TreeMap<Long,BlockObject.Object.Reference>();
+        for (long offset = 0; offset < 10000L * BLOCK; offset += BLOCK) {
+            manifest.put(reference(offset, 0));
+            expected.put(offset, reference(offset, 0));
+        }
+
+        try {
+            serialize(manifest);
+            fail("a manifest with unstored pages must not be serialized");
+        } catch (NotSerializableException expectedException) {
+            // expected
+        }
+
+        TitanGuid rootId = manifest.flush();
+        byte[] bytes = serialize(manifest);
+        assertTrue(bytes.length + " bytes", bytes.length < 1024);
+
+        PagedManifest copy = (PagedManifest) deserialize(bytes);
+        assertEquals(rootId, copy.getRootId());
+        copy.setPages(this.pages);
+
+        // Reading a range loads only the pages on the path to it.
+        this.pages.gets = 0;
+        assertSameEntries(expected.subMap(5000L * BLOCK, 5010L * BLOCK), copy.range(5000L * BLOCK, 5010L * BLOCK));
+        assertTrue(this.pages.gets + " pages", this.pages.gets <= 3);
+
+        assertSameEntries(expected, copy.getAll());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sunlabs.titan.api.TitanGuid;
+
+import static org.junit.Assert.*;
+
+public class TitanGuidImplTest {
+    private final static String EMPTY_SHA256 = "E3B0C44298FC1C149AFBF4C8996FB92427AE41E4649B934CA495991B7852B855";
+
+    //
+    // Make an identifier sharing the first n digits of a, and the rest from b.
+    //
+    private static TitanGuidImpl splice(TitanGuid a, TitanGuid b, int n) {
+        return new TitanGuidImpl(a.toString().substring(0, n) + b.toString().substring(n));
+    }
+
+    @Test
+    public void testHash() {
+        assertEquals(EMPTY_SHA256, new TitanGuidImpl(new byte[0]).toString());
+        assertEquals(EMPTY_SHA256, new TitanGuidImpl(ByteBuffer.allocate(0)).toString());
+        assertEquals(new TitanGuidImpl(EMPTY_SHA256), new TitanGuidImpl(EMPTY_SHA256.toLowerCase()));
+    }
+
+    @Test
+    public void testHasherMatchesAdd() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            byte[] a = new byte[random.nextInt(100)];
+            byte[] b = new byte[random.nextInt(100)];
+            random.nextBytes(a);
+            random.nextBytes(b);
+            long v = random.nextLong();
+            TitanGuid chained = new TitanGuidImpl(a).add(b).add(v).add("s").add(new TitanGuidImpl(b));
+            TitanGuid hashed = new GuidHasher().update(a).update(ByteBuffer.wrap(b)).update(v).update("s").update(new TitanGuidImpl(b)).getGuid();
+            assertEquals(chained, hashed);
+            assertEquals(new TitanGuidImpl(a).add(b), new GuidHasher(new TitanGuidImpl(a)).update(b).getGuid());
+        }
+    }
+
+    @Test
+    public void testRoutingOperations() {
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            TitanGuidImpl a = new TitanGuidImpl();
+            int n = random.nextInt(TitanGuidImpl.n_digits + 1);
+            TitanGuidImpl b = splice(a, new TitanGuidImpl(), n);
+
+            int prefix = 0;
+            while (prefix < TitanGuidImpl.n_digits && a.digit(prefix) == b.digit(prefix)) {
+                prefix++;
+            }
+            assertEquals(prefix, a.sharedPrefix(b));
+            assertEquals(prefix, b.sharedPrefix(a));
+            if (prefix == TitanGuidImpl.n_digits) {
+                assertEquals(a, b);
+                assertEquals(0, a.distance(b));
+                assertEquals(0, a.compareTo(b));
+            } else {
+                assertEquals((TitanGuidImpl.n_digits - prefix) * 100 + ((b.digit(prefix) - a.digit(prefix) + 16) % 16), a.distance(b));
+                assertEquals(Integer.signum(a.toString().compareTo(b.toString())), a.compareTo(b));
+                assertEquals(-a.compareTo(b), b.compareTo(a));
+                assertFalse(a.equals(b));
+            }
+        }
+    }
+
+    @Test
+    public void testRepresentation() throws Exception {
+        TitanGuidImpl id = new TitanGuidImpl();
+        assertEquals(id, new TitanGuidImpl(id.toString()));
+        assertEquals(id, new TitanGuidImpl(id));
+        assertEquals(id.toString(), new TitanGuidImpl(id.getBytes(), "").toString());
+        assertEquals(id.hashCode(), new TitanGuidImpl(id.toString()).hashCode());
+
+        // getBytes() returns a copy.
+        id.getBytes()[0] ^= 1;
+        assertEquals(id, new TitanGuidImpl(id.toString()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(id);
+        out.close();
+        assertEquals(id, new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject());
+    }
+}
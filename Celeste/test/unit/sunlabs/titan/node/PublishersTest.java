@@ -0,0 +1,188 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.api.TitanObject;
+import sunlabs.titan.api.TitanObjectStore;
+import sunlabs.titan.node.util.DOLRLogger;
+
+import static org.junit.Assert.*;
+
+public class PublishersTest {
+    static {
+        // Compact the journal after only a few entries (the value is read when Publishers is first loaded).
+        System.setProperty("sunlabs.titan.node.Publishers.journalCompactMinimum", "16");
+    }
+
+    private File spool;
+    private DOLRLogger log;
+    private TitanNodeId self;
+    private NodeAddress[] publishers;
+
+    @Before
+    public void setUp() throws Exception {
+        this.spool = File.createTempFile("publishers", "");
+        this.spool.delete();
+        this.spool.mkdirs();
+        this.log = new DOLRLogger(PublishersTest.class.getName(), null, System.getProperty("java.io.tmpdir"), 0, 0);
+        this.self = new TitanNodeIdImpl(new TitanGuidImpl("self".getBytes()));
+        this.publishers = new NodeAddress[3];
+        for (int i = 0; i < this.publishers.length; i++) {
+            this.publishers[i] = new NodeAddress(new TitanNodeIdImpl(new TitanGuidImpl(("node" + i).getBytes())), "127.0.0.1", 12000 + i, new URL("http://127.0.0.1:" + (12001 + i)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : this.spool.listFiles()) {
+            file.delete();
+        }
+        this.spool.delete();
+    }
+
+    private Publishers open() throws IOException {
+        return new Publishers(null, this.self, this.log, this.spool.getPath());
+    }
+
+    private static Publishers.PublishRecord record(TitanGuid objectId, NodeAddress publisher, String objectClass, long secondsToLive) {
+        TitanObject.Metadata metaData = new AbstractTitanObject.Metadata();
+        metaData.setProperty(TitanObjectStore.METADATA_CLASS, objectClass);
+        return new Publishers.PublishRecord(objectId, publisher, metaData, secondsToLive);
+    }
+
+    private static TitanGuid objectId(int i) {
+        return new TitanGuidImpl(("object" + i).getBytes());
+    }
+
+    /**
+     * Read the generation number from the header of a snapshot or journal file.
+     */
+    private static long generation(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readInt();
+            return in.readLong();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        Publishers index = this.open();
+        for (int i = 0; i < 10; i++) {
+            for (NodeAddress publisher : this.publishers) {
+                index.update(record(objectId(i), publisher, "Class" + i, 3600));
+            }
+        }
+        index.remove(objectId(3));
+        index.remove(objectId(4), this.publishers[1].getObjectId());
+        index.update(record(objectId(5), this.publishers[2], "Replaced", 3600));
+        index.update(record(objectId(6), this.publishers[0], "Expired", -10));
+        index.close();
+
+        // The changes are all in the journal, after the snapshot written when the index was opened.
+        assertEquals(generation(new File(this.spool, "object-publishers.snapshot")), generation(new File(this.spool, "object-publishers.journal")));
+
+        index = this.open();
+        try {
+            assertEquals(9, index.size());
+            assertEquals(25, index.getRecordCount());
+            assertTrue(index.getPublishers(objectId(3)).isEmpty());
+
+            HashSet<Publishers.PublishRecord> set = index.getPublishers(objectId(4));
+            assertEquals(2, set.size());
+            for (Publishers.PublishRecord record : set) {
+                assertFalse(record.getNodeId().equals(this.publishers[1].getObjectId()));
+            }
+
+            for (Publishers.PublishRecord record : index.getPublishers(objectId(5))) {
+                String expected = record.getNodeId().equals(this.publishers[2].getObjectId()) ? "Replaced" : "Class5";
+                assertEquals(expected, record.getObjectClass());
+                assertTrue(record.getExpireTimeSeconds() > 0);
+            }
+
+            // The expired record is discarded when the journal is replayed, along with the record it replaced.
+            set = index.getPublishers(objectId(6));
+            assertEquals(2, set.size());
+            for (Publishers.PublishRecord record : set) {
+                assertFalse(record.getNodeId().equals(this.publishers[0].getObjectId()));
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        File snapshot = new File(this.spool, "object-publishers.snapshot");
+        File journal = new File(this.spool, "object-publishers.journal");
+
+        Publishers index = this.open();
+        long initial = generation(snapshot);
+        for (int i = 0; i < 200; i++) {
+            index.update(record(objectId(i % 4), this.publishers[i % 3], "Class" + i, 3600));
+        }
+        index.close();
+
+        // Two hundred changes to twelve records replaced the journal with a new snapshot several times.
+        long compacted = generation(snapshot);
+        assertTrue(compacted > initial + 1);
+        assertEquals(compacted, generation(journal));
+
+        index = this.open();
+        try {
+            assertEquals(4, index.size());
+            assertEquals(12, index.getRecordCount());
+            for (int i = 188; i < 200; i++) {
+                boolean found = false;
+                for (Publishers.PublishRecord record : index.getPublishers(objectId(i % 4))) {
+                    if (record.getNodeId().equals(this.publishers[i % 3].getObjectId())) {
+                        assertEquals("Class" + i, record.getObjectClass());
+                        found = true;
+                    }
+                }
+                assertTrue(found);
+            }
+            // Opening the index writes a snapshot of the recovered records as the next generation.
+            assertEquals(compacted + 1, generation(snapshot));
+        } finally {
+            index.close();
+        }
+    }
+}
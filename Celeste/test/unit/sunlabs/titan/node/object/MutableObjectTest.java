@@ -0,0 +1,347 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.object;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sunlabs.titan.TitanGuidImpl;
+import sunlabs.titan.api.TitanGuid;
+import sunlabs.titan.api.TitanNode;
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.node.NodeAddress;
+import sunlabs.titan.node.TitanMessage;
+import sunlabs.titan.node.TitanNodeIdImpl;
+import sunlabs.titan.node.util.DOLRLogger;
+
+import static org.junit.Assert.*;
+
+//
+// The replicas of a mutable object are held in this test rather than on
+// nodes.  A fake TitanNode answers getObjectHistory and setObjectHistory
+// requests by applying them to the local replicas, passing each request and
+// response through serialization as the real transport would.  A slow
+// replica delays every answer by SLOW_MILLIS, a failed replica never answers
+// successfully.
+//
+// With f=1 and b=0 there are 4 replicas and a quorum is 3, so one slow or
+// failed replica must not hold up getValue or setValue.
+//
+// Each replica is held by one of the nodes in nodeOf, which answers batched
+// getObjectHistories requests sent directly to it.
+//
+public class MutableObjectTest {
+    private final static long SLOW_MILLIS = 3000;
+
+    private final static MutableObject.Parameters params = new MutableObject.Params("1,0");
+
+    //
+    // Values must be equal after serialization for setValue's predicate.
+    //
+    private static class Value extends MutableObject.GenericObjectValue {
+        private static final long serialVersionUID = 1L;
+
+        Value(String v) {
+            super(v);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof MutableObjectTest.Value && this.format().equals(((MutableObjectTest.Value) other).format());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.format().hashCode();
+        }
+    }
+
+    private ExecutorService executor;
+    private DOLRLogger logger;
+    private MutableObject.ObjectId objectId;
+    private Map<TitanGuid,MutableObject.ObjectHistory> replicas;
+    private Map<TitanGuid,TitanNodeId> nodeOf;
+    private AtomicInteger messages;
+    private Set<TitanGuid> slow;
+    private Set<TitanGuid> failed;
+    private MutableObject.Handler<?> handler;
+
+    private static Serializable copy(Serializable object) {
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bout);
+            out.writeObject(object);
+            out.close();
+            return (Serializable) new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private TitanMessage reply(TitanNodeId source, String method, Serializable response) {
+        return new TitanMessage(TitanMessage.Type.Reply, new NodeAddress(source, null, null), null, TitanGuidImpl.ANY, MutableObjectTest.class.getName(), method, false, false,
+                MutableObjectTest.copy(response));
+    }
+
+    private TitanMessage sendToNodeExactly(TitanNodeId nodeId, String method, Serializable payload) throws Exception {
+        this.messages.incrementAndGet();
+        if (!method.equals("getObjectHistories")) {
+            throw new UnsupportedOperationException(method);
+        }
+        MutableObject.GetOperation.BatchRequest request = (MutableObject.GetOperation.BatchRequest) MutableObjectTest.copy(payload);
+        Map<TitanGuid,MutableObject.ObjectHistory> histories = new HashMap<TitanGuid,MutableObject.ObjectHistory>();
+        for (TitanGuid replicaId : request.getReplicaIds()) {
+            if (nodeId.equals(this.nodeOf.get(replicaId))) {
+                MutableObject.ObjectHistory history = this.replicas.get(replicaId);
+                synchronized (history) {
+                    histories.put(replicaId, history.dup());
+                }
+            }
+        }
+        return this.reply(nodeId, method, new MutableObject.GetOperation.BatchResponse(histories));
+    }
+
+    private TitanMessage sendToObject(TitanGuid replicaId, String method, Serializable payload) throws Exception {
+        this.messages.incrementAndGet();
+        if (this.slow.contains(replicaId)) {
+            Thread.sleep(SLOW_MILLIS);
+        }
+        if (this.failed.contains(replicaId)) {
+            return null;
+        }
+
+        MutableObject.ObjectHistory history = this.replicas.get(replicaId);
+        Serializable response;
+        synchronized (history) {
+            if (method.equals("getObjectHistory")) {
+                response = new MutableObject.GetOperation.Response(history.dup());
+            } else if (method.equals("setObjectHistory")) {
+                MutableObject.SetOperation.Request request = (MutableObject.SetOperation.Request) MutableObjectTest.copy(payload);
+                history.setValue(this.logger, new TitanGuidImpl("client".getBytes()), request.getObjectHistorySet(), request.getValue());
+                response = new MutableObject.SetOperation.Response(history.dup());
+            } else {
+                throw new UnsupportedOperationException(method);
+            }
+        }
+        return this.reply(this.nodeOf.get(replicaId), method, response);
+    }
+
+    private void createObject(MutableObject.ObjectId objectId) {
+        for (int r = 0; r < 3 * params.getNFaulty() + 2 * params.getNByzantine() + 1; r++) {
+            TitanGuid replicaId = objectId.add(r);
+            MutableObject.ObjectHistory history = new MutableObject.ObjectHistory(objectId, replicaId);
+            history.add(new MutableObject.TimeStamp());
+            this.replicas.put(replicaId, history);
+            this.nodeOf.put(replicaId, new TitanNodeIdImpl(new TitanGuidImpl(("node" + (r % 2)).getBytes())));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.logger = new DOLRLogger(MutableObjectTest.class.getName(), null, System.getProperty("java.io.tmpdir"), 0, 0);
+        this.objectId = new MutableObject.ObjectId(new TitanGuidImpl("MutableObjectTest".getBytes()));
+        this.replicas = new HashMap<TitanGuid,MutableObject.ObjectHistory>();
+        this.nodeOf = new HashMap<TitanGuid,TitanNodeId>();
+        this.messages = new AtomicInteger();
+        this.createObject(this.objectId);
+        this.slow = new HashSet<TitanGuid>();
+        this.failed = new HashSet<TitanGuid>();
+
+        final TitanNode node = (TitanNode) Proxy.newProxyInstance(TitanNode.class.getClassLoader(), new Class<?>[] { TitanNode.class },
+                new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("sendToObject")) {
+                    return MutableObjectTest.this.sendToObject((TitanGuid) args[0], (String) args[2], (Serializable) args[3]);
+                } else if (method.getName().equals("sendToNodeExactly") && args.length == 4) {
+                    return MutableObjectTest.this.sendToNodeExactly((TitanNodeId) args[0], (String) args[2], (Serializable) args[3]);
+                } else if (method.getName().equals("execute")) {
+                    MutableObjectTest.this.executor.execute((Runnable) args[0]);
+                    return null;
+                } else if (method.getName().equals("getLogger")) {
+                    return MutableObjectTest.this.logger;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        this.handler = (MutableObject.Handler<?>) Proxy.newProxyInstance(MutableObject.Handler.class.getClassLoader(), new Class<?>[] { MutableObject.Handler.class },
+                new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getNode")) {
+                    return node;
+                } else if (method.getName().equals("getLogger")) {
+                    return MutableObjectTest.this.logger;
+                } else if (method.getName().equals("getName")) {
+                    return MutableObjectTest.class.getName();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    //
+    // Verify that setValue and getValue complete with a quorum of replicas,
+    // rather than waiting for the slow one.
+    //
+    @Test
+    public void testSlowReplica() throws Exception {
+        this.slow.add(this.objectId.add(0));
+
+        long start = System.currentTimeMillis();
+        MutableObject.setValue(this.handler, this.objectId, null, new MutableObjectTest.Value("one"), params);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("setValue took " + elapsed + "ms, waiting for the slow replica", elapsed < SLOW_MILLIS / 2);
+
+        start = System.currentTimeMillis();
+        MutableObject.Value value = MutableObject.getValue(this.handler, this.objectId, params);
+        elapsed = System.currentTimeMillis() - start;
+        assertTrue("getValue took " + elapsed + "ms, waiting for the slow replica", elapsed < SLOW_MILLIS / 2);
+        assertEquals(new MutableObjectTest.Value("one"), value);
+    }
+
+    //
+    // Verify that an object history set that must be repaired is collected
+    // from a quorum of replicas and repaired without waiting for the slow
+    // replica.  Replica 0 is slow during the first write, so it is not in
+    // the quorum that receives it, and then replica 3 becomes slow.  The
+    // first quorum of responses to the next read is repairable rather than
+    // complete.
+    //
+    @Test
+    public void testStaleAndSlowReplicas() throws Exception {
+        this.slow.add(this.objectId.add(0));
+        MutableObject.setValue(this.handler, this.objectId, null, new MutableObjectTest.Value("one"), params);
+        this.slow.clear();
+        this.slow.add(this.objectId.add(3));
+
+        long start = System.currentTimeMillis();
+        MutableObject.Value value = MutableObject.getValue(this.handler, this.objectId, params);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("getValue took " + elapsed + "ms, waiting for the slow replica", elapsed < SLOW_MILLIS / 2);
+        assertEquals(new MutableObjectTest.Value("one"), value);
+
+        start = System.currentTimeMillis();
+        MutableObject.setValue(this.handler, this.objectId, value, new MutableObjectTest.Value("two"), params);
+        elapsed = System.currentTimeMillis() - start;
+        assertTrue("setValue took " + elapsed + "ms, waiting for the slow replica", elapsed < SLOW_MILLIS / 2);
+        assertEquals(new MutableObjectTest.Value("two"), MutableObject.getValue(this.handler, this.objectId, params));
+    }
+
+    //
+    // Verify that a failed replica doesn't prevent a quorum, but two do and
+    // the failure is reported without waiting for the slow replica.
+    //
+    @Test
+    public void testFailedReplicas() throws Exception {
+        this.failed.add(this.objectId.add(1));
+        MutableObject.setValue(this.handler, this.objectId, null, new MutableObjectTest.Value("one"), params);
+        assertEquals(new MutableObjectTest.Value("one"), MutableObject.getValue(this.handler, this.objectId, params));
+
+        this.failed.add(this.objectId.add(2));
+        this.slow.add(this.objectId.add(0));
+        long start = System.currentTimeMillis();
+        try {
+            MutableObject.getValue(this.handler, this.objectId, params);
+            fail("expected InsufficientResourcesException");
+        } catch (MutableObject.InsufficientResourcesException expected) {
+            // Only the slow replica can complete a quorum, so this must wait for it.
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("getValue took " + elapsed + "ms", elapsed >= SLOW_MILLIS);
+        }
+    }
+
+    //
+    // Verify that getValues learns where the replicas are and then reads
+    // many objects with one message per node, and that a replica which has
+    // moved is read from the remaining quorum.
+    //
+    @Test
+    public void testGetValues() throws Exception {
+        List<MutableObject.ObjectId> objectIds = new ArrayList<MutableObject.ObjectId>();
+        for (int i = 0; i < 10; i++) {
+            MutableObject.ObjectId objectId = new MutableObject.ObjectId(new TitanGuidImpl(("MutableObjectTest" + i).getBytes()));
+            this.createObject(objectId);
+            MutableObject.setValue(this.handler, objectId, null, new MutableObjectTest.Value("v" + i), params);
+            objectIds.add(objectId);
+        }
+        MutableObject.ReplicaLocations locations = new MutableObject.ReplicaLocations(1000);
+
+        Map<MutableObject.ObjectId,MutableObject.Value> values = MutableObject.getValues(this.handler, objectIds, params, locations);
+        for (int i = 0; i < objectIds.size(); i++) {
+            assertEquals(new MutableObjectTest.Value("v" + i), values.get(objectIds.get(i)));
+        }
+        assertTrue("learned " + locations.size() + " locations", locations.size() >= objectIds.size() * 3);
+
+        // A quorum of every object's replicas is now known, so there is one message for each of the two nodes,
+        // and at most one more for each replica not answered in time to be learned.
+        int unknown = objectIds.size() * 4 - locations.size();
+        this.messages.set(0);
+        values = MutableObject.getValues(this.handler, objectIds, params, locations);
+        assertTrue(this.messages.get() + " messages", this.messages.get() <= 2 + unknown);
+        for (int i = 0; i < objectIds.size(); i++) {
+            assertEquals(new MutableObjectTest.Value("v" + i), values.get(objectIds.get(i)));
+        }
+
+        TitanGuid moved = objectIds.get(0).add(0);
+        this.nodeOf.put(moved, new TitanNodeIdImpl(new TitanGuidImpl("node2".getBytes())));
+        values = MutableObject.getValues(this.handler, objectIds, params, locations);
+        assertEquals(new MutableObjectTest.Value("v0"), values.get(objectIds.get(0)));
+        assertNull(locations.get(moved));
+    }
+}
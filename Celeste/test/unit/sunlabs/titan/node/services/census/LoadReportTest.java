@@ -0,0 +1,105 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.services.census;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sunlabs.titan.api.TitanNodeId;
+import sunlabs.titan.node.TitanNodeIdImpl;
+import sunlabs.titan.node.services.Census;
+import sunlabs.titan.util.OrderedProperties;
+
+import static org.junit.Assert.*;
+
+public class LoadReportTest {
+    private static OrderedProperties report(double depth, double latency, double traffic, long free) {
+        OrderedProperties report = new OrderedProperties();
+        report.setProperty(Census.DispatchQueueDepth, depth);
+        report.setProperty(Census.ObjectStorePutLatencyMillis, latency);
+        report.setProperty(Census.BytesInPerSecond, traffic);
+        report.setProperty(Census.BytesOutPerSecond, 0.0);
+        report.setProperty(Census.SpoolFreeBytes, free);
+        return report;
+    }
+
+    @Test
+    public void testCompare() {
+        long free = 1L << 40;
+        OrderedProperties idle = report(0, 0, 0, free);
+        OrderedProperties busy = report(1, 5, 1000, free);
+        OrderedProperties slow = report(1, 500, 1000, free);
+
+        assertEquals(0, LoadReport.compare(idle, idle));
+        assertTrue(LoadReport.compare(idle, busy) < 0);
+        assertTrue(LoadReport.compare(slow, busy) > 0);
+        assertTrue(LoadReport.compare(busy, slow) < 0);
+
+        // A node that is short of space loses, no matter how idle it is.
+        OrderedProperties full = report(0, 0, 0, LoadReport.SPOOL_RESERVE_BYTES - 1);
+        assertTrue(LoadReport.compare(full, slow) > 0);
+
+        // A report without load values counts as idle.
+        assertEquals(0, LoadReport.compare(new OrderedProperties(), idle));
+    }
+
+    @Test
+    public void testSelectByLoad() {
+        Map<TitanNodeId,OrderedProperties> reports = new HashMap<TitanNodeId,OrderedProperties>();
+        List<TitanNodeId> nodes = new ArrayList<TitanNodeId>();
+        for (int i = 0; i < 6; i++) {
+            TitanNodeId id = new TitanNodeIdImpl(("node" + i).getBytes());
+            nodes.add(id);
+            reports.put(id, report(1, 5, 1000, 1L << 40));
+        }
+        TitanNodeId slow = nodes.get(0);
+        reports.put(slow, report(4, 500, 1000, 1L << 40));
+
+        Random random = new Random(0x5EEDL);
+        int slowChosen = 0;
+        int trials = 3000;
+        for (int i = 0; i < trials; i++) {
+            List<TitanNodeId> selected = CensusService.selectByLoad(nodes, reports, 2, random);
+            assertEquals(2, selected.size());
+            assertEquals(2, new HashSet<TitanNodeId>(selected).size());
+            if (selected.contains(slow)) {
+                slowChosen++;
+            }
+        }
+        // At random the slow node would be among two chosen of six a third of the time.
+        // Here it loses every comparison, and there are always other candidates to compare it with.
+        assertEquals(0, slowChosen);
+
+        // Asking for at least as many nodes as there are returns them all.
+        Set<TitanNodeId> all = new HashSet<TitanNodeId>(CensusService.selectByLoad(nodes, reports, nodes.size(), random));
+        assertEquals(new HashSet<TitanNodeId>(nodes), all);
+    }
+}
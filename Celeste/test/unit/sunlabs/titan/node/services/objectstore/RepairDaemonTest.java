@@ -0,0 +1,88 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.services.objectstore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RepairDaemonTest {
+    private final static double EPSILON = 1e-9;
+
+    @Test
+    public void testRefill() {
+        long now = 1000000;
+        RepairDaemon.TokenBucket bucket = new RepairDaemon.TokenBucket(4, now);
+
+        // A new bucket is full, and refilling never exceeds the capacity of one second's worth of tokens.
+        assertEquals(4, bucket.refill(4, now), EPSILON);
+        assertTrue(bucket.isFull(4));
+        assertEquals(4, bucket.refill(4, now + 10000), EPSILON);
+
+        bucket.take(1);
+        bucket.take(1);
+        bucket.take(1);
+        assertEquals(1, bucket.refill(4, now + 10000), EPSILON);
+        assertFalse(bucket.isFull(4));
+
+        // Tokens accrue at the rate, here one every 250 milliseconds.
+        assertEquals(2, bucket.refill(4, now + 10250), EPSILON);
+        assertEquals(3.5, bucket.refill(4, now + 10625), EPSILON);
+        assertEquals(4, bucket.refill(4, now + 20000), EPSILON);
+        assertTrue(bucket.isFull(4));
+
+        // A bucket with a rate below one copy per second still holds one token, so that a copy can always be made eventually.
+        RepairDaemon.TokenBucket slow = new RepairDaemon.TokenBucket(0.5, now);
+        assertEquals(1, slow.refill(0.5, now), EPSILON);
+        slow.take(1);
+        assertEquals(0.5, slow.refill(0.5, now + 1000), EPSILON);
+        assertEquals(1, slow.refill(0.5, now + 5000), EPSILON);
+    }
+
+    @Test
+    public void testChargePerCopy() {
+        long now = 1000000;
+        RepairDaemon.TokenBucket bucket = new RepairDaemon.TokenBucket(2, now);
+
+        // A repair making five copies may start with only two tokens, and leaves the bucket three copies in debt.
+        assertTrue(bucket.refill(2, now) >= 1.0);
+        bucket.take(5);
+        assertEquals(-3, bucket.refill(2, now), EPSILON);
+
+        // The debt is repaid at two copies a second, so the next repair waits two seconds rather than half a second.
+        assertTrue(bucket.refill(2, now + 500) < 1.0);
+        assertTrue(bucket.refill(2, now + 1999) < 1.0);
+        assertEquals(1, bucket.refill(2, now + 2000), EPSILON);
+
+        // Over a long run the copies charged match the rate.
+        int copies = 0;
+        for (long t = now + 2000; t <= now + 62000; t += 100) {
+            if (bucket.refill(2, t) >= 1.0) {
+                bucket.take(3);
+                copies += 3;
+            }
+        }
+        assertTrue(Integer.toString(copies), copies >= 2 * 60 && copies <= 2 * 60 + 3);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsyncLogHandlerTest {
+    //
+    // A target handler that takes a while to write each record.
+    //
+    private static class SlowHandler extends Handler {
+        final List<String> messages = new ArrayList<String>();
+        boolean closed = false;
+
+        @Override
+        public synchronized void publish(LogRecord record) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public synchronized void close() {
+            this.closed = true;
+        }
+    }
+
+    //
+    // Closing the handler writes every queued record, in order, even when
+    // that takes longer than flush() waits, and then closes the target.
+    //
+    @Test
+    public void testCloseWritesQueuedRecords() {
+        SlowHandler target = new SlowHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(target, 1000);
+        for (int i = 0; i < 1000; i++) {
+            handler.publish(new LogRecord(Level.INFO, Integer.toString(i)));
+        }
+        assertEquals(0, handler.getDropped());
+
+        handler.close();
+        assertEquals(0, handler.getQueued());
+        synchronized (target) {
+            assertEquals(1000, target.messages.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(Integer.toString(i), target.messages.get(i));
+            }
+            assertTrue(target.closed);
+        }
+
+        // Records published after close are discarded, and closing again does nothing.
+        handler.publish(new LogRecord(Level.INFO, "late"));
+        handler.close();
+        assertEquals(1000, target.messages.size());
+    }
+}
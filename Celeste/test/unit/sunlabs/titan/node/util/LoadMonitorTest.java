@@ -0,0 +1,81 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadMonitorTest {
+    private final static double EPSILON = 1e-9;
+    private final static long SECOND = 1000L * 1000 * 1000;
+
+    @Test
+    public void testRates() {
+        LoadMonitor load = new LoadMonitor();
+        long now = System.nanoTime();
+        load.sample(now);
+
+        // Four one-second dispatches in a two-second interval is a mean of two at once.
+        for (int i = 0; i < 4; i++) {
+            load.addDispatch(SECOND);
+        }
+        load.addPut(10 * 1000 * 1000);
+        load.addPut(30 * 1000 * 1000);
+        load.addBytesIn(4000);
+        load.addBytesOut(1000);
+        load.sample(now + 2 * SECOND);
+
+        assertEquals(LoadMonitor.WEIGHT * 2, load.getDispatchQueueDepth(), EPSILON);
+        assertEquals(LoadMonitor.WEIGHT * 20, load.getPutLatencyMillis(), EPSILON);
+        assertEquals(LoadMonitor.WEIGHT * 2000, load.getBytesInPerSecond(), EPSILON);
+        assertEquals(LoadMonitor.WEIGHT * 500, load.getBytesOutPerSecond(), EPSILON);
+    }
+
+    @Test
+    public void testConvergence() {
+        LoadMonitor load = new LoadMonitor();
+        long now = System.nanoTime();
+        load.sample(now);
+
+        for (int i = 1; i <= 40; i++) {
+            load.addPut(50 * 1000 * 1000);
+            load.sample(now + i * SECOND);
+        }
+        assertEquals(50, load.getPutLatencyMillis(), 1e-6);
+
+        // With no puts the latency decays so that the node is eventually tried again.
+        double previous = load.getPutLatencyMillis();
+        for (int i = 41; i <= 45; i++) {
+            load.sample(now + i * SECOND);
+            assertTrue(load.getPutLatencyMillis() < previous);
+            previous = load.getPutLatencyMillis();
+        }
+
+        // A sample that is not later than the previous one changes nothing.
+        load.addBytesIn(1000);
+        load.sample(now + 45 * SECOND);
+        assertEquals(0, load.getBytesInPerSecond(), EPSILON);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObjectCacheTest {
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ObjectCache<String,String> cache = new ObjectCache<String,String>(100);
+        assertTrue(cache.put("a", "A", 40));
+        assertTrue(cache.put("b", "B", 40));
+
+        // Using "a" leaves "b" as the least recently used, so it is the one evicted to make room for "c".
+        assertEquals("A", cache.get("a"));
+        assertTrue(cache.put("c", "C", 40));
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+
+        assertEquals(80, cache.getSize());
+        assertEquals(2, cache.getCount());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // A value larger than the whole cache is not admitted, and replaces nothing.
+        assertFalse(cache.put("d", "D", 101));
+        assertNull(cache.get("d"));
+        assertEquals(80, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidation() {
+        ObjectCache<String,String> cache = new ObjectCache<String,String>(100);
+        cache.put("a", "A", 40);
+        cache.put("a", "A2", 50);
+        assertEquals("A2", cache.get("a"));
+        assertEquals(50, cache.getSize());
+
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getInvalidations());
+
+        // A cache with no capacity holds nothing.
+        cache.setCapacity(0);
+        assertFalse(cache.put("b", "B", 1));
+        assertEquals(0, cache.getCount());
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2007-2010 Oracle. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Oracle Corporation, 500 Oracle Parkway, Redwood Shores, CA 94065
+ * or visit www.oracle.com if you need additional information or
+ * have any questions.
+ */
+package sunlabs.titan.node.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+//
+// Each "node" below is a loopback server socket.  A probe connects to a node,
+// sends a byte and blocks until the node echoes it back, as a ping blocks in
+// transmit.  A blackholed node accepts connections but never answers, so the
+// probe blocks until its socket timeout.  The socket timeout is twice the
+// deadline, so that a blackholed node is reported as timed out by the
+// scheduler but keeps its probe thread busy after the deadline.
+//
+public class ProbeSchedulerTest {
+    private final static long DEADLINE_MILLIS = 500;
+
+    private static class Node implements Runnable {
+        private final ServerSocket server;
+        private final boolean blackholed;
+        private final List<Socket> accepted = Collections.synchronizedList(new ArrayList<Socket>());
+
+        Node(boolean blackholed) throws IOException {
+            this.blackholed = blackholed;
+            this.server = new ServerSocket();
+            this.server.bind(new InetSocketAddress("127.0.0.1", 0));
+            Thread thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public int getPort() {
+            return this.server.getLocalPort();
+        }
+
+        public boolean isBlackholed() {
+            return this.blackholed;
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Socket socket = this.server.accept();
+                    this.accepted.add(socket);
+                    if (!this.blackholed) {
+                        int b = socket.getInputStream().read();
+                        socket.getOutputStream().write(b);
+                        socket.getOutputStream().flush();
+                    }
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        public void close() throws IOException {
+            this.server.close();
+            for (Socket socket : this.accepted) {
+                socket.close();
+            }
+        }
+    }
+
+    private static class Ping implements ProbeScheduler.Probe<Node,Long> {
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+
+        public Long probe(Node node, long deadlineMillis) throws Exception {
+            int n = this.outstanding.incrementAndGet();
+            synchronized (this) {
+                if (n > this.maxOutstanding.get()) {
+                    this.maxOutstanding.set(n);
+                }
+            }
+            long start = System.currentTimeMillis();
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress("127.0.0.1", node.getPort()), (int) (2 * deadlineMillis));
+                socket.setSoTimeout((int) (2 * deadlineMillis));
+                OutputStream out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+                out.write(1);
+                out.flush();
+                if (in.read() != 1) {
+                    throw new IOException("bad reply");
+                }
+                return System.currentTimeMillis() - start;
+            } finally {
+                this.outstanding.decrementAndGet();
+                socket.close();
+            }
+        }
+    }
+
+    private static class Results implements ProbeScheduler.Listener<Node,Long> {
+        final Set<Node> succeeded = Collections.synchronizedSet(new HashSet<Node>());
+        final Set<Node> failed = Collections.synchronizedSet(new HashSet<Node>());
+        final Set<Node> timedOut = Collections.synchronizedSet(new HashSet<Node>());
+        final AtomicLong firstResult = new AtomicLong(0);
+
+        public void success(Node node, Long latency) {
+            this.firstResult.compareAndSet(0, System.currentTimeMillis());
+            this.succeeded.add(node);
+        }
+
+        public void failure(Node node, Throwable reason) {
+            this.failed.add(node);
+        }
+
+        public void timeout(Node node) {
+            this.timedOut.add(node);
+        }
+    }
+
+    private ProbeScheduler scheduler;
+    private List<Node> nodes;
+
+    @Before
+    public void setUp() {
+        this.scheduler = new ProbeScheduler(Thread.currentThread().getThreadGroup(), "ProbeSchedulerTest", 8, DEADLINE_MILLIS);
+        this.nodes = new ArrayList<Node>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.scheduler.shutdown();
+        for (Node node : this.nodes) {
+            node.close();
+        }
+    }
+
+    private void createNodes(int count, int blackholed) throws IOException {
+        for (int i = 0; i < count; i++) {
+            this.nodes.add(new Node(i % (count / blackholed) == 0));
+        }
+    }
+
+    @Test
+    public void testAllRespond() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            this.nodes.add(new Node(false));
+        }
+        Ping ping = new Ping();
+        Results results = new Results();
+        ProbeScheduler.Round round = this.scheduler.probe(this.nodes, ping, results);
+
+        assertEquals(40, round.getTargets());
+        assertEquals(40, round.getSucceeded());
+        assertEquals(40, results.succeeded.size());
+        assertEquals(0, round.getFailed() + round.getTimedOut());
+        assertTrue(ping.maxOutstanding.get() <= this.scheduler.getConcurrency());
+    }
+
+    @Test
+    public void testBlackholedNodesBoundRoundTime() throws Exception {
+        this.createNodes(40, 10);
+        int blackholed = 0;
+        for (Node node : this.nodes) {
+            if (node.isBlackholed()) {
+                blackholed++;
+            }
+        }
+        assertEquals(10, blackholed);
+
+        Ping ping = new Ping();
+        Results results = new Results();
+        long start = System.currentTimeMillis();
+        ProbeScheduler.Round round = this.scheduler.probe(this.nodes, ping, results);
+
+        // Probed one at a time, the round would never finish.
+        // With 8 probes outstanding the round must finish within a few deadlines,
+        // even though every blackholed node holds its probe until the deadline.
+        long bound = ((this.nodes.size() + this.scheduler.getConcurrency() - 1) / this.scheduler.getConcurrency() + 1) * DEADLINE_MILLIS;
+        assertTrue(round.toString(), round.getElapsedMillis() <= bound);
+
+        assertEquals(30, round.getSucceeded());
+        assertEquals(10, round.getTimedOut());
+        for (Node node : this.nodes) {
+            if (node.isBlackholed()) {
+                assertTrue(results.timedOut.contains(node));
+            } else {
+                assertTrue(results.succeeded.contains(node));
+            }
+        }
+
+        // Results are delivered as they arrive, not at the end of the round.
+        assertTrue(results.firstResult.get() - start < DEADLINE_MILLIS);
+
+        // A probe past its deadline still occupies its thread, so the number running at once never exceeds the limit.
+        assertTrue(ping.maxOutstanding.get() <= this.scheduler.getConcurrency());
+    }
+
+    @Test
+    public void testStragglersHoldTheirPermits() throws Exception {
+        this.scheduler.setConcurrency(2);
+        this.nodes.add(new Node(true));
+        this.nodes.add(new Node(true));
+        this.nodes.add(new Node(false));
+        this.nodes.add(new Node(false));
+
+        // The two blackholed nodes time out at the deadline but hold both probe threads until twice the deadline,
+        // so the probes of the other two nodes cannot start before then.
+        Ping ping = new Ping();
+        Results results = new Results();
+        long start = System.currentTimeMillis();
+        ProbeScheduler.Round round = this.scheduler.probe(this.nodes, ping, results);
+
+        assertEquals(2, round.getSucceeded());
+        assertEquals(2, round.getTimedOut());
+        assertTrue(results.firstResult.get() - start >= 2 * DEADLINE_MILLIS - 50);
+        assertTrue(ping.maxOutstanding.get() <= 2);
+
+        // The next round waits for nothing, since every probe thread has finished.
+        this.scheduler.setConcurrency(4);
+        List<Node> responsive = new ArrayList<Node>();
+        for (Node node : this.nodes) {
+            if (!node.isBlackholed()) {
+                responsive.add(node);
+            }
+        }
+        round = this.scheduler.probe(responsive, ping, new Results());
+        assertEquals(2, round.getSucceeded());
+        assertTrue(round.toString(), round.getElapsedMillis() < DEADLINE_MILLIS);
+    }
+
+    @Test
+    public void testShutdownFailsRemainingProbes() throws Exception {
+        this.nodes.add(new Node(false));
+        this.scheduler.shutdown();
+        Results results = new Results();
+        ProbeScheduler.Round round = this.scheduler.probe(this.nodes, new Ping(), results);
+        assertEquals(1, round.getFailed());
+        assertEquals(1, results.failed.size());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import sunlabs.asdf.io.BulkDataInputStream;
+import sunlabs.asdf.io.BulkDataOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ExtentBufferTest {
+    //
+    // Verify that an ExtentBuffer written to a BulkDataOutputStream keeps
+    // its contents out of the serialized stream and is properly
+    // reconstructed from the bulk data by a BulkDataInputStream, into a
+    // buffer with an accessible backing array.
+    //
+    @Test
+    public final void testSerializationBulkData() throws
+            IOException, ClassNotFoundException {
+        ByteBuffer buffer = ByteBuffer.wrap("0123456789".getBytes());
+        ExtentBuffer eb0 = new ExtentBuffer(20L, buffer);
+        eb0.position(2).limit(5);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BulkDataOutputStream out = new BulkDataOutputStream(baos);
+        out.writeObject(eb0);
+        out.flush();
+        baos.flush();
+
+        assertEquals("expect one bulk buffer", 1, out.getBulk().size());
+        assertEquals("expect 3 bytes of bulk data", 3L, out.getBulkLength());
+        ByteBuffer bulk = ByteBuffer.allocate((int) out.getBulkLength());
+        bulk.put(out.getBulk().get(0)).flip();
+
+        byte[] serialized = baos.toByteArray();
+        ByteArrayInputStream bais = new ByteArrayInputStream(serialized);
+        BulkDataInputStream in = new BulkDataInputStream(bais, bulk);
+        ExtentBuffer eb1 = (ExtentBuffer)in.readObject();
+
+        out.close();
+        baos.close();
+        in.close();
+        bais.close();
+
+        assertEquals("expect start offset of 20", 20L, eb1.getStartOffset());
+        assertEquals("expect position of 2", 2, eb1.position());
+        assertEquals("expect limit of 5", 5, eb1.limit());
+        assertEquals("expect capacity of 10", 10, eb1.capacity());
+        assertTrue("expect a backing array", eb1.getByteBuffer().hasArray());
+        assertEquals("expect correct contents at position 4",
+            (byte)'4', eb1.get(4));
+    }
+
+    //
+    // Verify that an ExtentBuffer over a direct buffer, which has no
+    // accessible backing array, serializes to an ordinary object stream
+    // and is reconstructed with the same contents.
+    //
+    @Test
+    public final void testSerializationDirect() throws
+            IOException, ClassNotFoundException {
+        int length = 200 * 1024 + 7;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(i, (byte) (i * 31));
+        }
+        ExtentBuffer eb0 = new ExtentBuffer(0L, buffer);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(eb0);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(baos.toByteArray()));
+        ExtentBuffer eb1 = (ExtentBuffer)in.readObject();
+        in.close();
+
+        assertEquals("expect limit to match", length, eb1.limit());
+        assertTrue("expect a backing array", eb1.getByteBuffer().hasArray());
+        assertEquals("expect equal contents",
+            eb0.getByteBuffer(), eb1.getByteBuffer());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2007-2009 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package sunlabs.titan.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import sunlabs.asdf.jmx.JMX;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    private final static double EPSILON = 1e-9;
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram("empty");
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanoseconds(50.0));
+        assertEquals(0.0, histogram.getMean(), EPSILON);
+        assertEquals(0.0, histogram.getMax(), EPSILON);
+    }
+
+    @Test
+    public void testBucketing() {
+        // Small values are counted exactly.
+        for (long value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            LatencyHistogram histogram = new LatencyHistogram("small");
+            histogram.record(value);
+            histogram.record(1000000000L);
+            assertEquals(value, histogram.getPercentileNanoseconds(50.0));
+        }
+
+        // Larger values are reported as the top of their bucket, which is never below the value and within 1/SUB_BUCKETS of it.
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            // Values up to about 73 minutes, the range of the histogram.
+            long value = LatencyHistogram.SUB_BUCKETS + ((random.nextLong() >>> 22) >>> random.nextInt(26));
+            LatencyHistogram histogram = new LatencyHistogram("large");
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE / 2);
+            long reported = histogram.getPercentileNanoseconds(50.0);
+            assertTrue(value + " " + reported, reported >= value);
+            assertTrue(value + " " + reported, reported - value <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+
+        // A percentile is never reported above the largest recorded value, and negative latencies are counted as zero.
+        LatencyHistogram histogram = new LatencyHistogram("max");
+        histogram.record(1000);
+        assertEquals(1000, histogram.getPercentileNanoseconds(100.0));
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentileNanoseconds(50.0));
+        assertEquals(2, histogram.getCount());
+        assertEquals(1000, histogram.getTotalNanoseconds());
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("percentiles");
+        // One thousand latencies of 1..1000 milliseconds.
+        for (long millis = 1000; millis >= 1; millis--) {
+            histogram.record(millis * 1000000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), EPSILON);
+        assertEquals(1000.0, histogram.getMax(), EPSILON);
+
+        double tolerance = 1.0 / LatencyHistogram.SUB_BUCKETS;
+        assertEquals(500.0, histogram.getMedian(), 500.0 * tolerance);
+        assertEquals(900.0, histogram.get90thPercentile(), 900.0 * tolerance);
+        assertEquals(990.0, histogram.get99thPercentile(), 990.0 * tolerance);
+        assertEquals(999.0, histogram.get999thPercentile(), 999.0 * tolerance);
+        assertTrue(histogram.getMedian() >= 500.0);
+        assertTrue(histogram.get999thPercentile() <= histogram.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanoseconds(99.0));
+    }
+
+    @Test
+    public void testOperationCounts() throws Exception {
+        ObjectName root = JMX.objectName("sunlabs.titan.util", "LatencyHistogramTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Metrics metrics = new Metrics(root);
+
+        Metrics.Timer first = metrics.start("read");
+        Metrics.Timer second = metrics.start("read");
+        Metrics.Operation read = metrics.getOperation("read");
+        assertEquals(2, read.getStarted());
+        assertEquals(2, read.getActive());
+        assertEquals(0, read.getTotal().getCount());
+
+        first.stamp("fetch");
+        first.stop();
+        // Stopping a timer again has no effect.
+        first.stop();
+        assertEquals(2, read.getStarted());
+        assertEquals(1, read.getActive());
+        assertEquals(1, read.getTotal().getCount());
+        assertEquals(1, read.getPhase("fetch").getCount());
+
+        second.stop();
+        assertEquals(0, read.getActive());
+        assertEquals(2, read.getTotal().getCount());
+
+        ObjectName active = JMX.objectName(root, "read", "active");
+        assertTrue(server.isRegistered(active));
+        assertEquals(Long.valueOf(0), server.getAttribute(active, "Value"));
+        metrics.unregister();
+        assertFalse(server.isRegistered(active));
+        assertFalse(server.isRegistered(JMX.objectName(root, "read", "fetch")));
+    }
+}